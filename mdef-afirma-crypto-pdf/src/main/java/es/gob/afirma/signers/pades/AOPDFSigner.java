@@ -11,7 +11,12 @@
 package es.gob.afirma.signers.pades;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
@@ -42,6 +47,7 @@ import es.gob.afirma.core.signers.CounterSignTarget;
 import es.gob.afirma.core.ui.AOUIFactory;
 import es.gob.afirma.core.util.tree.AOTreeModel;
 import es.gob.afirma.core.util.tree.AOTreeNode;
+import es.gob.afirma.signers.tsp.pkcs7.TsaParams;
 
 /** Manejador de firmas binarias de ficheros Adobe PDF en formato PAdES.
  * <p>Para compatibilidad estricta con PAdES-BES/EPES se utiliza <i>ETSI.CAdES.detached</i> como nombre del subfiltro.</p>
@@ -68,6 +74,10 @@ public final class AOPDFSigner implements AOSigner {
 
     private static final Logger LOGGER = Logger.getLogger("es.gob.afirma");  //$NON-NLS-1$
 
+    /** Tama&ntilde;o en bytes a partir del cual conviene firmar los PDF directamente sobre ficheros, con
+     * <code>sign(File, File, ...)</code>, para no cargarlos completos en memoria. */
+    public static final long LARGE_PDF_SIZE = 64L * 1024L * 1024L;
+
 	private static final PdfName PDFNAME_ETSI_RFC3161 = new PdfName("ETSI.RFC3161"); //$NON-NLS-1$
 	private static final PdfName PDFNAME_DOCTIMESTAMP = new PdfName("DocTimeStamp"); //$NON-NLS-1$
 
@@ -152,22 +162,7 @@ public final class AOPDFSigner implements AOSigner {
 		}
 
         // Firma PKCS#1
-        final byte[] interSign;
-        try {
-	        interSign = new AOPkcs1Signer().sign(
-	    		pre.getSign(),
-	    		algorithm,
-	    		key,
-	    		certificateChain,
-	    		extraParams
-			);
-        }
-        catch (final Exception e) {
-        	if ("es.gob.jmulticard.ui.passwordcallback.CancelledOperationException".equals(e.getClass().getName())) { //$NON-NLS-1$
-        		throw new AOCancelledOperationException();
-        	}
-            throw new AOException("Error durante la firma PAdES: " + e, e); //$NON-NLS-1$
-        }
+        final byte[] interSign = pkcs1Sign(pre, algorithm, key, certificateChain, extraParams);
 
         // Postfirma
         try {
@@ -187,6 +182,147 @@ public final class AOPDFSigner implements AOSigner {
 
     }
 
+    /** Firma en formato PAdES un documento PDF almacenado en un fichero, escribiendo el resultado en otro fichero.
+     * A diferencia de <code>sign(byte[], ...)</code>, ni el documento de entrada ni el firmado se cargan completos
+     * en memoria: el PDF de entrada se proyecta en memoria y se lee bajo demanda y el de salida se escribe directamente
+     * en disco, por lo que este m&eacute;todo es el adecuado para documentos de gran tama&ntilde;o.
+     * <p>
+     *  En este modo no se registra la firma en el hist&oacute;rico XMP del documento. Si se solicita un sello de tiempo
+     *  a nivel de documento, la firma se realiza en memoria igual que con <code>sign(byte[], ...)</code>.
+     * </p>
+     * @param inPdf Fichero con el documento PDF a firmar.
+     * @param outPdf Fichero en el que guardar el documento PDF firmado. Debe ser distinto del de entrada y
+     *               se borra si la firma no se completa.
+     * @param algorithm Algoritmo a usar para la firma (ver <code>sign(byte[], ...)</code>).
+     * @param key Clave privada a usar para firmar
+     * @param certChain Cadena de certificados del firmante
+     * @param xParams Par&aacute;metros adicionales para la firma (<a href="doc-files/extraparams.html">detalle</a>)
+     * @throws AOException Cuando ocurre cualquier problema durante el proceso.
+     * @throws IOException Cuando hay errores en la lectura o escritura de los ficheros. */
+    public void sign(final File inPdf,
+                     final File outPdf,
+                     final String algorithm,
+                     final PrivateKey key,
+                     final java.security.cert.Certificate[] certChain,
+                     final Properties xParams) throws AOException,
+                                                      IOException {
+
+        final Properties extraParams = xParams != null ? xParams : new Properties();
+
+        checkIText();
+
+        // El sello de tiempo de documento necesita el PDF completo en memoria
+        final String tsType = extraParams.getProperty(PdfExtraParams.TS_TYPE);
+        if (extraParams.getProperty(PdfExtraParams.TSA_URL) != null &&
+        		(TsaParams.TS_DOC.equals(tsType) || TsaParams.TS_SIGN_DOC.equals(tsType))) {
+        	LOGGER.info("Se ha solicitado un sello de tiempo de documento, el PDF se firmara en memoria"); //$NON-NLS-1$
+        	final InputStream fis = new FileInputStream(inPdf);
+        	final byte[] data;
+        	try {
+        		data = AOUtil.getDataFromInputStream(fis);
+        	}
+        	finally {
+        		fis.close();
+        	}
+        	final byte[] signedPdf = sign(data, algorithm, key, certChain, extraParams);
+        	boolean written = false;
+        	try {
+        		final OutputStream fos = new FileOutputStream(outPdf);
+        		try {
+        			fos.write(signedPdf);
+        		}
+        		finally {
+        			fos.close();
+        		}
+        		written = true;
+        	}
+        	finally {
+        		if (!written && outPdf.exists() && !outPdf.delete()) {
+        			LOGGER.warning("No se ha podido borrar el fichero de salida incompleto: " + outPdf.getAbsolutePath()); //$NON-NLS-1$
+        		}
+        	}
+        	return;
+        }
+
+        final java.security.cert.Certificate[] certificateChain = Boolean.parseBoolean(extraParams.getProperty(PdfExtraParams.INCLUDE_ONLY_SIGNNING_CERTIFICATE, Boolean.FALSE.toString())) ?
+    		new X509Certificate[] { (X509Certificate) certChain[0] } :
+    			certChain;
+
+    	final GregorianCalendar signTime = PdfUtil.getSignTime(extraParams.getProperty(PdfExtraParams.SIGN_TIME));
+
+    	PdfTriPhaseSession ptps = null;
+    	boolean signed = false;
+    	try {
+    		ptps = PdfSessionManager.getSessionData(inPdf, outPdf, certificateChain, signTime, extraParams);
+
+    		// Prefirma
+    		final PdfSignResult pre = PAdESTriPhaseSigner.preSign(
+				algorithm,
+				ptps,
+				certificateChain,
+				signTime,
+				extraParams
+			);
+
+    		// Firma PKCS#1
+    		final byte[] interSign = pkcs1Sign(pre, algorithm, key, certificateChain, extraParams);
+
+    		// Postfirma, que cierra el fichero de salida
+    		PAdESTriPhaseSigner.postSign(
+				algorithm,
+				ptps,
+				certificateChain,
+				interSign,
+				pre
+			);
+    		signed = true;
+    	}
+        catch (final NoSuchAlgorithmException e) {
+			throw new AOException("Error el en algoritmo de firma: " + e, e); //$NON-NLS-1$
+		}
+    	finally {
+    		if (ptps != null) {
+    			// Si la firma no se ha completado cerramos el fichero de salida, que de otro modo
+    			// quedaria abierto y no se podria borrar
+    			if (!signed) {
+    				PAdESTriPhaseSigner.abortSession(ptps);
+    			}
+    			// Liberamos la proyeccion en memoria del fichero de entrada
+    			try {
+    				ptps.getSAP().getStamper().getReader().close();
+    			}
+    			catch (final Exception e) {
+    				LOGGER.fine("No se ha podido cerrar el PDF de entrada: " + e); //$NON-NLS-1$
+    			}
+    		}
+    		if (!signed && outPdf.exists() && !outPdf.delete()) {
+    			LOGGER.warning("No se ha podido borrar el fichero de salida incompleto: " + outPdf.getAbsolutePath()); //$NON-NLS-1$
+    		}
+    	}
+    }
+
+    private static byte[] pkcs1Sign(final PdfSignResult pre,
+                                    final String algorithm,
+                                    final PrivateKey key,
+                                    final java.security.cert.Certificate[] certificateChain,
+                                    final Properties extraParams) throws AOException {
+        try {
+	        return new AOPkcs1Signer().sign(
+	    		pre.getSign(),
+	    		algorithm,
+	    		key,
+	    		certificateChain,
+	    		extraParams
+			);
+        }
+        catch (final Exception e) {
+        	if ("es.gob.jmulticard.ui.passwordcallback.CancelledOperationException".equals(e.getClass().getName())) { //$NON-NLS-1$
+        		throw new AOCancelledOperationException();
+        	}
+            throw new AOException("Error durante la firma PAdES: " + e, e); //$NON-NLS-1$
+        }
+    }
+
     /** A&ntilde;ade una firma PAdES a un documento PDF. El comportamiento es exactamente el mismo que una llamada al m&eacute;todo <code>sign(...)</code>
      * puesto que las multifirmas en los ficheros PDF se limitan a firmas independientes "en serie", pero no implementando los mecanismos de
      * cofirma o contrafirma de CAdES.
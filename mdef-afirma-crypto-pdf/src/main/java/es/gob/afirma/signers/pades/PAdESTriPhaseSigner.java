@@ -12,7 +12,6 @@ package es.gob.afirma.signers.pades;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.Certificate;
 import java.util.GregorianCalendar;
@@ -25,7 +24,6 @@ import com.aowagie.text.pdf.PdfSignatureAppearance;
 import com.aowagie.text.pdf.PdfString;
 
 import es.gob.afirma.core.AOException;
-import es.gob.afirma.core.misc.AOUtil;
 import es.gob.afirma.core.signers.AOSignConstants;
 import es.gob.afirma.core.signers.AdESPolicy;
 import es.gob.afirma.signers.cades.CAdESSignerMetadataHelper;
@@ -182,6 +180,36 @@ public final class PAdESTriPhaseSigner {
 
         final PdfTriPhaseSession ptps = PdfSessionManager.getSessionData(inPDF, signerCertificateChain, signTime, extraParams);
 
+        final PdfSignResult result = preSign(digestAlgorithmName, ptps, signerCertificateChain, signTime, extraParams);
+
+        // Guardamos la sesion ya preparada para que la post-firma no tenga que regenerarla
+        if (PdfSessionCache.isEnabled()) {
+        	PdfSessionCache.put(
+    			PdfSessionCache.getKey(result.getFileID(), inPDF, signerCertificateChain, signTime, extraParams),
+    			ptps,
+    			inPDF.length + (long) ptps.getBAOS().size()
+			);
+        }
+
+        return result;
+    }
+
+    /** Obtiene la pre-firma PAdES/CAdES (atributos CAdES a firmar) de una sesi&oacute;n PDF ya preparada.
+     * @param digestAlgorithmName Nombre del algoritmo de huella digital usado para la firma.
+     * @param ptps Sesi&oacute;n PDF con el espacio para la firma ya reservado.
+     * @param signerCertificateChain Cadena de certificados del firmante.
+     * @param signTime Momento de la firma.
+     * @param extraParams Par&aacute;metros adicionales para la firma.
+     * @return pre-firma CAdES/PAdES (atributos CAdES a firmar)
+     * @throws IOException En caso de errores de entrada / salida
+     * @throws AOException En caso de cualquier otro tipo de error */
+    static PdfSignResult preSign(final String digestAlgorithmName,
+                                 final PdfTriPhaseSession ptps,
+                                 final Certificate[] signerCertificateChain,
+                                 final GregorianCalendar signTime,
+                                 final Properties extraParams) throws IOException,
+                                                                      AOException {
+
 	    // La norma PAdES establece que si el algoritmo de huella digital es SHA1 debe usarse SigningCertificateV2, y en cualquier
 	    // otro caso deberia usarse SigningCertificateV2
 	    boolean signingCertificateV2;
@@ -192,12 +220,13 @@ public final class PAdESTriPhaseSigner {
 	    	signingCertificateV2 = !"SHA1".equals(AOSignConstants.getDigestAlgorithmName(digestAlgorithmName));	 //$NON-NLS-1$
 	    }
 
-        final byte[] original = AOUtil.getDataFromInputStream(ptps.getSAP().getRangeStream());
-
-        // Calculamos el MessageDigest
+        // Calculamos el MessageDigest leyendo el rango firmable por bloques, sin copiarlo entero en memoria
         final byte[] md;
         try {
-            md = MessageDigest.getInstance(AOSignConstants.getDigestAlgorithmName(digestAlgorithmName)).digest(original);
+            md = PdfUtil.digestRangeStream(
+        		ptps.getSAP().getRangeStream(),
+        		AOSignConstants.getDigestAlgorithmName(digestAlgorithmName)
+    		);
         }
         catch (final NoSuchAlgorithmException e) {
             throw new AOException("El algoritmo de huella digital no es valido: " + e, e); //$NON-NLS-1$
@@ -346,9 +375,90 @@ public final class PAdESTriPhaseSigner {
     		xParams != null ? xParams : new Properties());
     }
 
+    /** Post-firma en PAdES una sesi&oacute;n PDF preparada en la pre-firma, cerrando el PDF de salida de la sesi&oacute;n
+     * con la firma insertada. Se usa cuando la pre-firma y la post-firma se hacen en el mismo proceso sobre la misma
+     * sesi&oacute;n, como en la firma sobre ficheros.
+     * @param digestAlgorithmName Nombre del algoritmo de huella digital usado para la firma (debe ser el mismo que el usado en la pre-firma).
+     * @param ptps Sesi&oacute;n PDF usada en la pre-firma.
+     * @param signerCertificateChain Cadena de certificados del firmante (debe ser la misma que la usado en la pre-firma).
+     * @param pkcs1Signature Resultado de la firma PKCS#1 v1.5 de los datos de la pre-firma.
+     * @param preSign Resultado de la pre-firma
+     * @throws AOException en caso de cualquier tipo de error
+     * @throws IOException Cuando ocurre algun error en la conversi&oacute;n o generaci&oacute;n
+     *                     de estructuras.
+     * @throws NoSuchAlgorithmException Si hay problemas con el algoritmo durante el sello de tiempo. */
+    static void postSign(final String digestAlgorithmName,
+                         final PdfTriPhaseSession ptps,
+                         final Certificate[] signerCertificateChain,
+                         final byte[] pkcs1Signature,
+                         final PdfSignResult preSign) throws AOException,
+                                                             IOException,
+                                                             NoSuchAlgorithmException {
+    	final PdfSignResult completePdfSSignature = generatePdfSignature(
+    		digestAlgorithmName,
+    		signerCertificateChain,
+    		preSign.getExtraParams(),
+    		pkcs1Signature,
+    		preSign.getSign(),
+    		preSign.getFileID(),
+    		preSign.getTimestamp(),
+    		preSign.getSignTime(),
+    		null,
+    		null
+		);
+    	closeSession(ptps, getSignatureDictionary(completePdfSSignature));
+    }
+
     private static byte[] insertSignatureOnPdf(final byte[] inPdf,
     		                                   final Certificate[] signerCertificateChain,
     		                                   final PdfSignResult signature) throws AOException, IOException {
+
+        final PdfDictionary dic2 = getSignatureDictionary(signature);
+
+        // Si la sesion de la pre-firma sigue en cache la reutilizamos, y si no la regeneramos
+        PdfTriPhaseSession pts = null;
+        if (PdfSessionCache.isEnabled()) {
+        	pts = PdfSessionCache.take(
+    			PdfSessionCache.getKey(
+					signature.getFileID(),
+					inPdf,
+					signerCertificateChain,
+					signature.getSignTime(),
+					signature.getExtraParams()
+				)
+			);
+        }
+        if (pts == null) {
+			try {
+				pts = PdfSessionManager.getSessionData(inPdf, signerCertificateChain, signature.getSignTime(), signature.getExtraParams());
+			}
+			catch (final InvalidPdfException e) {
+				throw new IOException(e);
+			}
+        }
+        else {
+        	LOGGER.fine("Se reutiliza la sesion PDF generada en la pre-firma"); //$NON-NLS-1$
+        }
+
+    	final ByteArrayOutputStream baos = pts.getBAOS();
+	    final String badFileID = pts.getFileID();
+
+	    try {
+	    	closeSession(pts, dic2);
+	    }
+	    catch (final AOException e) {
+	    	baos.close();
+	    	throw e;
+	    }
+
+	    final byte[] ret = new String(baos.toByteArray(), "ISO-8859-1").replace(badFileID, signature.getFileID()).getBytes("ISO-8859-1"); //$NON-NLS-1$ //$NON-NLS-2$
+
+	    baos.close();
+
+	    return ret;
+    }
+
+    private static PdfDictionary getSignatureDictionary(final PdfSignResult signature) throws AOException {
         final byte[] outc = new byte[CSIZE];
 
         if (signature.getSign().length > CSIZE) {
@@ -360,32 +470,32 @@ public final class PAdESTriPhaseSigner {
         final PdfDictionary dic2 = new PdfDictionary();
         System.arraycopy(signature.getSign(), 0, outc, 0, signature.getSign().length);
         dic2.put(PdfName.CONTENTS, new PdfString(outc).setHexWriting(true));
+        return dic2;
+    }
 
-        final PdfTriPhaseSession pts;
-		try {
-			pts = PdfSessionManager.getSessionData(inPdf, signerCertificateChain, signature.getSignTime(), signature.getExtraParams());
-		}
-		catch (final InvalidPdfException e) {
-			throw new IOException(e);
-		}
+    private static void closeSession(final PdfTriPhaseSession pts, final PdfDictionary dic2) throws AOException {
         final PdfSignatureAppearance sap = pts.getSAP();
-
-    	final ByteArrayOutputStream baos = pts.getBAOS();
-	    final String badFileID = pts.getFileID();
-
 	    try {
 	       sap.close(dic2);
 	    }
 	    catch (final Exception e) {
-	    	baos.close();
 	        throw new AOException("Error al cerrar el PDF para finalizar el proceso de firma", e); //$NON-NLS-1$
 	    }
+    }
 
-	    final byte[] ret = new String(baos.toByteArray(), "ISO-8859-1").replace(badFileID, signature.getFileID()).getBytes("ISO-8859-1"); //$NON-NLS-1$ //$NON-NLS-2$
-
-	    baos.close();
-
-	    return ret;
+    /** Cierra una sesi&oacute;n de firma que no se va a completar, rellenando con ceros el espacio
+     * reservado para la firma. As&iacute; se liberan los ficheros que mantiene abiertos el PDF de salida
+     * y este puede borrarse.
+     * @param pts Sesi&oacute;n de firma PDF que se desea descartar. */
+    static void abortSession(final PdfTriPhaseSession pts) {
+        final PdfDictionary dic2 = new PdfDictionary();
+        dic2.put(PdfName.CONTENTS, new PdfString(new byte[CSIZE]).setHexWriting(true));
+	    try {
+	       pts.getSAP().close(dic2);
+	    }
+	    catch (final Exception e) {
+	        LOGGER.fine("No se ha podido cerrar el PDF de salida de la firma descartada: " + e); //$NON-NLS-1$
+	    }
     }
 
 }
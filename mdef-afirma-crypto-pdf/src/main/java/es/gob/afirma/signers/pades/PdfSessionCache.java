@@ -0,0 +1,190 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * Date: 11/01/11
+ * You may contact the copyright holder at: soporte.afirma5@mpt.es
+ */
+
+package es.gob.afirma.signers.pades;
+
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import es.gob.afirma.core.misc.AOUtil;
+
+/** Cach&eacute; de sesiones PDF de firma trif&aacute;sica.
+ * Guarda la sesi&oacute;n ya preparada en la pre-firma (PDF con el hueco para la firma reservado)
+ * para que la post-firma solo tenga que insertar la firma, en lugar de volver a generar el PDF.
+ * Las sesiones se identifican por la huella del documento, el <i>FILE_ID</i> generado en la pre-firma,
+ * la fecha de firma, el certificado del firmante y los par&aacute;metros adicionales. El <i>FILE_ID</i>
+ * no basta por s&iacute; solo, ya que se deriva del identificador original del documento y de la fecha
+ * de firma, por lo que puede repetirse entre copias de una misma plantilla firmadas a la vez; la huella
+ * garantiza que la post-firma nunca inserte la firma en la sesi&oacute;n preparada para otro documento.
+ * Las sesiones se usan una &uacute;nica vez. Si la sesi&oacute;n no
+ * est&aacute; en cach&eacute; (por haber caducado, por haberse descartado por falta de espacio o por
+ * haberse hecho la pre-firma en otro proceso) la post-firma la regenera como siempre.
+ * <p>El tiempo de vida y la memoria m&aacute;xima de la cach&eacute; pueden configurarse con las
+ * propiedades del sistema <code>es.gob.afirma.pades.sessioncache.ttl</code> (milisegundos) y
+ * <code>es.gob.afirma.pades.sessioncache.maxmemory</code> (bytes). Una memoria m&aacute;xima de
+ * <code>0</code> desactiva la cach&eacute;. Las sesiones que ocupan m&aacute;s que la memoria
+ * m&aacute;xima (documento m&aacute;s PDF preparado) no se guardan nunca y su post-firma siempre
+ * regenera el PDF.</p> */
+final class PdfSessionCache {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private static final String SYS_PROPERTY_TTL = "es.gob.afirma.pades.sessioncache.ttl"; //$NON-NLS-1$
+	private static final String SYS_PROPERTY_MAX_MEMORY = "es.gob.afirma.pades.sessioncache.maxmemory"; //$NON-NLS-1$
+
+	private static final long DEFAULT_TTL = 5 * 60 * 1000L;
+	private static final long DEFAULT_MAX_MEMORY = 64 * 1024 * 1024L;
+
+	private static final String KEY_DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+	private static final long TTL = getLongProperty(SYS_PROPERTY_TTL, DEFAULT_TTL);
+	private static final long MAX_MEMORY = getLongProperty(SYS_PROPERTY_MAX_MEMORY, DEFAULT_MAX_MEMORY);
+
+	/** Sesiones en cach&eacute;, en orden de inserci&oacute;n (las m&aacute;s antiguas primero). */
+	private static final Map<String, Entry> SESSIONS = new LinkedHashMap<String, Entry>();
+
+	private static long usedMemory = 0;
+
+	private PdfSessionCache() {
+		// No instanciable
+	}
+
+	/** Indica si la cach&eacute; est&aacute; activa.
+	 * @return <code>true</code> si la cach&eacute; est&aacute; activa, <code>false</code> en caso contrario. */
+	static boolean isEnabled() {
+		return MAX_MEMORY > 0 && TTL > 0;
+	}
+
+	/** Calcula la clave con la que se identifica la sesi&oacute;n de firma de un documento.
+	 * @param fileId <i>FILE_ID</i> generado en la pre-firma.
+	 * @param pdf Documento PDF.
+	 * @param certChain Cadena de certificados del firmante.
+	 * @param signTime Fecha de la firma.
+	 * @param extraParams Par&aacute;metros adicionales de la firma.
+	 * @return Clave de la sesi&oacute;n o <code>null</code> si no se ha podido calcular. */
+	static String getKey(final String fileId,
+			             final byte[] pdf,
+			             final Certificate[] certChain,
+			             final Calendar signTime,
+			             final Properties extraParams) {
+		if (fileId == null || pdf == null) {
+			return null;
+		}
+		try {
+			final MessageDigest md = MessageDigest.getInstance(KEY_DIGEST_ALGORITHM);
+			md.update(fileId.getBytes("UTF-8")); //$NON-NLS-1$
+			md.update(pdf);
+			if (certChain != null && certChain.length > 0) {
+				md.update(certChain[0].getEncoded());
+			}
+			md.update(Long.toString(signTime.getTimeInMillis()).getBytes());
+			if (extraParams != null) {
+				// Ordenamos las propiedades para que la clave no dependa del orden interno
+				final TreeMap<String, String> sorted = new TreeMap<String, String>();
+				for (final String name : extraParams.stringPropertyNames()) {
+					sorted.put(name, extraParams.getProperty(name));
+				}
+				md.update(sorted.toString().getBytes("UTF-8")); //$NON-NLS-1$
+			}
+			return AOUtil.hexify(md.digest(), false);
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No se ha podido calcular la clave de la sesion PDF: " + e); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	/** Guarda una sesi&oacute;n en la cach&eacute;, descartando las caducadas y, si no hay espacio
+	 * suficiente, las m&aacute;s antiguas.
+	 * @param key Clave de la sesi&oacute;n.
+	 * @param session Sesi&oacute;n PDF ya preparada para insertar la firma.
+	 * @param size Memoria aproximada ocupada por la sesi&oacute;n en bytes. */
+	static void put(final String key, final PdfTriPhaseSession session, final long size) {
+		if (key == null || size > MAX_MEMORY) {
+			return;
+		}
+		synchronized (SESSIONS) {
+			final long now = System.currentTimeMillis();
+			final Entry previous = SESSIONS.remove(key);
+			if (previous != null) {
+				usedMemory -= previous.size;
+			}
+			final Iterator<Entry> it = SESSIONS.values().iterator();
+			while (it.hasNext()) {
+				final Entry entry = it.next();
+				if (entry.expiration > now && usedMemory + size <= MAX_MEMORY) {
+					break;
+				}
+				usedMemory -= entry.size;
+				it.remove();
+			}
+			SESSIONS.put(key, new Entry(session, size, now + TTL));
+			usedMemory += size;
+		}
+	}
+
+	/** Obtiene y retira de la cach&eacute; una sesi&oacute;n.
+	 * @param key Clave de la sesi&oacute;n.
+	 * @return Sesi&oacute;n PDF o <code>null</code> si no est&aacute; en cach&eacute; o ha caducado. */
+	static PdfTriPhaseSession take(final String key) {
+		if (key == null) {
+			return null;
+		}
+		final Entry entry;
+		synchronized (SESSIONS) {
+			entry = SESSIONS.remove(key);
+			if (entry == null) {
+				return null;
+			}
+			usedMemory -= entry.size;
+		}
+		if (entry.expiration < System.currentTimeMillis()) {
+			return null;
+		}
+		return entry.session;
+	}
+
+	private static long getLongProperty(final String name, final long defaultValue) {
+		final String value = System.getProperty(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		}
+		catch (final Exception e) {
+			LOGGER.warning(
+				"Valor invalido para la propiedad '" + name + "' (" + value + "), se usara " + defaultValue + ": " + e //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			);
+			return defaultValue;
+		}
+	}
+
+	private static final class Entry {
+
+		final PdfTriPhaseSession session;
+		final long size;
+		final long expiration;
+
+		Entry(final PdfTriPhaseSession s, final long sz, final long exp) {
+			this.session = s;
+			this.size = sz;
+			this.expiration = exp;
+		}
+	}
+
+}
@@ -11,6 +11,7 @@
 package es.gob.afirma.signers.pades;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
@@ -78,6 +79,105 @@ public final class PdfSessionManager {
                                                                                          InvalidPdfException,
                                                                                          AOException {
 
+		byte[] inPDF;
+		try {
+			inPDF = XmpHelper.addSignHistoryToXmp(pdfBytes, signTime);
+		}
+		catch (final Exception e1) {
+			LOGGER.warning("No ha podido registrarse la firma en el historico XMP: " + e1); //$NON-NLS-1$
+			inPDF = pdfBytes;
+		}
+
+		final PdfReader pdfReader = PdfUtil.getPdfReader(
+			inPDF,
+			extraParams,
+			Boolean.parseBoolean(extraParams.getProperty(PdfExtraParams.HEADLESS))
+		);
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final PdfTriPhaseSession session = getSessionData(pdfReader, baos, null, certChain, signTime, extraParams);
+		if (session == null) {
+			// Se ha obtenido la contrasena de usuario, volvemos a procesar el PDF con ella
+			return getSessionData(inPDF, certChain, signTime, extraParams);
+		}
+		return session;
+    }
+
+    /** Obtiene los datos PDF relevantes en cuanto a las firmas electr&oacute;nicas trabajando sobre ficheros,
+     * de forma que ni el documento de entrada ni el de salida se cargan completos en memoria. El PDF de entrada
+     * se lee bajo demanda y el PDF de salida se escribe directamente en el fichero indicado, que contendr&aacute;
+     * el documento firmado cuando se cierre la firma.
+     * <p>En este modo no se registra la firma en el hist&oacute;rico XMP del documento.</p>
+     * @param inPdf Fichero con el documento PDF que se desea firmar.
+     * @param outPdf Fichero en el que se escribir&aacute; el documento PDF firmado. Debe ser distinto del de entrada.
+     * @param certChain Cadena de certificados del firmante
+     * @param signTime Hora de la firma
+     * @param extraParams Par&aacute;metros adicionales de la firma
+     * @return Datos PDF relevantes en cuanto a las firmas electr&oacute;nicas
+     * @throws IOException En caso de errores de entrada / salida.
+     * @throws InvalidPdfException Si el formato del documento no es v&aacute;lido.
+     * @throws AOException En caso de que ocurra cualquier otro tipo de error. */
+    public static PdfTriPhaseSession getSessionData(final File inPdf,
+                                                    final File outPdf,
+                                                    final Certificate[] certChain,
+                                                    final Calendar signTime,
+                                                    final Properties extraParams) throws IOException,
+                                                                                         InvalidPdfException,
+                                                                                         AOException {
+    	if (inPdf.getCanonicalFile().equals(outPdf.getCanonicalFile())) {
+    		throw new IllegalArgumentException(
+				"El fichero de salida no puede ser el mismo que el de entrada: " + inPdf.getAbsolutePath() //$NON-NLS-1$
+			);
+    	}
+
+		final PdfReader pdfReader = PdfUtil.getPdfReader(
+			inPdf,
+			extraParams,
+			Boolean.parseBoolean(extraParams.getProperty(PdfExtraParams.HEADLESS))
+		);
+
+		final PdfTriPhaseSession session;
+		try {
+			session = getSessionData(pdfReader, null, outPdf, certChain, signTime, extraParams);
+		}
+		catch (final IOException e) {
+			pdfReader.close();
+			throw e;
+		}
+		catch (final AOException e) {
+			pdfReader.close();
+			throw e;
+		}
+		if (session == null) {
+			// Se ha obtenido la contrasena de usuario, volvemos a procesar el PDF con ella
+			pdfReader.close();
+			return getSessionData(inPdf, outPdf, certChain, signTime, extraParams);
+		}
+		return session;
+    }
+
+    /** Prepara la firma de un PDF ya abierto, reservando en la salida el espacio para la firma.
+     * @param pdfReader Lector del PDF que se desea firmar.
+     * @param baos Flujo en memoria para el PDF de salida o <code>null</code> si se escribe en fichero.
+     * @param outPdf Fichero para el PDF de salida o <code>null</code> si se escribe en memoria.
+     * @param certChain Cadena de certificados del firmante
+     * @param signTime Hora de la firma
+     * @param extraParams Par&aacute;metros adicionales de la firma
+     * @return Datos PDF relevantes en cuanto a las firmas electr&oacute;nicas o <code>null</code> si
+     *         el PDF necesitaba contrase&ntilde;a de usuario y se ha obtenido, en cuyo caso hay que
+     *         volver a abrirlo.
+     * @throws IOException En caso de errores de entrada / salida.
+     * @throws InvalidPdfException Si el formato del documento no es v&aacute;lido.
+     * @throws AOException En caso de que ocurra cualquier otro tipo de error. */
+    private static PdfTriPhaseSession getSessionData(final PdfReader pdfReader,
+                                                     final ByteArrayOutputStream baos,
+                                                     final File outPdf,
+                                                     final Certificate[] certChain,
+                                                     final Calendar signTime,
+                                                     final Properties extraParams) throws IOException,
+                                                                                          InvalidPdfException,
+                                                                                          AOException {
+
 		// *********************************************************************************************************************
 		// **************** LECTURA PARAMETROS ADICIONALES *********************************************************************
 		// *********************************************************************************************************************
@@ -204,21 +304,6 @@ public final class PdfSessionManager {
 		// **************** FIN LECTURA PARAMETROS ADICIONALES *****************************************************************
 		// *********************************************************************************************************************
 
-		byte[] inPDF;
-		try {
-			inPDF = XmpHelper.addSignHistoryToXmp(pdfBytes, signTime);
-		}
-		catch (final Exception e1) {
-			LOGGER.warning("No ha podido registrarse la firma en el historico XMP: " + e1); //$NON-NLS-1$
-			inPDF = pdfBytes;
-		}
-
-		final PdfReader pdfReader = PdfUtil.getPdfReader(
-			inPDF,
-			extraParams,
-			Boolean.parseBoolean(extraParams.getProperty(PdfExtraParams.HEADLESS))
-		);
-
 		// **************************************************************
 		// ***** Comprobaciones y parametros necesarios para PDF-A1 *****
 		final byte[] xmpBytes = pdfReader.getMetadata();
@@ -240,8 +325,6 @@ public final class PdfSessionManager {
 		// es mejor quitarlos
 		pdfReader.removeUsageRights();
 
-		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
 		// Activar el atributo de "agregar firma" (quinto parametro del metodo
 		// "PdfStamper.createSignature") hace que se cree una nueva revision del
 		// documento y evita que las firmas previas queden invalidadas.
@@ -272,9 +355,9 @@ public final class PdfSessionManager {
 		try {
 			stp = PdfStamper.createSignature(
 				pdfReader, // PDF de entrada
-				baos,      // Salida
+				baos,      // Salida en memoria (nula si se escribe directamente en fichero)
 				pdfVersion == UNDEFINED ? '\0' /* Mantener version */ : Integer.toString(pdfVersion).toCharArray()[0] /* Version a medida */,
-				null,      // No crear temporal
+				outPdf,    // Fichero de salida (nulo si se escribe en memoria)
 				PdfUtil.getAppendMode(extraParams, pdfReader), // Append Mode
 				signTime   // Momento de la firma
 			);
@@ -304,7 +387,7 @@ public final class PdfSessionManager {
                 );
             }
             extraParams.put("userPassword", userPwd); //$NON-NLS-1$
-            return getSessionData(inPDF, certChain, signTime, extraParams);
+            return null;
 		}
 
 		// Antes de nada, miramos si nos han pedido que insertemos una pagina en blanco para poner ahi la firma
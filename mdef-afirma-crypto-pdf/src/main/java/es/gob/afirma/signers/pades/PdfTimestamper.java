@@ -12,7 +12,6 @@ package es.gob.afirma.signers.pades;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Calendar;
 import java.util.HashMap;
@@ -31,7 +30,6 @@ import com.aowagie.text.pdf.PdfStamper;
 import com.aowagie.text.pdf.PdfString;
 
 import es.gob.afirma.core.AOException;
-import es.gob.afirma.core.misc.AOUtil;
 import es.gob.afirma.signers.tsp.pkcs7.CMSTimestamper;
 import es.gob.afirma.signers.tsp.pkcs7.TsaParams;
 
@@ -160,11 +158,8 @@ public final class PdfTimestamper {
 					throw new AOException("Error en el procesado del PDF: " + e, e); //$NON-NLS-1$
 				}
 
-        		// Obtenemos el rango procesable
-        		final byte[] original = AOUtil.getDataFromInputStream(sap.getRangeStream());
-
-        		// Obtenemos el sello
-        		final byte[] tspToken = getTspToken(extraParams, original, signTime);
+        		// Obtenemos el sello sobre el rango procesable
+        		final byte[] tspToken = getTspToken(extraParams, sap, signTime);
 
             	// Y lo insertamos en el PDF
         		final byte[] outc = new byte[CSIZE];
@@ -193,18 +188,17 @@ public final class PdfTimestamper {
 		return inPDF;
 	}
 
-	private static byte[] getTspToken(final Properties extraParams, final byte[] original, final Calendar signTime) throws AOException, NoSuchAlgorithmException, IOException {
+	private static byte[] getTspToken(final Properties extraParams, final PdfSignatureAppearance sap, final Calendar signTime) throws AOException, NoSuchAlgorithmException, IOException {
 
     	// Obtenemos el sellador de tiempo
 		final TsaParams tsaParams = new TsaParams(extraParams);
         final CMSTimestamper timestamper = new CMSTimestamper(tsaParams);
 
-		// Obtenemos el token TSP
+		// Obtenemos el token TSP, calculando la huella del rango procesable por bloques
 		return timestamper.getTimeStampToken(
-			MessageDigest.getInstance(
+			PdfUtil.digestRangeStream(
+				sap.getRangeStream(),
 				tsaParams.getTsaHashAlgorithm()
-    		).digest(
-				original
 			),
 			tsaParams.getTsaHashAlgorithm(),
 			signTime
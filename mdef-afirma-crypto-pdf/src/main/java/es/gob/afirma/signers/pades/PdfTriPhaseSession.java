@@ -30,7 +30,8 @@ public final class PdfTriPhaseSession {
     }
 
     /** Obtiene el flujo de datos del propio PDF firmado.
-     * @return Flujo de datos del propio PDF firmado */
+     * @return Flujo de datos del propio PDF firmado o <code>null</code> si el PDF firmado se
+     *         escribe directamente en un fichero */
     public ByteArrayOutputStream getBAOS() {
         return this.baos;
     }
@@ -11,7 +11,11 @@
 package es.gob.afirma.signers.pades;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.text.SimpleDateFormat;
@@ -36,6 +40,7 @@ import com.aowagie.text.pdf.PdfSignatureAppearance;
 import com.aowagie.text.pdf.PdfStamper;
 import com.aowagie.text.pdf.PdfString;
 import com.aowagie.text.pdf.PdfWriter;
+import com.aowagie.text.pdf.RandomAccessFileOrArray;
 
 import es.gob.afirma.core.AOCancelledOperationException;
 import es.gob.afirma.core.ui.AOUIFactory;
@@ -57,6 +62,16 @@ public final class PdfUtil {
 		SUPPORTED_SUBFILTERS.add("/adbe.pkcs7.sha1"); //$NON-NLS-1$
 	}
 
+	static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+	/** B&uacute;fer de lectura de cada hilo para el c&aacute;lculo de huellas del rango firmable. */
+	private static final ThreadLocal<byte[]> DIGEST_BUFFER = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[DIGEST_BUFFER_SIZE];
+		}
+	};
+
 	private PdfUtil() {
 		// No instanciable
 	}
@@ -109,11 +124,62 @@ public final class PdfUtil {
 		return calendar;
 	}
 
+	/** Calcula la huella digital del rango firmable de un PDF leyendo el flujo de datos por bloques,
+	 * sin cargar el rango completo en memoria.
+	 * @param rangeStream Flujo con el rango firmable del PDF (normalmente obtenido con
+	 *                    <code>PdfSignatureAppearance.getRangeStream()</code>). Se cierra al terminar.
+	 * @param digestAlgorithm Nombre del algoritmo de huella digital.
+	 * @return Huella digital del rango firmable.
+	 * @throws IOException Si hay errores leyendo el flujo de datos.
+	 * @throws NoSuchAlgorithmException Si no se soporta el algoritmo de huella digital. */
+	static byte[] digestRangeStream(final InputStream rangeStream,
+			                        final String digestAlgorithm) throws IOException,
+			                                                             NoSuchAlgorithmException {
+		final MessageDigest md = MessageDigest.getInstance(digestAlgorithm);
+		final byte[] buffer = DIGEST_BUFFER.get();
+		try {
+			int n;
+			while ((n = rangeStream.read(buffer)) > 0) {
+				md.update(buffer, 0, n);
+			}
+		}
+		finally {
+			rangeStream.close();
+		}
+		return md.digest();
+	}
+
 	static PdfReader getPdfReader(final byte[] inPDF,
 			                      final Properties extraParams,
 			                      final boolean headless) throws BadPdfPasswordException,
 			                                                     InvalidPdfException,
 			                                                     IOException {
+		return getPdfReader(inPDF, null, extraParams, headless);
+	}
+
+	/** Obtiene un lector de PDF que accede al fichero bajo demanda, proyect&aacute;ndolo en memoria en
+	 * lugar de cargarlo completo en el <i>heap</i>.
+	 * @param inPdf Fichero PDF.
+	 * @param extraParams Par&aacute;metros adicionales de la firma.
+	 * @param headless <code>true</code> si no se deben mostrar di&aacute;logos gr&aacute;ficos.
+	 * @return Lector del PDF.
+	 * @throws BadPdfPasswordException Si la contrase&ntilde;a del PDF no es correcta.
+	 * @throws InvalidPdfException Si el fichero no es un PDF v&aacute;lido.
+	 * @throws IOException Si hay errores de entrada / salida. */
+	static PdfReader getPdfReader(final File inPdf,
+			                      final Properties extraParams,
+			                      final boolean headless) throws BadPdfPasswordException,
+			                                                     InvalidPdfException,
+			                                                     IOException {
+		return getPdfReader(null, inPdf, extraParams, headless);
+	}
+
+	private static PdfReader getPdfReader(final byte[] inPDF,
+			                              final File inFile,
+			                              final Properties extraParams,
+			                              final boolean headless) throws BadPdfPasswordException,
+			                                                             InvalidPdfException,
+			                                                             IOException {
 		// Contrasena del propietario del PDF
 		final String ownerPassword = extraParams.getProperty(PdfExtraParams.OWNER_PASSWORD);
 
@@ -123,13 +189,13 @@ public final class PdfUtil {
 		PdfReader pdfReader;
 		try {
 			if (ownerPassword != null) {
-				pdfReader = new PdfReader(inPDF, ownerPassword.getBytes());
+				pdfReader = newPdfReader(inPDF, inFile, ownerPassword.getBytes());
 			}
 			else if (userPassword != null) {
-				pdfReader = new PdfReader(inPDF, userPassword.getBytes());
+				pdfReader = newPdfReader(inPDF, inFile, userPassword.getBytes());
 			}
 			else {
-				pdfReader = new PdfReader(inPDF);
+				pdfReader = newPdfReader(inPDF, inFile, null);
 			}
 		}
 		catch (final BadPasswordException e) {
@@ -153,7 +219,7 @@ public final class PdfUtil {
                 );
 			}
 			try {
-				pdfReader = new PdfReader(inPDF, ownerPwd.getBytes());
+				pdfReader = newPdfReader(inPDF, inFile, ownerPwd.getBytes());
 			}
 			catch (final BadPasswordException e2) {
 				throw new BadPdfPasswordException(e2);
@@ -167,6 +233,19 @@ public final class PdfUtil {
 
 	}
 
+	private static PdfReader newPdfReader(final byte[] inPDF,
+			                              final File inFile,
+			                              final byte[] password) throws IOException {
+		if (inFile != null) {
+			// Lectura parcial: el fichero se proyecta en memoria y los objetos se leen bajo demanda
+			return new PdfReader(
+				new RandomAccessFileOrArray(inFile.getAbsolutePath(), false, false),
+				password
+			);
+		}
+		return password != null ? new PdfReader(inPDF, password) : new PdfReader(inPDF);
+	}
+
 	static void checkPdfCertification(final int pdfCertificationLevel, final Properties extraParams) throws PdfIsCertifiedException {
 		if (pdfCertificationLevel != PdfSignatureAppearance.NOT_CERTIFIED &&
 				!Boolean.parseBoolean(extraParams.getProperty(PdfExtraParams.ALLOW_SIGNING_CERTIFIED_PDFS))) {
@@ -395,6 +474,35 @@ public final class PdfUtil {
 			);
 			return new ArrayList<SignatureField>(0);
 		}
+		return getPdfEmptySignatureFields(reader);
+	}
+
+	/** Obtiene los campos de firma vac&iacute;os de un fichero PDF sin cargarlo completo en memoria.
+	 * @param pdf Fichero PDF de entrada.
+	 * @return Campos de firma vac&iacute;os del PDF proporcionado. */
+	public static List<SignatureField> getPdfEmptySignatureFields(final File pdf) {
+		if (pdf == null) {
+			return new ArrayList<SignatureField>(0);
+		}
+		final PdfReader reader;
+		try {
+			reader = newPdfReader(null, pdf, null);
+		}
+		catch (final Exception e) {
+			LOGGER.severe(
+				"Error leyendo el PDF de entrada: " + e //$NON-NLS-1$
+			);
+			return new ArrayList<SignatureField>(0);
+		}
+		try {
+			return getPdfEmptySignatureFields(reader);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private static List<SignatureField> getPdfEmptySignatureFields(final PdfReader reader) {
 		final AcroFields fields = reader.getAcroFields();
 		if (fields != null) {
 			final List<String> emptySignatureFields = fields.getBlankSignatureNames();
@@ -0,0 +1,67 @@
+package es.gob.afirma.signers.pades;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.security.KeyStore.PrivateKeyEntry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import es.gob.afirma.core.misc.AOUtil;
+
+/** Pruebas de la limpieza del fichero de salida en la firma de PDF sobre ficheros. */
+public final class TestFileSignCleanup {
+
+	private final static String TEST_FILE = "TEST_PDF.pdf"; //$NON-NLS-1$
+
+	private final static String DEFAULT_SIGNATURE_ALGORITHM = "SHA512withRSA"; //$NON-NLS-1$
+
+	private final static String CERT_PATH = "PFActivoFirSHA256.pfx"; //$NON-NLS-1$
+	private final static String CERT_PASS = "12341234"; //$NON-NLS-1$
+	private final static String CERT_ALIAS = "fisico activo prueba"; //$NON-NLS-1$
+
+	/** Comprueba que si la firma falla despu&eacute;s de abrir la sesi&oacute;n PDF el fichero de
+	 * salida se cierra y se borra.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testOutputDeletedOnFailure() throws Exception {
+
+		final File inPdf = File.createTempFile("PDF_IN_", ".pdf"); //$NON-NLS-1$ //$NON-NLS-2$
+		inPdf.deleteOnExit();
+		final OutputStream fos = new FileOutputStream(inPdf);
+		try {
+			fos.write(AOUtil.getDataFromInputStream(ClassLoader.getSystemResourceAsStream(TEST_FILE)));
+		}
+		finally {
+			fos.close();
+		}
+		final File outPdf = new File(inPdf.getParentFile(), inPdf.getName() + ".signed.pdf"); //$NON-NLS-1$
+
+        final KeyStore ks = KeyStore.getInstance("PKCS12"); //$NON-NLS-1$
+        ks.load(ClassLoader.getSystemResourceAsStream(CERT_PATH), CERT_PASS.toCharArray());
+        final PrivateKeyEntry pke = (PrivateKeyEntry) ks.getEntry(CERT_ALIAS, new KeyStore.PasswordProtection(CERT_PASS.toCharArray()));
+
+        // Sin clave privada la firma PKCS#1 falla una vez creada la sesion y reservado el espacio en la salida
+        try {
+        	new AOPDFSigner().sign(
+    			inPdf,
+    			outPdf,
+    			DEFAULT_SIGNATURE_ALGORITHM,
+    			null,
+    			pke.getCertificateChain(),
+    			null
+			);
+        	Assert.fail("La firma sin clave privada deberia haber fallado"); //$NON-NLS-1$
+        }
+        catch (final Exception e) {
+        	// Esperado
+        }
+
+        Assert.assertFalse("No se ha borrado el PDF de salida incompleto", outPdf.exists()); //$NON-NLS-1$
+        Assert.assertTrue("No se ha liberado el PDF de entrada", inPdf.delete()); //$NON-NLS-1$
+	}
+
+}
@@ -0,0 +1,32 @@
+package es.gob.afirma.signers.pades;
+
+import java.util.GregorianCalendar;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Pruebas de la cach&eacute; de sesiones PDF de firma trif&aacute;sica. */
+public final class TestPdfSessionCache {
+
+	private static final String FILE_ID = "<0123456789ABCDEF><0123456789ABCDEF>"; //$NON-NLS-1$
+
+	/** Comprueba que dos documentos del mismo tama&ntilde;o firmados a la vez con el mismo
+	 * <i>FILE_ID</i> (copias de una misma plantilla) no comparten sesi&oacute;n. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testSameFileIdDifferentContent() {
+		final GregorianCalendar signTime = new GregorianCalendar();
+		final Properties extraParams = new Properties();
+		extraParams.setProperty("signReason", "Prueba"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		final byte[] pdfA = "%PDF-1.4 A".getBytes(); //$NON-NLS-1$
+		final byte[] pdfB = "%PDF-1.4 B".getBytes(); //$NON-NLS-1$
+
+		final String keyA = PdfSessionCache.getKey(FILE_ID, pdfA, null, signTime, extraParams);
+		Assert.assertNotNull(keyA);
+		Assert.assertEquals(keyA, PdfSessionCache.getKey(FILE_ID, pdfA.clone(), null, signTime, extraParams));
+		Assert.assertFalse(keyA.equals(PdfSessionCache.getKey(FILE_ID, pdfB, null, signTime, extraParams)));
+	}
+
+}
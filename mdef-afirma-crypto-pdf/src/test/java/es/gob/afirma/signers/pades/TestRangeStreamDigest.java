@@ -0,0 +1,125 @@
+package es.gob.afirma.signers.pades;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import es.gob.afirma.core.misc.AOUtil;
+
+/** Comparativa del c&aacute;lculo de la huella del rango firmable de un PDF cargando el rango
+ * completo en memoria frente a su lectura por bloques.
+ * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s */
+public final class TestRangeStreamDigest {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private static final String DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+	/** Tama&ntilde;o del rango simulado (equivalente a un PDF escaneado grande). */
+	private static final int RANGE_SIZE = 64 * 1024 * 1024;
+
+	private static final int ITERATIONS = 5;
+
+	/** Tama&ntilde;os de rango en los l&iacute;mites del b&uacute;fer de lectura por bloques. */
+	private static final int[] EDGE_SIZES = new int[] {
+		0,
+		1,
+		PdfUtil.DIGEST_BUFFER_SIZE - 1,
+		PdfUtil.DIGEST_BUFFER_SIZE,
+		PdfUtil.DIGEST_BUFFER_SIZE + 1,
+		2 * PdfUtil.DIGEST_BUFFER_SIZE,
+		3 * PdfUtil.DIGEST_BUFFER_SIZE + 7
+	};
+
+	/** Comprueba que la lectura por bloques obtiene la misma huella que la copia completa del
+	 * rango, incluidos los rangos vac&iacute;os y los que terminan en el l&iacute;mite del b&uacute;fer.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testStreamingDigest() throws Exception {
+		final Random random = new Random(0);
+		for (final int size : EDGE_SIZES) {
+			final byte[] range = new byte[size];
+			random.nextBytes(range);
+			Assert.assertTrue(
+				"Las huellas calculadas no coinciden para un rango de " + size + " bytes", //$NON-NLS-1$ //$NON-NLS-2$
+				Arrays.equals(
+					fullCopyDigest(new RangeInputStream(range)),
+					PdfUtil.digestRangeStream(new RangeInputStream(range), DIGEST_ALGORITHM)
+				)
+			);
+		}
+	}
+
+	/** Muestra el tiempo y la memoria ocupada por la copia completa del rango y por su lectura
+	 * por bloques.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Ignore // Prueba de rendimiento
+	@Test
+	public void testStreamingDigestPerformance() throws Exception {
+
+		final byte[] range = new byte[RANGE_SIZE];
+		new Random(0).nextBytes(range);
+
+		// Calentamiento
+		PdfUtil.digestRangeStream(new RangeInputStream(range), DIGEST_ALGORITHM);
+
+		final Runtime rt = Runtime.getRuntime();
+
+		long time = 0;
+		long heap = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			System.gc();
+			final long usedBefore = rt.totalMemory() - rt.freeMemory();
+			final long start = System.nanoTime();
+			final MessageDigest md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+			final byte[] original = AOUtil.getDataFromInputStream(new RangeInputStream(range));
+			heap = Math.max(heap, rt.totalMemory() - rt.freeMemory() - usedBefore);
+			md.digest(original);
+			time += System.nanoTime() - start;
+		}
+		LOGGER.info(
+			"Copia completa del rango: " + time / ITERATIONS / 1000000 + " ms, " + heap / 1024 + " KB de memoria adicional" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		);
+
+		time = 0;
+		heap = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			System.gc();
+			final long usedBefore = rt.totalMemory() - rt.freeMemory();
+			final long start = System.nanoTime();
+			PdfUtil.digestRangeStream(new RangeInputStream(range), DIGEST_ALGORITHM);
+			time += System.nanoTime() - start;
+			heap = Math.max(heap, rt.totalMemory() - rt.freeMemory() - usedBefore);
+		}
+		LOGGER.info(
+			"Lectura por bloques del rango: " + time / ITERATIONS / 1000000 + " ms, " + heap / 1024 + " KB de memoria adicional" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		);
+	}
+
+	private static byte[] fullCopyDigest(final InputStream is) throws Exception {
+		return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(AOUtil.getDataFromInputStream(is));
+	}
+
+	/** Flujo de datos que, como el de rango de iText, no informa de los bytes disponibles. */
+	private static final class RangeInputStream extends ByteArrayInputStream {
+
+		RangeInputStream(final byte[] buf) {
+			super(buf);
+		}
+
+		@Override
+		public synchronized int available() {
+			return 0;
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * Date: 11/01/11
+ * You may contact the copyright holder at: soporte.afirma5@mpt.es
+ */
+
+package es.gob.afirma.cert.certvalidation;
+
+import java.net.URL;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/** Validaci&oacute;n concurrente de conjuntos de certificados.
+ * Los certificados repetidos (mismo emisor y n&uacute;mero de serie) se validan una &uacute;nica vez
+ * y las consultas de revocaci&oacute;n se hacen en paralelo, con un n&uacute;mero m&aacute;ximo de
+ * hilos y de consultas simult&aacute;neas a un mismo servidor. Se configuran mediante las
+ * propiedades del sistema <code>es.gob.afirma.certvalidation.maxthreads</code> (8 por defecto) y
+ * <code>es.gob.afirma.certvalidation.maxperhost</code> (4 por defecto). Las validaciones que no
+ * consultan ning&uacute;n servidor no est&aacute;n sujetas al l&iacute;mite por servidor. */
+final class CertificateBulkValidator {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private static final int MAX_THREADS = getIntProperty("es.gob.afirma.certvalidation.maxthreads", 8); //$NON-NLS-1$
+
+	private static final int MAX_PER_HOST = getIntProperty("es.gob.afirma.certvalidation.maxperhost", 4); //$NON-NLS-1$
+
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+		MAX_THREADS,
+		new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread t = new Thread(r, "afirma-certvalidation-" + this.count.incrementAndGet()); //$NON-NLS-1$
+				t.setDaemon(true);
+				return t;
+			}
+		}
+	);
+
+	private static final CertificateBulkValidator INSTANCE = new CertificateBulkValidator(EXECUTOR, MAX_PER_HOST);
+
+	private final ExecutorService executor;
+
+	private final int maxPerHost;
+
+	/** Consultas simult&aacute;neas permitidas por servidor de revocaci&oacute;n. */
+	private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+	/** Crea un validador de conjuntos de certificados.
+	 * @param exec Ejecutor en el que se realizan las validaciones.
+	 * @param perHost N&uacute;mero m&aacute;ximo de consultas simult&aacute;neas a un mismo servidor. */
+	CertificateBulkValidator(final ExecutorService exec, final int perHost) {
+		this.executor = exec;
+		this.maxPerHost = perHost;
+	}
+
+	/** Valida un conjunto de certificados con la configuraci&oacute;n global.
+	 * @param verifier Validador a partir del cual se obtiene el validador de cada certificado.
+	 * @param certs Certificados a validar.
+	 * @return Resultado de la validaci&oacute;n de cada certificado, en el orden en el que se
+	 *         proporcionaron. */
+	static Map<X509Certificate, ValidationResult> validate(final CertificateVerifier verifier,
+			                                               final Collection<X509Certificate> certs) {
+		return INSTANCE.validateAll(verifier, certs);
+	}
+
+	/** Valida un conjunto de certificados.
+	 * @param verifier Validador a partir del cual se obtiene el validador de cada certificado.
+	 * @param certs Certificados a validar.
+	 * @return Resultado de la validaci&oacute;n de cada certificado, en el orden en el que se
+	 *         proporcionaron. */
+	Map<X509Certificate, ValidationResult> validateAll(final CertificateVerifier verifier,
+			                                           final Collection<X509Certificate> certs) {
+		if (certs == null) {
+			throw new IllegalArgumentException("La lista de certificados a validar no puede ser nula"); //$NON-NLS-1$
+		}
+
+		// Eliminamos los certificados repetidos
+		final Map<String, X509Certificate> unique = new LinkedHashMap<>();
+		for (final X509Certificate cert : certs) {
+			if (cert != null) {
+				final String key = getCertificateKey(cert);
+				if (!unique.containsKey(key)) {
+					unique.put(key, cert);
+				}
+			}
+		}
+
+		final Map<String, ValidationResult> uniqueResults = new LinkedHashMap<>(unique.size() * 2);
+		if (unique.size() == 1) {
+			final X509Certificate cert = unique.values().iterator().next();
+			uniqueResults.put(getCertificateKey(cert), validate(verifier, cert));
+		}
+		else if (!unique.isEmpty()) {
+			final Map<String, Future<ValidationResult>> running = new LinkedHashMap<>(unique.size() * 2);
+			for (final Map.Entry<String, X509Certificate> entry : unique.entrySet()) {
+				final X509Certificate cert = entry.getValue();
+				running.put(
+					entry.getKey(),
+					this.executor.submit(new Callable<ValidationResult>() {
+						@Override
+						public ValidationResult call() {
+							return validate(verifier, cert);
+						}
+					})
+				);
+			}
+			for (final Map.Entry<String, Future<ValidationResult>> entry : running.entrySet()) {
+				ValidationResult result;
+				try {
+					result = entry.getValue().get();
+				}
+				catch (final InterruptedException e) {
+					LOGGER.warning("Se ha interrumpido la validacion de los certificados: " + e); //$NON-NLS-1$
+					Thread.currentThread().interrupt();
+					for (final Future<ValidationResult> f : running.values()) {
+						f.cancel(true);
+					}
+					result = ValidationResult.SERVER_ERROR;
+				}
+				catch (final CancellationException e) {
+					result = ValidationResult.SERVER_ERROR;
+				}
+				catch (final ExecutionException e) {
+					LOGGER.severe("Error en la validacion del certificado: " + e.getCause()); //$NON-NLS-1$
+					result = ValidationResult.SERVER_ERROR;
+				}
+				uniqueResults.put(entry.getKey(), result);
+			}
+		}
+
+		final Map<X509Certificate, ValidationResult> results = new LinkedHashMap<>(certs.size() * 2);
+		for (final X509Certificate cert : certs) {
+			results.put(
+				cert,
+				cert != null ? uniqueResults.get(getCertificateKey(cert)) : ValidationResult.CORRUPT
+			);
+		}
+		return results;
+	}
+
+	private ValidationResult validate(final CertificateVerifier verifier, final X509Certificate cert) {
+		final CertificateVerificable certVerifier;
+		try {
+			certVerifier = verifier.getVerifierFor(cert);
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No se ha podido obtener el validador del certificado: " + e); //$NON-NLS-1$
+			return ValidationResult.SERVER_ERROR;
+		}
+
+		final String host = certVerifier instanceof CertificateVerifier ?
+			getHost(((CertificateVerifier) certVerifier).getRevocationEndpoint(cert)) :
+				null;
+
+		// Si no se consulta ningun servidor no hay que limitar las validaciones simultaneas
+		if (host == null) {
+			return certVerifier.validateCertificate(cert);
+		}
+
+		Semaphore permits = this.hostPermits.get(host);
+		if (permits == null) {
+			final Semaphore newPermits = new Semaphore(this.maxPerHost);
+			permits = this.hostPermits.putIfAbsent(host, newPermits);
+			if (permits == null) {
+				permits = newPermits;
+			}
+		}
+
+		try {
+			permits.acquire();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return ValidationResult.SERVER_ERROR;
+		}
+		try {
+			return certVerifier.validateCertificate(cert);
+		}
+		finally {
+			permits.release();
+		}
+	}
+
+	/** Identifica un certificado por su emisor y n&uacute;mero de serie. */
+	private static String getCertificateKey(final X509Certificate cert) {
+		return cert.getIssuerX500Principal().getName() + '#' + cert.getSerialNumber().toString(16);
+	}
+
+	private static String getHost(final String endpoint) {
+		if (endpoint == null) {
+			return null;
+		}
+		try {
+			return new URL(endpoint).getHost().toLowerCase();
+		}
+		catch (final Exception e) {
+			// Protocolos sin manejador (como LDAP): usamos el punto completo
+			return endpoint;
+		}
+	}
+
+	private static int getIntProperty(final String name, final int defaultValue) {
+		final String value = System.getProperty(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			final int ret = Integer.parseInt(value.trim());
+			if (ret > 0) {
+				return ret;
+			}
+		}
+		catch (final Exception e) {
+			// Se usa el valor por defecto
+		}
+		LOGGER.warning(
+			"Valor invalido para la propiedad '" + name + "' (" + value + "), se usara " + defaultValue //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		);
+		return defaultValue;
+	}
+
+}
@@ -12,6 +12,8 @@ package es.gob.afirma.cert.certvalidation;
 
 import java.security.cert.X509Certificate;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 import java.util.zip.CRC32;
 
@@ -27,7 +29,10 @@ public final class CertificateMdefVerifierFactory {
 
 	public static final String CRL = "es.gob.afirma.cert.certvalidation.CrlCertificateVerifier"; //$NON-NLS-1$
 	
-	private static String validationClass = "es.gob.afirma.cert.certvalidation.OcspCertificateVerifier";;
+	private static volatile String validationClass = "es.gob.afirma.cert.certvalidation.OcspCertificateVerifier";;
+
+	/** Prototipos de validador ya configurados, por clase validadora y emisor. */
+	private static final ConcurrentMap<String, VerifierPrototype> PROTOTYPES = new ConcurrentHashMap<>();
 	
 	private CertificateMdefVerifierFactory() {
 		// No permitimos la instanciacion
@@ -39,26 +44,35 @@ public final class CertificateMdefVerifierFactory {
 	 * @return Validador para el certificado proporcionado. */
 	public static CertificateVerificable getCertificateVerifier(final X509Certificate cert, Properties p) {
 
+		final String vClass = validationClass;
 		try {
-			final Class<?> certVerifierClass = Class.forName(validationClass);
-			final CertificateVerificable certVerif = (CertificateVerificable) certVerifierClass.getConstructor().newInstance();
+			// El emisor se busca en el almacen de confianza de Java una unica vez por emisor
+			final String key = vClass + '|' + cert.getIssuerX500Principal().getName();
+			VerifierPrototype prototype = PROTOTYPES.get(key);
+			if (prototype == null) {
+				prototype = VerifierPrototype.create(vClass, cert);
+				final VerifierPrototype current = PROTOTYPES.putIfAbsent(key, prototype);
+				if (current != null) {
+					prototype = current;
+				}
+			}
+			final CertificateVerificable certVerif = prototype.newVerifier();
 			certVerif.setOcspUrlPreference(null);
 			if(null!= p.getProperty("responderUrlOcsp") && !p.getProperty("responderUrlOcsp").isEmpty()){
 				certVerif.setOcspUrlPreference(p.getProperty("responderUrlOcsp"));
 			}
-			certVerif.setValidationProperties(cert);
 			certVerif.setSubjectCert(cert);
 			return certVerif;
 		}
 		catch (final ClassNotFoundException e) {
-			LOGGER.warning("No se encuentran la clase validadora " + validationClass + ": " + e.toString()); //$NON-NLS-1$ //$NON-NLS-2$
+			LOGGER.warning("No se encuentran la clase validadora " + vClass + ": " + e.toString()); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 		catch (final Exception e) {
-			LOGGER.warning("No se ha podido instanciar el verificador del certificado " + validationClass + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+			LOGGER.warning("No se ha podido instanciar el verificador del certificado " + vClass + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 
 		throw new IllegalStateException(
-			"No se soporta el medio de validacion: " + validationClass //$NON-NLS-1$
+			"No se soporta el medio de validacion: " + vClass //$NON-NLS-1$
 		);
 	}
 
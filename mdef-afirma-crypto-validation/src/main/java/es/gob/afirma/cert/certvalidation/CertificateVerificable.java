@@ -3,6 +3,8 @@ package es.gob.afirma.cert.certvalidation;
 import java.security.SignatureException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Map;
 
 /** Interfaz para los validadores de certificado.
  * @author Sergio Mart&iacute;nez Rico. */
@@ -43,6 +45,12 @@ public interface CertificateVerificable {
 	 * @param cert Certificado a validar.
 	 * @return Resultado de la validaci&oacute;n. */
 	ValidationResult validateCertificate(final X509Certificate cert);
+
+	/** Valida un conjunto de certificados X.509v3. Los certificados repetidos se validan una
+	 * &uacute;nica vez y las consultas de revocaci&oacute;n se realizan en paralelo.
+	 * @param certs Certificados a validar.
+	 * @return Resultado de la validaci&oacute;n de cada certificado. */
+	Map<X509Certificate, ValidationResult> validateCertificates(final Collection<X509Certificate> certs);
 	
 	/** Introduce el valor de la url de validación desde un paramentreo.
 	 * @param String Url de validación.
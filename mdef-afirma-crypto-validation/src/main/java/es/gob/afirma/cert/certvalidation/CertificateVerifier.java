@@ -25,7 +25,9 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.PKIXParameters;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Logger;
 
@@ -83,6 +85,19 @@ public abstract class CertificateVerifier implements CertificateVerificable {
 		}
 	}
 
+	/**
+	 * Copia la configuraci&oacute;n de otro validador (propiedades de validaci&oacute;n,
+	 * certificado del emisor y servicio OCSP preferido), sin el certificado a validar.
+	 * 
+	 * @param other
+	 *            Validador cuya configuraci&oacute;n se copia
+	 */
+	void copyConfiguration(final CertificateVerifier other) {
+		this.conf.putAll(other.conf);
+		this.issuerCert = other.issuerCert;
+		this.ocspUrlPreference = other.ocspUrlPreference;
+	}
+
 	@Override
 	public void setValidationProperties(final X509Certificate cert) {
 		setIssuerCert(getCAfromCacert(cert));
@@ -186,6 +201,40 @@ public abstract class CertificateVerifier implements CertificateVerificable {
 
 	}
 
+	@Override
+	public Map<X509Certificate, ValidationResult> validateCertificates(final Collection<X509Certificate> certs) {
+		return CertificateBulkValidator.validate(this, certs);
+	}
+
+	/**
+	 * Obtiene el validador con el que validar un certificado de un conjunto. Por
+	 * defecto es este mismo validador para su propio certificado y el que indique
+	 * la factor&iacute;a de validadores para el resto.
+	 * 
+	 * @param cert
+	 *            Certificado a validar
+	 * @return Validador del certificado
+	 */
+	protected CertificateVerificable getVerifierFor(final X509Certificate cert) {
+		if (cert.equals(this.certificate)) {
+			return this;
+		}
+		return CertificateVerifierFactory.getCertificateVerifier(cert);
+	}
+
+	/**
+	 * Obtiene la direcci&oacute;n del servicio que se consultar&aacute; para
+	 * comprobar la revocaci&oacute;n de un certificado, para limitar las consultas
+	 * simult&aacute;neas a un mismo servidor.
+	 * 
+	 * @param cert
+	 *            Certificado a validar
+	 * @return Direcci&oacute;n del servicio o <code>null</code> si no se conoce
+	 */
+	protected String getRevocationEndpoint(final X509Certificate cert) {
+		return null;
+	}
+
 	public X509Certificate getCAfromCacert(final X509Certificate cert) {
 		X509Certificate certCA = null;
 		try {
@@ -12,6 +12,8 @@ package es.gob.afirma.cert.certvalidation;
 
 import java.security.cert.X509Certificate;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 import java.util.zip.CRC32;
 
@@ -21,7 +23,10 @@ import java.util.zip.CRC32;
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s */
 public final class CertificateVerifierFactory {
 
-	private static Properties p = null;
+	private static volatile Properties p = null;
+
+	/** Prototipos de validador ya configurados, por identificador de emisor. */
+	private static final ConcurrentMap<String, VerifierPrototype> PROTOTYPES = new ConcurrentHashMap<>();
 
 	private static final String FACTORY_CONFIGURATION = "/validationfactory.properties"; //$NON-NLS-1$
 
@@ -48,35 +53,68 @@ public final class CertificateVerifierFactory {
 		if (cert == null) {
 			throw new IllegalArgumentException("El certificado no puede ser nulo"); //$NON-NLS-1$
 		}
-		if (p == null) {
-			p = new Properties();
-			try {
-				p.load(CertificateVerifierFactory.class.getResourceAsStream(FACTORY_CONFIGURATION));
-			}
-			catch (final Exception e) {
-				p = null;
-				throw new IllegalStateException(
-					"No se ha podido cargar la configuracion de la factoria: " + e, e //$NON-NLS-1$
-				);
-			}
-		}
 
-		String crc = getIssuerIdentifier(cert);
-		LOGGER.info("Identificador del emisor del certificado: " + crc); //$NON-NLS-1$
+		final String crc = getIssuerIdentifier(cert);
+		LOGGER.fine("Identificador del emisor del certificado: " + crc); //$NON-NLS-1$
 
-		if (p.getProperty(crc + ".validation.properties") == null) { //$NON-NLS-1$
-			crc = "default"; //$NON-NLS-1$
+		VerifierPrototype prototype = PROTOTYPES.get(crc);
+		if (prototype == null) {
+			prototype = createPrototype(crc);
+			final VerifierPrototype current = PROTOTYPES.putIfAbsent(crc, prototype);
+			if (current != null) {
+				prototype = current;
+			}
 		}
 
-		final String validationProperties = p.getProperty(crc + ".validation.properties"); //$NON-NLS-1$
-		final String validationClass = p.getProperty(crc + ".validation.type"); //$NON-NLS-1$
 		try {
-			final Class<?> certVerifierClass = Class.forName(validationClass);
-			final CertificateVerificable certVerif = (CertificateVerificable) certVerifierClass.getConstructor().newInstance();
-			certVerif.setValidationProperties(validationProperties);
+			final CertificateVerificable certVerif = prototype.newVerifier();
 			certVerif.setSubjectCert(cert);
 			return certVerif;
 		}
+		catch (final Exception e) {
+			LOGGER.warning("No se ha podido instanciar el verificador del certificado: " + e); //$NON-NLS-1$
+			throw new IllegalStateException(
+				"No se ha podido instanciar el verificador del certificado: " + e, e //$NON-NLS-1$
+			);
+		}
+	}
+
+	private static Properties getFactoryConfiguration() {
+		Properties conf = p;
+		if (conf == null) {
+			synchronized (CertificateVerifierFactory.class) {
+				conf = p;
+				if (conf == null) {
+					conf = new Properties();
+					try {
+						conf.load(CertificateVerifierFactory.class.getResourceAsStream(FACTORY_CONFIGURATION));
+					}
+					catch (final Exception e) {
+						throw new IllegalStateException(
+							"No se ha podido cargar la configuracion de la factoria: " + e, e //$NON-NLS-1$
+						);
+					}
+					p = conf;
+				}
+			}
+		}
+		return conf;
+	}
+
+	/** Crea el prototipo de validador para los certificados de un emisor.
+	 * @param issuerId Identificador del emisor.
+	 * @return Prototipo del validador. */
+	private static VerifierPrototype createPrototype(final String issuerId) {
+		final Properties conf = getFactoryConfiguration();
+		final String crc = conf.getProperty(issuerId + ".validation.properties") != null ? //$NON-NLS-1$
+			issuerId :
+				"default"; //$NON-NLS-1$
+
+		final String validationProperties = conf.getProperty(crc + ".validation.properties"); //$NON-NLS-1$
+		final String validationClass = conf.getProperty(crc + ".validation.type"); //$NON-NLS-1$
+		try {
+			return VerifierPrototype.create(validationClass, validationProperties);
+		}
 		catch (final ClassNotFoundException e) {
 			LOGGER.warning("No se encuentran la clase validadora " + validationClass + ": " + e.toString()); //$NON-NLS-1$ //$NON-NLS-2$
 		}
@@ -26,4 +26,9 @@ public final class CrlCertificateVerifier extends CertificateVerifier {
 			null
 		);
 	}
+
+	@Override
+	protected String getRevocationEndpoint(final X509Certificate cert) {
+		return CrlHelper.getFirstCrlDistributionPoint(cert);
+	}
 }
\ No newline at end of file
@@ -98,38 +98,66 @@ final class CrlHelper {
 		boolean cannotDownload = false;
 		for (final String crlDP : crlDistPoints) {
 
-			// Descargamos
-			final byte[] crlBytes;
-			try {
-				crlBytes = downloadCRL(crlDP);
-			}
-			catch (final Exception e1) {
-				LOGGER.severe(
-					"No se ha podido descargar la CRL (" + crlDP + "), se continuara con el siguiente punto de distribucion: " + e1 //$NON-NLS-1$ //$NON-NLS-2$
-				);
-				cannotDownload = true;
-				continue;
-			}
+			// Usamos la CRL en cache si sigue vigente
+			RevocationCache.CachedCrl cached = RevocationCache.getCrl(crlDP);
+			if (cached == null) {
+				// Si otro hilo esta descargando esta misma CRL esperamos a que termine
+				final Object lock = RevocationCache.getCrlLock(crlDP);
+				try {
+					synchronized (lock) {
+						cached = RevocationCache.getCrl(crlDP);
+						if (cached == null) {
+							// Descargamos
+							final byte[] crlBytes;
+							try {
+								crlBytes = downloadCRL(crlDP);
+							}
+							catch (final Exception e1) {
+								LOGGER.severe(
+									"No se ha podido descargar la CRL (" + crlDP + "), se continuara con el siguiente punto de distribucion: " + e1 //$NON-NLS-1$ //$NON-NLS-2$
+								);
+								cannotDownload = true;
+								continue;
+							}
 
-			final X509CRL crl;
-			try {
-				crl = (X509CRL)cf.generateCRL(new ByteArrayInputStream(crlBytes));
-			}
-			catch (final Exception e) {
-				LOGGER.severe("Error analizando la lista de revocacion: " + e); //$NON-NLS-1$
-				return ValidationResult.SERVER_ERROR;
+							final X509CRL crl;
+							try {
+								crl = (X509CRL)cf.generateCRL(new ByteArrayInputStream(crlBytes));
+							}
+							catch (final Exception e) {
+								LOGGER.severe("Error analizando la lista de revocacion: " + e); //$NON-NLS-1$
+								return ValidationResult.SERVER_ERROR;
+							}
+							// Comprobamos la firma de la CRL
+							if (vaPublicKey != null) {
+								try {
+									crl.verify(vaPublicKey);
+								}
+								catch (final Exception e) {
+									LOGGER.severe("No se ha podido comprobar la firma de la CRL: " + e); //$NON-NLS-1$
+									return ValidationResult.SERVER_ERROR;
+								}
+							}
+							cached = RevocationCache.putCrl(crlDP, crl, crlBytes, vaPublicKey);
+						}
+					}
+				}
+				finally {
+					RevocationCache.releaseCrlLock(crlDP, lock);
+				}
 			}
-			// Comprobamos la firma de la CRL
-			if (vaPublicKey != null) {
+			// Comprobamos la firma de la CRL en cache si no se comprobo ya con esta misma clave
+			if (vaPublicKey != null && !cached.isVerifiedWith(vaPublicKey)) {
 				try {
-					crl.verify(vaPublicKey);
+					cached.getCrl().verify(vaPublicKey);
 				}
 				catch (final Exception e) {
 					LOGGER.severe("No se ha podido comprobar la firma de la CRL: " + e); //$NON-NLS-1$
 					return ValidationResult.SERVER_ERROR;
 				}
+				cached.setVerifiedWith(vaPublicKey);
 			}
-			if (crl.isRevoked(cert)) {
+			if (cached.isRevoked(cert)) {
 				return ValidationResult.REVOKED;
 			}
 
@@ -186,6 +214,21 @@ final class CrlHelper {
 	 	return DataDownloader.downloadData(crlURL);
 	}
 
+	/** Obtiene el primer punto de distribuci&oacute;n de CRL de un certificado.
+	 * @param cert Certificado.
+	 * @return Punto de distribuci&oacute;n o <code>null</code> si el certificado no
+	 *         indica ninguno o no se ha podido obtener. */
+	static String getFirstCrlDistributionPoint(final X509Certificate cert) {
+		try {
+			final List<String> crlDistPoints = getCrlDistributionPoints(cert);
+			return crlDistPoints.isEmpty() ? null : crlDistPoints.get(0);
+		}
+		catch (final Exception e) {
+			LOGGER.warning("Error obteniendo los puntos de distribucion de CRL: " + e); //$NON-NLS-1$
+			return null;
+		}
+	}
+
 	private static List<String> getCrlDistributionPoints(final X509Certificate cert) throws IOException {
 		final byte[] crldpExt = cert.getExtensionValue(Extension.cRLDistributionPoints.getId());
 		if (crldpExt == null) {
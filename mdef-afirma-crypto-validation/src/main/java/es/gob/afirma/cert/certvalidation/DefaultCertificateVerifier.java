@@ -15,4 +15,10 @@ public class DefaultCertificateVerifier extends CertificateVerifier {
 	public ValidationResult validateCertificate(final X509Certificate cert) {
 		return ValidationResult.CA_NOT_SUPPORTED;
 	}
+
+	@Override
+	protected CertificateVerificable getVerifierFor(final X509Certificate cert) {
+		// Este validador no depende del certificado concreto
+		return this;
+	}
 }
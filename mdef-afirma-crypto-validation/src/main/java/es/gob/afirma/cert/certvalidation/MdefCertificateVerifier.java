@@ -22,6 +22,12 @@ public class MdefCertificateVerifier extends CertificateVerifier {
 		return ValidationResult.VALID;
 	}
 
+	@Override
+	protected CertificateVerificable getVerifierFor(final X509Certificate cert) {
+		// Este validador no depende del certificado concreto
+		return this;
+	}
+
 	public void setP(Properties p) {
 		this.p = p;
 	}
@@ -15,6 +15,8 @@ import java.security.KeyStore.PrivateKeyEntry;
 import java.security.cert.X509Certificate;
 import java.util.List;
 
+import org.spongycastle.cert.ocsp.CertificateID;
+
 /** Validador de certificados X.509v3 por verificaci&oacute;n de revocaci&oacute;n contra
  * OCSP y de periodo de validez contra el reloj del sistema.
  * Clase cedida por <a href="http://www.yohago.com/">YoHago</a>.
@@ -44,6 +46,20 @@ public final class OcspCertificateVerifier extends CertificateVerifier {
 	@Override
 	public ValidationResult verifyRevocation(final X509Certificate cert) {
 
+		// Si ya tenemos una respuesta vigente para este certificado no repetimos la peticion
+		CertificateID certId;
+		try {
+			certId = OcspHelper.getCertificateId(cert, this.getIssuerCert());
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No se ha podido calcular el identificador OCSP del certificado, no se usara la cache: " + e); //$NON-NLS-1$
+			certId = null;
+		}
+		final ValidationResult cachedResult = RevocationCache.getOcspResult(certId);
+		if (cachedResult != null) {
+			return cachedResult;
+		}
+
 		// ***********************************************
 		// ******** Hacemos ahora la peticion OCSP *******
 		// ***********************************************
@@ -103,7 +119,7 @@ public final class OcspCertificateVerifier extends CertificateVerifier {
 			return ValidationResult.SERVER_ERROR;
 		}
 		try {
-			return OcspHelper.analyzeOcspResponse(rawOcspResponse);
+			return OcspHelper.analyzeOcspResponse(rawOcspResponse, certId);
 		}
 		catch (final Exception e) {
 			LOGGER.severe("Error analizando la respuesta del servidor OCSP: " + e); //$NON-NLS-1$
@@ -111,6 +127,11 @@ public final class OcspCertificateVerifier extends CertificateVerifier {
 		}
 	}
 
+	@Override
+	protected String getRevocationEndpoint(final X509Certificate cert) {
+		return getValidationProperties().getProperty("responderUrl"); //$NON-NLS-1$
+	}
+
 	private static String getBestResponder(final List<String> responders) {
 		if (responders == null || responders.isEmpty()) {
 			throw new IllegalArgumentException("No hay servidores OCSP configurados"); //$NON-NLS-1$
@@ -51,6 +51,7 @@ import org.spongycastle.cert.ocsp.OCSPReqBuilder;
 import org.spongycastle.cert.ocsp.OCSPResp;
 import org.spongycastle.cert.ocsp.RespID;
 import org.spongycastle.cert.ocsp.RevokedStatus;
+import org.spongycastle.cert.ocsp.SingleResp;
 import org.spongycastle.cert.ocsp.UnknownStatus;
 import org.spongycastle.jce.provider.BouncyCastleProvider;
 import org.spongycastle.operator.DigestCalculator;
@@ -183,14 +184,28 @@ final class OcspHelper {
                                                                              NoSuchAlgorithmException,
                                                                              OCSPException,
                                                                              IOException {
-		final CertificateID certId = new CertificateID(
+		final OCSPReqBuilder ocspRequestBuilder = new OCSPReqBuilder();
+		ocspRequestBuilder.addRequest(getCertificateId(certToValidate, issuerCert));
+		return ocspRequestBuilder.build().getEncoded();
+	}
+
+	/** Obtiene el identificador OCSP de un certificado.
+	 * @param certToValidate Certificado a validar.
+	 * @param issuerCert Certificado del emisor del certificado. Si se indica <code>null</code>
+	 *                   se usa el propio certificado a validar.
+	 * @return Identificador del certificado para las peticiones OCSP.
+	 * @throws OCSPException Si hay problemas creando el identificador.
+	 * @throws NoSuchAlgorithmException Si no se soporta alg&uacute;n algoritmo necesario.
+	 * @throws CertificateEncodingException Si hay problemas en el tratamiento de los certificados. */
+	static CertificateID getCertificateId(final X509Certificate certToValidate,
+			                              final X509Certificate issuerCert) throws CertificateEncodingException,
+	                                                                               NoSuchAlgorithmException,
+	                                                                               OCSPException {
+		return new CertificateID(
 			new Sha1DigestCalculator(),
 			new JcaX509CertificateHolder(issuerCert != null ? issuerCert : certToValidate),
 			certToValidate.getSerialNumber()
 		);
-		final OCSPReqBuilder ocspRequestBuilder = new OCSPReqBuilder();
-		ocspRequestBuilder.addRequest(certId);
-		return ocspRequestBuilder.build().getEncoded();
 	}
 
 	/** Crea una solicitud OCSP firmada.
@@ -255,6 +270,20 @@ final class OcspHelper {
 	 * @throws IOException Si hay problemas en el tratamiento de datos.
 	 * @throws OCSPException Si hay problemas accediendo al servicio OCSP. */
 	static ValidationResult analyzeOcspResponse(final byte[] resp) throws OCSPException, IOException {
+		return analyzeOcspResponse(resp, null);
+	}
+
+	/** Analiza una respuesta OCSP y, si es definitiva, la guarda en la cach&eacute; de
+	 * revocaci&oacute;n hasta su pr&oacute;xima actualizaci&oacute;n.
+	 * @param resp Respuesta OCSP.
+	 * @param certId Identificador del certificado en la petici&oacute;n o <code>null</code>
+	 *               si no se quiere guardar la respuesta en cach&eacute;.
+	 * @return Resultado de la validaci&oacute;n seg&uacute;n la respuesta OCSP.
+	 * @throws IOException Si hay problemas en el tratamiento de datos.
+	 * @throws OCSPException Si hay problemas accediendo al servicio OCSP. */
+	static ValidationResult analyzeOcspResponse(final byte[] resp,
+			                                    final CertificateID certId) throws OCSPException,
+	                                                                               IOException {
 		if (resp == null) {
 			throw new IOException("La respuesta OCSP es nula"); //$NON-NLS-1$
 		}
@@ -262,11 +291,14 @@ final class OcspHelper {
 		final OCSPResp ocspResponse = new OCSPResp(resp);
 
 		if (ocspResponse.getStatus() == OCSPResp.SUCCESSFUL) {
-			final CertificateStatus certificateStatus = ((BasicOCSPResp) ocspResponse.getResponseObject()).getResponses()[0].getCertStatus();
+			final SingleResp singleResp = ((BasicOCSPResp) ocspResponse.getResponseObject()).getResponses()[0];
+			final CertificateStatus certificateStatus = singleResp.getCertStatus();
 			if (certificateStatus == CertificateStatus.GOOD) {
+				cacheResponse(certId, singleResp, ValidationResult.VALID);
 				return ValidationResult.VALID;
 			}
 			if (certificateStatus instanceof RevokedStatus) {
+				cacheResponse(certId, singleResp, ValidationResult.REVOKED);
 				return ValidationResult.REVOKED;
 			}
 			if (certificateStatus instanceof UnknownStatus) {
@@ -289,6 +321,15 @@ final class OcspHelper {
 		throw new IllegalArgumentException("La validacion ha devuelto un estado desconocido: " + ocspResponse.getStatus()); //$NON-NLS-1$
 	}
 
+	private static void cacheResponse(final CertificateID certId,
+			                          final SingleResp singleResp,
+			                          final ValidationResult result) {
+		// Solo se guarda si la respuesta corresponde al certificado consultado
+		if (certId != null && certId.equals(singleResp.getCertID())) {
+			RevocationCache.putOcspResult(certId, result, singleResp.getThisUpdate(), singleResp.getNextUpdate());
+		}
+	}
+
     static List<String> getAIALocations(final X509Certificate cert) throws IOException {
         final byte[] aiaExtensionValue = cert.getExtensionValue(Extension.authorityInfoAccess.getId());
         if (aiaExtensionValue == null) {
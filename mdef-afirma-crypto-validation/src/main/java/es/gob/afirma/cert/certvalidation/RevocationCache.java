@@ -0,0 +1,420 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * Date: 11/01/11
+ * You may contact the copyright holder at: soporte.afirma5@mpt.es
+ */
+
+package es.gob.afirma.cert.certvalidation;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import org.spongycastle.cert.ocsp.CertificateID;
+
+import es.gob.afirma.core.misc.AOUtil;
+
+/** Cach&eacute; de informaci&oacute;n de revocaci&oacute;n (listas de revocaci&oacute;n y respuestas OCSP).
+ * <p>Las CRL se guardan ya analizadas, identificadas por su punto de distribuci&oacute;n, hasta la
+ * fecha de su pr&oacute;xima actualizaci&oacute;n (<i>nextUpdate</i>) o, si no la indican, durante el
+ * tiempo de vida configurado. Opcionalmente se guardan tambi&eacute;n en disco para que est&eacute;n
+ * disponibles entre distintas ejecuciones.</p>
+ * <p>Las respuestas OCSP definitivas (certificado v&aacute;lido o revocado) se guardan identificadas
+ * por el <code>CertificateID</code> de la petici&oacute;n hasta su <i>nextUpdate</i> o, si no lo
+ * indican, durante el tiempo de vida configurado a partir de su <i>thisUpdate</i>.</p>
+ * <p>Ambas cach&eacute;s en memoria son LRU de tama&ntilde;o limitado. Se configuran mediante las
+ * propiedades del sistema:</p>
+ * <ul>
+ *  <li><code>es.gob.afirma.certvalidation.revocationcache.crl.maxentries</code>: N&uacute;mero
+ *      m&aacute;ximo de CRL en memoria (16 por defecto, <code>0</code> desactiva la cach&eacute;).</li>
+ *  <li><code>es.gob.afirma.certvalidation.revocationcache.crl.ttl</code>: Tiempo de vida en
+ *      milisegundos de las CRL sin <i>nextUpdate</i> (1 hora por defecto).</li>
+ *  <li><code>es.gob.afirma.certvalidation.revocationcache.ocsp.maxentries</code>: N&uacute;mero
+ *      m&aacute;ximo de respuestas OCSP en memoria (1024 por defecto, <code>0</code> desactiva la
+ *      cach&eacute;).</li>
+ *  <li><code>es.gob.afirma.certvalidation.revocationcache.ocsp.ttl</code>: Tiempo de vida en
+ *      milisegundos de las respuestas OCSP sin <i>nextUpdate</i> (5 minutos por defecto).</li>
+ *  <li><code>es.gob.afirma.certvalidation.revocationcache.dir</code>: Directorio en el que guardar
+ *      las CRL descargadas. Si no se indica no se guardan en disco.</li>
+ * </ul> */
+final class RevocationCache {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private static final String SYS_PROPERTY_PREFIX = "es.gob.afirma.certvalidation.revocationcache."; //$NON-NLS-1$
+
+	private static final int CRL_MAX_ENTRIES = (int) getLongProperty("crl.maxentries", 16); //$NON-NLS-1$
+	private static final long CRL_TTL = getLongProperty("crl.ttl", 60 * 60 * 1000L); //$NON-NLS-1$
+	private static final int OCSP_MAX_ENTRIES = (int) getLongProperty("ocsp.maxentries", 1024); //$NON-NLS-1$
+	private static final long OCSP_TTL = getLongProperty("ocsp.ttl", 5 * 60 * 1000L); //$NON-NLS-1$
+	private static final File CRL_DIR = getDirProperty("dir"); //$NON-NLS-1$
+
+	private static final String CRL_FILE_EXTENSION = ".crl"; //$NON-NLS-1$
+
+	private static final Map<String, CachedCrl> CRLS = new LruMap<>(CRL_MAX_ENTRIES);
+	private static final Map<CertificateID, CachedOcspResult> OCSP_RESULTS = new LruMap<>(OCSP_MAX_ENTRIES);
+
+	private static final ConcurrentMap<String, Object> CRL_LOCKS = new ConcurrentHashMap<>();
+
+	private RevocationCache() {
+		// No instanciable
+	}
+
+	/** Obtiene una CRL vigente de la cach&eacute; en memoria o, si no est&aacute; en ella, del disco.
+	 * @param distributionPoint Punto de distribuci&oacute;n de la CRL.
+	 * @return CRL en cach&eacute; o <code>null</code> si no est&aacute; o ha caducado. */
+	static CachedCrl getCrl(final String distributionPoint) {
+		if (CRL_MAX_ENTRIES <= 0) {
+			return null;
+		}
+		final long now = System.currentTimeMillis();
+		synchronized (CRLS) {
+			final CachedCrl cached = CRLS.get(distributionPoint);
+			if (cached != null) {
+				if (cached.getExpiration() > now) {
+					return cached;
+				}
+				CRLS.remove(distributionPoint);
+			}
+		}
+		final CachedCrl stored = loadCrl(distributionPoint, now);
+		if (stored != null) {
+			synchronized (CRLS) {
+				CRLS.put(distributionPoint, stored);
+			}
+		}
+		return stored;
+	}
+
+	/** Obtiene el objeto con el que sincronizar la descarga de una CRL, para que varios hilos
+	 * que necesiten la misma CRL no la descarguen a la vez.
+	 * @param distributionPoint Punto de distribuci&oacute;n de la CRL.
+	 * @return Objeto de sincronizaci&oacute;n del punto de distribuci&oacute;n. */
+	static Object getCrlLock(final String distributionPoint) {
+		final Object lock = new Object();
+		final Object current = CRL_LOCKS.putIfAbsent(distributionPoint, lock);
+		return current != null ? current : lock;
+	}
+
+	/** Libera el objeto de sincronizaci&oacute;n de la descarga de una CRL cuando termina la descarga,
+	 * para que no se acumulen los de todos los puntos de distribuci&oacute;n consultados. Los hilos
+	 * que ya lo tuviesen siguen sincroniz&aacute;ndose con &eacute;l y los siguientes encontrar&aacute;n la
+	 * CRL en cach&eacute;.
+	 * @param distributionPoint Punto de distribuci&oacute;n de la CRL.
+	 * @param lock Objeto de sincronizaci&oacute;n obtenido con {@link #getCrlLock(String)}. */
+	static void releaseCrlLock(final String distributionPoint, final Object lock) {
+		CRL_LOCKS.remove(distributionPoint, lock);
+	}
+
+	/** Guarda en cach&eacute; una CRL reci&eacute;n descargada.
+	 * @param distributionPoint Punto de distribuci&oacute;n de la CRL.
+	 * @param crl CRL ya analizada.
+	 * @param encoded Codificaci&oacute;n de la CRL tal y como se descarg&oacute;.
+	 * @param verifiedWith Clave con la que se ha comprobado la firma de la CRL o
+	 *                     <code>null</code> si no se ha comprobado.
+	 * @return Entrada de la cach&eacute; con la CRL. */
+	static CachedCrl putCrl(final String distributionPoint,
+			                final X509CRL crl,
+			                final byte[] encoded,
+			                final PublicKey verifiedWith) {
+		final long now = System.currentTimeMillis();
+		final CachedCrl cached = new CachedCrl(crl, getCrlExpiration(crl, now));
+		cached.setVerifiedWith(verifiedWith);
+		if (CRL_MAX_ENTRIES <= 0 || cached.getExpiration() <= now) {
+			return cached;
+		}
+		synchronized (CRLS) {
+			// Si otro hilo ya ha guardado una version mas reciente de la CRL la mantenemos
+			final CachedCrl current = CRLS.get(distributionPoint);
+			if (current != null && current.getExpiration() > now &&
+					current.getCrl().getThisUpdate().after(crl.getThisUpdate())) {
+				return cached;
+			}
+			CRLS.put(distributionPoint, cached);
+		}
+		storeCrl(distributionPoint, encoded);
+		return cached;
+	}
+
+	/** Obtiene el resultado de una validaci&oacute;n OCSP vigente.
+	 * @param certId Identificador del certificado en la petici&oacute;n OCSP.
+	 * @return Resultado de la validaci&oacute;n o <code>null</code> si no est&aacute; en
+	 *         cach&eacute; o ha caducado. */
+	static ValidationResult getOcspResult(final CertificateID certId) {
+		if (OCSP_MAX_ENTRIES <= 0 || certId == null) {
+			return null;
+		}
+		synchronized (OCSP_RESULTS) {
+			final CachedOcspResult cached = OCSP_RESULTS.get(certId);
+			if (cached == null) {
+				return null;
+			}
+			if (cached.expiration > System.currentTimeMillis()) {
+				return cached.result;
+			}
+			OCSP_RESULTS.remove(certId);
+			return null;
+		}
+	}
+
+	/** Guarda en cach&eacute; el resultado de una validaci&oacute;n OCSP. Solo se guardan los
+	 * resultados definitivos (certificado v&aacute;lido o revocado).
+	 * @param certId Identificador del certificado en la petici&oacute;n OCSP.
+	 * @param result Resultado de la validaci&oacute;n.
+	 * @param thisUpdate Fecha de la informaci&oacute;n de estado seg&uacute;n el servidor OCSP.
+	 * @param nextUpdate Fecha de la pr&oacute;xima actualizaci&oacute;n de la informaci&oacute;n
+	 *                   de estado o <code>null</code> si el servidor no la indica. */
+	static void putOcspResult(final CertificateID certId,
+			                  final ValidationResult result,
+			                  final Date thisUpdate,
+			                  final Date nextUpdate) {
+		if (OCSP_MAX_ENTRIES <= 0 || certId == null ||
+				result != ValidationResult.VALID && result != ValidationResult.REVOKED) {
+			return;
+		}
+		final long expiration;
+		if (nextUpdate != null) {
+			expiration = nextUpdate.getTime();
+		}
+		else if (thisUpdate != null) {
+			expiration = thisUpdate.getTime() + OCSP_TTL;
+		}
+		else {
+			expiration = System.currentTimeMillis() + OCSP_TTL;
+		}
+		if (expiration <= System.currentTimeMillis()) {
+			return;
+		}
+		synchronized (OCSP_RESULTS) {
+			OCSP_RESULTS.put(certId, new CachedOcspResult(result, expiration));
+		}
+	}
+
+	/** Vac&iacute;a las cach&eacute;s en memoria. */
+	static void clear() {
+		synchronized (CRLS) {
+			CRLS.clear();
+		}
+		synchronized (OCSP_RESULTS) {
+			OCSP_RESULTS.clear();
+		}
+	}
+
+	private static long getCrlExpiration(final X509CRL crl, final long now) {
+		final Date nextUpdate = crl.getNextUpdate();
+		return nextUpdate != null ? nextUpdate.getTime() : now + CRL_TTL;
+	}
+
+	private static File getCrlFile(final String distributionPoint) {
+		try {
+			return new File(
+				CRL_DIR,
+				AOUtil.hexify(
+					MessageDigest.getInstance("SHA-256").digest(distributionPoint.getBytes("UTF-8")), //$NON-NLS-1$ //$NON-NLS-2$
+					false
+				) + CRL_FILE_EXTENSION
+			);
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No se ha podido calcular el nombre de fichero de la CRL en cache: " + e); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	private static CachedCrl loadCrl(final String distributionPoint, final long now) {
+		if (CRL_DIR == null) {
+			return null;
+		}
+		final File crlFile = getCrlFile(distributionPoint);
+		if (crlFile == null || !crlFile.isFile()) {
+			return null;
+		}
+		final X509CRL crl;
+		try (
+			final InputStream is = new FileInputStream(crlFile);
+		) {
+			crl = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL( //$NON-NLS-1$
+				new ByteArrayInputStream(AOUtil.getDataFromInputStream(is))
+			);
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No se ha podido cargar la CRL en cache de " + crlFile + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+			deleteFile(crlFile);
+			return null;
+		}
+		final Date nextUpdate = crl.getNextUpdate();
+		final long expiration = nextUpdate != null ? nextUpdate.getTime() : crlFile.lastModified() + CRL_TTL;
+		if (expiration <= now) {
+			deleteFile(crlFile);
+			return null;
+		}
+		return new CachedCrl(crl, expiration);
+	}
+
+	private static void storeCrl(final String distributionPoint, final byte[] encoded) {
+		if (CRL_DIR == null || encoded == null) {
+			return;
+		}
+		final File crlFile = getCrlFile(distributionPoint);
+		if (crlFile == null) {
+			return;
+		}
+		try {
+			if (!CRL_DIR.isDirectory() && !CRL_DIR.mkdirs()) {
+				LOGGER.warning("No se ha podido crear el directorio de cache de CRL: " + CRL_DIR); //$NON-NLS-1$
+				return;
+			}
+			// Escribimos en un temporal y lo renombramos para que otro proceso nunca lea un fichero a medias
+			final File tmpFile = File.createTempFile("crl", ".tmp", CRL_DIR); //$NON-NLS-1$ //$NON-NLS-2$
+			try (
+				final OutputStream os = new FileOutputStream(tmpFile);
+			) {
+				os.write(encoded);
+			}
+			if (crlFile.exists()) {
+				deleteFile(crlFile);
+			}
+			if (!tmpFile.renameTo(crlFile)) {
+				LOGGER.warning("No se ha podido guardar la CRL en cache en " + crlFile); //$NON-NLS-1$
+				deleteFile(tmpFile);
+			}
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No se ha podido guardar la CRL en el directorio de cache: " + e); //$NON-NLS-1$
+		}
+	}
+
+	private static void deleteFile(final File file) {
+		if (!file.delete()) {
+			LOGGER.warning("No se ha podido borrar el fichero de cache " + file); //$NON-NLS-1$
+		}
+	}
+
+	private static long getLongProperty(final String name, final long defaultValue) {
+		final String value = System.getProperty(SYS_PROPERTY_PREFIX + name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		}
+		catch (final Exception e) {
+			LOGGER.warning(
+				"Valor invalido para la propiedad '" + SYS_PROPERTY_PREFIX + name + "' (" + value + "), se usara " + defaultValue + ": " + e //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			);
+			return defaultValue;
+		}
+	}
+
+	private static File getDirProperty(final String name) {
+		final String value = System.getProperty(SYS_PROPERTY_PREFIX + name);
+		if (value == null || value.trim().isEmpty()) {
+			return null;
+		}
+		return new File(value.trim());
+	}
+
+	/** CRL en cach&eacute;, junto con el &iacute;ndice de sus n&uacute;meros de serie revocados.
+	 * Cada versi&oacute;n de una CRL tiene su propia entrada, de forma que al descargarse una
+	 * nueva versi&oacute;n su &iacute;ndice sustituye al anterior de una sola vez. */
+	static final class CachedCrl {
+
+		private final X509CRL crl;
+		private final long expiration;
+		private volatile PublicKey verifiedWith = null;
+		private volatile RevokedSerialIndex index = null;
+		private volatile boolean indexed = false;
+
+		CachedCrl(final X509CRL c, final long exp) {
+			this.crl = c;
+			this.expiration = exp;
+		}
+
+		X509CRL getCrl() {
+			return this.crl;
+		}
+
+		long getExpiration() {
+			return this.expiration;
+		}
+
+		/** Indica si ya se ha comprobado la firma de la CRL con la clave indicada.
+		 * @param key Clave p&uacute;blica de la autoridad de validaci&oacute;n.
+		 * @return <code>true</code> si la firma ya se comprob&oacute; con esa clave. */
+		boolean isVerifiedWith(final PublicKey key) {
+			final PublicKey verified = this.verifiedWith;
+			return verified != null && verified.equals(key);
+		}
+
+		void setVerifiedWith(final PublicKey key) {
+			this.verifiedWith = key;
+		}
+
+		/** Indica si un certificado est&aacute; revocado seg&uacute;n esta CRL. La primera
+		 * consulta construye el &iacute;ndice de n&uacute;meros de serie revocados, que se reutiliza
+		 * en las siguientes.
+		 * @param cert Certificado a comprobar.
+		 * @return <code>true</code> si el certificado est&aacute; revocado. */
+		boolean isRevoked(final X509Certificate cert) {
+			if (!this.indexed) {
+				synchronized (this) {
+					if (!this.indexed) {
+						this.index = RevokedSerialIndex.build(this.crl);
+						this.indexed = true;
+					}
+				}
+			}
+			final RevokedSerialIndex idx = this.index;
+			// Las CRL indirectas no se indexan y se consultan directamente
+			return idx != null ? idx.isRevoked(cert) : this.crl.isRevoked(cert);
+		}
+	}
+
+	private static final class CachedOcspResult {
+
+		final ValidationResult result;
+		final long expiration;
+
+		CachedOcspResult(final ValidationResult r, final long exp) {
+			this.result = r;
+			this.expiration = exp;
+		}
+	}
+
+	/** Mapa LRU de tama&ntilde;o limitado. No es seguro para su uso concurrente. */
+	private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxEntries;
+
+		LruMap(final int max) {
+			super(16, 0.75f, true);
+			this.maxEntries = max;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+			return size() > this.maxEntries;
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * Date: 11/01/11
+ * You may contact the copyright holder at: soporte.afirma5@mpt.es
+ */
+
+package es.gob.afirma.cert.certvalidation;
+
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+/** &Iacute;ndice de los n&uacute;meros de serie revocados en una CRL.
+ * Se construye una &uacute;nica vez por cada versi&oacute;n de la CRL y permite comprobar la
+ * revocaci&oacute;n de un certificado en tiempo constante. Es una tabla hash de direccionamiento
+ * abierto indexada por los 64 bits menos significativos del n&uacute;mero de serie; solo para los
+ * n&uacute;meros de serie que no caben en un <code>long</code> se guarda adem&aacute;s el valor
+ * completo para confirmar la coincidencia.
+ * <p>Una vez construido el &iacute;ndice es inmutable, por lo que puede compartirse entre hilos.</p> */
+final class RevokedSerialIndex {
+
+	private static final int MAX_LONG_BITS = 63;
+
+	private final X500Principal issuer;
+	private final long[] keys;
+	private final BigInteger[] bigSerials;
+	private final boolean[] used;
+	private final int mask;
+	private final int size;
+
+	/** Construye el &iacute;ndice de los n&uacute;meros de serie indicados.
+	 * @param crlIssuer Emisor de la CRL.
+	 * @param serials N&uacute;meros de serie revocados. */
+	RevokedSerialIndex(final X500Principal crlIssuer, final Collection<BigInteger> serials) {
+		this.issuer = crlIssuer;
+
+		// Tabla con capacidad potencia de dos y ocupacion maxima del 50%
+		int capacity = 2;
+		while (capacity < serials.size() * 2) {
+			capacity <<= 1;
+		}
+		this.keys = new long[capacity];
+		this.bigSerials = new BigInteger[capacity];
+		this.used = new boolean[capacity];
+		this.mask = capacity - 1;
+
+		int count = 0;
+		for (final BigInteger serial : serials) {
+			if (add(serial)) {
+				count++;
+			}
+		}
+		this.size = count;
+	}
+
+	/** Construye el &iacute;ndice de una CRL.
+	 * @param crl Lista de revocaci&oacute;n.
+	 * @return &Iacute;ndice de los certificados revocados o <code>null</code> si la CRL es
+	 *         indirecta (contiene certificados de otros emisores) y no puede indexarse por
+	 *         n&uacute;mero de serie. */
+	static RevokedSerialIndex build(final X509CRL crl) {
+		final Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+		if (entries == null) {
+			return new RevokedSerialIndex(crl.getIssuerX500Principal(), new ArrayList<BigInteger>(0));
+		}
+		final List<BigInteger> serials = new ArrayList<>(entries.size());
+		for (final X509CRLEntry entry : entries) {
+			if (entry.getCertificateIssuer() != null) {
+				return null;
+			}
+			serials.add(entry.getSerialNumber());
+		}
+		return new RevokedSerialIndex(crl.getIssuerX500Principal(), serials);
+	}
+
+	/** Indica si un certificado est&aacute; revocado seg&uacute;n la CRL indexada.
+	 * @param cert Certificado a comprobar.
+	 * @return <code>true</code> si el certificado est&aacute; revocado, <code>false</code>
+	 *         en caso contrario. */
+	boolean isRevoked(final X509Certificate cert) {
+		// Como en X509CRL.isRevoked(), solo se consideran los certificados del emisor de la CRL
+		if (this.issuer != null && !this.issuer.equals(cert.getIssuerX500Principal())) {
+			return false;
+		}
+		return contains(cert.getSerialNumber());
+	}
+
+	/** Indica si un n&uacute;mero de serie est&aacute; en el &iacute;ndice.
+	 * @param serial N&uacute;mero de serie.
+	 * @return <code>true</code> si el n&uacute;mero de serie est&aacute; revocado. */
+	boolean contains(final BigInteger serial) {
+		final long key = serial.longValue();
+		final boolean big = serial.bitLength() > MAX_LONG_BITS;
+		int slot = hash(key) & this.mask;
+		while (this.used[slot]) {
+			if (this.keys[slot] == key && matches(slot, serial, big)) {
+				return true;
+			}
+			slot = slot + 1 & this.mask;
+		}
+		return false;
+	}
+
+	/** Obtiene el n&uacute;mero de series distintos del &iacute;ndice.
+	 * @return N&uacute;mero de series revocados. */
+	int size() {
+		return this.size;
+	}
+
+	private boolean add(final BigInteger serial) {
+		final long key = serial.longValue();
+		final boolean big = serial.bitLength() > MAX_LONG_BITS;
+		int slot = hash(key) & this.mask;
+		while (this.used[slot]) {
+			if (this.keys[slot] == key && matches(slot, serial, big)) {
+				return false;
+			}
+			slot = slot + 1 & this.mask;
+		}
+		this.used[slot] = true;
+		this.keys[slot] = key;
+		this.bigSerials[slot] = big ? serial : null;
+		return true;
+	}
+
+	private boolean matches(final int slot, final BigInteger serial, final boolean big) {
+		final BigInteger stored = this.bigSerials[slot];
+		return big ? serial.equals(stored) : stored == null;
+	}
+
+	/** Mezcla los bits de la clave para repartir bien los n&uacute;meros de serie secuenciales. */
+	private static int hash(final long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		return (int) (h ^ h >>> 16);
+	}
+
+}
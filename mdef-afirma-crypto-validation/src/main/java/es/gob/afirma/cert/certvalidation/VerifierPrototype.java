@@ -0,0 +1,83 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * Date: 11/01/11
+ * You may contact the copyright holder at: soporte.afirma5@mpt.es
+ */
+
+package es.gob.afirma.cert.certvalidation;
+
+import java.lang.reflect.Constructor;
+import java.security.cert.X509Certificate;
+
+/** Prototipo de validador de certificados ya configurado.
+ * Guarda el constructor de la clase validadora y un validador de referencia con la
+ * configuraci&oacute;n ya cargada (fichero de propiedades y certificado del emisor), de forma que
+ * crear un nuevo validador solo requiere instanciarlo y copiarle esa configuraci&oacute;n. El
+ * validador de referencia nunca se entrega, por lo que el prototipo es inmutable y puede
+ * compartirse entre hilos. */
+final class VerifierPrototype {
+
+	private final Constructor<?> constructor;
+	private final CertificateVerificable template;
+	private final String validationProperties;
+	private final X509Certificate certificate;
+
+	private VerifierPrototype(final Constructor<?> c,
+			                  final CertificateVerificable t,
+			                  final String properties,
+			                  final X509Certificate cert) {
+		this.constructor = c;
+		this.template = t;
+		this.validationProperties = properties;
+		this.certificate = cert;
+	}
+
+	/** Crea el prototipo de un validador configurado mediante un fichero de propiedades.
+	 * @param validationClass Nombre de la clase validadora.
+	 * @param validationProperties Ruta del fichero de propiedades de validaci&oacute;n.
+	 * @return Prototipo del validador.
+	 * @throws Exception Si no se puede instanciar o configurar el validador. */
+	static VerifierPrototype create(final String validationClass,
+			                        final String validationProperties) throws Exception {
+		final Constructor<?> c = Class.forName(validationClass).getConstructor();
+		final CertificateVerificable t = (CertificateVerificable) c.newInstance();
+		t.setValidationProperties(validationProperties);
+		return new VerifierPrototype(c, t, validationProperties, null);
+	}
+
+	/** Crea el prototipo de un validador cuyo emisor se obtiene del almac&eacute;n de
+	 * certificados de confianza de Java.
+	 * @param validationClass Nombre de la clase validadora.
+	 * @param cert Certificado de cuyo emisor se crea el prototipo.
+	 * @return Prototipo del validador.
+	 * @throws Exception Si no se puede instanciar o configurar el validador. */
+	static VerifierPrototype create(final String validationClass,
+			                        final X509Certificate cert) throws Exception {
+		final Constructor<?> c = Class.forName(validationClass).getConstructor();
+		final CertificateVerificable t = (CertificateVerificable) c.newInstance();
+		t.setValidationProperties(cert);
+		return new VerifierPrototype(c, t, null, cert);
+	}
+
+	/** Crea un nuevo validador con la configuraci&oacute;n del prototipo.
+	 * @return Nuevo validador, a&uacute;n sin certificado a validar.
+	 * @throws Exception Si no se puede instanciar el validador. */
+	CertificateVerificable newVerifier() throws Exception {
+		final CertificateVerificable verifier = (CertificateVerificable) this.constructor.newInstance();
+		if (this.template instanceof CertificateVerifier) {
+			((CertificateVerifier) verifier).copyConfiguration((CertificateVerifier) this.template);
+		}
+		else if (this.validationProperties != null) {
+			verifier.setValidationProperties(this.validationProperties);
+		}
+		else if (this.certificate != null) {
+			verifier.setValidationProperties(this.certificate);
+		}
+		return verifier;
+	}
+
+}
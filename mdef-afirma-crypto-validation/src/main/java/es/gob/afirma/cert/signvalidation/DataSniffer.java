@@ -0,0 +1,290 @@
+package es.gob.afirma.cert.signvalidation;
+
+import java.nio.charset.StandardCharsets;
+
+/** Identificaci&oacute;n r&aacute;pida del tipo de unos datos a partir de sus primeros bytes, del
+ * directorio central de los ZIP o de un an&aacute;lisis acotado del principio de los XML.
+ * Los m&eacute;todos de esta clase no analizan los datos por completo, por lo que solo sirven para
+ * descartar tipos: si indican que los datos pueden ser de un tipo es necesario confirmarlo con el
+ * analizador correspondiente, pero si indican que no lo son, el analizador tambi&eacute;n los
+ * rechazar&iacute;a. Ante cualquier duda se indica que los datos pueden ser del tipo. */
+public final class DataSniffer {
+
+	/** Cabecera de los documentos PDF. */
+	private static final byte[] PDF_HEADER = new byte[] { '%', 'P', 'D', 'F', '-' };
+
+	/** Firma de la cabecera local de una entrada ZIP. */
+	private static final int ZIP_LOCAL_HEADER = 0x04034b50;
+
+	/** Firma de una entrada del directorio central de un ZIP. */
+	private static final int ZIP_CENTRAL_HEADER = 0x02014b50;
+
+	/** Firma del registro de fin del directorio central de un ZIP. */
+	private static final int ZIP_END_HEADER = 0x06054b50;
+
+	/** Tama&ntilde;o m&iacute;nimo del registro de fin del directorio central de un ZIP. */
+	private static final int ZIP_END_SIZE = 22;
+
+	/** Tama&ntilde;o de la parte fija de una entrada del directorio central de un ZIP. */
+	private static final int ZIP_CENTRAL_SIZE = 46;
+
+	/** Entrada que identifica a los documentos ODF. */
+	private static final String ODF_MIMETYPE_ENTRY = "mimetype"; //$NON-NLS-1$
+
+	/** Entrada que identifica a los documentos OOXML. */
+	private static final String OOXML_CONTENT_TYPES_ENTRY = "[Content_Types].xml"; //$NON-NLS-1$
+
+	/** Nombre local del elemento ra&iacute;z de las facturas electr&oacute;nicas. */
+	private static final String FACTURAE_ROOT = "Facturae"; //$NON-NLS-1$
+
+	/** Primeros bytes de un XML en codificaciones no compatibles con ASCII (UTF-16, UCS-4 y
+	 * EBCDIC) seg&uacute;n el ap&eacute;ndice F de la especificaci&oacute;n XML: marcas de orden
+	 * de bytes y el comienzo de <code>&lt;?xml</code> o de <code>&lt;</code>. */
+	private static final byte[][] NON_ASCII_XML_PREFIXES = new byte[][] {
+		{ (byte) 0xFE, (byte) 0xFF },
+		{ (byte) 0xFF, (byte) 0xFE },
+		{ 0x00, 0x00, (byte) 0xFE, (byte) 0xFF },
+		{ 0x00, 0x00, 0x00, 0x3C },
+		{ 0x3C, 0x00, 0x00, 0x00 },
+		{ 0x00, 0x00, 0x3C, 0x00 },
+		{ 0x00, 0x3C, 0x00, 0x00 },
+		{ 0x00, 0x3C, 0x00, 0x3F },
+		{ 0x3C, 0x00, 0x3F, 0x00 },
+		{ 0x4C, 0x6F, (byte) 0xA7, (byte) 0x94 }
+	};
+
+	/** N&uacute;mero m&aacute;ximo de bytes en los que se busca el elemento ra&iacute;z de un XML. */
+	private static final int XML_PROLOG_LIMIT = 64 * 1024;
+
+	private DataSniffer() {
+		// No instanciable
+	}
+
+	/** Indica si los datos pueden ser un documento PDF.
+	 * @param data Datos a analizar.
+	 * @return <code>false</code> si los datos no empiezan por la cabecera de PDF. */
+	public static boolean mayBePdf(final byte[] data) {
+		if (data == null || data.length < PDF_HEADER.length) {
+			return false;
+		}
+		for (int i = 0; i < PDF_HEADER.length; i++) {
+			if (data[i] != PDF_HEADER[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Indica si los datos pueden ser un documento ODF.
+	 * @param data Datos a analizar.
+	 * @return <code>false</code> si los datos no son un ZIP o son un ZIP sin la entrada
+	 *         <code>mimetype</code>. */
+	public static boolean mayBeOdf(final byte[] data) {
+		return mayContainZipEntry(data, ODF_MIMETYPE_ENTRY);
+	}
+
+	/** Indica si los datos pueden ser un documento OOXML.
+	 * @param data Datos a analizar.
+	 * @return <code>false</code> si los datos no son un ZIP o son un ZIP sin la entrada
+	 *         <code>[Content_Types].xml</code>. */
+	public static boolean mayBeOoxml(final byte[] data) {
+		return mayContainZipEntry(data, OOXML_CONTENT_TYPES_ENTRY);
+	}
+
+	/** Indica si los datos pueden ser un XML.
+	 * @param data Datos a analizar.
+	 * @return <code>false</code> si los datos no empiezan como un XML en UTF-16, UCS-4 o EBCDIC
+	 *         ni, en una codificaci&oacute;n compatible con ASCII, por <code>&lt;</code> tras los
+	 *         espacios en blanco. */
+	public static boolean mayBeXml(final byte[] data) {
+		if (data == null || data.length < 1) {
+			return false;
+		}
+		if (isNonAsciiXml(data)) {
+			// UTF-16, UCS-4 o EBCDIC, que no analizamos
+			return true;
+		}
+		final int pos = skipWhitespace(data, getBomLength(data), data.length);
+		return pos < data.length && data[pos] == '<';
+	}
+
+	/** Indica si los datos pueden ser una factura electr&oacute;nica. Se busca el elemento
+	 * ra&iacute;z del XML en sus primeros bytes y se comprueba su nombre.
+	 * @param data Datos a analizar.
+	 * @return <code>false</code> si los datos no son XML o su elemento ra&iacute;z no es
+	 *         <code>Facturae</code>. */
+	public static boolean mayBeFacturae(final byte[] data) {
+		if (!mayBeXml(data)) {
+			return false;
+		}
+		if (isNonAsciiXml(data)) {
+			return true;
+		}
+		final String root = getXmlRootName(data);
+		if (root == null) {
+			// No se ha encontrado el elemento raiz en la zona analizada
+			return true;
+		}
+		return FACTURAE_ROOT.equals(root.substring(root.indexOf(':') + 1));
+	}
+
+	/** Obtiene el nombre cualificado del elemento ra&iacute;z de un XML en codificaci&oacute;n
+	 * compatible con ASCII, analizando solo sus primeros bytes.
+	 * @param data XML.
+	 * @return Nombre del elemento ra&iacute;z, cadena vac&iacute;a si los datos no pueden ser un
+	 *         XML bien formado o <code>null</code> si no se ha podido determinar. */
+	private static String getXmlRootName(final byte[] data) {
+		final int limit = Math.min(data.length, XML_PROLOG_LIMIT);
+		int pos = getBomLength(data);
+		while (true) {
+			pos = skipWhitespace(data, pos, limit);
+			if (pos >= limit) {
+				return null;
+			}
+			if (data[pos] != '<') {
+				// Texto fuera del elemento raiz
+				return ""; //$NON-NLS-1$
+			}
+			if (startsWith(data, pos, limit, "<?")) { //$NON-NLS-1$
+				pos = indexOf(data, pos + 2, limit, "?>"); //$NON-NLS-1$
+			}
+			else if (startsWith(data, pos, limit, "<!--")) { //$NON-NLS-1$
+				pos = indexOf(data, pos + 4, limit, "-->"); //$NON-NLS-1$
+			}
+			else if (pos + 1 >= limit || data[pos + 1] == '!') {
+				// Los DOCTYPE pueden declarar entidades y subconjuntos internos que no analizamos
+				return null;
+			}
+			else {
+				final int start = pos + 1;
+				int end = start;
+				while (end < limit && !isNameEnd(data[end])) {
+					end++;
+				}
+				if (end >= limit) {
+					return null;
+				}
+				return new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+			}
+			if (pos < 0) {
+				return null;
+			}
+		}
+	}
+
+	/** Indica si unos datos pueden ser un ZIP con la entrada indicada. Se buscan los nombres de
+	 * las entradas en el directorio central, sin leer su contenido.
+	 * @param data Datos a analizar.
+	 * @param entryName Nombre de la entrada.
+	 * @return <code>false</code> si los datos no son un ZIP o lo son pero no tienen la entrada. */
+	private static boolean mayContainZipEntry(final byte[] data, final String entryName) {
+		if (data == null || data.length < 4) {
+			return false;
+		}
+		final boolean zipHeader = readInt(data, 0) == ZIP_LOCAL_HEADER;
+		final int end = findZipEnd(data);
+		if (end < 0) {
+			// Sin directorio central solo puede leerse como ZIP si empieza como tal
+			return zipHeader;
+		}
+		final int entries = readShort(data, end + 10);
+		final long cdSize = readInt(data, end + 12) & 0xFFFFFFFFL;
+		if (entries == 0xFFFF || cdSize == 0xFFFFFFFFL || cdSize > end) {
+			// ZIP64 o directorio inconsistente
+			return true;
+		}
+		// El directorio central precede al registro de fin, aunque haya datos antes del ZIP
+		int pos = end - (int) cdSize;
+		final byte[] name = entryName.getBytes(StandardCharsets.ISO_8859_1);
+		for (int i = 0; i < entries; i++) {
+			if (pos + ZIP_CENTRAL_SIZE > end || readInt(data, pos) != ZIP_CENTRAL_HEADER) {
+				return true;
+			}
+			final int nameLength = readShort(data, pos + 28);
+			final int extraLength = readShort(data, pos + 30);
+			final int commentLength = readShort(data, pos + 32);
+			if (nameLength == name.length && pos + ZIP_CENTRAL_SIZE + nameLength <= end
+					&& startsWith(data, pos + ZIP_CENTRAL_SIZE, end, name)) {
+				return true;
+			}
+			pos += ZIP_CENTRAL_SIZE + nameLength + extraLength + commentLength;
+		}
+		return false;
+	}
+
+	/** Busca el registro de fin del directorio central de un ZIP, que est&aacute; al final de
+	 * los datos seguido solo por el comentario del ZIP.
+	 * @param data Datos.
+	 * @return Posici&oacute;n del registro o -1 si no se encuentra. */
+	private static int findZipEnd(final byte[] data) {
+		final int min = Math.max(0, data.length - ZIP_END_SIZE - 0xFFFF);
+		for (int pos = data.length - ZIP_END_SIZE; pos >= min; pos--) {
+			if (readInt(data, pos) == ZIP_END_HEADER
+					&& pos + ZIP_END_SIZE + readShort(data, pos + 20) == data.length) {
+				return pos;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isNonAsciiXml(final byte[] data) {
+		for (final byte[] prefix : NON_ASCII_XML_PREFIXES) {
+			if (startsWith(data, 0, data.length, prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int getBomLength(final byte[] data) {
+		return data.length >= 3
+				&& (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF ? 3 : 0;
+	}
+
+	private static int skipWhitespace(final byte[] data, final int from, final int limit) {
+		int pos = from;
+		while (pos < limit && (data[pos] == ' ' || data[pos] == '\t' || data[pos] == '\r' || data[pos] == '\n')) {
+			pos++;
+		}
+		return pos;
+	}
+
+	private static boolean isNameEnd(final byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '/' || b == '>';
+	}
+
+	private static boolean startsWith(final byte[] data, final int pos, final int limit, final String prefix) {
+		return startsWith(data, pos, limit, prefix.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static boolean startsWith(final byte[] data, final int pos, final int limit, final byte[] prefix) {
+		if (pos + prefix.length > limit) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data[pos + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Busca una cadena y devuelve la posici&oacute;n siguiente a su final, o -1 si no est&aacute;. */
+	private static int indexOf(final byte[] data, final int from, final int limit, final String str) {
+		final byte[] target = str.getBytes(StandardCharsets.ISO_8859_1);
+		for (int pos = from; pos + target.length <= limit; pos++) {
+			if (startsWith(data, pos, limit, target)) {
+				return pos + target.length;
+			}
+		}
+		return -1;
+	}
+
+	private static int readShort(final byte[] data, final int pos) {
+		return data[pos] & 0xFF | (data[pos + 1] & 0xFF) << 8;
+	}
+
+	private static int readInt(final byte[] data, final int pos) {
+		return readShort(data, pos) | readShort(data, pos + 2) << 16;
+	}
+}
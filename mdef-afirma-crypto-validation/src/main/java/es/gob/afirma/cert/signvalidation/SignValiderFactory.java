@@ -27,9 +27,7 @@ public final class SignValiderFactory {
 		if (DataAnalizerUtil.isPDF(data)) {
 			validerClassName = SIGNER_VALIDER_CLASS_PDF;
         }
-        else if (DataAnalizerUtil.isFacturae(data)) { // Factura electronica
-        	validerClassName = SIGNER_VALIDER_CLASS_XML;
-        }
+        // Las facturas electronicas se validan como cualquier otro XML, sin analizarlas dos veces
         else if (DataAnalizerUtil.isXML(data)) {
         	validerClassName = SIGNER_VALIDER_CLASS_XML;
         }
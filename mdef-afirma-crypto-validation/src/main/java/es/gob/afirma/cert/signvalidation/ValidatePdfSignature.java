@@ -14,7 +14,9 @@ import java.io.IOException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import com.aowagie.text.pdf.AcroFields;
@@ -23,11 +25,14 @@ import com.aowagie.text.pdf.PdfName;
 import com.aowagie.text.pdf.PdfPKCS7;
 import com.aowagie.text.pdf.PdfReader;
 
+import es.gob.afirma.cert.certvalidation.CertificateVerificable;
+import es.gob.afirma.cert.certvalidation.ValidationResult;
 import es.gob.afirma.cert.signvalidation.SignValidity.SIGN_DETAIL_TYPE;
 import es.gob.afirma.cert.signvalidation.SignValidity.VALIDITY_ERROR;
 
 /** Validador de firmas PDF.
- * Se validan los certificados en local revisando las fechas de validez de los certificados.
+ * Se validan los certificados en local revisando las fechas de validez de los certificados y,
+ * si se indica un validador de certificados, se comprueba adem&aacute;s su revocaci&oacute;n.
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s */
 public final class ValidatePdfSignature implements SignValider{
 
@@ -36,6 +41,23 @@ public final class ValidatePdfSignature implements SignValider{
 	private static final PdfName PDFNAME_ETSI_RFC3161 = new PdfName("ETSI.RFC3161"); //$NON-NLS-1$
 	private static final PdfName PDFNAME_DOCTIMESTAMP = new PdfName("DocTimeStamp"); //$NON-NLS-1$
 
+	private final CertificateVerificable certVerifier;
+
+	/** Crea un validador de firmas PDF que solo comprueba las fechas de validez de los certificados. */
+	public ValidatePdfSignature() {
+		this(null);
+	}
+
+	/** Crea un validador de firmas PDF que, adem&aacute;s de las fechas de validez, comprueba los
+	 * certificados de todas las firmas del documento con el validador indicado. Los certificados
+	 * se validan juntos, de forma que los repetidos se validan una &uacute;nica vez y las consultas
+	 * de revocaci&oacute;n se realizan en paralelo.
+	 * @param verifier Validador de certificados o <code>null</code> para comprobar solo las fechas
+	 *                 de validez. */
+	public ValidatePdfSignature(final CertificateVerificable verifier) {
+		this.certVerifier = verifier;
+	}
+
 	/** Valida una firma PDF (PKCS#7/PAdES). 
 	 * Se validan los certificados en local revisando las fechas de validez de los certificados.
      * @param sign PDF firmado.
@@ -46,6 +68,7 @@ public final class ValidatePdfSignature implements SignValider{
 		final PdfReader reader = new PdfReader(sign);
 		final AcroFields af = reader.getAcroFields();
 		final List<String> sigNames = af.getSignatureNames();
+		final List<X509Certificate> signCerts = new ArrayList<>(sigNames.size());
 		for (final String name : sigNames) {
 			final PdfPKCS7 pk = af.verifySignature(name);
 
@@ -78,8 +101,44 @@ public final class ValidatePdfSignature implements SignValider{
 				LOGGER.info("El certificado usado todavia no es valido: " + e); //$NON-NLS-1$
 	            return new SignValidity(SIGN_DETAIL_TYPE.KO, VALIDITY_ERROR.CERTIFICATE_NOT_VALID_YET);
 			}
+			signCerts.add(signCert);
+		}
+
+		if (this.certVerifier != null && !signCerts.isEmpty()) {
+			final Map<X509Certificate, ValidationResult> results = this.certVerifier.validateCertificates(signCerts);
+			for (final X509Certificate signCert : signCerts) {
+				final ValidationResult vr = results.get(signCert);
+				if (vr != ValidationResult.VALID) {
+					LOGGER.info(
+						"El certificado '" + signCert.getSubjectX500Principal() + "' no es valido: " + vr //$NON-NLS-1$ //$NON-NLS-2$
+					);
+					return new SignValidity(SIGN_DETAIL_TYPE.KO, getValidityError(vr));
+				}
+			}
 		}
 		return new SignValidity(SIGN_DETAIL_TYPE.OK, null);
 	}
 
+	private static VALIDITY_ERROR getValidityError(final ValidationResult vr) {
+		if (vr == null) {
+			return VALIDITY_ERROR.UNKOWN_ERROR;
+		}
+		switch(vr) {
+			case EXPIRED:
+				return VALIDITY_ERROR.CERTIFICATE_EXPIRED;
+			case REVOKED:
+				return VALIDITY_ERROR.CRL_PROBLEM;
+			case NOT_YET_VALID:
+				return VALIDITY_ERROR.CERTIFICATE_NOT_VALID_YET;
+			case CA_NOT_SUPPORTED:
+				return VALIDITY_ERROR.CA_NOT_SUPPORTED;
+			case CORRUPT:
+				return VALIDITY_ERROR.CORRUPTED_SIGN;
+			case SERVER_ERROR:
+				return VALIDITY_ERROR.CERTIFICATE_PROBLEM;
+			default:
+				return VALIDITY_ERROR.UNKOWN_ERROR;
+		}
+	}
+
 }
@@ -0,0 +1,231 @@
+package es.gob.afirma.cert.certvalidation;
+
+import java.io.InputStream;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Pruebas de la validaci&oacute;n concurrente de conjuntos de certificados. */
+public class TestCertificateBulkValidator {
+
+	private static final String[] CERT_FILES = {
+		"Defensa.cer", //$NON-NLS-1$
+		"ProcesosRegistroCOMP.cer", //$NON-NLS-1$
+		"certMinHAP.cer", //$NON-NLS-1$
+		"cert_test_fnmt.cer" //$NON-NLS-1$
+	};
+
+	/** Tiempo que tarda cada validaci&oacute;n simulada, para que las simult&aacute;neas se solapen. */
+	private static final long VALIDATION_TIME = 200;
+
+	/** Comprueba que los certificados repetidos se validan una sola vez y que se devuelve el
+	 * resultado de todos ellos.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testDuplicatesValidatedOnce() throws Exception {
+		final X509Certificate[] certs = loadCertificates();
+		final StubVerifier verifier = new StubVerifier("http://ocsp.test/", false); //$NON-NLS-1$
+
+		final Map<X509Certificate, ValidationResult> results = validate(
+			verifier,
+			4,
+			certs[0], certs[1], certs[0], certs[2], certs[1], certs[0]
+		);
+
+		Assert.assertEquals(3, results.size());
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals(ValidationResult.VALID, results.get(certs[i]));
+			Assert.assertEquals(1, verifier.getCalls(certs[i]));
+		}
+	}
+
+	/** Comprueba que no se supera el n&uacute;mero m&aacute;ximo de consultas simult&aacute;neas
+	 * a un mismo servidor y que las consultas a servidores distintos se realizan en paralelo.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testPerHostLimit() throws Exception {
+		final X509Certificate[] certs = loadCertificates();
+
+		final StubVerifier sameHost = new StubVerifier("http://crl.test/ca.crl", false); //$NON-NLS-1$
+		final Map<X509Certificate, ValidationResult> results = validate(sameHost, 1, certs);
+		Assert.assertEquals(certs.length, results.size());
+		for (final X509Certificate cert : certs) {
+			Assert.assertEquals(ValidationResult.VALID, results.get(cert));
+		}
+		Assert.assertEquals(1, sameHost.getMaxConcurrent());
+
+		final StubVerifier distinctHosts = new StubVerifier("http://%s.crl.test/ca.crl", true); //$NON-NLS-1$
+		validate(distinctHosts, 1, certs);
+		Assert.assertTrue(
+			"Las consultas a servidores distintos no se han solapado", //$NON-NLS-1$
+			distinctHosts.getMaxConcurrent() > 1
+		);
+	}
+
+	/** Comprueba que las validaciones que no consultan ning&uacute;n servidor no se limitan.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testNoEndpointNotLimited() throws Exception {
+		final X509Certificate[] certs = loadCertificates();
+		final StubVerifier verifier = new StubVerifier(null, false);
+		validate(verifier, 1, certs);
+		Assert.assertTrue(
+			"Las validaciones sin servidor no se han solapado", //$NON-NLS-1$
+			verifier.getMaxConcurrent() > 1
+		);
+	}
+
+	/** Comprueba que un error al validar un certificado se devuelve como error de servidor
+	 * en ese certificado sin afectar a los dem&aacute;s.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testErrorPropagation() throws Exception {
+		final X509Certificate[] certs = loadCertificates();
+		final StubVerifier verifier = new StubVerifier(null, false);
+		verifier.setFailing(certs[1]);
+		verifier.setResult(certs[2], ValidationResult.REVOKED);
+
+		final Map<X509Certificate, ValidationResult> results = validate(
+			verifier,
+			4,
+			certs[0], certs[1], certs[2], null
+		);
+
+		Assert.assertEquals(ValidationResult.VALID, results.get(certs[0]));
+		Assert.assertEquals(ValidationResult.SERVER_ERROR, results.get(certs[1]));
+		Assert.assertEquals(ValidationResult.REVOKED, results.get(certs[2]));
+		Assert.assertEquals(ValidationResult.CORRUPT, results.get(null));
+	}
+
+	private static Map<X509Certificate, ValidationResult> validate(final CertificateVerifier verifier,
+			                                                       final int maxPerHost,
+			                                                       final X509Certificate... certs) {
+		final ExecutorService executor = Executors.newFixedThreadPool(CERT_FILES.length);
+		try {
+			return new CertificateBulkValidator(executor, maxPerHost).validateAll(verifier, Arrays.asList(certs));
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static X509Certificate[] loadCertificates() throws Exception {
+		final CertificateFactory cf = CertificateFactory.getInstance("X.509"); //$NON-NLS-1$
+		final X509Certificate[] certs = new X509Certificate[CERT_FILES.length];
+		for (int i = 0; i < CERT_FILES.length; i++) {
+			try (
+				final InputStream is = ClassLoader.getSystemResourceAsStream(CERT_FILES[i]);
+			) {
+				certs[i] = (X509Certificate) cf.generateCertificate(is);
+			}
+		}
+		return certs;
+	}
+
+	/** Validador que no realiza consultas reales y registra las validaciones realizadas. */
+	private static final class StubVerifier extends CertificateVerifier {
+
+		private final String endpoint;
+
+		private final boolean hostPerCertificate;
+
+		private final ConcurrentHashMap<X509Certificate, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+		private final Map<X509Certificate, ValidationResult> results = new ConcurrentHashMap<>();
+
+		private final AtomicInteger concurrent = new AtomicInteger();
+
+		private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+		private volatile X509Certificate failing = null;
+
+		/** Crea el validador simulado.
+		 * @param revocationEndpoint Servidor de revocaci&oacute;n o <code>null</code> si no se consulta ninguno.
+		 * @param perCertificate Si es <code>true</code>, se sustituye <code>%s</code> en el servidor por
+		 *                       el n&uacute;mero de serie de cada certificado. */
+		StubVerifier(final String revocationEndpoint, final boolean perCertificate) {
+			this.endpoint = revocationEndpoint;
+			this.hostPerCertificate = perCertificate;
+		}
+
+		void setFailing(final X509Certificate cert) {
+			this.failing = cert;
+		}
+
+		void setResult(final X509Certificate cert, final ValidationResult result) {
+			this.results.put(cert, result);
+		}
+
+		int getCalls(final X509Certificate cert) {
+			final AtomicInteger count = this.calls.get(cert);
+			return count != null ? count.get() : 0;
+		}
+
+		int getMaxConcurrent() {
+			return this.maxConcurrent.get();
+		}
+
+		@Override
+		protected CertificateVerificable getVerifierFor(final X509Certificate cert) {
+			return this;
+		}
+
+		@Override
+		protected String getRevocationEndpoint(final X509Certificate cert) {
+			if (this.endpoint == null || !this.hostPerCertificate) {
+				return this.endpoint;
+			}
+			return String.format(this.endpoint, cert.getSerialNumber().toString(16));
+		}
+
+		@Override
+		public ValidationResult validateCertificate(final X509Certificate cert) {
+			AtomicInteger count = new AtomicInteger();
+			final AtomicInteger previous = this.calls.putIfAbsent(cert, count);
+			if (previous != null) {
+				count = previous;
+			}
+			count.incrementAndGet();
+
+			final int running = this.concurrent.incrementAndGet();
+			int max = this.maxConcurrent.get();
+			while (running > max && !this.maxConcurrent.compareAndSet(max, running)) {
+				max = this.maxConcurrent.get();
+			}
+			try {
+				// Simulamos la consulta al servidor
+				Thread.sleep(VALIDATION_TIME);
+			}
+			catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				this.concurrent.decrementAndGet();
+			}
+
+			if (cert.equals(this.failing)) {
+				throw new IllegalStateException("Error simulado de validacion"); //$NON-NLS-1$
+			}
+			final ValidationResult result = this.results.get(cert);
+			return result != null ? result : ValidationResult.VALID;
+		}
+
+		@Override
+		public ValidationResult verifyRevocation(final X509Certificate cert) {
+			return validateCertificate(cert);
+		}
+	}
+
+}
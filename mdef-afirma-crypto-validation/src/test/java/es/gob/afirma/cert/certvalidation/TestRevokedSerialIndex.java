@@ -0,0 +1,63 @@
+package es.gob.afirma.cert.certvalidation;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Pruebas del &iacute;ndice de n&uacute;meros de serie revocados de una CRL. */
+public class TestRevokedSerialIndex {
+
+	private static final X500Principal ISSUER = new X500Principal("CN=Test CA"); //$NON-NLS-1$
+
+	/** Comprueba series secuenciales, series grandes y series que comparten los 64 bits
+	 * menos significativos.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testContains() throws Exception {
+		final List<BigInteger> serials = new ArrayList<>();
+		for (int i = 1; i <= 1000; i++) {
+			serials.add(BigInteger.valueOf(i));
+		}
+		final Random rnd = new Random(0);
+		final List<BigInteger> bigSerials = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			bigSerials.add(new BigInteger(128, rnd).setBit(127));
+		}
+		serials.addAll(bigSerials);
+
+		// Serie grande con los mismos 64 bits bajos que una serie pequena revocada
+		final BigInteger sameLowBits = BigInteger.ONE.shiftLeft(100).add(BigInteger.valueOf(5));
+		// Serie pequena con los mismos 64 bits bajos que una serie grande revocada
+		final BigInteger sameLowBits2 = BigInteger.valueOf(bigSerials.get(0).longValue() & Long.MAX_VALUE);
+
+		final RevokedSerialIndex index = new RevokedSerialIndex(ISSUER, serials);
+		Assert.assertEquals(2000, index.size());
+
+		for (final BigInteger serial : serials) {
+			Assert.assertTrue("No se encuentra la serie " + serial, index.contains(serial)); //$NON-NLS-1$
+		}
+		Assert.assertFalse(index.contains(BigInteger.ZERO));
+		Assert.assertFalse(index.contains(BigInteger.valueOf(1001)));
+		Assert.assertFalse(index.contains(sameLowBits));
+		Assert.assertFalse(index.contains(sameLowBits2));
+		Assert.assertFalse(index.contains(new BigInteger(128, rnd).setBit(127)));
+	}
+
+	/** Comprueba un &iacute;ndice vac&iacute;o.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testEmpty() throws Exception {
+		final RevokedSerialIndex index = new RevokedSerialIndex(ISSUER, new ArrayList<BigInteger>(0));
+		Assert.assertEquals(0, index.size());
+		Assert.assertFalse(index.contains(BigInteger.ONE));
+	}
+
+}
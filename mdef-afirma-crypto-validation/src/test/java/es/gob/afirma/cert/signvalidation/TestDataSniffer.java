@@ -0,0 +1,98 @@
+package es.gob.afirma.cert.signvalidation;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import es.gob.afirma.core.misc.AOUtil;
+
+/** Pruebas de la identificaci&oacute;n r&aacute;pida de tipos de datos. */
+public final class TestDataSniffer {
+
+	private static final String FACTURAE =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + //$NON-NLS-1$
+		"<!-- Factura de prueba -->\n" + //$NON-NLS-1$
+		"<fe:Facturae xmlns:fe=\"http://www.facturae.es/Facturae/2009/v3.2/Facturae\"><FileHeader/></fe:Facturae>"; //$NON-NLS-1$
+
+	private static final String XML =
+		"\uFEFF<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root><Facturae/></root>"; //$NON-NLS-1$
+
+	private static final String DOCTYPE_XML =
+		"<?xml version=\"1.0\"?>\n<!DOCTYPE root [<!ENTITY e \"Facturae\">]>\n<root/>"; //$NON-NLS-1$
+
+	private static byte[] load(final String name) throws Exception {
+		return AOUtil.getDataFromInputStream(TestDataSniffer.class.getResourceAsStream(name));
+	}
+
+	private static byte[] zip(final String... entries) throws Exception {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (final ZipOutputStream zos = new ZipOutputStream(baos)) {
+			for (final String entry : entries) {
+				zos.putNextEntry(new ZipEntry(entry));
+				zos.write(entry.getBytes(StandardCharsets.UTF_8));
+				zos.closeEntry();
+			}
+		}
+		return baos.toByteArray();
+	}
+
+	/** Comprueba que se descartan los tipos que no corresponden a cada fichero y no los que s&iacute;.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testSniffer() throws Exception {
+
+		final byte[] pdf = load("/pades.pdf"); //$NON-NLS-1$
+		Assert.assertTrue(DataSniffer.mayBePdf(pdf));
+		Assert.assertFalse(DataSniffer.mayBeXml(pdf));
+		Assert.assertFalse(DataSniffer.mayBeOdf(pdf));
+		Assert.assertFalse(DataSniffer.mayBeOoxml(pdf));
+
+		final byte[] cades = load("/cades_explicit.csig"); //$NON-NLS-1$
+		Assert.assertFalse(DataSniffer.mayBePdf(cades));
+		Assert.assertFalse(DataSniffer.mayBeXml(cades));
+		Assert.assertFalse(DataSniffer.mayBeFacturae(cades));
+		Assert.assertFalse(DataSniffer.mayBeOdf(cades));
+		Assert.assertFalse(DataSniffer.mayBeOoxml(cades));
+
+		final byte[] odf = zip("mimetype", "content.xml", "META-INF/manifest.xml"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		Assert.assertTrue(DataSniffer.mayBeOdf(odf));
+		Assert.assertFalse(DataSniffer.mayBeOoxml(odf));
+		Assert.assertFalse(DataSniffer.mayBePdf(odf));
+
+		final byte[] ooxml = zip("_rels/.rels", "word/document.xml", "[Content_Types].xml"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		Assert.assertTrue(DataSniffer.mayBeOoxml(ooxml));
+		Assert.assertFalse(DataSniffer.mayBeOdf(ooxml));
+
+		Assert.assertFalse(DataSniffer.mayBeOdf(zip("other.txt"))); //$NON-NLS-1$
+
+		Assert.assertTrue(DataSniffer.mayBeFacturae(FACTURAE.getBytes(StandardCharsets.UTF_8)));
+
+		final byte[] xml = XML.getBytes(StandardCharsets.UTF_8);
+		Assert.assertTrue(DataSniffer.mayBeXml(xml));
+		Assert.assertFalse(DataSniffer.mayBeFacturae(xml));
+
+		// Ante un DOCTYPE no se descarta el tipo
+		Assert.assertTrue(DataSniffer.mayBeFacturae(DOCTYPE_XML.getBytes(StandardCharsets.UTF_8)));
+		// Tampoco ante codificaciones no compatibles con ASCII
+		Assert.assertTrue(DataSniffer.mayBeFacturae(XML.getBytes(StandardCharsets.UTF_16)));
+		Assert.assertTrue(DataSniffer.mayBeXml(DOCTYPE_XML.getBytes(StandardCharsets.UTF_16LE)));
+		Assert.assertTrue(DataSniffer.mayBeXml(DOCTYPE_XML.getBytes(StandardCharsets.UTF_16BE)));
+
+		// Ficheros multimedia y textos que empiezan por bytes propios de otras codificaciones
+		final byte[] jpeg = new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0x00, 0x10, 'J', 'F', 'I', 'F', 0x00 };
+		Assert.assertFalse(DataSniffer.mayBeXml(jpeg));
+		Assert.assertFalse(DataSniffer.mayBeFacturae(jpeg));
+		final byte[] mp4 = new byte[] { 0x00, 0x00, 0x00, 0x18, 'f', 't', 'y', 'p', 'm', 'p', '4', '2' };
+		Assert.assertFalse(DataSniffer.mayBeXml(mp4));
+		Assert.assertFalse(DataSniffer.mayBeFacturae(mp4));
+		Assert.assertFalse(DataSniffer.mayBeXml("Lorem ipsum".getBytes(StandardCharsets.US_ASCII))); //$NON-NLS-1$
+
+		Assert.assertFalse(DataSniffer.mayBePdf(null));
+		Assert.assertFalse(DataSniffer.mayBeXml(new byte[0]));
+	}
+}
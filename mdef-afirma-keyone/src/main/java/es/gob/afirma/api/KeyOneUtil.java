@@ -33,7 +33,6 @@ import es.gob.afirma.cert.signvalidation.SignValidity.SIGN_DETAIL_TYPE;
 import es.gob.afirma.core.AOCancelledOperationException;
 import es.gob.afirma.core.AOException;
 import es.gob.afirma.core.misc.AOUtil;
-import es.gob.afirma.core.misc.Base64;
 import es.gob.afirma.core.signers.AOSignConstants;
 import es.gob.afirma.core.signers.AOSigner;
 import es.gob.afirma.core.signers.AOSignerFactory;
@@ -50,6 +49,7 @@ import es.gob.afirma.keystores.SmartCardException;
 import es.gob.afirma.keystores.filters.CertificateFilter;
 import es.gob.afirma.keystores.filters.PolicyIdFilter;
 import es.gob.afirma.local.BatchSigner;
+import es.gob.afirma.signers.pades.AOPDFSigner;
 import es.gob.afirma.signers.pades.BadPdfPasswordException;
 import es.gob.afirma.signers.pades.PdfHasUnregisteredSignaturesException;
 import es.gob.afirma.signers.pades.PdfIsCertifiedException;
@@ -174,7 +174,7 @@ public final class KeyOneUtil {
 			 
 				 //Se firma con la clave privada
 				 return BatchSigner.sign(
-						Base64.encode(xmlBytes), 
+						xmlBytes, 
 						pke.getCertificateChain(), 
 						pke.getPrivateKey()
 					);
@@ -222,17 +222,25 @@ public final class KeyOneUtil {
 
 		final AOSigner signer = AOSignerFactory.getSigner(AOSignConstants.SIGN_FORMAT_PADES);
 
+		// Los PDF grandes se firman directamente sobre los ficheros, sin cargarlos en memoria
+		final File inputFile = new File(originalPath);
+		final boolean largePdf = signer instanceof AOPDFSigner && inputFile.length() > AOPDFSigner.LARGE_PDF_SIZE;
+
 		byte[] data = null;
-		try ( final InputStream fis = new FileInputStream(new File(originalPath)); ) {
-        	data = AOUtil.getDataFromInputStream(fis);
-		}
-		catch (final Exception e) {
-			LOGGER.severe("Error leyendo fichero de entrada: " + e); //$NON-NLS-1$
-			throw new PdfException("Error leyendo fichero de entrada: " + e, e); //$NON-NLS-1$
+		if (!largePdf) {
+			try ( final InputStream fis = new FileInputStream(inputFile); ) {
+	        	data = AOUtil.getDataFromInputStream(fis);
+			}
+			catch (final Exception e) {
+				LOGGER.severe("Error leyendo fichero de entrada: " + e); //$NON-NLS-1$
+				throw new PdfException("Error leyendo fichero de entrada: " + e, e); //$NON-NLS-1$
+			}
 		}
 		SignatureField field = null;
 		if (fieldName != null && !fieldName.isEmpty()) {
-			final List<SignatureField> list = PdfUtil.getPdfEmptySignatureFields(data);
+			final List<SignatureField> list = largePdf ?
+				PdfUtil.getPdfEmptySignatureFields(inputFile) :
+					PdfUtil.getPdfEmptySignatureFields(data);
 			for (final SignatureField sf : list) {
 				if (sf.getName().equals(fieldName)) {
 					field = sf;
@@ -278,19 +286,31 @@ public final class KeyOneUtil {
 
         new XMLLookParser(xmlLook, field, p, pke).parse();
 
-        final byte[] signResult;
-        try (
-        		final FileOutputStream os = new FileOutputStream(new File(destinyPath))
-        		){
-            signResult = signer.sign(
-        		data,
-        		signatureAlgorithm,
-        		pke.getPrivateKey(),
-                pke.getCertificateChain(),
-                p
-            );
-        	os.write(signResult);
-        	os.close();
+        try {
+        	if (largePdf) {
+        		((AOPDFSigner) signer).sign(
+    				inputFile,
+    				new File(destinyPath),
+    				signatureAlgorithm,
+    				pke.getPrivateKey(),
+    				pke.getCertificateChain(),
+    				p
+				);
+        	}
+        	else {
+        		final byte[] signResult = signer.sign(
+    				data,
+    				signatureAlgorithm,
+    				pke.getPrivateKey(),
+    				pke.getCertificateChain(),
+    				p
+				);
+        		try (
+        				final FileOutputStream os = new FileOutputStream(new File(destinyPath))
+        				){
+        			os.write(signResult);
+        		}
+        	}
         }
         catch(final AOCancelledOperationException e) {
         	throw new AOCancelledOperationException("Cancelado por el usuario: " + e, e); //$NON-NLS-1$
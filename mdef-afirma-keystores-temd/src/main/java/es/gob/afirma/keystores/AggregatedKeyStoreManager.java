@@ -20,17 +20,33 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import es.gob.afirma.core.misc.AOUtil;
 
 /** Gestor de claves consistente a su vez en un agregado de varios gestores, que se tratan y manejan como
  * si fuese un gestor normal de un &uacute;nico almac&eacute;n.
+ * Para no recorrer los alias de todos los gestores en cada consulta se mantiene un &iacute;ndice de
+ * qu&eacute; gestor contiene cada alias y una cach&eacute; de los certificados ya obtenidos, que se
+ * descartan al a&ntilde;adir o eliminar gestores y al refrescar el almac&eacute;n.
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s */
 public class AggregatedKeyStoreManager extends AOKeyStoreManager {
 
 	private final List<AOKeyStoreManager> ksms = new ArrayList<>();
 
+	/** Gestor que contiene cada alias, en el orden de los gestores y de sus alias. Si hay alias
+	 * repetidos prevalece el del primer gestor. Es <code>null</code> si hay que volver a construirlo. */
+	private Map<String, AOKeyStoreManager> aliasIndex = null;
+
+	/** Alias de todos los gestores, incluyendo los repetidos. */
+	private String[] aggregatedAliases = null;
+
+	/** Certificados ya obtenidos, por alias. */
+	private final Map<String, X509Certificate> certificateCache = new HashMap<>();
+
 	AggregatedKeyStoreManager(final AOKeyStoreManager mainKsm) {
 		if (mainKsm == null) {
 			throw new IllegalArgumentException("El gestor principal de almacenes no puede ser nulo"); //$NON-NLS-1$
@@ -48,10 +64,9 @@ public class AggregatedKeyStoreManager extends AOKeyStoreManager {
      * @return Tipo de almac&eacute;n de claves para el alias indicado. */
     @Override
 	protected AOKeyStore getType(final String alias) {
-    	for (final AOKeyStoreManager ksm : this.ksms) {
-    		if (ksm.getCertificate(alias) != null) {
-    			return ksm.getType(alias);
-    		}
+    	final AOKeyStoreManager ksm = getKeyStoreManager(alias);
+    	if (ksm != null) {
+    		return ksm.getType(alias);
     	}
     	LOGGER.warning(
 			"Se ha pedido el tipo de almacen de un alias no contenido en este gestor, se devolvera el tipo por defecto" //$NON-NLS-1$
@@ -101,25 +116,72 @@ public class AggregatedKeyStoreManager extends AOKeyStoreManager {
 				}
 			}
 			this.ksms.add(ksm);
+			// Los alias de los gestores anteriores pueden haber cambiado al desactivar duplicados
+			invalidateAliasIndex();
 		}
 	}
 
-	@Override
-	public String[] getAliases() {
+	/** Descarta el &iacute;ndice de alias y los certificados guardados, que se volver&aacute;n a
+	 * obtener de los gestores en la siguiente consulta. */
+	private synchronized void invalidateAliasIndex() {
+		this.aliasIndex = null;
+		this.aggregatedAliases = null;
+		this.certificateCache.clear();
+	}
+
+	/** Construye, si no lo est&aacute; ya, el &iacute;ndice de alias pidiendo una &uacute;nica vez
+	 * sus alias a cada gestor. */
+	private synchronized void buildAliasIndex() {
+		if (this.aliasIndex != null) {
+			return;
+		}
+		final Map<String, AOKeyStoreManager> index = new LinkedHashMap<>();
 		final List<String> aliases = new ArrayList<>();
 		for (final AOKeyStoreManager ksm : this.ksms) {
-			aliases.addAll(Arrays.asList(ksm.getAliases()));
+			final String[] ksmAliases = ksm.getAliases();
+			aliases.addAll(Arrays.asList(ksmAliases));
+			for (final String alias : ksmAliases) {
+				if (!index.containsKey(alias)) {
+					index.put(alias, ksm);
+				}
+			}
 		}
-		return aliases.toArray(new String[0]);
+		this.aggregatedAliases = aliases.toArray(new String[0]);
+		this.aliasIndex = index;
+	}
+
+	/** Obtiene el gestor que contiene un alias.
+	 * @param alias Alias de la entrada.
+	 * @return Gestor que contiene el alias o <code>null</code> si ninguno lo contiene. */
+	private synchronized AOKeyStoreManager getKeyStoreManager(final String alias) {
+		buildAliasIndex();
+		return this.aliasIndex.get(alias);
+	}
+
+	@Override
+	public synchronized String[] getAliases() {
+		buildAliasIndex();
+		return this.aggregatedAliases.clone();
 	}
 
 	@Override
 	public X509Certificate getCertificate(final String alias) {
-		for (final AOKeyStoreManager ksm : this.ksms) {
-			if (Arrays.asList(ksm.getAliases()).contains(alias)) {
-				return ksm.getCertificate(alias);
+		synchronized (this) {
+			final X509Certificate cert = this.certificateCache.get(alias);
+			if (cert != null) {
+				return cert;
 			}
 		}
+		final AOKeyStoreManager ksm = getKeyStoreManager(alias);
+		if (ksm != null) {
+			final X509Certificate cert = ksm.getCertificate(alias);
+			if (cert != null) {
+				synchronized (this) {
+					this.certificateCache.put(alias, cert);
+				}
+			}
+			return cert;
+		}
 		LOGGER.warning(
 			"El almacen no contiene ningun certificado con alias '" + alias + "', se devolvera null" //$NON-NLS-1$ //$NON-NLS-2$
 		);
@@ -130,10 +192,9 @@ public class AggregatedKeyStoreManager extends AOKeyStoreManager {
 	public KeyStore.PrivateKeyEntry getKeyEntry(final String alias) throws KeyStoreException,
                                                                            NoSuchAlgorithmException,
                                                                            UnrecoverableEntryException {
-		for (final AOKeyStoreManager ksm : this.ksms) {
-			if (Arrays.asList(ksm.getAliases()).contains(alias)) {
-				return ksm.getKeyEntry(alias);
-			}
+		final AOKeyStoreManager ksm = getKeyStoreManager(alias);
+		if (ksm != null) {
+			return ksm.getKeyEntry(alias);
 		}
 		LOGGER.warning(
 			"El almacen no contiene ninguna clave con alias '" + alias + "', se devolvera null" //$NON-NLS-1$ //$NON-NLS-2$
@@ -143,10 +204,9 @@ public class AggregatedKeyStoreManager extends AOKeyStoreManager {
 
 	@Override
 	public X509Certificate[] getCertificateChain(final String alias) {
-		for (final AOKeyStoreManager ksm : this.ksms) {
-			if (Arrays.asList(ksm.getAliases()).contains(alias)) {
-				return ksm.getCertificateChain(alias);
-			}
+		final AOKeyStoreManager ksm = getKeyStoreManager(alias);
+		if (ksm != null) {
+			return ksm.getCertificateChain(alias);
 		}
 		LOGGER.warning(
 			"El almacen no contiene ninguna cadena de certificados con alias '" + alias + "', se devolvera null" //$NON-NLS-1$ //$NON-NLS-2$
@@ -156,8 +216,13 @@ public class AggregatedKeyStoreManager extends AOKeyStoreManager {
 
 	@Override
 	public void refresh() throws IOException {
-		for (final AOKeyStoreManager ksm : this.ksms) {
-			ksm.refresh();
+		try {
+			for (final AOKeyStoreManager ksm : this.ksms) {
+				ksm.refresh();
+			}
+		}
+		finally {
+			invalidateAliasIndex();
 		}
 	}
 
@@ -168,10 +233,9 @@ public class AggregatedKeyStoreManager extends AOKeyStoreManager {
 
 	@Override
 	public boolean isKeyEntry(final String alias) throws KeyStoreException {
-		for (final AOKeyStoreManager ksm : this.ksms) {
-			if (Arrays.asList(ksm.getAliases()).contains(alias)) {
-				return ksm.isKeyEntry(alias);
-			}
+		final AOKeyStoreManager ksm = getKeyStoreManager(alias);
+		if (ksm != null) {
+			return ksm.isKeyEntry(alias);
 		}
 		throw new KeyStoreException(
 			"Se ha pedido comprobar la clave privada de un certificado no contenido en este gestor" //$NON-NLS-1$
@@ -181,5 +245,6 @@ public class AggregatedKeyStoreManager extends AOKeyStoreManager {
 	/** Elimina todos los almacenes del de claves del almac&eacute;n agregado. */
 	public void removeAll() {
 		this.ksms.clear();
+		invalidateAliasIndex();
 	}
 }
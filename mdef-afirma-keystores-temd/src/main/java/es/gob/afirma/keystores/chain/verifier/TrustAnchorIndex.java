@@ -0,0 +1,351 @@
+package es.gob.afirma.keystores.chain.verifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.security.auth.x500.X500Principal;
+
+/** &Iacute;ndice de certificados de confianza para la validaci&oacute;n de cadenas de certificaci&oacute;n.
+ * Los certificados se indexan por el nombre de su titular, de forma que los posibles emisores de
+ * cada certificado de la cadena se obtienen con una &uacute;nica b&uacute;squeda, probando primero
+ * aquellos cuyo identificador de clave coincide con el identificador de clave de la autoridad del
+ * certificado. Los par&aacute;metros de validaci&oacute;n de cada certificado de confianza se crean una
+ * sola vez y se recuerdan durante un tiempo limitado los certificados intermedios que ya se ha
+ * comprobado que llegan a una ra&iacute;z. */
+final class TrustAnchorIndex {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	/** OID de la extensi&oacute;n de identificador de clave del titular. */
+	private static final String SUBJECT_KEY_IDENTIFIER_OID = "2.5.29.14"; //$NON-NLS-1$
+
+	/** OID de la extensi&oacute;n de identificador de clave de la autoridad. */
+	private static final String AUTHORITY_KEY_IDENTIFIER_OID = "2.5.29.35"; //$NON-NLS-1$
+
+	/** Tiempo m&aacute;ximo en milisegundos durante el que se recuerda que un certificado de confianza
+	 * llega hasta una ra&iacute;z. Pasado este tiempo, o al caducar el certificado, se vuelve a comprobar. */
+	private static final long VALIDATED_ISSUER_TTL = 10 * 60 * 1000L;
+
+	/** Algoritmo de la huella de la contrase&ntilde;a con la que se carg&oacute; cada almac&eacute;n. */
+	private static final String STOREPASS_DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+	/** &Iacute;ndices de los almacenes de confianza ya cargados, por ruta del fichero. */
+	private static final Map<String, CachedIndex> KEYSTORE_INDEXES = new HashMap<>();
+
+	private final Map<X500Principal, List<Anchor>> bySubject = new HashMap<>();
+
+	/** Certificados de confianza que se ha comprobado que llegan hasta una ra&iacute;z, con el momento
+	 * hasta el que se puede dar por buena la comprobaci&oacute;n. */
+	private final Map<X509Certificate, Long> validatedIssuers = new HashMap<>();
+
+	private final CertificateFactory certFactory;
+	private final CertPathValidator validator;
+
+	TrustAnchorIndex(final X509Certificate... trustedCerts) throws CertificateException, NoSuchAlgorithmException {
+		this.certFactory = CertificateFactory.getInstance("X.509"); //$NON-NLS-1$
+		this.validator = CertPathValidator.getInstance("PKIX"); //$NON-NLS-1$
+		for (final X509Certificate cert : trustedCerts) {
+			if (cert == null) {
+				continue;
+			}
+			List<Anchor> anchors = this.bySubject.get(cert.getSubjectX500Principal());
+			if (anchors == null) {
+				anchors = new ArrayList<>(1);
+				this.bySubject.put(cert.getSubjectX500Principal(), anchors);
+			}
+			anchors.add(new Anchor(cert));
+		}
+	}
+
+	/** Crea el &iacute;ndice de los certificados de un almac&eacute;n.
+	 * @param keyStore Almac&eacute;n con los certificados de confianza.
+	 * @return &Iacute;ndice de los certificados del almac&eacute;n.
+	 * @throws KeyStoreException Si no se pueden leer los certificados del almac&eacute;n.
+	 * @throws CertificateException Si no se soportan los certificados X.509.
+	 * @throws NoSuchAlgorithmException Si no se soporta la validaci&oacute;n PKIX. */
+	static TrustAnchorIndex fromKeyStore(final KeyStore keyStore) throws KeyStoreException,
+	                                                                     CertificateException,
+	                                                                     NoSuchAlgorithmException {
+		final List<X509Certificate> certs = new ArrayList<>(keyStore.size());
+		final Enumeration<String> aliases = keyStore.aliases();
+		while (aliases.hasMoreElements()) {
+			final Certificate cert = keyStore.getCertificate(aliases.nextElement());
+			if (cert instanceof X509Certificate) {
+				certs.add((X509Certificate) cert);
+			}
+		}
+		return new TrustAnchorIndex(certs.toArray(new X509Certificate[0]));
+	}
+
+	/** Obtiene el &iacute;ndice de un almac&eacute;n JKS de confianza. El almac&eacute;n se carga una
+	 * sola vez y solo se vuelve a cargar si cambia el fichero.
+	 * @param path Ruta del almac&eacute;n.
+	 * @param storepass Contrase&ntilde;a del almac&eacute;n.
+	 * @return &Iacute;ndice de los certificados del almac&eacute;n.
+	 * @throws IOException Si no se puede leer el almac&eacute;n.
+	 * @throws KeyStoreException Si no se soportan los almacenes JKS.
+	 * @throws CertificateException Si no se pueden cargar los certificados del almac&eacute;n.
+	 * @throws NoSuchAlgorithmException Si no se soporta la validaci&oacute;n PKIX. */
+	static TrustAnchorIndex fromKeyStoreFile(final String path, final String storepass) throws IOException,
+	                                                                                           KeyStoreException,
+	                                                                                           CertificateException,
+	                                                                                           NoSuchAlgorithmException {
+		final File file = new File(path);
+		final long lastModified = file.lastModified();
+		final long length = file.length();
+		// Solo se guarda la huella de la contrasena para comprobar que no ha cambiado
+		final byte[] storepassDigest = MessageDigest.getInstance(STOREPASS_DIGEST_ALGORITHM).digest(
+			storepass.getBytes(StandardCharsets.UTF_8)
+		);
+		synchronized (KEYSTORE_INDEXES) {
+			final CachedIndex cached = KEYSTORE_INDEXES.get(path);
+			if (cached != null && cached.lastModified == lastModified && cached.length == length
+					&& MessageDigest.isEqual(cached.storepassDigest, storepassDigest)) {
+				return cached.index;
+			}
+			if (cached != null) {
+				LOGGER.info("El almacen de confianza ha cambiado, se volvera a cargar: " + path); //$NON-NLS-1$
+			}
+			final KeyStore ks = KeyStore.getInstance("JKS"); //$NON-NLS-1$
+			try (final InputStream fis = new FileInputStream(file)) {
+				ks.load(fis, storepass.toCharArray());
+			}
+			final TrustAnchorIndex index = fromKeyStore(ks);
+			KEYSTORE_INDEXES.put(path, new CachedIndex(index, lastModified, length, storepassDigest));
+			return index;
+		}
+	}
+
+	/** Comprueba que un certificado tenga una cadena de certificaci&oacute;n v&aacute;lida hasta
+	 * un certificado ra&iacute;z de confianza formada por certificados de confianza.
+	 * @param cert Certificado a comprobar.
+	 * @return <code>true</code> si se encuentra una cadena v&aacute;lida, <code>false</code> en caso contrario.
+	 * @throws CertificateException Si no se puede construir la ruta de certificaci&oacute;n.
+	 * @throws InvalidAlgorithmParameterException Si no se pueden crear los par&aacute;metros de validaci&oacute;n.
+	 * @throws NoSuchAlgorithmException Si no se soporta el algoritmo de alg&uacute;n certificado.
+	 * @throws NoSuchProviderException Si no se encuentra el proveedor de alg&uacute;n certificado. */
+	synchronized boolean validate(final X509Certificate cert) throws CertificateException,
+	                                                                 InvalidAlgorithmParameterException,
+	                                                                 NoSuchAlgorithmException,
+	                                                                 NoSuchProviderException {
+		return validate(cert, new HashSet<X509Certificate>());
+	}
+
+	private boolean validate(final X509Certificate cert,
+			                 final Set<X509Certificate> inProgress) throws CertificateException,
+	                                                                       InvalidAlgorithmParameterException,
+	                                                                       NoSuchAlgorithmException,
+	                                                                       NoSuchProviderException {
+		final Long validUntil = this.validatedIssuers.get(cert);
+		if (validUntil != null) {
+			if (System.currentTimeMillis() < validUntil.longValue()) {
+				return true;
+			}
+			this.validatedIssuers.remove(cert);
+		}
+		if (!inProgress.add(cert)) {
+			// Certificados cruzados que forman un ciclo
+			return false;
+		}
+		try {
+			for (final Anchor issuer : getIssuerCandidates(cert)) {
+				try {
+					this.validator.validate(
+						this.certFactory.generateCertPath(Arrays.asList(new Certificate[] { cert })),
+						issuer.getParameters()
+					);
+				}
+				catch (final CertPathValidatorException e) {
+					// El candidato no es el emisor del certificado, probamos con el siguiente
+					continue;
+				}
+				if (issuer.isSelfSigned()) {
+					LOGGER.info("validating root" + issuer.cert.getSubjectX500Principal().getName()); //$NON-NLS-1$
+					return true;
+				}
+				if (!cert.equals(issuer.cert)) {
+					LOGGER.info("validating via:" + issuer.cert.getSubjectX500Principal().getName()); //$NON-NLS-1$
+					if (validate(issuer.cert, inProgress)) {
+						this.validatedIssuers.put(
+							issuer.cert,
+							Long.valueOf(Math.min(
+								issuer.cert.getNotAfter().getTime(),
+								System.currentTimeMillis() + VALIDATED_ISSUER_TTL
+							))
+						);
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+		finally {
+			inProgress.remove(cert);
+		}
+	}
+
+	/** Obtiene los certificados de confianza que pueden ser emisores de un certificado, empezando
+	 * por los que tienen el identificador de clave que indica el certificado.
+	 * @param cert Certificado del que se buscan los emisores.
+	 * @return Posibles emisores del certificado, en el orden en el que se deben probar. */
+	List<Anchor> getIssuerCandidates(final X509Certificate cert) {
+		final List<Anchor> candidates = this.bySubject.get(cert.getIssuerX500Principal());
+		if (candidates == null) {
+			return Collections.emptyList();
+		}
+		if (candidates.size() < 2) {
+			return candidates;
+		}
+		final byte[] authorityKeyId = getAuthorityKeyIdentifier(cert);
+		if (authorityKeyId == null) {
+			return candidates;
+		}
+		final List<Anchor> sorted = new ArrayList<>(candidates.size());
+		for (final Anchor anchor : candidates) {
+			if (Arrays.equals(authorityKeyId, anchor.keyId)) {
+				sorted.add(anchor);
+			}
+		}
+		for (final Anchor anchor : candidates) {
+			if (!Arrays.equals(authorityKeyId, anchor.keyId)) {
+				sorted.add(anchor);
+			}
+		}
+		return sorted;
+	}
+
+	/** Obtiene el identificador de clave del titular de un certificado.
+	 * @param cert Certificado.
+	 * @return Identificador de clave o <code>null</code> si no lo tiene o no se puede leer. */
+	static byte[] getSubjectKeyIdentifier(final X509Certificate cert) {
+		return getSubjectKeyIdentifier(cert.getExtensionValue(SUBJECT_KEY_IDENTIFIER_OID));
+	}
+
+	/** Obtiene el identificador de clave del titular de la extensi&oacute;n que lo contiene.
+	 * @param extensionValue Valor codificado de la extensi&oacute;n, tal y como lo devuelve
+	 *                       {@link X509Certificate#getExtensionValue(String)}.
+	 * @return Identificador de clave o <code>null</code> si no se puede leer. */
+	static byte[] getSubjectKeyIdentifier(final byte[] extensionValue) {
+		// OCTET STRING que contiene el OCTET STRING con el identificador
+		return getDerValue(getDerValue(extensionValue, 0x04), 0x04);
+	}
+
+	/** Obtiene el identificador de clave de la autoridad de un certificado.
+	 * @param cert Certificado.
+	 * @return Identificador de clave o <code>null</code> si no lo tiene o no se puede leer. */
+	static byte[] getAuthorityKeyIdentifier(final X509Certificate cert) {
+		return getAuthorityKeyIdentifier(cert.getExtensionValue(AUTHORITY_KEY_IDENTIFIER_OID));
+	}
+
+	/** Obtiene el identificador de clave de la autoridad de la extensi&oacute;n que lo contiene.
+	 * @param extensionValue Valor codificado de la extensi&oacute;n, tal y como lo devuelve
+	 *                       {@link X509Certificate#getExtensionValue(String)}.
+	 * @return Identificador de clave o <code>null</code> si la extensi&oacute;n no lo incluye o no
+	 *         se puede leer. */
+	static byte[] getAuthorityKeyIdentifier(final byte[] extensionValue) {
+		// OCTET STRING que contiene una secuencia cuyo primer elemento opcional [0] es el identificador
+		return getDerValue(getDerValue(getDerValue(extensionValue, 0x04), 0x30), 0x80);
+	}
+
+	/** Obtiene el contenido de un valor DER si tiene la etiqueta indicada.
+	 * @param der Valor DER.
+	 * @param tag Etiqueta esperada.
+	 * @return Contenido del valor o <code>null</code> si no tiene la etiqueta o est&aacute; mal formado. */
+	static byte[] getDerValue(final byte[] der, final int tag) {
+		if (der == null || der.length < 2 || (der[0] & 0xFF) != tag) {
+			return null;
+		}
+		int length = der[1] & 0xFF;
+		int offset = 2;
+		if (length > 0x80) {
+			final int lengthBytes = length & 0x7F;
+			if (lengthBytes > 3 || der.length < 2 + lengthBytes) {
+				return null;
+			}
+			length = 0;
+			for (int i = 0; i < lengthBytes; i++) {
+				length = length << 8 | der[offset++] & 0xFF;
+			}
+		}
+		else if (length == 0x80) {
+			return null;
+		}
+		if (offset + length > der.length) {
+			return null;
+		}
+		return Arrays.copyOfRange(der, offset, offset + length);
+	}
+
+	/** Certificado de confianza con sus par&aacute;metros de validaci&oacute;n. */
+	static final class Anchor {
+
+		final X509Certificate cert;
+		final byte[] keyId;
+		private PKIXParameters parameters = null;
+		private Boolean selfSigned = null;
+
+		Anchor(final X509Certificate cert) {
+			this.cert = cert;
+			this.keyId = getSubjectKeyIdentifier(cert);
+		}
+
+		PKIXParameters getParameters() throws InvalidAlgorithmParameterException {
+			if (this.parameters == null) {
+				this.parameters = new PKIXParameters(Collections.singleton(new TrustAnchor(this.cert, null)));
+				this.parameters.setRevocationEnabled(false);
+			}
+			return this.parameters;
+		}
+
+		boolean isSelfSigned() throws CertificateException, NoSuchAlgorithmException, NoSuchProviderException {
+			if (this.selfSigned == null) {
+				this.selfSigned = Boolean.valueOf(CertChainValidator.isSelfSigned(this.cert));
+			}
+			return this.selfSigned.booleanValue();
+		}
+	}
+
+	/** &Iacute;ndice de un almac&eacute;n de confianza junto a los datos con los que se detectan
+	 * cambios en su fichero. */
+	private static final class CachedIndex {
+
+		final TrustAnchorIndex index;
+		final long lastModified;
+		final long length;
+		final byte[] storepassDigest;
+
+		CachedIndex(final TrustAnchorIndex index, final long lastModified, final long length, final byte[] storepassDigest) {
+			this.index = index;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.storepassDigest = storepassDigest;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package es.gob.afirma.keystores.chain.verifier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Pruebas del &iacute;ndice de certificados de confianza: validaci&oacute;n de cadenas y
+ * an&aacute;lisis DER de los identificadores de clave.
+ * Las cadenas de <code>trust_anchor_index.jks</code> se han generado con <code>keytool</code>
+ * con una validez de cien a&ntilde;os:
+ * <ul>
+ *  <li><code>root</code> &rarr; <code>intermediate</code> &rarr; <code>subintermediate</code> &rarr; <code>leaf</code>.</li>
+ *  <li><code>renewed-old</code> y <code>renewed-new</code>: dos ra&iacute;ces con el mismo titular y distinta
+ *      clave. <code>renewed-leaf</code> lo emite <code>renewed-new</code>.</li>
+ *  <li><code>cross-a</code> y <code>cross-b</code>: certificados cruzados entre las CA A y B.
+ *      <code>cross-root-a</code> es la ra&iacute;z autofirmada de A, que emite <code>cross-leaf</code>.</li>
+ * </ul> */
+public final class TestTrustAnchorIndex {
+
+	private static final String CHAINS_KEYSTORE = "trust_anchor_index.jks"; //$NON-NLS-1$
+	private static final String CHAINS_KEYSTORE_PASSWORD = "12341234"; //$NON-NLS-1$
+
+	/** Comprueba la validaci&oacute;n de una cadena con varios niveles de certificados intermedios.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testMultiLevelChain() throws Exception {
+		final KeyStore ks = loadChains();
+		final X509Certificate leaf = getCert(ks, "leaf"); //$NON-NLS-1$
+
+		Assert.assertTrue(new TrustAnchorIndex(
+			getCert(ks, "root"), getCert(ks, "intermediate"), getCert(ks, "subintermediate") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		).validate(leaf));
+
+		// El orden de los certificados de confianza no influye
+		final TrustAnchorIndex reversed = new TrustAnchorIndex(
+			getCert(ks, "subintermediate"), getCert(ks, "intermediate"), getCert(ks, "root") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		);
+		Assert.assertTrue(reversed.validate(leaf));
+		// Los intermedios ya comprobados se recuerdan y se validan de nuevo con el mismo resultado
+		Assert.assertTrue(reversed.validate(leaf));
+		Assert.assertTrue(reversed.validate(getCert(ks, "subintermediate"))); //$NON-NLS-1$
+
+		// Falta un nivel intermedio
+		Assert.assertFalse(new TrustAnchorIndex(
+			getCert(ks, "root"), getCert(ks, "subintermediate") //$NON-NLS-1$ //$NON-NLS-2$
+		).validate(leaf));
+
+		// Falta la raiz
+		Assert.assertFalse(new TrustAnchorIndex(
+			getCert(ks, "intermediate"), getCert(ks, "subintermediate") //$NON-NLS-1$ //$NON-NLS-2$
+		).validate(leaf));
+	}
+
+	/** Comprueba que, entre varios certificados de confianza con el mismo titular, se prueba primero
+	 * el que tiene el identificador de clave de la autoridad del certificado.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testAuthorityKeyIdentifierOrdering() throws Exception {
+		final KeyStore ks = loadChains();
+		final X509Certificate oldRoot = getCert(ks, "renewed-old"); //$NON-NLS-1$
+		final X509Certificate newRoot = getCert(ks, "renewed-new"); //$NON-NLS-1$
+		final X509Certificate leaf = getCert(ks, "renewed-leaf"); //$NON-NLS-1$
+		Assert.assertEquals(oldRoot.getSubjectX500Principal(), newRoot.getSubjectX500Principal());
+
+		final TrustAnchorIndex oldFirst = new TrustAnchorIndex(oldRoot, newRoot);
+		Assert.assertEquals(newRoot, oldFirst.getIssuerCandidates(leaf).get(0).cert);
+		Assert.assertTrue(oldFirst.validate(leaf));
+
+		final TrustAnchorIndex newFirst = new TrustAnchorIndex(newRoot, oldRoot);
+		Assert.assertEquals(newRoot, newFirst.getIssuerCandidates(leaf).get(0).cert);
+		Assert.assertTrue(newFirst.validate(leaf));
+
+		// Con el mismo titular pero otra clave no hay cadena valida
+		Assert.assertFalse(new TrustAnchorIndex(oldRoot).validate(leaf));
+	}
+
+	/** Comprueba que la b&uacute;squeda termina cuando los certificados cruzados forman un ciclo.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test(timeout = 10000)
+	public void testCrossCertificateCycle() throws Exception {
+		final KeyStore ks = loadChains();
+		final X509Certificate leaf = getCert(ks, "cross-leaf"); //$NON-NLS-1$
+
+		// A esta firmado por B y B por A, sin ninguna raiz
+		Assert.assertFalse(new TrustAnchorIndex(
+			getCert(ks, "cross-a"), getCert(ks, "cross-b") //$NON-NLS-1$ //$NON-NLS-2$
+		).validate(leaf));
+
+		// Con la raiz de A se encuentra la cadena aunque se pruebe antes el certificado cruzado
+		Assert.assertTrue(new TrustAnchorIndex(
+			getCert(ks, "cross-a"), getCert(ks, "cross-b"), getCert(ks, "cross-root-a") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		).validate(leaf));
+	}
+
+	/** Comprueba que una cadena bien formada pero caducada no se da por v&aacute;lida.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testExpiredChain() throws Exception {
+		final KeyStore ks = KeyStore.getInstance("PKCS12"); //$NON-NLS-1$
+		try (final InputStream is = ClassLoader.getSystemResourceAsStream("ANF_PF_Activo.pfx")) { //$NON-NLS-1$
+			ks.load(is, "12341234".toCharArray()); //$NON-NLS-1$
+		}
+		final Certificate[] chain = ks.getCertificateChain("anf usuario activo"); //$NON-NLS-1$
+		Assert.assertEquals(2, chain.length);
+		Assert.assertFalse(new TrustAnchorIndex((X509Certificate) chain[1]).validate((X509Certificate) chain[0]));
+	}
+
+	/** Comprueba que el &iacute;ndice de un almac&eacute;n JKS se reutiliza mientras no cambia el
+	 * fichero y se vuelve a cargar cuando cambia.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testReloadAfterKeyStoreChange() throws Exception {
+		final KeyStore ks = loadChains();
+		final X509Certificate subintermediate = getCert(ks, "subintermediate"); //$NON-NLS-1$
+
+		final File jks = File.createTempFile("trust", ".jks"); //$NON-NLS-1$ //$NON-NLS-2$
+		jks.deleteOnExit();
+		writeKeyStore(jks, getCert(ks, "root"), getCert(ks, "intermediate")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		final TrustAnchorIndex first = TrustAnchorIndex.fromKeyStoreFile(jks.getAbsolutePath(), CHAINS_KEYSTORE_PASSWORD);
+		Assert.assertTrue(first.validate(subintermediate));
+		Assert.assertSame(first, TrustAnchorIndex.fromKeyStoreFile(jks.getAbsolutePath(), CHAINS_KEYSTORE_PASSWORD));
+
+		// Se quita la raiz del almacen
+		final long lastModified = jks.lastModified();
+		writeKeyStore(jks, getCert(ks, "intermediate")); //$NON-NLS-1$
+		Assert.assertTrue(jks.setLastModified(lastModified + 10000));
+
+		final TrustAnchorIndex reloaded = TrustAnchorIndex.fromKeyStoreFile(jks.getAbsolutePath(), CHAINS_KEYSTORE_PASSWORD);
+		Assert.assertNotSame(first, reloaded);
+		Assert.assertFalse(reloaded.validate(subintermediate));
+
+		Assert.assertTrue(jks.delete());
+	}
+
+	private static KeyStore loadChains() throws Exception {
+		final KeyStore ks = KeyStore.getInstance("JKS"); //$NON-NLS-1$
+		try (final InputStream is = ClassLoader.getSystemResourceAsStream(CHAINS_KEYSTORE)) {
+			ks.load(is, CHAINS_KEYSTORE_PASSWORD.toCharArray());
+		}
+		return ks;
+	}
+
+	private static X509Certificate getCert(final KeyStore ks, final String alias) throws Exception {
+		final X509Certificate cert = (X509Certificate) ks.getCertificate(alias);
+		Assert.assertNotNull("No se encuentra el certificado " + alias, cert); //$NON-NLS-1$
+		return cert;
+	}
+
+	private static void writeKeyStore(final File file, final X509Certificate... certs) throws Exception {
+		final KeyStore ks = KeyStore.getInstance("JKS"); //$NON-NLS-1$
+		ks.load(null, null);
+		for (int i = 0; i < certs.length; i++) {
+			ks.setCertificateEntry("cert" + i, certs[i]); //$NON-NLS-1$
+		}
+		try (final OutputStream os = new FileOutputStream(file)) {
+			ks.store(os, CHAINS_KEYSTORE_PASSWORD.toCharArray());
+		}
+	}
+
+	private static final byte[] KEY_ID = new byte[] {
+		0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0A,
+		0x0B, 0x0C, 0x0D, 0x0E, 0x0F, 0x10, 0x11, 0x12, 0x13, 0x14
+	};
+
+	/** Comprueba la lectura de valores DER con longitud corta y larga y el rechazo de los
+	 * valores con otra etiqueta, longitud indefinida o truncados. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testDerValue() {
+		Assert.assertArrayEquals(KEY_ID, TrustAnchorIndex.getDerValue(tlv(0x04, KEY_ID), 0x04));
+
+		// Longitud en forma larga de uno y dos bytes
+		final byte[] medium = new byte[200];
+		medium[199] = 0x55;
+		Assert.assertArrayEquals(medium, TrustAnchorIndex.getDerValue(tlv(0x04, medium), 0x04));
+		final byte[] large = new byte[300];
+		large[299] = 0x55;
+		Assert.assertArrayEquals(large, TrustAnchorIndex.getDerValue(tlv(0x04, large), 0x04));
+
+		// Los datos que siguen al valor no forman parte de este
+		final byte[] withTrailer = concat(tlv(0x04, KEY_ID), new byte[] { 0x05, 0x00 });
+		Assert.assertArrayEquals(KEY_ID, TrustAnchorIndex.getDerValue(withTrailer, 0x04));
+
+		Assert.assertNull(TrustAnchorIndex.getDerValue(tlv(0x04, KEY_ID), 0x30));
+		Assert.assertNull(TrustAnchorIndex.getDerValue(new byte[] { 0x04, (byte) 0x80, 0x00, 0x00 }, 0x04));
+		Assert.assertNull(TrustAnchorIndex.getDerValue(new byte[] { 0x04, 0x05, 0x01, 0x02 }, 0x04));
+		Assert.assertNull(TrustAnchorIndex.getDerValue(new byte[] { 0x04, (byte) 0x82, 0x01 }, 0x04));
+		Assert.assertNull(TrustAnchorIndex.getDerValue(new byte[] { 0x04 }, 0x04));
+		Assert.assertNull(TrustAnchorIndex.getDerValue(null, 0x04));
+	}
+
+	/** Comprueba la lectura del identificador de clave de la autoridad con y sin el resto de
+	 * campos opcionales de la extensi&oacute;n. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testAuthorityKeyIdentifier() {
+		final byte[] keyIdOnly = tlv(0x04, tlv(0x30, tlv(0x80, KEY_ID)));
+		Assert.assertArrayEquals(KEY_ID, TrustAnchorIndex.getAuthorityKeyIdentifier(keyIdOnly));
+
+		// Identificador seguido del emisor [1] y el numero de serie [2] del certificado de la autoridad
+		final byte[] full = tlv(0x04, tlv(0x30, concat(
+			tlv(0x80, KEY_ID),
+			tlv(0xA1, tlv(0xA4, tlv(0x30, new byte[0]))),
+			tlv(0x82, new byte[] { 0x01 })
+		)));
+		Assert.assertArrayEquals(KEY_ID, TrustAnchorIndex.getAuthorityKeyIdentifier(full));
+
+		// Sin identificador de clave, solo emisor y numero de serie
+		final byte[] noKeyId = tlv(0x04, tlv(0x30, concat(
+			tlv(0xA1, tlv(0xA4, tlv(0x30, new byte[0]))),
+			tlv(0x82, new byte[] { 0x01 })
+		)));
+		Assert.assertNull(TrustAnchorIndex.getAuthorityKeyIdentifier(noKeyId));
+
+		Assert.assertNull(TrustAnchorIndex.getAuthorityKeyIdentifier((byte[]) null));
+	}
+
+	/** Comprueba la lectura del identificador de clave del titular. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testSubjectKeyIdentifier() {
+		Assert.assertArrayEquals(KEY_ID, TrustAnchorIndex.getSubjectKeyIdentifier(tlv(0x04, tlv(0x04, KEY_ID))));
+		Assert.assertNull(TrustAnchorIndex.getSubjectKeyIdentifier(tlv(0x04, tlv(0x30, KEY_ID))));
+	}
+
+	/** Codifica un valor DER. */
+	private static byte[] tlv(final int tag, final byte[] value) {
+		final byte[] length;
+		if (value.length < 0x80) {
+			length = new byte[] { (byte) value.length };
+		}
+		else if (value.length < 0x100) {
+			length = new byte[] { (byte) 0x81, (byte) value.length };
+		}
+		else {
+			length = new byte[] { (byte) 0x82, (byte) (value.length >> 8), (byte) value.length };
+		}
+		return concat(new byte[] { (byte) tag }, length, value);
+	}
+
+	private static byte[] concat(final byte[]... parts) {
+		int total = 0;
+		for (final byte[] part : parts) {
+			total += part.length;
+		}
+		final byte[] ret = new byte[total];
+		int pos = 0;
+		for (final byte[] part : parts) {
+			System.arraycopy(part, 0, ret, pos, part.length);
+			pos += part.length;
+		}
+		return ret;
+	}
+}
@@ -10,27 +10,19 @@
 
 package es.gob.afirma.local;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
-import java.util.logging.Logger;
-
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
+import java.security.cert.X509Certificate;
 
 import es.gob.afirma.core.AOException;
 import es.gob.afirma.core.misc.Base64;
 import es.gob.afirma.core.signers.AOPkcs1Signer;
 import es.gob.afirma.core.signers.TriphaseData;
 import es.gob.afirma.core.signers.TriphaseDataSigner;
-import es.gob.afirma.local.signers.batch.server.BatchPostsigner;
-import es.gob.afirma.local.signers.batch.server.BatchPresigner;
+import es.gob.afirma.local.signers.batch.BatchException;
+import es.gob.afirma.local.signers.batch.SignBatch;
 
 /** Cliente del servicio de firma por lote.
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s. */
@@ -132,7 +124,7 @@ public final class BatchSigner {
 	 *  &lt;/singlesign&gt;
 	 * &lt;/signbatch&gt;
 	 * </pre>
-	 * @param batchB64 XML de definici&oacute;n del lote de firmas.
+	 * @param batchB64 XML de definici&oacute;n del lote de firmas en Base64 (puede ser <i>URL Safe</i>).
 	 * @param certificates Cadena de certificados del firmante.
 	 * @param pk Clave privada para realizar las firmas cliente.
 	 * @return Registro del resultado general del proceso por lote, en un XML con este esquema:
@@ -174,6 +166,33 @@ public final class BatchSigner {
 		if (batchB64 == null || batchB64.isEmpty()) {
 			throw new IllegalArgumentException("El lote de firma no puede ser nulo ni vacio"); //$NON-NLS-1$
 		}
+		return sign(
+			Base64.decode(batchB64.replace("-", "+").replace("_", "/")), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			certificates,
+			pk
+		);
+	}
+
+	/** Procesa un lote de firmas en el propio proceso.
+	 * Los datos trif&aacute;sicos pasan directamente de la prefirma a las firmas PKCS#1
+	 * y de estas a la postfirma, sin serializarse a XML ni codificarse en Base64 entre
+	 * fases. La definici&oacute;n del lote sigue el mismo esquema que en
+	 * {@link #sign(String, Certificate[], PrivateKey)}.
+	 * @param batchXml XML de definici&oacute;n del lote de firmas.
+	 * @param certificates Cadena de certificados del firmante.
+	 * @param pk Clave privada para realizar las firmas cliente.
+	 * @return Registro del resultado general del proceso por lote, en XML.
+	 * @throws IOException Si hay problemas de red o en el tratamiento de datos.
+	 * @throws CertificateEncodingException Si los certificados proporcionados no son v&aacute;lidos.
+	 * @throws AOException Si hay errores en las firmas cliente o en el proceso del lote. */
+	public static String sign(final byte[] batchXml,
+			                  final Certificate[] certificates,
+			                  final PrivateKey pk) throws CertificateEncodingException,
+			                                              IOException,
+			                                              AOException {
+		if (batchXml == null || batchXml.length < 1) {
+			throw new IllegalArgumentException("El lote de firma no puede ser nulo ni vacio"); //$NON-NLS-1$
+		}
 
 		if (certificates == null || certificates.length < 1) {
 			throw new IllegalArgumentException(
@@ -181,76 +200,48 @@ public final class BatchSigner {
 			);
 		}
 
-		final String batchUrlSafe = batchB64.replace("+", "-").replace("/",  "_");  //$NON-NLS-1$ //$NON-NLS-2$//$NON-NLS-3$ //$NON-NLS-4$
+		final X509Certificate[] certChain = getX509CertChain(certificates);
 
-		// Llama a BatchPresigner simulando la funcionalidad del servidor
-		byte[] ret = BatchPresigner.doBatchPreSign(batchUrlSafe, getCertChainAsBase64(certificates)).getBytes();
+		final SignBatch batch = SignBatch.createSignBatch(batchXml);
 
-		final TriphaseData td1 = TriphaseData.parser(ret);
+		// Prefirma de todos los documentos del lote
+		final TriphaseData td1;
+		try {
+			td1 = batch.doPreBatchTriphaseData(certChain);
+		}
+		catch (final BatchException e) {
+			throw new AOException("Error en el preproceso del lote: " + e, e); //$NON-NLS-1$
+		}
 
-		// El cliente hace los PKCS#1 generando TD2, que envia de nuevo al servidor
+		// Se hacen los PKCS#1 generando TD2
 		final TriphaseData td2 = TriphaseDataSigner.doSign(
 			new AOPkcs1Signer(),
-			getAlgorithm(batchB64),
+			batch.getSignAlgorithm().toString(),
 			pk,
 			certificates,
 			td1
 		);
 
-		// Llamar a BatchPostsigner simulando la funcionalidad del servidor
-		ret = BatchPostsigner.doBatchPostSign(
-				batchUrlSafe, 
-				getCertChainAsBase64(certificates), 
-				Base64.encode(td2.toString().getBytes())
-			).getBytes();
-
-		return new String(ret);
-	}
-
-	private static String getCertChainAsBase64(final Certificate[] certChain) throws CertificateEncodingException {
-		final StringBuilder sb = new StringBuilder();
-		for (final Certificate cert : certChain) {
-			sb.append(Base64.encode(cert.getEncoded(), true));
-			sb.append(";"); //$NON-NLS-1$
-		}
-		final String ret = sb.toString();
-
-		// Quitamos el ";" final
-		return ret.substring(0, ret.length()-1);
-	}
-
-	private static String getAlgorithm(final String batch) throws IOException {
-		final byte[] xml =  Base64.decode(batch.replace("-", "+").replace("_", "/")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
-		final Document doc;
-		try (
-				final InputStream is = new ByteArrayInputStream(xml)
-				) {
-			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is);
-		}
-		catch (final Exception e) {
-			Logger.getLogger("es.gob.afirma").severe("Error al cargar el fichero XML de lote: " + e + "\n" + new String(xml)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-			throw new IOException("Error al cargar el fichero XML de lote: " + e, e); //$NON-NLS-1$
+		// Postfirma de todos los documentos del lote
+		try {
+			return batch.doPostBatch(certChain, td2);
 		}
-
-		final Node signBatchNode = doc.getDocumentElement();
-		if (!"signbatch".equalsIgnoreCase(signBatchNode.getNodeName())) { //$NON-NLS-1$
-			throw new IllegalArgumentException("No se encontro el nodo 'signbatch' en el XML proporcionado"); //$NON-NLS-1$
+		catch (final BatchException e) {
+			throw new AOException("Error en el postproceso del lote: " + e, e); //$NON-NLS-1$
 		}
+	}
 
-		final NamedNodeMap nnm = signBatchNode.getAttributes();
-		if (nnm != null) {
-			final Node tmpNode = nnm.getNamedItem("algorithm"); //$NON-NLS-1$
-			if (tmpNode != null) {
-				return tmpNode.getNodeValue();
+	private static X509Certificate[] getX509CertChain(final Certificate[] certChain) throws CertificateEncodingException {
+		final X509Certificate[] ret = new X509Certificate[certChain.length];
+		for (int i = 0; i < certChain.length; i++) {
+			if (!(certChain[i] instanceof X509Certificate)) {
+				throw new CertificateEncodingException(
+					"La cadena de certificados del firmante debe estar compuesta por certificados X.509" //$NON-NLS-1$
+				);
 			}
-			throw new IllegalArgumentException(
-				"El nodo 'signbatch' debe contener al manos el atributo de algoritmo" //$NON-NLS-1$
-			);
+			ret[i] = (X509Certificate) certChain[i];
 		}
-		throw new IllegalArgumentException(
-			"El nodo 'signbatch' debe contener al manos el atributo de algoritmo" //$NON-NLS-1$
-		);
-
+		return ret;
 	}
 
 }
@@ -1,23 +1,11 @@
 package es.gob.afirma.local.signers.batch;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
 import es.gob.afirma.core.signers.TriphaseData;
 
 /** Lote de firmas electr&oacute;nicas.
@@ -76,10 +64,19 @@ public abstract class SignBatch {
 	protected boolean stopOnError = false;
 
 	/** Ejecuta el preproceso de firma por lote.
+	 * @param certChain Cadena de certificados del firmante.
+	 * @return Datos trif&aacute;sicos de pre-firma del lote, serializados en XML.
+	 * @throws BatchException Si hay errores irrecuperables en el proceso. */
+	public String doPreBatch(final X509Certificate[] certChain) throws BatchException {
+		return doPreBatchTriphaseData(certChain).toString();
+	}
+
+	/** Ejecuta el preproceso de firma por lote obteniendo directamente los datos
+	 * trif&aacute;sicos, sin serializarlos, para su uso en el propio proceso.
 	 * @param certChain Cadena de certificados del firmante.
 	 * @return Datos trif&aacute;sicos de pre-firma del lote.
 	 * @throws BatchException Si hay errores irrecuperables en el proceso. */
-	public abstract String doPreBatch(final X509Certificate[] certChain) throws BatchException;
+	public abstract TriphaseData doPreBatchTriphaseData(final X509Certificate[] certChain) throws BatchException;
 
 	/** Ejecuta el postproceso de firma por lote.
 	 * @param certChain Cadena de certificados del firmante.
@@ -91,6 +88,20 @@ public abstract class SignBatch {
 	public abstract String doPostBatch(final X509Certificate[] certChain,
                                        final TriphaseData td) throws BatchException;
 
+	/** Crea un lote de firmas a partir de su definici&oacute;n XML, para ejecuci&oacute;n
+	 * concurrente o secuencial seg&uacute;n la propiedad <code>concurrentmode</code> de
+	 * <code>signbatch.properties</code>.
+	 * @param xml XML de definici&oacute;n de lote de firmas (<a href="./doc-files/batch-scheme.html">descripci&oacute;n
+	 *            del formato</a>).
+	 * @return Lote de firmas.
+	 * @throws IOException Si hay problemas en el tratamiento de datoso en el an&aacute;lisis del XML. */
+	public static SignBatch createSignBatch(final byte[] xml) throws IOException {
+		if (SignBatchConfig.isConcurrentMode()) {
+			return new SignBatchConcurrent(xml);
+		}
+		return new SignBatchSerial(xml);
+	}
+
 	/** Crea un lote de firmas a partir de su definici&oacute;n XML.
 	 * @param xml XML de definici&oacute;n de lote de firmas (<a href="./doc-files/batch-scheme.html">descripci&oacute;n
 	 *            del formato</a>).
@@ -103,82 +114,12 @@ public abstract class SignBatch {
 			);
 		}
 
-		// ****************************************************
-		// *********** Carga del XML **************************
-		
-		final Document doc;
-		try (
-				final InputStream is = new ByteArrayInputStream(xml)
-				){
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		    factory.setNamespaceAware(true);
-		    DocumentBuilder builder = factory.newDocumentBuilder();
-		    doc = builder.parse(is);
-		}
-		catch (final Exception e) {
-			Logger.getLogger("es.gob.afirma").severe( //$NON-NLS-1$
-				"Error al cargar el fichero XML de definicion de lote: " + e + "\n" + new String(xml) //$NON-NLS-1$ //$NON-NLS-2$
-			);
-			throw new IOException("Error al cargar el fichero XML de definicion de lote: " + e, e); //$NON-NLS-1$
-		}
-		// *********** Fin carga del XML **********************
-		// ****************************************************
-
-		final Node signBatchNode = doc.getDocumentElement();
-		if (!"signbatch".equalsIgnoreCase(signBatchNode.getNodeName())) { //$NON-NLS-1$
-			throw new IllegalArgumentException("No se encontro el nodo 'signbatch' en el XML proporcionado"); //$NON-NLS-1$
-		}
-
-		// ****************************************************
-		// ****** Analisis opciones generales del XML *********
-		this.stopOnError = true;
-		final NamedNodeMap nnm = signBatchNode.getAttributes();
-		if (nnm != null) {
-			Node tmpNode = nnm.getNamedItem("stoponerror"); //$NON-NLS-1$
-			if (tmpNode != null) {
-				this.stopOnError = !"false".equalsIgnoreCase(tmpNode.getNodeValue()); //$NON-NLS-1$
-			}
-			tmpNode = nnm.getNamedItem("algorithm"); //$NON-NLS-1$
-			if (tmpNode != null) {
-				this.algorithm = SingleSignConstants.SignAlgorithm.getAlgorithm(tmpNode.getNodeValue());
-			}
-			else {
-				throw new IllegalArgumentException(
-					"El nodo 'signbatch' debe contener al manos el atributo de algoritmo" //$NON-NLS-1$
-				);
-			}
-			tmpNode = nnm.getNamedItem("concurrenttimeout"); //$NON-NLS-1$
-			if (tmpNode != null) {
-				try {
-					this.concurrentTimeout = Long.parseLong(tmpNode.getNodeValue());
-				}
-				catch(final Exception e) {
-					LOGGER.severe(
-						"Se ha especificado un valor invalido para la espera maxima (" + tmpNode.getNodeValue() + "), se usara el valor por defecto (" + Long.MAX_VALUE + "): " + e //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-					);
-				}
-			}
-
-			this.id = UUID.randomUUID().toString();
-			tmpNode = nnm.getNamedItem("Id"); //$NON-NLS-1$
-			if (tmpNode != null) {
-				this.id = tmpNode.getNodeValue();
-			}
-		}
-		else {
-			throw new IllegalArgumentException(
-				"El nodo 'signbatch' debe contener al manos el atributo de algoritmo" //$NON-NLS-1$
-			);
-		}
-		// ****** Fin analisis opciones generales del XML *****
-		// ****************************************************
-
-		// ****************************************************
-		// ****** Analisis firmas individuales del XML ********
-		this.signs = parseSignBatchNode(signBatchNode);
-		// ****** Fin analisis firmas individuales del XML ****
-		// ****************************************************
-
+		final SignBatchXmlReader reader = SignBatchXmlReader.read(xml);
+		this.stopOnError = reader.isStopOnError();
+		this.algorithm = reader.getAlgorithm();
+		this.concurrentTimeout = reader.getConcurrentTimeout();
+		this.id = reader.getId();
+		this.signs = reader.getSigns();
 	}
 
 	protected SignBatch(final List<SingleSign> signatures,
@@ -201,36 +142,6 @@ public abstract class SignBatch {
 		this.id = UUID.randomUUID().toString();
 	}
 
-	private static List<SingleSign> parseSignBatchNode(final Node n) throws DOMException, IOException {
-		final NodeList childNodes = n.getChildNodes();
-		final List<SingleSign> ret = new ArrayList<>();
-		int idx = nextNodeElementIndex(childNodes, 0);
-		while (idx != -1) {
-			ret.add(new SingleSign(childNodes.item(idx)));
-			idx = nextNodeElementIndex(childNodes, idx + 1);
-		}
-		return ret;
-	}
-
-	/** Recupera el &iacute;ndice del siguiente nodo de la lista de tipo <code>Element</code>.
-	 * Empieza a comprobar los nodos a partir del &iacute;ndice marcado. Si no encuentra un
-	 * nodo de tipo <i>elemento</i> devuelve -1.
-	 * @param nodes Listado de nodos.
-	 * @param currentIndex &Iacute;ndice del listado a partir del cual se empieza la comprobaci&oacute;n.
-	 * @return &Iacute;ndice del siguiente node de tipo Element o -1 si no se encontr&oacute;. */
-	private static int nextNodeElementIndex(final NodeList nodes, final int currentIndex) {
-		Node node;
-		int i = currentIndex;
-		while (i < nodes.getLength()) {
-			node = nodes.item(i);
-			if (node.getNodeType() == Node.ELEMENT_NODE) {
-				return i;
-			}
-			i++;
-		}
-		return -1;
-	}
-
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder(
@@ -272,12 +183,18 @@ public abstract class SignBatch {
 		return ret.toString();
 	}
 
-	protected void deleteAllTemps() {
-		final TempStore ts = TempStoreFactory.getTempStore();
-		for (final SingleSign ss : this.signs) {
-			ts.delete(ss, getId());
+	/** A&ntilde;ade a unos datos trif&aacute;sicos las operaciones de firma de otros.
+	 * @param target Datos trif&aacute;sicos de destino.
+	 * @param source Datos trif&aacute;sicos de origen. */
+	protected static void addSignOperations(final TriphaseData target, final TriphaseData source) {
+		for (int i = 0; i < source.getSignsCount(); i++) {
+			target.addSignOperation(source.getSign(i));
 		}
 	}
 
+	protected void deleteAllTemps() {
+		TempStoreFactory.getTempStore().deleteAll(getId());
+	}
+
 
 }
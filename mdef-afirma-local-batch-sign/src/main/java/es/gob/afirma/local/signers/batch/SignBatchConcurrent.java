@@ -2,23 +2,21 @@ package es.gob.afirma.local.signers.batch;
 
 import java.io.IOException;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import es.gob.afirma.core.signers.TriphaseData;
+import es.gob.afirma.local.signers.batch.SignBatchExecutor.SignTaskHandler;
 import es.gob.afirma.local.signers.batch.SingleSign.CallableResult;
 import es.gob.afirma.local.signers.batch.SingleSign.ProcessResult;
 import es.gob.afirma.local.signers.batch.SingleSign.ProcessResult.Result;
 import es.gob.afirma.local.signers.batch.SingleSignConstants.SignAlgorithm;
 
 /** Lote de firmas electr&oacute;nicas que se ejecuta en paralelo.
+ * Las firmas se procesan en el conjunto de hilos compartido de {@link SignBatchExecutor}
+ * y sus resultados se recogen seg&uacute;n van finalizando.
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s. */
 public final class SignBatchConcurrent extends SignBatch {
 
@@ -41,235 +39,247 @@ public final class SignBatchConcurrent extends SignBatch {
 		super(signs, algo, soe);
 	}
 
-	private static final int MAX_CONCURRENT_SIGNS = 10;
+	@Override
+	public TriphaseData doPreBatchTriphaseData(final X509Certificate[] certChain) throws BatchException {
+
+		final TriphaseData td = new TriphaseData();
+
+		SignBatchExecutor.execute(
+			this.signs,
+			new PreProcessHandler(certChain, td),
+			this.concurrentTimeout
+		);
+
+		return td;
+	}
 
 	@Override
-	public String doPreBatch(final X509Certificate[] certChain) throws BatchException {
+	public String doPostBatch(final X509Certificate[] certChain,
+                              final TriphaseData td) throws BatchException {
+
+		if (td == null) {
+			throw new IllegalArgumentException(
+				"Los datos de sesion trifasica no pueden ser nulos" //$NON-NLS-1$
+			);
+		}
+
+		final PostProcessHandler postProcessHandler = new PostProcessHandler(certChain, td);
+		SignBatchExecutor.execute(
+			this.signs,
+			postProcessHandler,
+			this.concurrentTimeout
+		);
 
-		final ExecutorService executorService = Executors.newFixedThreadPool(MAX_CONCURRENT_SIGNS);
-		final Collection<Callable<String>> callables = new ArrayList<>(this.signs.size());
+		boolean error = postProcessHandler.isError();
 
-		for (final SingleSign ss : this.signs) {
-			final Callable<String> callable = ss.getPreProcessCallable(certChain, this.algorithm);
-			callables.add(callable);
+		// En este punto las firmas estan en almacenamiento temporal
+
+		// Si hubo errores y se indico parar en error no hacemos los guardados de datos, borramos los temporales
+		// y enviamos el log
+		if (error && this.stopOnError) {
+			deleteAllTemps();
+			return getResultLog();
 		}
 
-		final List<Future<String>> results;
-		try {
-			results = executorService.invokeAll(callables, this.concurrentTimeout, TimeUnit.SECONDS);
+		// En otro caso procedemos a la subida de datos
+
+		final SaveHandler saveHandler = new SaveHandler(TempStoreFactory.getTempStore());
+		SignBatchExecutor.execute(
+			this.signs,
+			saveHandler,
+			this.concurrentTimeout
+		);
+		error = error || saveHandler.isError();
+
+		deleteAllTemps();
+
+		// Tenemos los datos subidos, ahora hay que, si hubo error, deshacer
+		// los que se subiesen antes del error si se indico parar en error
+		if (error && this.stopOnError) {
+			for (final SingleSign ss : this.signs) {
+				if (ss.getProcessResult().wasSaved()) {
+					ss.rollbackSave();
+					ss.setProcessResult(ProcessResult.PROCESS_RESULT_ROLLBACKED);
+				}
+			}
 		}
-		catch (final InterruptedException e) {
-			throw new BatchException(
-				"Error en el preproceso en paralelo del lote de firma: " + e, //$NON-NLS-1$
-				e
-			);
+
+		return getResultLog();
+	}
+
+	/** Recogida de las prefirmas seg&uacute;n van finalizando. */
+	private final class PreProcessHandler implements SignTaskHandler<TriphaseData> {
+
+		private final X509Certificate[] certChain;
+		private final TriphaseData td;
+
+		PreProcessHandler(final X509Certificate[] certs, final TriphaseData out) {
+			this.certChain = certs;
+			this.td = out;
 		}
 
-		final StringBuilder sb = new StringBuilder("<xml>\n <firmas>"); //$NON-NLS-1$
+		@Override
+		public Callable<TriphaseData> getTask(final SingleSign ss) {
+			return ss.getPreProcessCallable(this.certChain, SignBatchConcurrent.this.algorithm);
+		}
 
-		for (final Future<String> f : results) {
-			String tmp;
+		@Override
+		public boolean onResult(final SingleSign ss, final Future<TriphaseData> result) throws BatchException {
+			final TriphaseData tmp;
 			try {
-				tmp = f.get();
+				tmp = result.get();
 			}
 			catch (final Exception e) {
-				if (this.stopOnError) {
+				if (SignBatchConcurrent.this.stopOnError) {
 					throw new BatchException(
-						"Error en una de las firmas del lote, se parara el proceso: " + e, e //$NON-NLS-1$
+						"Error en una de las firmas del lote (" + ss.getId() + "), se parara el proceso: " + e, e //$NON-NLS-1$ //$NON-NLS-2$
 					);
 				}
 				LOGGER.log(Level.SEVERE,
-					"Error en una de las firmas del lote, se continua con el siguiente elemento: " + e, //$NON-NLS-1$
+					"Error en una de las firmas del lote (" + ss.getId() + "), se continua con el siguiente elemento: " + e, //$NON-NLS-1$ //$NON-NLS-2$
 					e
 				);
-				continue;
+				return true;
 			}
-			sb.append(tmp);
+			addSignOperations(this.td, tmp);
+			return true;
 		}
 
-		sb.append("</firmas>\n</xml>"); //$NON-NLS-1$
-
-		executorService.shutdown();
-
-		return sb.toString();
+		@Override
+		public void onSkipped(final SingleSign ss) {
+			LOGGER.severe(
+				"No se ha realizado la prefirma de uno de los elementos del lote (" + ss.getId() + ")" //$NON-NLS-1$ //$NON-NLS-2$
+			);
+		}
 	}
 
-	@Override
-	public String doPostBatch(final X509Certificate[] certChain,
-                              final TriphaseData td) throws BatchException {
+	/** Recogida de las postfirmas seg&uacute;n van finalizando. */
+	private final class PostProcessHandler implements SignTaskHandler<CallableResult> {
 
-		if (td == null) {
-			throw new IllegalArgumentException(
-				"Los datos de sesion trifasica no pueden ser nulos" //$NON-NLS-1$
-			);
-		}
+		private final X509Certificate[] certChain;
+		private final TriphaseData td;
 
-		final ExecutorService executorService = Executors.newFixedThreadPool(MAX_CONCURRENT_SIGNS);
-		final Collection<Callable<CallableResult>> callables = new ArrayList<>(this.signs.size());
+		private boolean ignoreRemaining = false;
+		private boolean error = false;
 
-		for (final SingleSign ss : this.signs) {
-			final Callable<CallableResult> callable = ss.getPostProcessCallable(
-				certChain, td, this.algorithm, getId()
-			);
-			callables.add(callable);
+		PostProcessHandler(final X509Certificate[] certs, final TriphaseData triphaseData) {
+			this.certChain = certs;
+			this.td = triphaseData;
 		}
 
-		final List<Future<CallableResult>> results;
-		try {
-			results = executorService.invokeAll(callables, this.concurrentTimeout, TimeUnit.SECONDS);
+		boolean isError() {
+			return this.error;
 		}
-		catch (final InterruptedException e) {
-			throw new BatchException(
-				"Error en el postproceso en paralelo del lote de firma: " + e, //$NON-NLS-1$
-				e
+
+		@Override
+		public Callable<CallableResult> getTask(final SingleSign ss) {
+			return ss.getPostProcessCallable(
+				this.certChain, this.td, SignBatchConcurrent.this.algorithm, getId()
 			);
 		}
 
-		boolean ignoreRemaining = false;
-		boolean error = false;
+		@Override
+		public boolean onResult(final SingleSign ss, final Future<CallableResult> result) {
 
-		for (final Future<CallableResult> f : results) {
+			// Cuando se indica que se pare en error se marcan las firmas que no se han
+			// llegado a procesar
+			if (this.ignoreRemaining) {
+				ss.setProcessResult(ProcessResult.PROCESS_RESULT_SKIPPED);
+				return false;
+			}
 
-			final CallableResult tmp;
+			CallableResult tmp;
 			try {
-				tmp = f.get();
+				tmp = result.get();
 			}
 			catch (final Exception e) {
-				// Este caso no debe darse nunca, porque el call() del Callable no lanza excepciones
-				throw new IllegalStateException(
-					"Error en la recogida del resultados del postproceso en paralelo del lote de firma: " + e, //$NON-NLS-1$
-					e
-				);
+				// El call() del Callable no lanza excepciones, solo se llega aqui si la
+				// tarea se cancelo por superarse el tiempo maximo de espera
+				tmp = new CallableResult(ss.getId(), e);
 			}
 
-			if (!ignoreRemaining) {
-
-				// Si hay error
-				if (!tmp.isOk()) {
+			// Si todo fue bien
+			if (tmp.isOk()) {
+				ss.setProcessResult(ProcessResult.PROCESS_RESULT_OK_UNSAVED);
+				return true;
+			}
 
-					error = true;
+			this.error = true;
 
-					getSingleSignById(tmp.getSignatureId()).setProcessResult(
-						new ProcessResult(Result.ERROR_POST, tmp.getError().toString())
-					);
+			ss.setProcessResult(
+				new ProcessResult(Result.ERROR_POST, tmp.getError().toString())
+			);
 
-					if (this.stopOnError) {
-						LOGGER.severe(
-								"Error en una de las firmas del lote (" + tmp.getSignatureId() + "), se parara el proceso: " + tmp.getError() //$NON-NLS-1$ //$NON-NLS-2$
-								);
-						ignoreRemaining = true;
-					}
-					else {
-						LOGGER.warning(
-								"Error en una de las firmas del lote (" + tmp.getSignatureId() + "), se continua con el siguiente elemento: " + tmp.getError() //$NON-NLS-1$ //$NON-NLS-2$
-								);
-					}
-				}
-				// Si todo fue bien
-				else {
-					getSingleSignById(tmp.getSignatureId()).setProcessResult(
-						ProcessResult.PROCESS_RESULT_OK_UNSAVED
-					);
-				}
-			}
-			// Cuando se indica que se pare en error se marcan las firmas que no se han
-			// llegado a procesar
-			else {
-				getSingleSignById(tmp.getSignatureId()).setProcessResult(
-					ProcessResult.PROCESS_RESULT_SKIPPED
+			if (SignBatchConcurrent.this.stopOnError) {
+				LOGGER.severe(
+					"Error en una de las firmas del lote (" + ss.getId() + "), se parara el proceso: " + tmp.getError() //$NON-NLS-1$ //$NON-NLS-2$
 				);
+				this.ignoreRemaining = true;
+				return false;
 			}
-
+			LOGGER.warning(
+				"Error en una de las firmas del lote (" + ss.getId() + "), se continua con el siguiente elemento: " + tmp.getError() //$NON-NLS-1$ //$NON-NLS-2$
+			);
+			return true;
 		}
 
-		// En este punto las firmas estan en almacenamiento temporal
-
-		// Si hubo errores y se indico parar en error no hacemos los guardados de datos, borramos los temporales
-		// y enviamos el log
-		if (error && this.stopOnError) {
-			deleteAllTemps();
-			return getResultLog();
+		@Override
+		public void onSkipped(final SingleSign ss) {
+			ss.setProcessResult(ProcessResult.PROCESS_RESULT_SKIPPED);
 		}
+	}
 
-		// En otro caso procedemos a la subida de datos
+	/** Recogida de los guardados de firmas seg&uacute;n van finalizando. */
+	private final class SaveHandler implements SignTaskHandler<CallableResult> {
 
-		final TempStore ts = TempStoreFactory.getTempStore();
+		private final TempStore ts;
 
-		final Collection<Callable<CallableResult>> saveCallables = new ArrayList<>(this.signs.size());
-		for (final SingleSign ss : this.signs) {
-			final Callable<CallableResult> callable = ss.getSaveCallable(
-				ts, getId()
-			);
-			saveCallables.add(callable);
+		private boolean error = false;
+
+		SaveHandler(final TempStore tempStore) {
+			this.ts = tempStore;
 		}
 
-		final List<Future<CallableResult>> saveResults;
-		try {
-			saveResults = executorService.invokeAll(saveCallables, this.concurrentTimeout, TimeUnit.SECONDS);
+		boolean isError() {
+			return this.error;
 		}
-		catch (final InterruptedException e) {
-			throw new BatchException(
-				"Error en el preproceso en paralelo del lote de firma: " + e, //$NON-NLS-1$
-				e
-			);
+
+		@Override
+		public Callable<CallableResult> getTask(final SingleSign ss) {
+			return ss.getSaveCallable(this.ts, getId());
 		}
 
-		for (final Future<CallableResult> f : saveResults) {
-			final CallableResult result;
+		@Override
+		public boolean onResult(final SingleSign ss, final Future<CallableResult> result) {
+			CallableResult tmp;
 			try {
-				result = f.get();
+				tmp = result.get();
 			}
 			catch(final Exception e) {
-				// Este caso no debe darse nunca, porque el call() del Callable no lanza excepciones
-				throw new IllegalStateException(
-					"Error en la recogida del resultados del guardado en paralelo del lote de firma: " + e, //$NON-NLS-1$
-					e
-				);
+				// El call() del Callable no lanza excepciones, solo se llega aqui si la
+				// tarea se cancelo por superarse el tiempo maximo de espera
+				tmp = new CallableResult(ss.getId(), e);
 			}
 
-			if (result.isOk()) {
-				getSingleSignById(result.getSignatureId()).setProcessResult(
-					ProcessResult.PROCESS_RESULT_DONE_SAVED
-				);
-			}
-			else {
-				error = true;
-				getSingleSignById(result.getSignatureId()).setProcessResult(
-					new ProcessResult(
-						ProcessResult.Result.DONE_BUT_ERROR_SAVING,
-						result.getError().toString()
-					)
-				);
-				if (this.stopOnError) {
-					break;
-				}
+			if (tmp.isOk()) {
+				ss.setProcessResult(ProcessResult.PROCESS_RESULT_DONE_SAVED);
+				return true;
 			}
-		}
 
-		deleteAllTemps();
-
-		// Tenemos los datos subidos, ahora hay que, si hubo error, deshacer
-		// los que se subiesen antes del error si se indico parar en error
-		if (error && this.stopOnError) {
-			for (final SingleSign ss : this.signs) {
-				if (ss.getProcessResult().wasSaved()) {
-					ss.rollbackSave();
-					ss.setProcessResult(ProcessResult.PROCESS_RESULT_ROLLBACKED);
-				}
-			}
+			this.error = true;
+			ss.setProcessResult(
+				new ProcessResult(
+					ProcessResult.Result.DONE_BUT_ERROR_SAVING,
+					tmp.getError().toString()
+				)
+			);
+			return !SignBatchConcurrent.this.stopOnError;
 		}
 
-		return getResultLog();
-	}
-
-	private SingleSign getSingleSignById(final String id) {
-		for (final SingleSign ss: this.signs) {
-			if (ss.getId().equals(id)) {
-				return ss;
-			}
+		@Override
+		public void onSkipped(final SingleSign ss) {
+			// Se conserva el resultado del postproceso, la firma no se llega a guardar
 		}
-		return null;
 	}
 
-
 }
@@ -0,0 +1,125 @@
+package es.gob.afirma.local.signers.batch;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/** Configuraci&oacute;n del proceso de firma por lotes, cargada una &uacute;nica vez del
+ * fichero <code>signbatch.properties</code> del <i>classpath</i>.
+ * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s. */
+final class SignBatchConfig {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private static final String CONFIG_FILE = "/signbatch.properties"; //$NON-NLS-1$
+
+	/** N&uacute;mero m&aacute;ximo de firmas que se procesan simult&aacute;neamente. */
+	private static final String PROP_MAX_CURRENT_SIGNS = "maxcurrentsigns"; //$NON-NLS-1$
+
+	/** N&uacute;mero m&aacute;ximo de firmas de un lote pendientes de procesar o de recoger
+	 * a la vez (con sus datos cargados en memoria). */
+	private static final String PROP_MAX_LOADED_SIGNS = "maxloadedsigns"; //$NON-NLS-1$
+
+	/** Directorio para el almacenamiento temporal de las firmas. */
+	private static final String PROP_TMPDIR = "tmpdir"; //$NON-NLS-1$
+
+	/** Indica si los lotes se procesan de forma concurrente o secuencial. */
+	private static final String PROP_CONCURRENT_MODE = "concurrentmode"; //$NON-NLS-1$
+
+	private static final int DEFAULT_MAX_CURRENT_SIGNS = 10;
+
+	private static final Properties CONFIG = new Properties();
+	static {
+		try (
+			final InputStream is = SignBatchConfig.class.getResourceAsStream(CONFIG_FILE);
+		) {
+			if (is != null) {
+				CONFIG.load(is);
+			}
+			else {
+				LOGGER.warning(
+					"No se ha encontrado el fichero " + CONFIG_FILE + ", se usaran los valores por defecto" //$NON-NLS-1$ //$NON-NLS-2$
+				);
+			}
+		}
+		catch (final Exception e) {
+			LOGGER.severe(
+				"No se ha podido cargar la configuracion del proceso por lotes, se usaran los valores por defecto: " + e //$NON-NLS-1$
+			);
+		}
+	}
+
+	private SignBatchConfig() {
+		// No instanciable
+	}
+
+	/** Obtiene el valor de una propiedad de la configuraci&oacute;n del proceso por lotes.
+	 * @param key Nombre de la propiedad.
+	 * @param defaultValue Valor por defecto si la propiedad no est&aacute; establecida.
+	 * @return Valor de la propiedad o el valor por defecto si no est&aacute; establecida. */
+	static String getProperty(final String key, final String defaultValue) {
+		final String value = CONFIG.getProperty(key);
+		return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+	}
+
+	/** Obtiene el valor num&eacute;rico positivo de una propiedad de la configuraci&oacute;n.
+	 * @param key Nombre de la propiedad.
+	 * @param defaultValue Valor por defecto si la propiedad no est&aacute; establecida o
+	 *                     no es un n&uacute;mero positivo.
+	 * @return Valor de la propiedad o el valor por defecto. */
+	static long getPositiveLong(final String key, final long defaultValue) {
+		final String value = getProperty(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			final long ret = Long.parseLong(value);
+			if (ret > 0) {
+				return ret;
+			}
+		}
+		catch (final NumberFormatException e) {
+			// Se notifica a continuacion
+		}
+		LOGGER.warning(
+			"Valor invalido para la propiedad '" + key + "' (" + value + "), se usara el valor por defecto: " + defaultValue //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		);
+		return defaultValue;
+	}
+
+	/** Indica si los lotes se deben procesar de forma concurrente.
+	 * @return <code>true</code> si los lotes se procesan de forma concurrente,
+	 *         <code>false</code> si se procesan secuencialmente (por defecto). */
+	static boolean isConcurrentMode() {
+		return Boolean.parseBoolean(getProperty(PROP_CONCURRENT_MODE, Boolean.FALSE.toString()));
+	}
+
+	/** Obtiene el n&uacute;mero m&aacute;ximo de firmas que se procesan en paralelo.
+	 * @return N&uacute;mero de hilos de trabajo del proceso concurrente de lotes. */
+	static int getMaxCurrentSigns() {
+		return (int) Math.min(
+			getPositiveLong(PROP_MAX_CURRENT_SIGNS, DEFAULT_MAX_CURRENT_SIGNS),
+			Integer.MAX_VALUE
+		);
+	}
+
+	/** Obtiene el n&uacute;mero m&aacute;ximo de firmas de un mismo lote que pueden estar
+	 * en curso a la vez. Por defecto es igual al n&uacute;mero de firmas en paralelo.
+	 * @return N&uacute;mero m&aacute;ximo de firmas en curso por lote. */
+	static int getMaxLoadedSigns() {
+		return (int) Math.min(
+			getPositiveLong(PROP_MAX_LOADED_SIGNS, getMaxCurrentSigns()),
+			Integer.MAX_VALUE
+		);
+	}
+
+	/** Obtiene el directorio para el almacenamiento temporal de las firmas. Por defecto
+	 * es el directorio temporal del sistema.
+	 * @return Directorio para el almacenamiento temporal. */
+	static Path getTempDir() {
+		return Paths.get(getProperty(PROP_TMPDIR, System.getProperty("java.io.tmpdir"))); //$NON-NLS-1$
+	}
+
+}
@@ -0,0 +1,159 @@
+package es.gob.afirma.local.signers.batch;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/** Motor de ejecuci&oacute;n concurrente de las firmas de un lote.
+ * Todos los lotes comparten un mismo conjunto de hilos de trabajo, cuyo tama&ntilde;o se
+ * configura con la propiedad <code>maxcurrentsigns</code> de <code>signbatch.properties</code>.
+ * Los resultados se entregan en orden de finalizaci&oacute;n, de forma que una firma lenta no
+ * retiene el tratamiento de las dem&aacute;s, y nunca hay m&aacute;s de
+ * <code>maxloadedsigns</code> firmas de un mismo lote en curso, para limitar la
+ * memoria necesaria en lotes con miles de documentos.
+ * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s. */
+final class SignBatchExecutor {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private static final int MAX_CURRENT_SIGNS = SignBatchConfig.getMaxCurrentSigns();
+
+	private static final int MAX_LOADED_SIGNS = SignBatchConfig.getMaxLoadedSigns();
+
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+		MAX_CURRENT_SIGNS,
+		new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread t = new Thread(r, "afirma-signbatch-" + this.count.incrementAndGet()); //$NON-NLS-1$
+				t.setDaemon(true);
+				return t;
+			}
+		}
+	);
+
+	static {
+		LOGGER.info(
+			"Proceso de lotes concurrente con " + MAX_CURRENT_SIGNS + " hilos y un maximo de " + //$NON-NLS-1$ //$NON-NLS-2$
+				MAX_LOADED_SIGNS + " firmas en curso por lote" //$NON-NLS-1$
+		);
+	}
+
+	/** Tratamiento de cada una de las firmas de un lote por parte del motor. */
+	interface SignTaskHandler<T> {
+
+		/** Obtiene la tarea a ejecutar para una firma del lote.
+		 * @param ss Firma del lote.
+		 * @return Tarea a ejecutar. */
+		Callable<T> getTask(SingleSign ss);
+
+		/** Recoge el resultado de una tarea finalizada, cancelada o que ha fallado.
+		 * @param ss Firma del lote a la que corresponde el resultado.
+		 * @param result Resultado de la tarea.
+		 * @return <code>true</code> si se debe continuar lanzando nuevas tareas,
+		 *         <code>false</code> si no deben lanzarse m&aacute;s.
+		 * @throws BatchException Si hay que abortar el proceso del lote. */
+		boolean onResult(SingleSign ss, Future<T> result) throws BatchException;
+
+		/** Notifica que una firma no se ha llegado a procesar porque el proceso se
+		 * detuvo o se agot&oacute; el tiempo de espera.
+		 * @param ss Firma del lote que no se ha procesado. */
+		void onSkipped(SingleSign ss);
+	}
+
+	private SignBatchExecutor() {
+		// No instanciable
+	}
+
+	/** Ejecuta concurrentemente una tarea por cada firma del lote.
+	 * Si se supera el tiempo m&aacute;ximo de espera se cancelan las tareas en curso, que se
+	 * entregan canceladas al manejador, y las que no se hab&iacute;an lanzado se notifican como omitidas.
+	 * @param signs Firmas del lote.
+	 * @param handler Manejador que crea las tareas y recoge sus resultados.
+	 * @param timeout Tiempo m&aacute;ximo de espera para todo el lote, en segundos.
+	 * @param <T> Tipo del resultado de las tareas.
+	 * @throws BatchException Si el manejador aborta el proceso o se interrumpe la espera. */
+	static <T> void execute(final Iterable<SingleSign> signs,
+			                final SignTaskHandler<T> handler,
+			                final long timeout) throws BatchException {
+
+		final long start = System.nanoTime();
+		final long timeoutNanos = TimeUnit.SECONDS.toNanos(Math.max(0, timeout));
+
+		final CompletionService<T> completionService = new ExecutorCompletionService<>(EXECUTOR);
+		final Map<Future<T>, SingleSign> running = new HashMap<>(MAX_LOADED_SIGNS * 2);
+		final Iterator<SingleSign> pending = signs.iterator();
+
+		boolean keepSubmitting = true;
+		try {
+			while (true) {
+
+				while (keepSubmitting && running.size() < MAX_LOADED_SIGNS && pending.hasNext()) {
+					final SingleSign ss = pending.next();
+					running.put(completionService.submit(handler.getTask(ss)), ss);
+				}
+
+				if (running.isEmpty()) {
+					break;
+				}
+
+				final Future<T> done = completionService.poll(
+					Math.max(0, timeoutNanos - (System.nanoTime() - start)),
+					TimeUnit.NANOSECONDS
+				);
+
+				if (done == null) {
+					LOGGER.severe(
+						"Se ha superado el tiempo maximo de espera del lote (" + timeout + " segundos), se cancelan las " + //$NON-NLS-1$ //$NON-NLS-2$
+							running.size() + " firmas en curso" //$NON-NLS-1$
+					);
+					keepSubmitting = false;
+					for (final Map.Entry<Future<T>, SingleSign> entry : running.entrySet()) {
+						entry.getKey().cancel(true);
+						handler.onResult(entry.getValue(), entry.getKey());
+					}
+					running.clear();
+					break;
+				}
+
+				if (!handler.onResult(running.remove(done), done)) {
+					keepSubmitting = false;
+				}
+			}
+		}
+		catch (final InterruptedException e) {
+			cancelAll(running);
+			Thread.currentThread().interrupt();
+			throw new BatchException(
+				"Se ha interrumpido el proceso en paralelo del lote de firma: " + e, //$NON-NLS-1$
+				e
+			);
+		}
+		catch (final BatchException e) {
+			cancelAll(running);
+			throw e;
+		}
+
+		while (pending.hasNext()) {
+			handler.onSkipped(pending.next());
+		}
+	}
+
+	private static <T> void cancelAll(final Map<Future<T>, SingleSign> running) {
+		for (final Future<T> f : running.keySet()) {
+			f.cancel(true);
+		}
+	}
+
+}
@@ -34,11 +34,11 @@ public final class SignBatchSerial extends SignBatch {
 	}
 
 	@Override
-	public String doPreBatch(final X509Certificate[] certChain) throws BatchException {
+	public TriphaseData doPreBatchTriphaseData(final X509Certificate[] certChain) throws BatchException {
 
-		final StringBuilder sb = new StringBuilder("<xml>\n <firmas>"); //$NON-NLS-1$
+		final TriphaseData td = new TriphaseData();
 		for (final SingleSign ss : this.signs) {
-			String tmp;
+			TriphaseData tmp;
 			try {
 				tmp = ss.doPreProcess(certChain, this.algorithm);
 			}
@@ -53,10 +53,9 @@ public final class SignBatchSerial extends SignBatch {
 				);
 				continue;
 			}
-			sb.append(tmp);
+			addSignOperations(td, tmp);
 		}
-		sb.append("</firmas>\n</xml>"); //$NON-NLS-1$
-		return sb.toString();
+		return td;
 	}
 
 	@Override
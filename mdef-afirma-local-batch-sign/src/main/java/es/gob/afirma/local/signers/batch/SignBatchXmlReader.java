@@ -0,0 +1,279 @@
+package es.gob.afirma.local.signers.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/** Lector en flujo (StAX) de la definici&oacute;n XML de un lote de firmas.
+ * Recorre el XML una &uacute;nica vez, leyendo los atributos generales del lote y creando
+ * la definici&oacute;n de cada firma seg&uacute;n la encuentra, sin construir un &aacute;rbol
+ * DOM con todo el documento. Los datos a firmar incluidos en el propio XML no se
+ * descodifican hasta que se procesa su firma.
+ * <p>Las definiciones de las firmas no se entregan una a una seg&uacute;n se leen, sino en una
+ * lista completa, ya que el lote las recorre varias veces (prefirma, postfirma y registro de
+ * resultados) y necesita conocerlas todas antes de empezar a firmar. Cada definici&oacute;n
+ * conserva el texto Base64 de sus datos en l&iacute;nea, por lo que la memoria ocupada por
+ * la lista es del orden del tama&ntilde;o del XML de entrada.</p>
+ * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s. */
+final class SignBatchXmlReader {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private static final String XML_ELEMENT_SIGNBATCH = "signbatch"; //$NON-NLS-1$
+	private static final String XML_ELEMENT_SINGLESIGN = "singlesign"; //$NON-NLS-1$
+	private static final String XML_ELEMENT_DATASOURCE = "datasource"; //$NON-NLS-1$
+	private static final String XML_ELEMENT_FORMAT = "format"; //$NON-NLS-1$
+	private static final String XML_ELEMENT_SUBOPERATION = "suboperation"; //$NON-NLS-1$
+	private static final String XML_ELEMENT_EXTRAPARAMS = "extraparams"; //$NON-NLS-1$
+	private static final String XML_ELEMENT_SIGNSAVER = "signsaver"; //$NON-NLS-1$
+	private static final String XML_ELEMENT_SIGNSAVER_CLASSNAME = "class"; //$NON-NLS-1$
+	private static final String XML_ELEMENT_SIGNSAVER_CONFIG = "config"; //$NON-NLS-1$
+
+	private static final String XML_ATTRIBUTE_ID = "Id"; //$NON-NLS-1$
+	private static final String XML_ATTRIBUTE_STOPONERROR = "stoponerror"; //$NON-NLS-1$
+	private static final String XML_ATTRIBUTE_ALGORITHM = "algorithm"; //$NON-NLS-1$
+	private static final String XML_ATTRIBUTE_CONCURRENTTIMEOUT = "concurrenttimeout"; //$NON-NLS-1$
+
+	private static final XMLInputFactory FACTORY;
+	static {
+		FACTORY = XMLInputFactory.newInstance();
+		FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private boolean stopOnError = true;
+	private SingleSignConstants.SignAlgorithm algorithm = null;
+	private long concurrentTimeout = Long.MAX_VALUE;
+	private String id = null;
+	private final List<SingleSign> signs = new ArrayList<>();
+
+	private SignBatchXmlReader() {
+		// Se crea mediante read()
+	}
+
+	boolean isStopOnError() {
+		return this.stopOnError;
+	}
+
+	SingleSignConstants.SignAlgorithm getAlgorithm() {
+		return this.algorithm;
+	}
+
+	long getConcurrentTimeout() {
+		return this.concurrentTimeout;
+	}
+
+	String getId() {
+		return this.id;
+	}
+
+	List<SingleSign> getSigns() {
+		return this.signs;
+	}
+
+	/** Lee la definici&oacute;n XML de un lote de firmas.
+	 * @param xml XML de definici&oacute;n del lote.
+	 * @return Lector con los datos del lote.
+	 * @throws IOException Si el XML no es v&aacute;lido o no se puede instanciar el objeto
+	 *                     de guardado de alguna firma. */
+	static SignBatchXmlReader read(final byte[] xml) throws IOException {
+		final SignBatchXmlReader ret = new SignBatchXmlReader();
+		XMLStreamReader reader = null;
+		try (
+			final InputStream is = new ByteArrayInputStream(xml);
+		) {
+			reader = FACTORY.createXMLStreamReader(is);
+			reader.nextTag();
+			if (!XML_ELEMENT_SIGNBATCH.equalsIgnoreCase(reader.getLocalName())) {
+				throw new IllegalArgumentException("No se encontro el nodo 'signbatch' en el XML proporcionado"); //$NON-NLS-1$
+			}
+			ret.readBatchAttributes(reader);
+			while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				ret.signs.add(readSingleSign(reader));
+			}
+		}
+		catch (final XMLStreamException e) {
+			final Location location = e.getLocation();
+			final String msg = "Error al cargar el XML de definicion de lote" + //$NON-NLS-1$
+				(location != null ? " (linea " + location.getLineNumber() + ", columna " + location.getColumnNumber() + ")" : "") + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+					": " + e; //$NON-NLS-1$
+			LOGGER.severe(msg);
+			throw new IOException(msg, e);
+		}
+		finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				}
+				catch (final XMLStreamException e) {
+					LOGGER.warning("No se ha podido cerrar el lector del XML de lote: " + e); //$NON-NLS-1$
+				}
+			}
+		}
+		return ret;
+	}
+
+	private void readBatchAttributes(final XMLStreamReader reader) {
+		String tmp = getAttribute(reader, XML_ATTRIBUTE_STOPONERROR);
+		if (tmp != null) {
+			this.stopOnError = !"false".equalsIgnoreCase(tmp); //$NON-NLS-1$
+		}
+
+		tmp = getAttribute(reader, XML_ATTRIBUTE_ALGORITHM);
+		if (tmp == null) {
+			throw new IllegalArgumentException(
+				"El nodo 'signbatch' debe contener al manos el atributo de algoritmo" //$NON-NLS-1$
+			);
+		}
+		this.algorithm = SingleSignConstants.SignAlgorithm.getAlgorithm(tmp);
+
+		tmp = getAttribute(reader, XML_ATTRIBUTE_CONCURRENTTIMEOUT);
+		if (tmp != null) {
+			try {
+				this.concurrentTimeout = Long.parseLong(tmp);
+			}
+			catch(final Exception e) {
+				LOGGER.severe(
+					"Se ha especificado un valor invalido para la espera maxima (" + tmp + "), se usara el valor por defecto (" + Long.MAX_VALUE + "): " + e //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				);
+			}
+		}
+
+		tmp = getAttribute(reader, XML_ATTRIBUTE_ID);
+		this.id = tmp != null ? tmp : UUID.randomUUID().toString();
+	}
+
+	/** Lee un elemento <code>singlesign</code>. Al terminar, el lector queda situado en
+	 * el cierre del elemento.
+	 * @param reader Lector situado en la apertura del elemento.
+	 * @return Definici&oacute;n de la firma.
+	 * @throws XMLStreamException Si el XML no es v&aacute;lido.
+	 * @throws IOException Si no se puede crear el objeto de guardado de la firma. */
+	private static SingleSign readSingleSign(final XMLStreamReader reader) throws XMLStreamException,
+	                                                                               IOException {
+		if (!XML_ELEMENT_SINGLESIGN.equalsIgnoreCase(reader.getLocalName())) {
+			throw new XMLStreamException(
+				"Se esperaba un elemento 'singlesign' y se encontro '" + reader.getLocalName() + "'", //$NON-NLS-1$ //$NON-NLS-2$
+				reader.getLocation()
+			);
+		}
+
+		final String signId = getAttribute(reader, XML_ATTRIBUTE_ID);
+		String dataSource = null;
+		String format = null;
+		String subOperation = null;
+		String extraParams = null;
+		String signSaverClass = null;
+		String signSaverConfig = null;
+
+		int depth = 1;
+		while (depth > 0) {
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				final String name = reader.getLocalName();
+				if (XML_ELEMENT_DATASOURCE.equals(name)) {
+					dataSource = readText(reader);
+				}
+				else if (XML_ELEMENT_FORMAT.equals(name)) {
+					format = readText(reader);
+				}
+				else if (XML_ELEMENT_SUBOPERATION.equals(name)) {
+					subOperation = readText(reader);
+				}
+				else if (XML_ELEMENT_EXTRAPARAMS.equals(name)) {
+					extraParams = readText(reader);
+				}
+				else if (XML_ELEMENT_SIGNSAVER_CLASSNAME.equals(name)) {
+					signSaverClass = readText(reader);
+				}
+				else if (XML_ELEMENT_SIGNSAVER_CONFIG.equals(name)) {
+					signSaverConfig = readText(reader);
+				}
+				else if (!XML_ELEMENT_SIGNSAVER.equals(name)) {
+					LOGGER.warning("Se ignora el elemento desconocido '" + name + "' en la definicion de firma"); //$NON-NLS-1$ //$NON-NLS-2$
+					depth++;
+				}
+				else {
+					depth++;
+				}
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+
+		if (dataSource == null || format == null || subOperation == null || signSaverClass == null || signSaverConfig == null) {
+			throw new IllegalArgumentException(
+				"La definicion de la firma '" + signId + "' esta incompleta" //$NON-NLS-1$ //$NON-NLS-2$
+			);
+		}
+
+		return new SingleSign(
+			signId,
+			dataSource,
+			format,
+			subOperation,
+			extraParams,
+			signSaverClass,
+			signSaverConfig
+		);
+	}
+
+	/** Lee el texto de un elemento simple, dejando el lector en el cierre del elemento.
+	 * El texto se acumula por fragmentos para no duplicar contenidos grandes y se devuelve
+	 * tal cual, sin eliminar los espacios de los extremos.
+	 * @param reader Lector situado en la apertura del elemento.
+	 * @return Texto del elemento.
+	 * @throws XMLStreamException Si el elemento contiene otros elementos o el XML no es v&aacute;lido. */
+	private static String readText(final XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder sb = null;
+		String single = null;
+		int event = reader.next();
+		while (event != XMLStreamConstants.END_ELEMENT) {
+			if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA ||
+					event == XMLStreamConstants.SPACE) {
+				if (single == null && sb == null) {
+					single = reader.getText();
+				}
+				else {
+					if (sb == null) {
+						sb = new StringBuilder(single);
+					}
+					sb.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				}
+			}
+			else if (event == XMLStreamConstants.START_ELEMENT) {
+				throw new XMLStreamException(
+					"El elemento '" + reader.getLocalName() + "' no se esperaba en un elemento de texto", //$NON-NLS-1$ //$NON-NLS-2$
+					reader.getLocation()
+				);
+			}
+			event = reader.next();
+		}
+		if (sb != null) {
+			return sb.toString();
+		}
+		return single != null ? single : ""; //$NON-NLS-1$
+	}
+
+	private static String getAttribute(final XMLStreamReader reader, final String name) {
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			if (name.equals(reader.getAttributeLocalName(i))) {
+				return reader.getAttributeValue(i);
+			}
+		}
+		return null;
+	}
+
+}
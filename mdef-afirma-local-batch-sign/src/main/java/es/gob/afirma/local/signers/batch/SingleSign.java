@@ -11,11 +11,6 @@ import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
 import es.gob.afirma.core.AOException;
 import es.gob.afirma.core.misc.AOUtil;
 import es.gob.afirma.core.misc.Base64;
@@ -185,13 +180,12 @@ public final class SingleSign {
 	/** Realiza el proceso de prefirma, incluyendo la descarga u obtenci&oacute;n de datos.
 	 * @param certChain Cadena de certificados del firmante.
 	 * @param algorithm Algoritmo de firma.
-	 * @return Nodo <code>firma</code> del XML de datos trif&aacute;sicos (sin ninguna etiqueta
-	 *         antes ni despu&eacute;s).
+	 * @return Datos trif&aacute;sicos de la prefirma.
 	 * @throws AOException Si hay problemas en la propia firma electr&oacute;nica.
 	 * @throws IOException Si hay problemas en la obtenci&oacute;n, tratamiento o gradado de datos. */
-	String doPreProcess(final X509Certificate[] certChain,
-			            final SingleSignConstants.SignAlgorithm algorithm) throws IOException,
-			                                                                      AOException {
+	TriphaseData doPreProcess(final X509Certificate[] certChain,
+			                  final SingleSignConstants.SignAlgorithm algorithm) throws IOException,
+			                                                                            AOException {
 		return SingleSignPreProcessor.doPreProcess(this, certChain, algorithm);
 	}
 
@@ -199,11 +193,11 @@ public final class SingleSign {
 	 * @param certChain Cadena de certificados del firmante.
 	 * @param algorithm Algoritmo de firma.
 	 * @return Tarea de preproceso de firma para ser ejecutada en paralelo. */
-	Callable<String> getPreProcessCallable(final X509Certificate[] certChain,
-                                                  final SingleSignConstants.SignAlgorithm algorithm) {
-		return new Callable<String>() {
+	Callable<TriphaseData> getPreProcessCallable(final X509Certificate[] certChain,
+                                                 final SingleSignConstants.SignAlgorithm algorithm) {
+		return new Callable<TriphaseData>() {
 			@Override
-			public String call() throws IOException, AOException {
+			public TriphaseData call() throws IOException, AOException {
 				return doPreProcess(certChain, algorithm);
 			}
 		};
@@ -305,30 +299,39 @@ public final class SingleSign {
 
 	}
 
-	SingleSign(final Node singleSignNode) throws DOMException, IOException {
-		if (!(singleSignNode instanceof Element)) {
-			throw new IllegalArgumentException(
-				"El nodo de definicion de la firma debe ser un Elemento DOM" //$NON-NLS-1$
-			);
-		}
-		final Element el = (Element)singleSignNode;
+	/** Crea una firma del lote a partir de los valores le&iacute;dos de su definici&oacute;n XML.
+	 * Los datos incluidos en el propio XML no se descodifican hasta que se procesa la firma.
+	 * @param signId Identificador de la firma (atributo <code>Id</code>).
+	 * @param dataSrc Origen de los datos (elemento <code>datasource</code>).
+	 * @param fmt Formato de firma (elemento <code>format</code>).
+	 * @param subOp Tipo de firma (elemento <code>suboperation</code>).
+	 * @param extraParamsB64 Par&aacute;metros adicionales en Base64 (elemento <code>extraparams</code>)
+	 *                       o <code>null</code> si no se indicaron.
+	 * @param signSaverClassName Clase del objeto de guardado (elemento <code>signsaver/class</code>).
+	 * @param signSaverConfigB64 Configuraci&oacute;n del objeto de guardado en Base64
+	 *                           (elemento <code>signsaver/config</code>).
+	 * @throws IOException Si no se pueden cargar los par&aacute;metros o instanciar el objeto de guardado. */
+	SingleSign(final String signId,
+			   final String dataSrc,
+			   final String fmt,
+			   final String subOp,
+			   final String extraParamsB64,
+			   final String signSaverClassName,
+			   final String signSaverConfigB64) throws IOException {
 
-		this.dataSource = el.getElementsByTagName(XML_ELEMENT_DATASOURCE).item(0).getTextContent();
+		this.dataSource = dataSrc;
 
 		this.extraParams = new Properties();
-		final NodeList tmpNl = el.getElementsByTagName(XML_ELEMENT_EXTRAPARAMS);
-		if (tmpNl != null && tmpNl.getLength() > 0) {
+		if (extraParamsB64 != null) {
 			final String extraParamsText = new String(
-						Base64.decode(tmpNl.item(0).getTextContent())
+						Base64.decode(extraParamsB64)
 					).replace("\\n", "\n"); //$NON-NLS-1$ //$NON-NLS-2$
 			this.extraParams.load(new ByteArrayInputStream(extraParamsText.getBytes()));
 		}
 
-		this.format = SignFormat.getFormat(
-			el.getElementsByTagName(XML_ELEMENT_FORMAT).item(0).getTextContent()
-		);
+		this.format = SignFormat.getFormat(fmt);
 
-		this.id = el.getAttribute(XML_ATTRIBUTE_ID);
+		this.id = signId;
 		if (this.id == null || "".equals(this.id)) { //$NON-NLS-1$
 			throw new IllegalArgumentException(
 				"Es obligatorio establecer identificadores unicos de firma" //$NON-NLS-1$
@@ -336,27 +339,18 @@ public final class SingleSign {
 		}
 		this.extraParams.put(PROP_ID, getId());
 
-		this.subOperation = SignSubOperation.getSubOperation(
-			el.getElementsByTagName(XML_ELEMENT_SUBOPERATION).item(0).getTextContent()
-		);
+		this.subOperation = SignSubOperation.getSubOperation(subOp);
 
-		final Element signSaverElement = (Element) el.getElementsByTagName(XML_ELEMENT_SIGNSAVER).item(0);
 		final SignSaver ssaver;
 		try {
-			ssaver = (SignSaver) Class.forName(
-				signSaverElement.getElementsByTagName(XML_ELEMENT_SIGNSAVER_CLASSNAME).item(0).getTextContent()
-			).newInstance();
+			ssaver = (SignSaver) Class.forName(signSaverClassName).newInstance();
 		}
 		catch (final Exception ex) {
 			throw new IOException(
 				"No se ha podido instanciar el objeto de guardado: " + ex, ex //$NON-NLS-1$
 			);
 		}
-		ssaver.init(
-			AOUtil.base642Properties(
-				signSaverElement.getElementsByTagName(XML_ELEMENT_SIGNSAVER_CONFIG).item(0).getTextContent()
-			)
-		);
+		ssaver.init(AOUtil.base642Properties(signSaverConfigB64));
 
 		this.signSaver = ssaver;
 	}
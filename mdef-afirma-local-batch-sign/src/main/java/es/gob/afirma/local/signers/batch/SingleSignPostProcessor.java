@@ -81,7 +81,7 @@ final class SingleSignPostProcessor {
 					algorithm.toString(),
 					certChain,
 					extraParams,
-					td.toString().getBytes()
+					td
 				);
 				break;
 			case COSIGN:
@@ -90,7 +90,7 @@ final class SingleSignPostProcessor {
 					algorithm.toString(),
 					certChain,
 					extraParams,
-					td.toString().getBytes()
+					td
 				);
 				break;
 			case COUNTERSIGN:
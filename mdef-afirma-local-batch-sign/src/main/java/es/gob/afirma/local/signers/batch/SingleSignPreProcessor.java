@@ -23,26 +23,13 @@ final class SingleSignPreProcessor {
 	 * @param sSign Firma sobre la que hay que hacer el preproceso.
 	 * @param certChain Cadena de certificados del firmante.
 	 * @param algorithm Algoritmo de firma.
-	 * @return Nodo <code>firma</code> del XML de datos trif&aacute;sicos (sin ninguna etiqueta
-	 *         antes ni despu&eacute;s).
+	 * @return Datos trif&aacute;sicos de la prefirma.
 	 * @throws AOException Si hay problemas en la propia firma electr&oacute;nica.
 	 * @throws IOException Si hay problemas en la obtenci&oacute;n, tratamiento o gradado de datos. */
-	static String doPreProcess(final SingleSign sSign,
-			                   final X509Certificate[] certChain,
-			                   final SingleSignConstants.SignAlgorithm algorithm) throws IOException,
-			                                                                             AOException {
-		final TriphaseData td = getPreSign(sSign, certChain, algorithm);
-		final String tmp = td.toString();
-		return tmp.substring(
-			tmp.indexOf("<firmas>") + "<firmas>".length(), //$NON-NLS-1$ //$NON-NLS-2$
-			tmp.indexOf("</firmas>") //$NON-NLS-1$
-		);
-	}
-
-	private static TriphaseData getPreSign(final SingleSign sSign,
-			                               final X509Certificate[] certChain,
-			                               final SingleSignConstants.SignAlgorithm algorithm) throws IOException,
-			                                                                                         AOException {
+	static TriphaseData doPreProcess(final SingleSign sSign,
+			                         final X509Certificate[] certChain,
+			                         final SingleSignConstants.SignAlgorithm algorithm) throws IOException,
+			                                                                                   AOException {
 		if (certChain == null || certChain.length < 1) {
 			throw new IllegalArgumentException(
 				"La cadena de certificados del firmante no puede ser nula ni vacia" //$NON-NLS-1$
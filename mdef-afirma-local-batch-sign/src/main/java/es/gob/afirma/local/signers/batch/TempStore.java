@@ -2,10 +2,23 @@ package es.gob.afirma.local.signers.batch;
 
 import java.io.IOException;
 
-interface TempStore {
+/** Almacenamiento temporal de las firmas de un lote entre su postproceso y su guardado.
+ * Las implementaciones deben poder usarse simult&aacute;neamente desde varios hilos.
+ * @see TempStoreFactory */
+public interface TempStore {
 
+	/** Almacena una firma.
+	 * @param data Firma a almacenar.
+	 * @param ss Definici&oacute;n de la firma.
+	 * @param batchId Identificador del lote al que pertenece la firma.
+	 * @throws IOException Si no se puede almacenar la firma. */
 	void store(final byte[] data, final SingleSign ss, final String batchId) throws IOException;
 
+	/** Recupera una firma almacenada.
+	 * @param ss Definici&oacute;n de la firma.
+	 * @param batchId Identificador del lote al que pertenece la firma.
+	 * @return Firma almacenada.
+	 * @throws IOException Si no se puede recuperar la firma. */
 	byte[] retrieve(final SingleSign ss, final String batchId) throws IOException;
 
 	/** Borra una firma del almacenamiento temporal.
@@ -15,4 +28,10 @@ interface TempStore {
 	 * @param batchId Identificador del lote al que pertenece la firma. */
 	void delete(final SingleSign ss, final String batchId);
 
+	/** Borra todos los datos temporales de un lote.
+	 * Si falla el borrado debe gestionarse sin interrumpir el proceso (no deben
+	 * lanzarse excepciones).
+	 * @param batchId Identificador del lote. */
+	void deleteAll(final String batchId);
+
 }
@@ -0,0 +1,168 @@
+package es.gob.afirma.local.signers.batch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/** Almacenamiento temporal de firmas en un &uacute;nico fichero por cada lote.
+ * Cada firma ocupa una regi&oacute;n del fichero del lote, reservada de forma at&oacute;mica
+ * al almacenarla, y se localiza mediante un &iacute;ndice en memoria con su desplazamiento y
+ * tama&ntilde;o. As&iacute; se evita crear, abrir y borrar un fichero por cada firma. El espacio
+ * de las firmas borradas individualmente no se recupera hasta que se borra el lote completo.
+ * <p>Las regiones se leen y escriben con operaciones posicionales del canal del fichero en
+ * lugar de proyectarlas en memoria, ya que las proyecciones no se liberan hasta que las
+ * recoge el recolector de basura y mientras tanto impiden borrar el fichero en Windows.</p> */
+final class TempStoreBatchFile implements TempStore {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private static final String SEGMENT_SUFFIX = ".seg"; //$NON-NLS-1$
+
+	private final Path tmpDir;
+
+	private final ConcurrentHashMap<String, Segment> segments = new ConcurrentHashMap<>();
+
+	TempStoreBatchFile() {
+		this(SignBatchConfig.getTempDir());
+	}
+
+	TempStoreBatchFile(final Path dir) {
+		if (dir == null) {
+			throw new IllegalArgumentException(
+				"El directorio de almacenamiento temporal no puede ser nulo" //$NON-NLS-1$
+			);
+		}
+		this.tmpDir = dir;
+	}
+
+	@Override
+	public void store(final byte[] data, final SingleSign ss, final String batchId) throws IOException {
+		getSegment(batchId).store(ss.getId(), data);
+		LOGGER.info("Firma '" + ss.getId() + "' almacenada temporalmente en el segmento del lote '" + batchId + "'"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	@Override
+	public byte[] retrieve(final SingleSign ss, final String batchId) throws IOException {
+		final Segment segment = this.segments.get(batchId);
+		if (segment == null) {
+			throw new IOException(
+				"No hay datos temporales del lote '" + batchId + "'" //$NON-NLS-1$ //$NON-NLS-2$
+			);
+		}
+		return segment.retrieve(ss.getId());
+	}
+
+	@Override
+	public void delete(final SingleSign ss, final String batchId) {
+		final Segment segment = this.segments.get(batchId);
+		if (segment != null) {
+			segment.delete(ss.getId());
+		}
+	}
+
+	@Override
+	public void deleteAll(final String batchId) {
+		final Segment segment = this.segments.remove(batchId);
+		if (segment != null) {
+			segment.close();
+		}
+	}
+
+	private Segment getSegment(final String batchId) throws IOException {
+		Segment segment = this.segments.get(batchId);
+		if (segment != null) {
+			return segment;
+		}
+		synchronized (this.segments) {
+			segment = this.segments.get(batchId);
+			if (segment == null) {
+				Files.createDirectories(this.tmpDir);
+				segment = new Segment(
+					this.tmpDir.resolve(TempStoreFileSystem.BATCH_DIR_PREFIX + TempStoreFileSystem.hash(batchId) + SEGMENT_SUFFIX)
+				);
+				this.segments.put(batchId, segment);
+			}
+			return segment;
+		}
+	}
+
+	/** Fichero con las firmas de un lote. */
+	private static final class Segment {
+
+		private final Path file;
+		private final FileChannel channel;
+		private final AtomicLong nextOffset = new AtomicLong();
+
+		/** Posici&oacute;n y tama&ntilde;o (en ese orden) de cada firma dentro del fichero. */
+		private final Map<String, long[]> index = new ConcurrentHashMap<>();
+
+		Segment(final Path f) throws IOException {
+			this.file = f;
+			this.channel = FileChannel.open(
+				f,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE
+			);
+		}
+
+		void store(final String id, final byte[] data) throws IOException {
+			final long offset = this.nextOffset.getAndAdd(data.length);
+			final ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (buffer.hasRemaining()) {
+				this.channel.write(buffer, offset + buffer.position());
+			}
+			this.index.put(id, new long[] { offset, data.length });
+		}
+
+		byte[] retrieve(final String id) throws IOException {
+			final long[] entry = this.index.get(id);
+			if (entry == null) {
+				throw new IOException(
+					"No se encuentra la firma '" + id + "' en el almacenamiento temporal" //$NON-NLS-1$ //$NON-NLS-2$
+				);
+			}
+			final byte[] data = new byte[(int) entry[1]];
+			final ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (buffer.hasRemaining()) {
+				if (this.channel.read(buffer, entry[0] + buffer.position()) < 0) {
+					throw new IOException(
+						"El almacenamiento temporal esta truncado en la firma '" + id + "'" //$NON-NLS-1$ //$NON-NLS-2$
+					);
+				}
+			}
+			return data;
+		}
+
+		void delete(final String id) {
+			this.index.remove(id);
+		}
+
+		void close() {
+			this.index.clear();
+			try {
+				this.channel.close();
+			}
+			catch (final Exception e) {
+				LOGGER.warning("No se ha podido cerrar el fichero temporal " + this.file + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			// Normalmente el cierre ya lo ha borrado (DELETE_ON_CLOSE)
+			try {
+				Files.deleteIfExists(this.file);
+			}
+			catch (final Exception e) {
+				LOGGER.warning("No se ha podido borrar el fichero temporal " + this.file + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+	}
+
+}
@@ -1,11 +1,67 @@
 package es.gob.afirma.local.signers.batch;
 
+import java.util.logging.Logger;
+
+/** Factor&iacute;a del almacenamiento temporal de las firmas de los lotes.
+ * El tipo de almacenamiento se configura con la propiedad <code>tempstore</code> de
+ * <code>signbatch.properties</code>, que admite los valores:
+ * <ul>
+ *  <li><code>file</code>: Un fichero por firma en disco (por defecto).</li>
+ *  <li><code>memory</code>: En memoria hasta el l&iacute;mite de bytes indicado en la
+ *      propiedad <code>tempstoremaxmemory</code>, desviando a disco lo que no quepa.</li>
+ *  <li><code>batchfile</code>: Un fichero en disco por cada lote.</li>
+ *  <li>El nombre de una clase que implemente {@link TempStore} y tenga un constructor
+ *      p&uacute;blico sin par&aacute;metros.</li>
+ * </ul> */
 final class TempStoreFactory {
 
-	private static final TempStore TS = new TempStoreFileSystem();
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private static final String PROP_TEMPSTORE = "tempstore"; //$NON-NLS-1$
+
+	private static final String PROP_TEMPSTORE_MAX_MEMORY = "tempstoremaxmemory"; //$NON-NLS-1$
+
+	private static final String TEMPSTORE_FILE = "file"; //$NON-NLS-1$
+	private static final String TEMPSTORE_MEMORY = "memory"; //$NON-NLS-1$
+	private static final String TEMPSTORE_BATCH_FILE = "batchfile"; //$NON-NLS-1$
+
+	/** L&iacute;mite por defecto de memoria para el almacenamiento temporal en memoria (64 MB). */
+	private static final long DEFAULT_MAX_MEMORY = 64L * 1024L * 1024L;
+
+	private static final TempStore TS = createTempStore(
+		SignBatchConfig.getProperty(PROP_TEMPSTORE, TEMPSTORE_FILE)
+	);
+
+	private TempStoreFactory() {
+		// No instanciable
+	}
 
 	static TempStore getTempStore() {
 		return TS;
 	}
 
+	private static TempStore createTempStore(final String type) {
+		if (TEMPSTORE_FILE.equalsIgnoreCase(type)) {
+			return new TempStoreFileSystem();
+		}
+		if (TEMPSTORE_MEMORY.equalsIgnoreCase(type)) {
+			return new TempStoreMemory(
+				SignBatchConfig.getPositiveLong(PROP_TEMPSTORE_MAX_MEMORY, DEFAULT_MAX_MEMORY),
+				new TempStoreFileSystem()
+			);
+		}
+		if (TEMPSTORE_BATCH_FILE.equalsIgnoreCase(type)) {
+			return new TempStoreBatchFile();
+		}
+		try {
+			return (TempStore) Class.forName(type).getConstructor().newInstance();
+		}
+		catch (final Exception e) {
+			LOGGER.severe(
+				"No se ha podido instanciar el almacenamiento temporal '" + type + "', se usara el de disco: " + e //$NON-NLS-1$ //$NON-NLS-2$
+			);
+			return new TempStoreFileSystem();
+		}
+	}
+
 }
@@ -1,93 +1,174 @@
 package es.gob.afirma.local.signers.batch;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.logging.Logger;
 
 import es.gob.afirma.core.misc.AOUtil;
 
+/** Almacenamiento temporal de firmas en disco.
+ * Cada lote usa su propio subdirectorio dentro del directorio configurado con la
+ * propiedad <code>tmpdir</code> de <code>signbatch.properties</code> (por defecto, el
+ * directorio temporal del sistema). Conviene que este directorio est&eacute; en un sistema
+ * de ficheros en memoria (como <i>tmpfs</i>) cuando se procesan lotes grandes.
+ * Las firmas se escriben en un fichero auxiliar que despu&eacute;s se renombra, de forma que
+ * nunca se lee un fichero a medio escribir. Esta clase no comparte estado mutable entre
+ * hilos, por lo que puede usarse desde todos los hilos del proceso concurrente de lotes. */
 final class TempStoreFileSystem implements TempStore {
 
 	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
-	private static final MessageDigest MD;
-	static {
-		try {
-			MD = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+
+	static final String BATCH_DIR_PREFIX = "afirmabatch-"; //$NON-NLS-1$
+
+	private static final String PART_SUFFIX = ".part"; //$NON-NLS-1$
+
+	/** Motor de huellas de cada hilo, usado para derivar los nombres de fichero. */
+	private static final ThreadLocal<MessageDigest> MD = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+			}
+			catch (final NoSuchAlgorithmException e) {
+				throw new IllegalStateException(
+					"No se ha podido cargar el motor de huellas para SHA-1: " + e, e //$NON-NLS-1$
+				);
+			}
 		}
-		catch (final Exception e) {
-			throw new IllegalStateException(
-				"No se ha podido cargar el motor de huellas para SHA-1: " + e, e //$NON-NLS-1$
+	};
+
+	private final Path tmpDir;
+
+	TempStoreFileSystem() {
+		this(SignBatchConfig.getTempDir());
+	}
+
+	TempStoreFileSystem(final Path dir) {
+		if (dir == null) {
+			throw new IllegalArgumentException(
+				"El directorio de almacenamiento temporal no puede ser nulo" //$NON-NLS-1$
 			);
 		}
+		this.tmpDir = dir;
+		LOGGER.info("Directorio de almacenamiento temporal de firmas de lote: " + this.tmpDir.toAbsolutePath()); //$NON-NLS-1$
 	}
 
-	private static final File TMPDIR = null;
 	@Override
 	public void store(final byte[] dataToSave, final SingleSign ss, final String batchId) throws IOException {
-		try (
-				final OutputStream fos = new FileOutputStream(
-					new File(
-							TMPDIR,
-							getFilename(ss, batchId)
-						)
-					);
-				final BufferedOutputStream bos = new BufferedOutputStream(
-					fos,
-					dataToSave.length
-				);
+		final Path batchDir = Files.createDirectories(getBatchDir(batchId));
+		final Path target = batchDir.resolve(getFilename(ss));
+		final Path part = Files.createTempFile(batchDir, target.getFileName().toString(), PART_SUFFIX);
+		try {
+			try (
+				final FileChannel fc = FileChannel.open(part, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
 			) {
-		
-		bos.write(dataToSave);
-		bos.flush();
-		bos.close();
-		LOGGER.info("Firma '" + ss.getId() + "' almacenada temporalmente en " + getFilename(ss, batchId)); //$NON-NLS-1$ //$NON-NLS-2$
+				final ByteBuffer buffer = ByteBuffer.wrap(dataToSave);
+				while (buffer.hasRemaining()) {
+					fc.write(buffer);
+				}
+			}
+			try {
+				Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (final AtomicMoveNotSupportedException e) {
+				Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+			}
 		}
-		catch (IOException e) {
-			throw e;
+		finally {
+			Files.deleteIfExists(part);
 		}
+		LOGGER.info("Firma '" + ss.getId() + "' almacenada temporalmente en " + target); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
 	@Override
 	public byte[] retrieve(final SingleSign ss, final String batchId) throws IOException {
-		
-		try ( final InputStream fis = new FileInputStream(
-				new File(
-						TMPDIR,
-						getFilename(ss, batchId)
-					)
+		try (
+			final FileChannel fc = FileChannel.open(
+				getBatchDir(batchId).resolve(getFilename(ss)),
+				StandardOpenOption.READ
+			);
+		) {
+			final long size = fc.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(
+					"La firma '" + ss.getId() + "' es demasiado grande para cargarse en memoria: " + size //$NON-NLS-1$ //$NON-NLS-2$
 				);
-				final InputStream bis = new BufferedInputStream(fis);
-				
-				) {
-			final byte[] ret = AOUtil.getDataFromInputStream(bis);
-			return ret;
-		}
-		catch (IOException e) {
-			throw e;
+			}
+			final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (fc.read(buffer) < 0) {
+					throw new IOException(
+						"Se ha alcanzado el final del fichero temporal de la firma '" + ss.getId() + "' antes de lo esperado" //$NON-NLS-1$ //$NON-NLS-2$
+					);
+				}
+			}
+			return buffer.array();
 		}
-		
 	}
 
 	@Override
 	public void delete(final SingleSign ss, final String batchId) {
-		final File f = new File(
-			TMPDIR,
-			getFilename(ss, batchId)
-		);
-		if (f.exists()) {
-			f.delete();
+		try {
+			Files.deleteIfExists(getBatchDir(batchId).resolve(getFilename(ss)));
 		}
+		catch (final Exception e) {
+			LOGGER.warning("No se ha podido borrar el temporal de la firma '" + ss.getId() + "': " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	@Override
+	public void deleteAll(final String batchId) {
+		final Path batchDir = getBatchDir(batchId);
+		if (!Files.isDirectory(batchDir)) {
+			return;
+		}
+		try (
+			final DirectoryStream<Path> files = Files.newDirectoryStream(batchDir);
+		) {
+			for (final Path f : files) {
+				try {
+					Files.deleteIfExists(f);
+				}
+				catch (final Exception e) {
+					LOGGER.warning("No se ha podido borrar el temporal " + f + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No se han podido listar los temporales del lote '" + batchId + "': " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		try {
+			Files.deleteIfExists(batchDir);
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No se ha podido borrar el directorio temporal del lote '" + batchId + "': " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	private Path getBatchDir(final String batchId) {
+		return this.tmpDir.resolve(BATCH_DIR_PREFIX + hash(batchId));
+	}
+
+	private static String getFilename(final SingleSign ss) {
+		return hash(ss.getId());
 	}
 
-	private static String getFilename(final SingleSign ss, final String batchId) {
-		return AOUtil.hexify(MD.digest(ss.getId().getBytes()), false) + "." + batchId; //$NON-NLS-1$
+	/** Obtiene la huella en hexadecimal de un identificador, para usarla como nombre de
+	 * fichero sin caracteres problem&aacute;ticos para el sistema de ficheros.
+	 * @param id Identificador.
+	 * @return Huella SHA-1 del identificador en hexadecimal. */
+	static String hash(final String id) {
+		return AOUtil.hexify(MD.get().digest(id.getBytes(StandardCharsets.UTF_8)), false);
 	}
 
 }
@@ -0,0 +1,129 @@
+package es.gob.afirma.local.signers.batch;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/** Almacenamiento temporal de firmas en memoria con un l&iacute;mite de bytes.
+ * Mientras no se supera el l&iacute;mite las firmas se conservan en memoria, evitando
+ * la escritura y posterior lectura en disco. Cuando una firma no cabe en el espacio
+ * disponible se desv&iacute;a al almacenamiento en disco, del que se recupera de forma
+ * transparente. */
+final class TempStoreMemory implements TempStore {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private final long maxBytes;
+
+	private final AtomicLong usedBytes = new AtomicLong();
+
+	/** Firmas en memoria de cada lote, indexadas por el identificador de la firma. */
+	private final ConcurrentHashMap<String, Map<String, byte[]>> batches = new ConcurrentHashMap<>();
+
+	private final TempStore spillStore;
+
+	/** Crea un almacenamiento temporal en memoria.
+	 * @param limit N&uacute;mero m&aacute;ximo de bytes que se conservan en memoria
+	 *              entre todos los lotes en curso.
+	 * @param spill Almacenamiento al que se desv&iacute;an las firmas que no caben en memoria. */
+	TempStoreMemory(final long limit, final TempStore spill) {
+		if (spill == null) {
+			throw new IllegalArgumentException(
+				"El almacenamiento para las firmas que no caben en memoria no puede ser nulo" //$NON-NLS-1$
+			);
+		}
+		this.maxBytes = limit;
+		this.spillStore = spill;
+	}
+
+	@Override
+	public void store(final byte[] data, final SingleSign ss, final String batchId) throws IOException {
+		// Liberamos antes la version anterior de la firma, para que no se devuelva en lugar de
+		// la nueva si esta se desvia a disco y para que su espacio cuente como disponible
+		final Map<String, byte[]> batch = getBatch(batchId);
+		final byte[] previous = batch.remove(ss.getId());
+		if (previous != null) {
+			this.usedBytes.addAndGet(-previous.length);
+		}
+		if (reserve(data.length)) {
+			final byte[] replaced = batch.put(ss.getId(), data);
+			if (replaced != null) {
+				this.usedBytes.addAndGet(-replaced.length);
+			}
+			return;
+		}
+		LOGGER.fine(
+			"Se supera el limite de memoria del almacenamiento temporal, la firma '" + ss.getId() + "' se guardara en disco" //$NON-NLS-1$ //$NON-NLS-2$
+		);
+		this.spillStore.store(data, ss, batchId);
+	}
+
+	@Override
+	public byte[] retrieve(final SingleSign ss, final String batchId) throws IOException {
+		final Map<String, byte[]> batch = this.batches.get(batchId);
+		if (batch != null) {
+			final byte[] data = batch.get(ss.getId());
+			if (data != null) {
+				return data;
+			}
+		}
+		return this.spillStore.retrieve(ss, batchId);
+	}
+
+	@Override
+	public void delete(final SingleSign ss, final String batchId) {
+		final Map<String, byte[]> batch = this.batches.get(batchId);
+		if (batch != null) {
+			final byte[] data = batch.remove(ss.getId());
+			if (data != null) {
+				this.usedBytes.addAndGet(-data.length);
+				return;
+			}
+		}
+		this.spillStore.delete(ss, batchId);
+	}
+
+	@Override
+	public void deleteAll(final String batchId) {
+		final Map<String, byte[]> batch = this.batches.remove(batchId);
+		if (batch != null) {
+			long released = 0;
+			for (final byte[] data : batch.values()) {
+				released += data.length;
+			}
+			this.usedBytes.addAndGet(-released);
+		}
+		this.spillStore.deleteAll(batchId);
+	}
+
+	private Map<String, byte[]> getBatch(final String batchId) {
+		Map<String, byte[]> batch = this.batches.get(batchId);
+		if (batch == null) {
+			batch = new ConcurrentHashMap<>();
+			final Map<String, byte[]> previous = this.batches.putIfAbsent(batchId, batch);
+			if (previous != null) {
+				batch = previous;
+			}
+		}
+		return batch;
+	}
+
+	/** Reserva espacio en memoria si hay suficiente disponible.
+	 * @param size N&uacute;mero de bytes a reservar.
+	 * @return <code>true</code> si se ha reservado el espacio, <code>false</code> si no
+	 *         hay espacio suficiente. */
+	private boolean reserve(final long size) {
+		while (true) {
+			final long used = this.usedBytes.get();
+			if (used + size > this.maxBytes) {
+				return false;
+			}
+			if (this.usedBytes.compareAndSet(used, used + size)) {
+				return true;
+			}
+		}
+	}
+
+}
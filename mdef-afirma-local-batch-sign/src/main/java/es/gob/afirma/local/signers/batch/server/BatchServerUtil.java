@@ -7,31 +7,13 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
-import java.util.logging.Logger;
 
 import es.gob.afirma.core.misc.Base64;
 import es.gob.afirma.core.signers.TriphaseData;
 import es.gob.afirma.local.signers.batch.SignBatch;
-import es.gob.afirma.local.signers.batch.SignBatchConcurrent;
-import es.gob.afirma.local.signers.batch.SignBatchSerial;
 
 final class BatchServerUtil {
 
-	private static final boolean CONCURRENT;
-	static {
-		final Properties p = new Properties();
-		try {
-			p.load(BatchServerUtil.class.getResourceAsStream("/signbatch.properties")); //$NON-NLS-1$
-		}
-		catch(final Exception e) {
-			Logger.getLogger("es.gob.afirma").severe( //$NON-NLS-1$
-				"No se ha podido cargar la configuracion del proceso por lotes, se usara el modo no concurrente: " + e //$NON-NLS-1$
-			);
-		}
-		CONCURRENT = Boolean.parseBoolean(p.getProperty("concurrentmode", "false")); //$NON-NLS-1$ //$NON-NLS-2$
-	}
-
 	private BatchServerUtil() {
 		// No instanciable
 	}
@@ -51,10 +33,7 @@ final class BatchServerUtil {
 		final byte[] xmlBytes =  Base64.isBase64(xml.getBytes()) ?
 			Base64.decode(unDoUrlSafe(xml)) :
 			xml.getBytes();
-		if (CONCURRENT) {
-			return new SignBatchConcurrent(xmlBytes);
-		}
-		return new SignBatchSerial(xmlBytes);
+		return SignBatch.createSignBatch(xmlBytes);
 	}
 
 	static X509Certificate[] getCertificates(final String certListUrlSafeBase64) throws CertificateException,
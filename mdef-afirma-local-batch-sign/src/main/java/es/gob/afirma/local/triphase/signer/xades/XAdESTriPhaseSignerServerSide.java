@@ -26,7 +26,9 @@ import java.security.cert.X509Certificate;
 import java.security.interfaces.RSAPublicKey;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import javax.xml.crypto.AlgorithmMethod;
@@ -96,6 +98,11 @@ public final class XAdESTriPhaseSignerServerSide {
 
 	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
 
+	/** Claves privadas con las que se hacen las firmas temporales, por tama&ntilde;o de clave.
+	 * Como sus firmas se sustituyen siempre por las reales, se generan una &uacute;nica vez para
+	 * cada tama&ntilde;o y se reutilizan en todas las prefirmas. */
+	private static final Map<Integer, PrivateKey> DUMMY_KEYS = new ConcurrentHashMap<>();
+
 	/** Prefirma (firma simple) en formato XAdES.
 	 * @param data Datos a prefirmar
 	 * @param algorithm Algoritmo de firma
@@ -194,10 +201,10 @@ public final class XAdESTriPhaseSignerServerSide {
 			}
 		}
 
-		// Generamos un par de claves para hacer la firma temporal, que despues sustituiremos por la real
-		final PrivateKey prk = generateKeyPair(
+		// Obtenemos una clave para hacer la firma temporal, que despues sustituiremos por la real
+		final PrivateKey prk = getDummyPrivateKey(
 			((RSAPublicKey)((X509Certificate)certChain[0]).getPublicKey()).getModulus().bitLength()
-		).getPrivate();
+		);
 
 		final byte[] result;
 		switch (op) {
@@ -381,6 +388,28 @@ public final class XAdESTriPhaseSignerServerSide {
 		public Key getKey() { return this.pk; }
 	}
 
+	/** Obtiene la clave privada RSA con la que hacer las firmas temporales, gener&aacute;ndola solo
+	 * si es la primera vez que se pide una clave de ese tama&ntilde;o.
+	 * @param keySize Tama&ntilde;o de la clave
+	 * @return Clave privada RSA del tama&ntilde;o indicado
+	 * @throws NoSuchAlgorithmException Si no se soporta la generaci&oacute;n de claves RSA */
+	static PrivateKey getDummyPrivateKey(final int keySize) throws NoSuchAlgorithmException {
+		final Integer size = Integer.valueOf(keySize);
+		PrivateKey prk = DUMMY_KEYS.get(size);
+		if (prk == null) {
+			// Evitamos que varias prefirmas simultaneas generen a la vez la misma clave
+			synchronized (DUMMY_KEYS) {
+				prk = DUMMY_KEYS.get(size);
+				if (prk == null) {
+					LOGGER.info("Se genera la clave RSA de " + keySize + " bits para las firmas temporales XAdES"); //$NON-NLS-1$ //$NON-NLS-2$
+					prk = generateKeyPair(keySize).getPrivate();
+					DUMMY_KEYS.put(size, prk);
+				}
+			}
+		}
+		return prk;
+	}
+
 	/** Genera un par de claves RSA.
 	 * @param keySize Tama&ntilde;o de las claves a generar
 	 * @return Par de claves RSA
@@ -0,0 +1,27 @@
+package es.gob.afirma.local.triphase.signer.xades;
+
+import java.security.PrivateKey;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Pruebas de las claves de las firmas temporales de la prefirma XAdES. */
+public final class TestXAdESDummyKey {
+
+	private static final int KEY_SIZE = 2048;
+
+	private static final int DOCUMENTS = 10;
+
+	/** Comprueba que la clave de firma temporal se reutiliza entre prefirmas con el mismo
+	 * tama&ntilde;o de clave y que no se comparte entre tama&ntilde;os distintos.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testDummyKeyReuse() throws Exception {
+		final PrivateKey first = XAdESTriPhaseSignerServerSide.getDummyPrivateKey(KEY_SIZE);
+		for (int i = 1; i < DOCUMENTS; i++) {
+			Assert.assertSame(first, XAdESTriPhaseSignerServerSide.getDummyPrivateKey(KEY_SIZE));
+		}
+		Assert.assertNotSame(first, XAdESTriPhaseSignerServerSide.getDummyPrivateKey(1024));
+	}
+}
@@ -77,6 +77,8 @@ final class CommandLineLauncher {
 	/** Clave con la que se configuran los filtros en el CertFilterManager. */
 	private static final String KEY_FILTERS = "filters";  //$NON-NLS-1$
 
+	private static final String PDF_HEADER = "%PDF-"; //$NON-NLS-1$
+
 	private static final int STATUS_ERROR = -1;
 	private static final int STATUS_SUCCESS = 0;
 
@@ -272,7 +274,7 @@ final class CommandLineLauncher {
 			throw new CommandLineException(CommandLineMessages.getString("CommandLineLauncher.5")); //$NON-NLS-1$
 		}
 
-		HashHelper.createHashUI(params.getInputFile().getAbsolutePath());
+		HashHelper.createHashUI(params.getInputFile().getAbsolutePath(), params.getDigestAlgorithms());
 	}
 
 	/** Realizamos la operaci&oacute;n de comprobaci&oacute;n de huellas digitales mostrando los di&aacute;logos
@@ -467,16 +469,31 @@ final class CommandLineLauncher {
 				selectedAlias = filterCertificates(ksm, params.getFilter());
 			}
 
-			res = sign(
-				command,
-				params.getFormat(),
-				params.getAlgorithm(),
-				params.getExtraParams(),
-				params.getInputFile(),
-				selectedAlias,
-				ksm,
-				params.getPassword()
-			);
+			if (isLargePdfSign(command, params)) {
+				// Los PDF grandes se firman directamente sobre el fichero de salida
+				signLargePdf(
+					params.getAlgorithm(),
+					params.getExtraParams(),
+					params.getInputFile(),
+					params.getOutputFile(),
+					selectedAlias,
+					ksm,
+					params.getPassword()
+				);
+				res = null;
+			}
+			else {
+				res = sign(
+					command,
+					params.getFormat(),
+					params.getAlgorithm(),
+					params.getExtraParams(),
+					params.getInputFile(),
+					selectedAlias,
+					ksm,
+					params.getPassword()
+				);
+			}
 		}
 		catch (IOException | AOException | AOKeystoreAlternativeException e) {
 			if (params.isXml()) {
@@ -489,7 +506,7 @@ final class CommandLineLauncher {
 		// La respuesta, si se indico que fuese XML, sera un XML con el texto descriptivo de la respuesta
 		// y, si no se guardo la firma, el resultado de la firma. Si la respuesta no es XML simplemente
 		// se devuelve el texto plano con el resultado.
-		if (params.getOutputFile() != null) {
+		if (params.getOutputFile() != null && res != null) {
 
 			try (final OutputStream fos = new FileOutputStream(params.getOutputFile());) {
 				fos.write(res);
@@ -545,15 +562,78 @@ final class CommandLineLauncher {
 		return filteredAliases[0];
 	}
 
-	private static byte[] sign(final CommandLineCommand command,
-			                   final String fmt,
-			                   final String algorithm,
-			                   final String extraParams,
-			                   final File inputFile,
-			                   final String alias,
-			                   final AOKeyStoreManager ksm,
-			                   final String storePassword) throws CommandLineException, IOException, AOException {
+	/** Indica si la operaci&oacute;n es la firma PAdES de un PDF lo bastante grande como para firmarlo
+	 * directamente sobre ficheros en lugar de cargarlo en memoria.
+	 * @param command Comando ejecutado en l&iacute;nea de comandos.
+	 * @param params Par&aacute;metros de configuraci&oacute;n.
+	 * @return <code>true</code> si el PDF debe firmarse sobre ficheros, <code>false</code> en caso contrario. */
+	private static boolean isLargePdfSign(final CommandLineCommand command, final CommandLineParameters params) {
+		if (command != CommandLineCommand.SIGN || params.getOutputFile() == null ||
+				params.getInputFile().length() <= AOPDFSigner.LARGE_PDF_SIZE) {
+			return false;
+		}
+		if (CommandLineParameters.FORMAT_PADES.equals(params.getFormat())) {
+			return true;
+		}
+		if (!CommandLineParameters.FORMAT_AUTO.equals(params.getFormat())) {
+			return false;
+		}
+		// En modo automatico comprobamos la cabecera del fichero sin leerlo completo
+		final byte[] header = new byte[PDF_HEADER.length()];
+		try (
+			final InputStream input = new FileInputStream(params.getInputFile());
+		) {
+			int read = 0;
+			int n;
+			while (read < header.length && (n = input.read(header, read, header.length - read)) > 0) {
+				read += n;
+			}
+			return read == header.length && PDF_HEADER.equals(new String(header, "ISO-8859-1")); //$NON-NLS-1$
+		}
+		catch (final Exception e) {
+			// Si no se puede leer la cabecera se sigue el proceso normal, que informara del error
+			return false;
+		}
+	}
+
+	/** Firma en PAdES un PDF grande escribiendo el resultado directamente en el fichero de salida,
+	 * sin cargar en memoria ni el documento de entrada ni el firmado.
+	 * @param algorithm Algoritmo de firma.
+	 * @param extraParams Par&aacute;metros adicionales de la firma.
+	 * @param inputFile Fichero PDF de entrada.
+	 * @param outputFile Fichero en el que guardar el PDF firmado.
+	 * @param alias Alias del certificado de firma.
+	 * @param ksm Gestor del almac&eacute;n de claves.
+	 * @param storePassword Contrase&ntilde;a del almac&eacute;n.
+	 * @throws CommandLineException Si los par&aacute;metros adicionales no son v&aacute;lidos o falla la firma.
+	 * @throws AOException Si no se puede obtener la clave de firma. */
+	private static void signLargePdf(final String algorithm,
+			                         final String extraParams,
+			                         final File inputFile,
+			                         final File outputFile,
+			                         final String alias,
+			                         final AOKeyStoreManager ksm,
+			                         final String storePassword) throws CommandLineException, AOException {
+
+		final PrivateKeyEntry ke = getKeyEntry(alias, ksm, storePassword);
+		try {
+			new AOPDFSigner().sign(
+				inputFile,
+				outputFile,
+				algorithm,
+				ke.getPrivateKey(),
+				ke.getCertificateChain(),
+				parseExtraParams(extraParams)
+			);
+		}
+		catch(final Exception e) {
+			throw new CommandLineException("Error en la operacion de firma: " + e.getMessage(), e); //$NON-NLS-1$
+		}
+	}
 
+	private static PrivateKeyEntry getKeyEntry(final String alias,
+			                                   final AOKeyStoreManager ksm,
+			                                   final String storePassword) throws AOException {
 		final PrivateKeyEntry ke;
 		ksm.setEntryPasswordCallBack(
 			new CachePasswordCallback(
@@ -569,6 +649,54 @@ final class CommandLineLauncher {
 		if (ke == null) {
 			throw new AOException("No se hay ninguna entrada en el almacen con el alias indicado: " + alias); //$NON-NLS-1$
 		}
+		return ke;
+	}
+
+	private static Properties parseExtraParams(final String extraParams) throws CommandLineException {
+		if (extraParams == null) {
+			return null;
+		}
+		try {
+			final String params = extraParams.trim();
+			final Properties extraParamsProperties = new Properties();
+
+			// La division no funciona correctamente con split porque el caracter salto de linea se protege
+			// al insertarse por consola, asi que lo hacemos manualmente.
+			int beginIndex = 0;
+			int endIndex;
+			while ((endIndex = params.indexOf("\\n", beginIndex)) != -1) { //$NON-NLS-1$
+				final String keyValue = params.substring(beginIndex, endIndex).trim();
+				// Solo procesamos las lineas con contenido que no sean comentario
+				if (keyValue.length() > 0 && keyValue.charAt(0) != '#') {
+					extraParamsProperties.setProperty(
+						keyValue.substring(0, keyValue.indexOf('=')),
+						keyValue.substring(keyValue.indexOf('=') + 1)
+					);
+				}
+				beginIndex = endIndex + "\\n".length();  //$NON-NLS-1$
+			}
+			extraParamsProperties.setProperty(
+				params.substring(beginIndex, params.indexOf('=', beginIndex)),
+				params.substring(params.indexOf('=', beginIndex) + 1)
+			);
+			return extraParamsProperties;
+		}
+		catch (final Exception e) {
+			throw new CommandLineException(
+					CommandLineMessages.getString("CommandLineLauncher.51", extraParams), e); //$NON-NLS-1$
+		}
+	}
+
+	private static byte[] sign(final CommandLineCommand command,
+			                   final String fmt,
+			                   final String algorithm,
+			                   final String extraParams,
+			                   final File inputFile,
+			                   final String alias,
+			                   final AOKeyStoreManager ksm,
+			                   final String storePassword) throws CommandLineException, IOException, AOException {
+
+		final PrivateKeyEntry ke = getKeyEntry(alias, ksm, storePassword);
 
 		// Leemos el fichero de entrada
 		final byte[] data;
@@ -602,36 +730,7 @@ final class CommandLineLauncher {
 				format = fmt;
 			}
 
-			if (extraParams != null) {
-				try {
-					final String params = extraParams.trim();
-					extraParamsProperties = new Properties();
-
-					// La division no funciona correctamente con split porque el caracter salto de linea se protege
-					// al insertarse por consola, asi que lo hacemos manualmente.
-					int beginIndex = 0;
-					int endIndex;
-					while ((endIndex = params.indexOf("\\n", beginIndex)) != -1) { //$NON-NLS-1$
-						final String keyValue = params.substring(beginIndex, endIndex).trim();
-						// Solo procesamos las lineas con contenido que no sean comentario
-						if (keyValue.length() > 0 && keyValue.charAt(0) != '#') {
-							extraParamsProperties.setProperty(
-								keyValue.substring(0, keyValue.indexOf('=')),
-								keyValue.substring(keyValue.indexOf('=') + 1)
-							);
-						}
-						beginIndex = endIndex + "\\n".length();  //$NON-NLS-1$
-					}
-					extraParamsProperties.setProperty(
-						params.substring(beginIndex, params.indexOf('=', beginIndex)),
-						params.substring(params.indexOf('=', beginIndex) + 1)
-					);
-				}
-				catch (final Exception e) {
-					throw new CommandLineException(
-							CommandLineMessages.getString("CommandLineLauncher.51", extraParams), e); //$NON-NLS-1$
-				}
-			}
+			extraParamsProperties = parseExtraParams(extraParams);
 		}
 
 		// Instanciamos un firmador del tipo adecuado
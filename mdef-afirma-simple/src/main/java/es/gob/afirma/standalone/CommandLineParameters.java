@@ -13,6 +13,7 @@ package es.gob.afirma.standalone;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 
 /** Clase que engloba todos los par&aacute;metros admitidos por
  * l&iacute;nea de comandos. */
@@ -33,6 +34,7 @@ final class CommandLineParameters {
 	private static final String PARAM_PREURL  = "-preurl"; //$NON-NLS-1$
 	private static final String PARAM_POSTURL = "-posturl"; //$NON-NLS-1$
 	private static final String PARAM_TYPE 	  = "-type"; //$NON-NLS-1$
+	private static final String PARAM_DIGEST_ALGOS = "-digestAlgorithms"; //$NON-NLS-1$
 
 
 	public static final String FORMAT_AUTO     = "auto"; //$NON-NLS-1$
@@ -53,6 +55,11 @@ final class CommandLineParameters {
 
 	private static final String DEFAULT_ALGORITHM = "SHA512withRSA"; //$NON-NLS-1$
 
+	/** Algoritmos de huella soportados por los comandos de huellas digitales. */
+	private static final String[] SUPPORTED_DIGEST_ALGORITHMS = new String[] {
+		"SHA-1", "SHA-256", "SHA-384", "SHA-512" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	};
+
 	private String store = null;
 	private String alias = null;
 	private String filter = null;
@@ -69,6 +76,7 @@ final class CommandLineParameters {
 	private URL postUrl = null;
 	private URL preUrl = null;
 	private String type = null;
+	private String[] digestAlgorithms = null;
 
 	public CommandLineParameters(final String[] params) throws CommandLineException {
 
@@ -217,6 +225,19 @@ final class CommandLineParameters {
 				}
 				i++;
 			}
+			else if (PARAM_DIGEST_ALGOS.equals(params[i])) {
+				if (this.digestAlgorithms != null) {
+					throw new CommandLineException(CommandLineMessages.getString("CommandLineLauncher.26", params[i])); //$NON-NLS-1$
+				}
+				this.digestAlgorithms = params[i+1].split(","); //$NON-NLS-1$
+				for (int j = 0; j < this.digestAlgorithms.length; j++) {
+					this.digestAlgorithms[j] = this.digestAlgorithms[j].trim().toUpperCase();
+					if (!Arrays.asList(SUPPORTED_DIGEST_ALGORITHMS).contains(this.digestAlgorithms[j])) {
+						throw new CommandLineException(CommandLineMessages.getString("CommandLineLauncher.80", this.digestAlgorithms[j])); //$NON-NLS-1$
+					}
+				}
+				i++;
+			}
 			else {
 				throw new CommandLineException(CommandLineMessages.getString("CommandLineLauncher.25", params[i])); //$NON-NLS-1$
 			}
@@ -285,6 +306,12 @@ final class CommandLineParameters {
 		return this.algorithm != null ? this.algorithm : DEFAULT_ALGORITHM;
 	}
 
+	/** Recupera los algoritmos de huella configurados.
+	 * @return Algoritmos de huella o {@code null} si no se han indicado. */
+	public String[] getDigestAlgorithms() {
+		return this.digestAlgorithms;
+	}
+
 	public String getExtraParams() {
 		return this.extraParams;
 	}
@@ -494,7 +521,8 @@ final class CommandLineParameters {
 		sb.append(CommandLineMessages.getString("CommandLineLauncher.7")) //$NON-NLS-1$
 		.append(": AutoFirma ").append(op).append(" [options...]\n\n")  //$NON-NLS-1$ //$NON-NLS-2$
 		.append("options\n\n") //$NON-NLS-1$
-		.append("  ").append(PARAM_INPUT).append(" inputfile\t (").append(CommandLineMessages.getString("CommandLineLauncher.68")).append(")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		.append("  ").append(PARAM_INPUT).append(" inputfile\t (").append(CommandLineMessages.getString("CommandLineLauncher.68")).append(")\n") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		.append("  ").append(PARAM_DIGEST_ALGOS).append(" algos\t (").append(CommandLineMessages.getString("CommandLineLauncher.79")).append(")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
 
 		return sb.toString();
 	}
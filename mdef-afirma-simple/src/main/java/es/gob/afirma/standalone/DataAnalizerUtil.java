@@ -15,6 +15,7 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 
+import es.gob.afirma.cert.signvalidation.DataSniffer;
 import es.gob.afirma.core.misc.AOFileUtils;
 import es.gob.afirma.core.misc.Base64;
 import es.gob.afirma.signers.cades.AOCAdESSigner;
@@ -27,6 +28,9 @@ import es.gob.afirma.signers.xades.AOXAdESSigner;
 import es.gob.afirma.signers.xmldsig.AOXMLDSigSigner;
 
 /** Utilidad para el an&aacute;lisis de ficheros de datos.
+ * Antes de analizar por completo los datos con el firmador de cada formato se descartan los
+ * formatos que no pueden corresponderse con sus primeros bytes o, en el caso de los ZIP, con su
+ * directorio central, de forma que cada comprobaci&oacute;n negativa sea inmediata.
  * @author Carlos Gamuci. */
 public final class DataAnalizerUtil {
 
@@ -83,7 +87,7 @@ public final class DataAnalizerUtil {
      * @param data Datos a analizar.
      * @return Devuelve {@code true} si los datos son XML. */
     public static boolean isXML(final byte[] data) {
-        return AOFileUtils.isXML(data);
+        return DataSniffer.mayBeXml(data) && AOFileUtils.isXML(data);
     }
 
     /** Comprueba si los datos introducidos se corresponden a una firma XML soportada.
@@ -91,7 +95,8 @@ public final class DataAnalizerUtil {
      * @return Devuelve {@code true} si los datos son una firma XML soportada. */
     public static boolean isSignedXML(final byte[] data) {
         try {
-            return new AOXAdESSigner().isSign(data) || new AOXMLDSigSigner().isSign(data);
+            return DataSniffer.mayBeXml(data) &&
+                (new AOXAdESSigner().isSign(data) || new AOXMLDSigSigner().isSign(data));
         }
         catch(final Exception e) {
             return false;
@@ -103,7 +108,7 @@ public final class DataAnalizerUtil {
      * @return Devuelve {@code true} si los datos son un PDF. */
     public static boolean isPDF(final byte[] data) {
         try {
-            return new AOPDFSigner().isValidDataFile(data);
+            return DataSniffer.mayBePdf(data) && new AOPDFSigner().isValidDataFile(data);
         }
         catch(final Exception e) {
             return false;
@@ -117,7 +122,7 @@ public final class DataAnalizerUtil {
      */
     public static boolean isSignedPDF(final byte[] data) {
         try {
-            return new AOPDFSigner().isSign(data);
+            return DataSniffer.mayBePdf(data) && new AOPDFSigner().isSign(data);
         }
         catch(final Exception e) {
             return false;
@@ -145,7 +150,7 @@ public final class DataAnalizerUtil {
      *         <code>false</code> en caso contrario */
     public static boolean isFacturae(final byte[] file) {
         try {
-            return new AOFacturaESigner().isValidDataFile(file);
+            return DataSniffer.mayBeFacturae(file) && new AOFacturaESigner().isValidDataFile(file);
         }
         catch(final Exception e) {
             return false;
@@ -161,7 +166,7 @@ public final class DataAnalizerUtil {
     public static boolean isSignedFacturae(final byte[] data) {
 
         try {
-            return new AOFacturaESigner().isSign(data);
+            return DataSniffer.mayBeFacturae(data) && new AOFacturaESigner().isSign(data);
         }
         catch(final Exception e) {
             return false;
@@ -173,7 +178,7 @@ public final class DataAnalizerUtil {
      * @return Devuelve {@code true} si los datos son ODF. */
     public static boolean isODF(final byte[] data) {
         try {
-            return new AOODFSigner().isValidDataFile(data);
+            return DataSniffer.mayBeOdf(data) && new AOODFSigner().isValidDataFile(data);
         }
         catch(final Exception e) {
             return false;
@@ -187,7 +192,7 @@ public final class DataAnalizerUtil {
      */
     public static boolean isSignedODF(final byte[] data) {
         try {
-            return new AOODFSigner().isSign(data);
+            return DataSniffer.mayBeOdf(data) && new AOODFSigner().isSign(data);
         }
         catch(final Exception e) {
             return false;
@@ -199,7 +204,7 @@ public final class DataAnalizerUtil {
      * @return Devuelve {@code true} si los datos son OOXML. */
     public static boolean isOOXML(final byte[] data) {
         try {
-            return new AOOOXMLSigner().isValidDataFile(data);
+            return DataSniffer.mayBeOoxml(data) && new AOOOXMLSigner().isValidDataFile(data);
         }
         catch(final Exception e) {
             return false;
@@ -213,7 +218,7 @@ public final class DataAnalizerUtil {
      */
     public static boolean isSignedOOXML(final byte[] data) {
         try {
-            return new AOOOXMLSigner().isSign(data);
+            return DataSniffer.mayBeOoxml(data) && new AOOOXMLSigner().isSign(data);
         }
         catch(final Exception e) {
             return false;
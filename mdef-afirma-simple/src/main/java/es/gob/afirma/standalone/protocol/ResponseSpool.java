@@ -0,0 +1,149 @@
+package es.gob.afirma.standalone.protocol;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+import es.gob.afirma.core.misc.Base64;
+
+/** Almac&eacute;n del resultado de una operaci&oacute;n pendiente de env&iacute;o por el
+ * <i>socket</i>.
+ * El resultado se guarda una &uacute;nica vez como bytes (en memoria si es peque&ntilde;o o en un
+ * fichero temporal si no) y cada parte se codifica en Base64 y se escribe directamente en el flujo
+ * de salida por bloques, sin construir en memoria la parte completa ni su codificaci&oacute;n. */
+final class ResponseSpool {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	/** Tama&ntilde;o a partir del cual el resultado se guarda en un fichero temporal. */
+	private static final int MAX_MEMORY_SIZE = 4 * 1024 * 1024;
+
+	/** Tama&ntilde;o de los bloques que se codifican y escriben de una vez. Es m&uacute;ltiplo de 3
+	 * para que la concatenaci&oacute;n de los bloques codificados sea igual a la codificaci&oacute;n
+	 * de la parte completa. */
+	private static final int BLOCK_SIZE = 3 * 16 * 1024;
+
+	private static final byte[] CRLF = new byte[] { '\r', '\n' };
+
+	private final byte[] data;
+	private final File file;
+	private final long length;
+	private final int partSize;
+
+	private ResponseSpool(final byte[] data, final File file, final long length, final int partSize) {
+		this.data = data;
+		this.file = file;
+		this.length = length;
+		this.partSize = partSize;
+	}
+
+	/** Guarda el resultado de una operaci&oacute;n.
+	 * @param response Resultado de la operaci&oacute;n.
+	 * @param partSize N&uacute;mero m&aacute;ximo de bytes del resultado que se env&iacute;an en cada parte.
+	 * @return Almac&eacute;n con el resultado.
+	 * @throws IOException Si no se puede crear el fichero temporal. */
+	static ResponseSpool create(final byte[] response, final int partSize) throws IOException {
+		if (response.length <= MAX_MEMORY_SIZE) {
+			return new ResponseSpool(response, null, response.length, partSize);
+		}
+		final File tmp = File.createTempFile("afirma", ".resp"); //$NON-NLS-1$ //$NON-NLS-2$
+		tmp.deleteOnExit();
+		try (final OutputStream fos = new FileOutputStream(tmp)) {
+			fos.write(response);
+		}
+		catch (final IOException e) {
+			deleteFile(tmp);
+			throw e;
+		}
+		LOGGER.info("El resultado de la operacion se ha guardado en un fichero temporal"); //$NON-NLS-1$
+		return new ResponseSpool(null, tmp, response.length, partSize);
+	}
+
+	/** Obtiene el n&uacute;mero de partes en las que se env&iacute;a el resultado.
+	 * @return N&uacute;mero de partes. */
+	int getParts() {
+		return (int) ((this.length + this.partSize - 1) / this.partSize);
+	}
+
+	/** Obtiene el tama&ntilde;o total del resultado.
+	 * @return Tama&ntilde;o en bytes. */
+	long getLength() {
+		return this.length;
+	}
+
+	/** Escribe una parte del resultado codificada en Base64 URL-safe.
+	 * @param part N&uacute;mero de parte (empezando en 1).
+	 * @param os Flujo en el que escribir.
+	 * @param chunked Si se debe escribir cada bloque como un fragmento de la codificaci&oacute;n de
+	 *                transferencia <code>chunked</code> de HTTP/1.1 (incluyendo el fragmento final).
+	 * @throws IOException Si hay errores en la lectura o escritura. */
+	void writePart(final int part, final OutputStream os, final boolean chunked) throws IOException {
+		if (part < 1 || part > getParts()) {
+			throw new IllegalArgumentException("La parte solicitada no existe: " + part); //$NON-NLS-1$
+		}
+		final long start = (long) (part - 1) * this.partSize;
+		final long end = Math.min(start + this.partSize, this.length);
+
+		try (final RandomAccessFile raf = this.file != null ? new RandomAccessFile(this.file, "r") : null) { //$NON-NLS-1$
+			final byte[] block = this.file != null ? new byte[BLOCK_SIZE] : null;
+			if (raf != null) {
+				raf.seek(start);
+			}
+			for (long pos = start; pos < end; pos += BLOCK_SIZE) {
+				final int len = (int) Math.min(BLOCK_SIZE, end - pos);
+				final byte[] encoded;
+				if (raf != null) {
+					raf.readFully(block, 0, len);
+					encoded = encode(block, 0, len);
+				}
+				else {
+					encoded = encode(this.data, (int) pos, len);
+				}
+				if (chunked) {
+					os.write(Integer.toHexString(encoded.length).getBytes(StandardCharsets.US_ASCII));
+					os.write(CRLF);
+					os.write(encoded);
+					os.write(CRLF);
+				}
+				else {
+					os.write(encoded);
+				}
+			}
+		}
+		if (chunked) {
+			os.write('0');
+			os.write(CRLF);
+			os.write(CRLF);
+		}
+	}
+
+	/** Libera el fichero temporal, si lo hay. */
+	void close() {
+		if (this.file != null) {
+			deleteFile(this.file);
+		}
+	}
+
+	private static byte[] encode(final byte[] buf, final int offset, final int len) {
+		final byte[] slice;
+		if (offset == 0 && len == buf.length) {
+			slice = buf;
+		}
+		else {
+			slice = new byte[len];
+			System.arraycopy(buf, offset, slice, 0, len);
+		}
+		return Base64.encode(slice, true).getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static void deleteFile(final File f) {
+		if (!f.delete()) {
+			LOGGER.warning("No se ha podido borrar el fichero temporal " + f.getName()); //$NON-NLS-1$
+		}
+	}
+
+}
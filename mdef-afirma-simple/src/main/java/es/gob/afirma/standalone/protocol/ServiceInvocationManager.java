@@ -1,25 +1,28 @@
 package es.gob.afirma.standalone.protocol;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.BindException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.net.ssl.KeyManagerFactory;
@@ -40,19 +43,15 @@ public final class ServiceInvocationManager {
 
 	static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
 
-	private static final int READ_BUFFER_SIZE = 2048;
-
-	/** Tamano del segmento de cada fragmento de datos que se lea del sokect que se mantendra
-	 * almacenado por si el segmento de fin de entrada queda dividido entre dos fragmentos. El valor
-	 * permite que quepa al completo en un subfragmente la etiqueta EOF y la etiqueta idSession con
-	 * su valor. */
-	private static final int BUFFERED_SECURITY_RANGE = 36;
-
 	/** Tiempo de espera de cada socket en milisegundos. */
 	private static int SOCKET_TIMEOUT = 60000;
 
-	/** Maximo numero de caracteres que podemos enviar en una respuesta. */
-	private static final int RESPONSE_MAX_SIZE = 1000000;
+	/** Tama&ntilde;o del b&uacute;fer de escritura de las partes de la respuesta. */
+	private static final int SEND_BUFFER_SIZE = 64 * 1024;
+
+	/** N&uacute;mero m&aacute;ximo de conexiones que se atienden a la vez. */
+	private static final int MAX_CONCURRENT_CONNECTIONS = 4;
+
 	//  peticiones que podemos recibir
 	private static final String CMD = "cmd="; //$NON-NLS-1$
 	private static final String ECHO = "echo="; //$NON-NLS-1$
@@ -68,16 +67,27 @@ public final class ServiceInvocationManager {
 	/** Par&aacute;metro de entrada con la versi&oacute;n del protocolo que se va a utilizar. */
 	private static final String PROTOCOL_VERSION_PARAM = "v"; //$NON-NLS-1$
 
+	/** Versi&oacute;n de protocolo en la que las partes de la respuesta son mayores y se
+	 * env&iacute;an con codificaci&oacute;n de transferencia <code>chunked</code>. */
+	private static final int STREAMING_PROTOCOL_VERSION = 2;
+
 	/** Versi&oacute;n de protocolo m&aacute;s avanzada soportada. */
-	private static final int CURRENT_PROTOCOL_VERSION = 1;
+	private static final int CURRENT_PROTOCOL_VERSION = STREAMING_PROTOCOL_VERSION;
 
 	/** Listado de versiones de protocolo soportadas. */
-	private static final int[] SUPPORTED_PROTOCOL_VERSIONS = new int[] { CURRENT_PROTOCOL_VERSION };
+	private static final int[] SUPPORTED_PROTOCOL_VERSIONS = new int[] { 1, STREAMING_PROTOCOL_VERSION };
+
+	/** M&aacute;ximo n&uacute;mero de bytes de la respuesta que se env&iacute;an en cada parte. */
+	private static final int RESPONSE_MAX_SIZE = 1000000;
+
+	/** M&aacute;ximo n&uacute;mero de bytes de la respuesta que se env&iacute;an en cada parte a partir
+	 * de la versi&oacute;n {@link #STREAMING_PROTOCOL_VERSION} del protocolo. */
+	private static final int STREAMING_RESPONSE_MAX_SIZE = 16 * 1024 * 1024;
 
 	// cadenas usadas dentro de las peticiones
 	private static final String RESET = "-" ; //$NON-NLS-1$
 	private static final String SEPARADOR = "@" ;   //$NON-NLS-1$
-	private static final String EOF = SEPARADOR+"EOF" ; //$NON-NLS-1$
+	private static final char SEPARADOR_CHAR = '@';
 	private static final String IDSESSION = "idsession"; //$NON-NLS-1$
 	// respuesta que podemos mandar.
 	private static final String MORE_DATA_NEED = "MORE_DATA_NEED"; //$NON-NLS-1$
@@ -136,22 +146,79 @@ public final class ServiceInvocationManager {
 		}
 	}
 
-	private final static List<String> request = new ArrayList<>();
-	private final static List<String> toSend = new ArrayList<>();
-	private static int parts = 0;
+	/** Hilos que leen las conexiones entrantes. Responden directamente a los <code>echo</code> y
+	 * pasan el resto de peticiones a {@link #SESSION_EXECUTOR}, por lo que nunca quedan
+	 * bloqueados esperando a que termine una operaci&oacute;n en curso. */
+	private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+		MAX_CONCURRENT_CONNECTIONS,
+		createThreadFactory("afirma-service-") //$NON-NLS-1$
+	);
+
+	/** Hilo que ejecuta, de una en una y por orden de llegada, las peticiones que usan el estado
+	 * de la sesi&oacute;n. */
+	private static final ExecutorService SESSION_EXECUTOR = Executors.newSingleThreadExecutor(
+		createThreadFactory("afirma-service-session-") //$NON-NLS-1$
+	);
+
+	/** Tipos de petici&oacute;n soportados y sus patrones de b&uacute;squeda. Se usa el que
+	 * aparece antes en la petici&oacute;n. */
+	private static final String[] SUPPORTED_URI_TYPES = new String[] {CMD, ECHO, FRAGMENT, SIGN, SEND};
+	private static final ServiceRequestDecoder.BytePattern[] URI_TYPE_PATTERNS = new ServiceRequestDecoder.BytePattern[SUPPORTED_URI_TYPES.length];
+	static {
+		for (int i = 0; i < SUPPORTED_URI_TYPES.length; i++) {
+			URI_TYPE_PATTERNS[i] = new ServiceRequestDecoder.BytePattern(SUPPORTED_URI_TYPES[i]);
+		}
+	}
+
+	/** Lector de peticiones de cada hilo, que se reutiliza entre conexiones. */
+	private static final ThreadLocal<ServiceRequestDecoder> DECODERS = ThreadLocal.withInitial(ServiceRequestDecoder::new);
+
+	/** Estado de la sesi&oacute;n. Solo se admiten peticiones con el <code>idsession</code> de la
+	 * URL de invocaci&oacute;n, por lo que hay una &uacute;nica sesi&oacute;n por ejecuci&oacute;n. */
+	private static final ServiceSession SESSION = new ServiceSession();
+
+	/** N&uacute;mero de peticiones en curso. Mientras haya alguna no se cuenta el tiempo de inactividad. */
+	private static int activeRequests = 0;
+	private static final Object ACTIVE_REQUESTS_LOCK = new Object();
+
 	private static SSLServerSocket  ssocket;
 	private static String idSession ;
+	/** Versi&oacute;n del protocolo que se usa en la comunicaci&oacute;n. */
+	private static int protocolVersion = 1;
 	/** Constructor vac&iacute;o privado para que no se pueda instanciar la clase ya que es est&aacute;tico. */
 	private ServiceInvocationManager(){
 		// No instanciable
 	}
 
+	/** Petici&oacute;n ya le&iacute;da que usa el estado de la sesi&oacute;n y se ejecuta en
+	 * {@link #SESSION_EXECUTOR}. */
+	private interface SessionOperation {
+		/** Ejecuta la petici&oacute;n y manda su respuesta.
+		 * @throws IOException Si hay error en el tratamiento o env&iacute;o de datos. */
+		void run() throws IOException;
+	}
+
+	/** Crea una factor&iacute;a de hilos demonio.
+	 * @param prefix Prefijo del nombre de los hilos.
+	 * @return Factor&iacute;a de hilos. */
+	private static ThreadFactory createThreadFactory(final String prefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread t = new Thread(r, prefix + this.count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
 	/** Inicia el servicio. Se intenta establecer un socket que escuche en el puerto pasado por la URL.
 	 * @param url URL. Debe indicar el puerto.
 	 * @throws UnsupportedProtocolException Si no se sooprta el protocolo o la versi&oacute;n de este. */
 	static void startService(final String url) throws UnsupportedProtocolException {
 
-		checkSupportProtocol(getVersion(url));
+		protocolVersion = checkSupportProtocol(getVersion(url));
 
 		try {
 			// ruta de la que debe buscar el fichero
@@ -175,39 +242,20 @@ public final class ServiceInvocationManager {
 			timer.start();
 			// mostramos la informacion del server socket
 			while (true){
-				try ( final SSLSocket socketChannel = (SSLSocket) ssocket.accept() ) {
-					LOGGER.info("Detectada conexion entrante"); //$NON-NLS-1$
-					// comprobamos que la direccion es local. Si no es local se descarta la peticion
-					if (!isLocalAddress((InetSocketAddress) socketChannel.getRemoteSocketAddress())) {
-						socketChannel.close();
-						ssocket.close();
-						LOGGER.severe(
-							"Se ha detectado un acceso no autorizado desde " + //$NON-NLS-1$
-								((InetSocketAddress) socketChannel.getRemoteSocketAddress()).getHostString()
-						);
-						continue;
-					}
-					try {
-						final String httpRequest = read(socketChannel.getInputStream());
-
-						// comprobamos que la peticion no es vacia
-						if (httpRequest.trim().length() != 0 ) {
-							LOGGER.fine("Peticion HTTP recibida:\n" + httpRequest); //$NON-NLS-1$
-							getCommandUri(httpRequest, socketChannel);
-						}
-						else {
-						    LOGGER.warning("Se ha recibido una peticion vacia"); //$NON-NLS-1$
-						}
-					}
-					catch (final IllegalArgumentException e) {
-						LOGGER.severe("Los parametros recibidos a traves del socket no son validos, se ignorara la peticion: " + e); //$NON-NLS-1$
-						continue;
-					}
-
-				}
-				catch (final SocketTimeoutException e) {
-						LOGGER.severe("Tiempo de espera del socket terminado" + e); //$NON-NLS-1$
+				final SSLSocket socketChannel = (SSLSocket) ssocket.accept();
+				LOGGER.info("Detectada conexion entrante"); //$NON-NLS-1$
+				// comprobamos que la direccion es local. Si no es local se descarta la peticion
+				if (!isLocalAddress((InetSocketAddress) socketChannel.getRemoteSocketAddress())) {
+					socketChannel.close();
+					ssocket.close();
+					LOGGER.severe(
+						"Se ha detectado un acceso no autorizado desde " + //$NON-NLS-1$
+							((InetSocketAddress) socketChannel.getRemoteSocketAddress()).getHostString()
+					);
+					continue;
 				}
+				// Cada conexion se atiende en su propio hilo para no bloquear al resto
+				WORKERS.execute(() -> attendConnection(socketChannel));
 			}
 		}
 
@@ -242,8 +290,108 @@ public final class ServiceInvocationManager {
 		socketChannel.getOutputStream().write(response);
 		socketChannel.getOutputStream().flush();
 		LOGGER.info("Mandando respuesta a la peticion: " + petition);  //$NON-NLS-1$
-		// volvemos a activar el timer
-		timer.restart();
+	}
+
+	/** Atiende una conexi&oacute;n entrante: lee la petici&oacute;n y la procesa. Las peticiones
+	 * <code>echo</code> se responden en el propio hilo aunque haya una operaci&oacute;n en curso.
+	 * El resto se encolan en {@link #SESSION_EXECUTOR}, que las procesa de una en una y cierra
+	 * su conexi&oacute;n al terminar, de modo que el hilo queda libre para otras conexiones.
+	 * @param socketChannel <i>Socket</i> de la conexi&oacute;n. */
+	private static void attendConnection(final SSLSocket socketChannel) {
+		// paramos el timer mientras la aplicacion realiza operaciones
+		synchronized (ACTIVE_REQUESTS_LOCK) {
+			activeRequests++;
+			timer.stop();
+		}
+		boolean queued = false;
+		try {
+			socketChannel.setSoTimeout(SOCKET_TIMEOUT);
+			final ServiceRequestDecoder httpRequest = DECODERS.get();
+
+			// comprobamos que la peticion no es vacia
+			if (httpRequest.read(socketChannel.getInputStream()) && !httpRequest.isEmpty()) {
+				if (LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.fine("Peticion HTTP recibida:\n" + httpRequest.getText(0)); //$NON-NLS-1$
+				}
+				// Comprobamos que el id de sesion transmitido es correcto
+				checkIdSession(httpRequest.getSessionId());
+				final SessionOperation operation = getCommandUri(httpRequest, socketChannel);
+				if (operation != null) {
+					SESSION_EXECUTOR.execute(() -> runSessionOperation(operation, socketChannel));
+					queued = true;
+				}
+			}
+			else {
+			    LOGGER.warning("Se ha recibido una peticion vacia"); //$NON-NLS-1$
+			}
+		}
+		catch (final IllegalArgumentException e) {
+			LOGGER.severe("Los parametros recibidos a traves del socket no son validos, se ignorara la peticion: " + e); //$NON-NLS-1$
+		}
+		catch (final SocketTimeoutException e) {
+			LOGGER.severe("Tiempo de espera del socket terminado" + e); //$NON-NLS-1$
+		}
+		catch (final IOException e) {
+			LOGGER.severe("Error en la comunicacion a traves del socket:" + e); //$NON-NLS-1$
+		}
+		finally {
+			if (!queued) {
+				closeConnection(socketChannel);
+			}
+		}
+	}
+
+	/** Ejecuta una petici&oacute;n que usa el estado de la sesi&oacute;n y cierra su conexi&oacute;n.
+	 * Se sincroniza sobre la sesi&oacute;n porque esta tambi&eacute;n libera por inactividad su
+	 * respuesta pendiente desde otro hilo.
+	 * @param operation Petici&oacute;n que se ejecuta.
+	 * @param socketChannel <i>Socket</i> de la conexi&oacute;n. */
+	private static void runSessionOperation(final SessionOperation operation, final SSLSocket socketChannel) {
+		try {
+			synchronized (SESSION) {
+				operation.run();
+			}
+		}
+		catch (final OutOfMemoryError e) {
+			LOGGER.severe("Se ha producido un error por falta memoria de la maquina virtual: " + e); //$NON-NLS-1$
+			try {
+				sendData(createHttpResponse(true, MEMORY_ERROR), socketChannel, "Error de memoria"); //$NON-NLS-1$
+			}
+			catch (final IOException ex) {
+				LOGGER.severe("Error en la comunicacion a traves del socket:" + ex); //$NON-NLS-1$
+			}
+		}
+		catch (final SocketTimeoutException e) {
+			LOGGER.severe("Tiempo de espera del socket terminado" + e); //$NON-NLS-1$
+		}
+		catch (final IOException e) {
+			LOGGER.severe("Error en la comunicacion a traves del socket:" + e); //$NON-NLS-1$
+		}
+		catch (final Exception e) {
+			LOGGER.severe("Error al procesar la peticion, se ignorara: " + e); //$NON-NLS-1$
+		}
+		finally {
+			closeConnection(socketChannel);
+		}
+	}
+
+	/** Cierra una conexi&oacute;n atendida y vuelve a activar el temporizador de inactividad si no
+	 * quedan peticiones en curso.
+	 * @param socketChannel <i>Socket</i> de la conexi&oacute;n. */
+	private static void closeConnection(final SSLSocket socketChannel) {
+		try {
+			socketChannel.close();
+		}
+		catch (final IOException e) {
+			LOGGER.warning("No se ha podido cerrar la conexion: " + e); //$NON-NLS-1$
+		}
+		// volvemos a activar el timer si no quedan peticiones en curso
+		synchronized (ACTIVE_REQUESTS_LOCK) {
+			activeRequests--;
+			if (activeRequests == 0) {
+				timer.restart();
+			}
+		}
 	}
 
 	/** Crea una respuesta HTTP para enviar a traves del socket.
@@ -251,6 +399,19 @@ public final class ServiceInvocationManager {
 	 * @param response La respuesta que se mandar&aacute; en el HTTP.
 	 * @return Devuelve el byte array con la respuesta en formato HTTP. */
 	private static byte[] createHttpResponse(final boolean ok, final String response) {
+		final StringBuilder sb = createHttpHeader(ok, false);
+		if (response != null) {
+			sb.append(Base64.encode(response.getBytes(), true));
+		}
+		return sb.toString().getBytes();
+	}
+
+	/** Crea la cabecera de una respuesta HTTP para enviar a traves del socket.
+	 * @param ok Indica si la operacion finaliz&oacute; bien o mal.
+	 * @param chunked Indica si el cuerpo de la respuesta se env&iacute;a con codificaci&oacute;n
+	 *                de transferencia <code>chunked</code>.
+	 * @return Cabecera de la respuesta, incluida la l&iacute;nea en blanco que la separa del cuerpo. */
+	private static StringBuilder createHttpHeader(final boolean ok, final boolean chunked) {
 		final StringBuilder sb = new StringBuilder();
 		if (ok) {
 			sb.append("HTTP/1.1 200 OK\n"); //$NON-NLS-1$
@@ -262,11 +423,37 @@ public final class ServiceInvocationManager {
 		sb.append("Server: Cliente @firma\n"); //$NON-NLS-1$
 		sb.append("Content-Type: text/html; charset=utf-8\n"); //$NON-NLS-1$
 		sb.append("Access-Control-Allow-Origin: *\n"); //$NON-NLS-1$
-		sb.append('\n');
-		if (response != null) {
-			sb.append(Base64.encode(response.getBytes(), true));
+		if (chunked) {
+			sb.append("Transfer-Encoding: chunked\n"); //$NON-NLS-1$
 		}
-		return sb.toString().getBytes();
+		sb.append('\n');
+		return sb;
+	}
+
+	/** Manda una parte de la respuesta de la operaci&oacute;n, leyendo directamente del
+	 * almac&eacute;n de la sesi&oacute;n.
+	 * @param session Sesi&oacute;n con la respuesta pendiente de env&iacute;o.
+	 * @param part N&uacute;mero de parte (empezando en 1).
+	 * @param socketChannel <i>Socket</i> a donde mandar la respuesta.
+	 * @param petition Petici&oacute;n que se manda, para registrarla en el log.
+	 * @throws IOException Si hay errores en el env&iacute;o. */
+	private static void sendResponsePart(final ServiceSession session,
+			                             final int part,
+			                             final Socket socketChannel,
+			                             final String petition) throws IOException {
+		final boolean chunked = protocolVersion >= STREAMING_PROTOCOL_VERSION;
+		final OutputStream os = new BufferedOutputStream(socketChannel.getOutputStream(), SEND_BUFFER_SIZE);
+		os.write(createHttpHeader(true, chunked).toString().getBytes());
+		session.writeResponsePart(part, os, chunked);
+		os.flush();
+		LOGGER.info("Mandando respuesta a la peticion: " + petition);  //$NON-NLS-1$
+	}
+
+	/** Obtiene el n&uacute;mero m&aacute;ximo de bytes de la respuesta que se env&iacute;an en cada
+	 * parte seg&uacute;n la versi&oacute;n del protocolo.
+	 * @return Tama&ntilde;o m&aacute;ximo de cada parte. */
+	private static int getResponsePartSize() {
+		return protocolVersion >= STREAMING_PROTOCOL_VERSION ? STREAMING_RESPONSE_MAX_SIZE : RESPONSE_MAX_SIZE;
 	}
 
 	/** Obtiene los puertos que se deben probar para la conexi&oacute;n externa.
@@ -370,111 +557,6 @@ public final class ServiceInvocationManager {
 		throw new IOException("No se ha podido ligar el socket servidor a ningun puerto"); //$NON-NLS-1$
 	}
 
-	/** Lee los datos recibidos en el socket.
-	 * Si el certificado no es correcto, al leer los datos del socket se reciben cadenas de texto en blanco.
-	 * @param socketIs Flujo de entrada de datos del socket..
-	 * @return Los datos recibidos.
-	 * @throws IOException Si ocurren errores durante la lectura. */
-	private static String read(final InputStream socketIs) throws IOException {
-		// Buffer en el que se ira almacenando toda la entrada
-		final StringBuilder data = new StringBuilder();
-		// Cadena que se ira actualizando para contener siempre la union de los
-		// 2 ultimos fragmentos con un tamano de 50 caracteres (suficiente para
-		// contener el fragmento de fin y el identificador de sesion)
-		String subFragment = ""; //$NON-NLS-1$
-		final byte[] reqBuffer = new byte[READ_BUFFER_SIZE];
-		boolean readed = true;
-		String insert;
-		// Limite de lecturas vacias de una peticion.
-		int limit = 10;
-		while (readed) {
-			socketIs.read(reqBuffer);
-			insert = new String(reqBuffer, StandardCharsets.UTF_8);
-
-			subFragment += insert.substring(0, Math.min(BUFFERED_SECURITY_RANGE, insert.length()));
-
-			// Comprobamos si la etiqueta de fin se encuentra en el nuevo fragmento o si esta a medias
-			// entre este y el anterior. En base a eso, tendremos que agregar o quitar datos del buffer
-			if (subFragment.indexOf(EOF) != -1 || insert.indexOf(EOF) != -1) {
-
-				readed = false;
-
-				final boolean findOnSubFragment;
-				int eofPos;
-				int idSessionPos;
-				String requestSessionId = null;
-
-				// Si se detecta el fragmento de fin en la union de ambos fragmentos,
-				// comprobamos si parte del contenido del buffer sobra o si hay algo que agregar
-				if (subFragment.indexOf(EOF) != -1) {
-					findOnSubFragment = true;
-					eofPos = subFragment.indexOf(EOF);
-					idSessionPos = subFragment.indexOf(IDSESSION);
-					if (idSessionPos != -1) {
-						requestSessionId = subFragment.substring(
-								idSessionPos + IDSESSION.length() + 1,
-								eofPos);
-					}
-				}
-				else {
-					findOnSubFragment = false;
-					eofPos = insert.indexOf(EOF);
-					idSessionPos = insert.indexOf(IDSESSION);
-					if (idSessionPos != -1) {
-						requestSessionId = insert.substring(
-								idSessionPos + IDSESSION.length() + 1,
-								eofPos);
-					}
-				}
-
-				// Comprobamos que el id de sesion transmitido es correcto
-				checkIdSession(requestSessionId);
-
-				if (findOnSubFragment) {
-					// Si el id de session es anterior al rango de seguridad, en el buffer de
-					// la peticion se habra introducido parte de este identificador y hay que
-					// borrarlos.
-					if (idSessionPos != -1 && idSessionPos < BUFFERED_SECURITY_RANGE) {
-						data.replace(data.length() - (BUFFERED_SECURITY_RANGE - idSessionPos), data.length(), ""); //$NON-NLS-1$
-					}
-					// Si la posicion del EOF es anterior al rango de seguridad, entonces
-					// en el buffer de la peticion se ha introducido parte de esta etiqueta
-					// y hay que borrarla.
-					else if (eofPos < BUFFERED_SECURITY_RANGE) {
-						data.replace(data.length() - (BUFFERED_SECURITY_RANGE - eofPos), data.length(), ""); //$NON-NLS-1$
-					}
-					// Si tanto el EOF como el id de sesion (en caso de haber) son posteriores
-					// al rango de seguridad, solo habra que incorporar los datos encontrados
-					// antes de estas posiciones (siempre y cuando no esten al principio, en
-					// cuyo caso, no hay que agregar nada)
-					else if (idSessionPos > 0 || eofPos > 0) {
-						data.append(subFragment.substring(0, idSessionPos > -1 ? idSessionPos : eofPos));
-					}
-				}
-				else {
-					data.append(insert.substring(0, idSessionPos > -1 ? idSessionPos : eofPos));
-				}
-			}
-			else {
-				// Es posible que se lean caracteres en blanco si el certificado es erroneo y/o la
-				// conexion SSL no segura. Hay que asegurarse de no agregarlos al buffer.
-				if (!insert.trim().isEmpty()) {
-					data.append(insert);
-					subFragment = insert.substring(Math.max(0, insert.length() - BUFFERED_SECURITY_RANGE));
-				}
-				// Para evitar un error de memoria si llegamos la maximo numero de caracteres vacios devolvemos una cadena vacia que sera ignorada
-				else {
-					limit--;
-					if (limit < 0) {
-						return ""; //$NON-NLS-1$
-					}
-				}
-			}
-
-		}
-		return data.toString();
-	}
-
 	/**
 	 * Comprueba que la direcci&oacute;n que intenta conectarse es local.
 	 * @param a Direcci&oacute;n a probar.
@@ -499,43 +581,56 @@ public final class ServiceInvocationManager {
 	 * 		<li>firm= Inicia una operaci&oacute;n juntando los datos fragmentados de las peticiones anteriores.</li>
 	 * 		<li>send= Envia la respuesta de la una operaci&oacute;n realizada. Si es demasiado grande se fragmenta en varios env&iacute;os.</li>
 	 * </ul>
+	 * Las peticiones <code>echo</code> sin reinicio, que no usan el estado de la sesi&oacute;n, se
+	 * responden directamente. Del resto solo se extraen aqu&iacute; sus par&aacute;metros, ya que el
+	 * lector de la petici&oacute;n se reutiliza en el hilo, y se devuelve la operaci&oacute;n que las
+	 * completa sobre la sesi&oacute;n.
 	 * @param socketChannel El Socket en el que se escucha la petici&oacute;n.
+	 * @return Operaci&oacute;n pendiente sobre la sesi&oacute;n o <code>null</code> si ya se ha
+	 *         respondido a la petici&oacute;n.
 	 * @throws IOException Si hay error en el tratamiento de datos. */
-	private static void getCommandUri(final String httpRequest, final Socket socketChannel) throws IOException {
+	private static SessionOperation getCommandUri(final ServiceRequestDecoder httpRequest,
+			                                      final Socket socketChannel) throws IOException {
 		checkNullParameter(httpRequest, "Los datos recibidos por HTTP son nulos"); //$NON-NLS-1$
-		final String uriType = getUriTypeFromRequest(httpRequest);
+		final int uriTypePos = httpRequest.indexOfAny(URI_TYPE_PATTERNS, 0);
+		final String uriType = SUPPORTED_URI_TYPES[getUriTypeFromRequest(httpRequest, uriTypePos)];
+		final int paramPos = uriTypePos + uriType.length();
 		LOGGER.info("Recibido comando de tipo: " + uriType); //$NON-NLS-1$
 
 		try {
 			switch (uriType) {
 
 				case ECHO:
-					doEchoPetition(httpRequest.substring(httpRequest.indexOf(ECHO) + ECHO.length()),socketChannel);
-					break;
+					// El echo no espera a que termine la operacion en curso
+					final String echo = httpRequest.getText(paramPos);
+					if (!echo.contains(RESET)) {
+						doEchoPetition(socketChannel);
+						return null;
+					}
+					return () -> doEchoResetPetition(SESSION, socketChannel);
 
 				case CMD:
-					doCmdPetition(httpRequest.substring(httpRequest.indexOf(CMD) + CMD.length()), socketChannel);
-					break;
+					final String cmd = httpRequest.getText(paramPos);
+					return () -> doCmdPetition(cmd, SESSION, socketChannel);
 
 				case FRAGMENT:
-					doFragmentPetition(httpRequest.substring(httpRequest.indexOf(FRAGMENT) + FRAGMENT.length()), socketChannel);
-					break;
+					return doFragmentPetition(httpRequest, paramPos, SESSION, socketChannel);
 
 				case SIGN:
-					doFragmentedProcess(socketChannel);
-					break;
+					return () -> doFragmentedProcess(SESSION, socketChannel);
 
 				case SEND:
-					doSendPetition(httpRequest.substring(httpRequest.indexOf(SEND) + SEND.length()), socketChannel);
-					break;
+					final String send = httpRequest.getText(paramPos);
+					return () -> doSendPetition(send, SESSION, socketChannel);
 				// nunca deberia entrar aqui
 				default:
 					throw new IllegalStateException("Estado no permitido"); //$NON-NLS-1$
-				}
+			}
 		}
         catch (final OutOfMemoryError e){
             LOGGER.severe("Se ha producido un error por falta memoria de la maquina virtual: " + e); //$NON-NLS-1$
             sendData(createHttpResponse(true, MEMORY_ERROR), socketChannel, "Error de memoria"); //$NON-NLS-1$
+            return null;
         }
 		catch(final Exception e) {
 			throw new IllegalArgumentException(
@@ -548,20 +643,17 @@ public final class ServiceInvocationManager {
 	/**
 	 * Devuelve el uriType de la petici&oacute;n recibida. Lanza una excepci&oacute;n en caso de que la peticion no sea petici&oacute;n.
 	 * @param httpRequest La petici&oacute;n a tratar.
-	 * @return String uriType de la petici&oacute;n.
+	 * @param uriTypePos Posici&oacute;n del primer tipo de petici&oacute;n encontrado o -1 si no hay ninguno.
+	 * @return Posici&oacute;n del uriType de la petici&oacute;n en el listado de tipos soportados.
 	 */
-	private static String getUriTypeFromRequest(final String httpRequest){
-		final String[] supportedUriTypes = new String[] {CMD, ECHO, FRAGMENT, SIGN, SEND};
-
-		int i = 0;
-		String uriType = null;
-		while (uriType == null && i < supportedUriTypes.length) {
-			if (httpRequest.indexOf(supportedUriTypes[i]) != -1) {
-				uriType = supportedUriTypes[i];
+	private static int getUriTypeFromRequest(final ServiceRequestDecoder httpRequest, final int uriTypePos){
+		int uriType = -1;
+		for (int i = 0; uriTypePos != -1 && uriType == -1 && i < SUPPORTED_URI_TYPES.length; i++) {
+			if (httpRequest.matches(URI_TYPE_PATTERNS[i], uriTypePos)) {
+				uriType = i;
 			}
-			i++;
 		}
-		if (uriType == null) {
+		if (uriType == -1) {
 			throw new IllegalArgumentException(
 					"Los datos recibidos por HTTP no contienen comando reconocido: "+httpRequest //$NON-NLS-1$
 					);
@@ -571,40 +663,41 @@ public final class ServiceInvocationManager {
 
 
 	/** Realiza las acciones pertinentes en caso de que la petici&oacute;n contenta una peticion echo.
-	 * Se resetean las variables de control de la aplicaci&oacute;n para desechar cualquier petici&oacute;n anterior.
-	 * @param cmd Comando URI.
 	 * @param socketChannel Socket donde se recibe la petici&oacute;n.
 	 * @throws IOException Si hay error en el env&iacute;o de datos. */
-	private static void doEchoPetition(final String cmd, final Socket socketChannel) throws IOException {
-		// paramos el timer mientras la aplicacion realiza operaciones
-		timer.stop();
-		// solo reseteamos las variables de control si la peticion es echo=- en caso de que sea un echo= simplemente respondemos
-		if (cmd.contains(RESET)){
-			reset();
-		}
-
+	private static void doEchoPetition(final Socket socketChannel) throws IOException {
 		LOGGER.info("Comando URI recibido por HTTP: " + ECHO); //$NON-NLS-1$
 		sendData(createHttpResponse(true, OK), socketChannel, ECHO);
 	}
 
+	/** Realiza las acciones pertinentes en caso de que la petici&oacute;n sea una peticion echo con
+	 * reinicio (<code>echo=-</code>). Se resetean las variables de control de la aplicaci&oacute;n para
+	 * desechar cualquier petici&oacute;n anterior.
+	 * @param session Sesi&oacute;n a la que pertenece la petici&oacute;n.
+	 * @param socketChannel Socket donde se recibe la petici&oacute;n.
+	 * @throws IOException Si hay error en el env&iacute;o de datos. */
+	private static void doEchoResetPetition(final ServiceSession session,
+			                                final Socket socketChannel) throws IOException {
+		session.reset();
+		doEchoPetition(socketChannel);
+	}
+
 	/** Realiza la operaci&oacute;n que corresponda cuando ya se han recibido todos los
 	 * fragmentos de la petici&oacute;n (firm=).
+	 * @param session Sesi&oacute;n a la que pertenece la petici&oacute;n.
 	 * @param socketChannel Socket donde se recibe la petici&oacute;n.
 	 * @throws IOException Si hay error en la lectura o env&iacute;o de datos. */
-	private static void doFragmentedProcess(final Socket socketChannel) throws IOException {
-		// paramos el timer mientras la aplicacion realiza operaciones
+	private static void doFragmentedProcess(final ServiceSession session,
+			                                final Socket socketChannel) throws IOException {
 		boolean isSave = false;
-	    timer.stop();
 		LOGGER.info("Comando URI recibido por HTTP: " + SIGN); //$NON-NLS-1$
 		// en caso de que sea la primera vez que lo ejecutamos, realizamos la operacion.
 		// si la respuesta no llega al JS y vuelve a realizar la misma peticion, ya tenemos
 		// formada la respuesta y solo hay que devolver el numero de peticiones.
-		if (toSend.isEmpty()) {
-			final StringBuilder totalhttpRequest = new StringBuilder();
-			for(final String object: request){
-				totalhttpRequest.append(object);
-				LOGGER.info("PETICION PROCESADA: " + totalhttpRequest); //$NON-NLS-1$
-			}
+		final String fragmentedRequest = session.getRequest();
+		if (!session.hasResponse(fragmentedRequest)) {
+			final StringBuilder totalhttpRequest = new StringBuilder(fragmentedRequest);
+			LOGGER.info("PETICION PROCESADA: " + totalhttpRequest); //$NON-NLS-1$
 
 			// Si la operacion es de guardado (Respuesta fija)
 			if (totalhttpRequest.toString().startsWith("afirma://save?") || totalhttpRequest.toString().startsWith("afirma://save/?")){ //$NON-NLS-1$  //$NON-NLS-2$
@@ -625,7 +718,7 @@ public final class ServiceInvocationManager {
 			// Si hay que devolver el valor obtenido
 			else {
 				final String operationResult = ProtocolInvocationLauncher.launch(totalhttpRequest.toString(), true);
-				calculateNumberPartsResponse(operationResult);
+				session.setResponse(fragmentedRequest, operationResult, getResponsePartSize());
 			}
 		}
 		else {
@@ -634,20 +727,21 @@ public final class ServiceInvocationManager {
 		// si no es una operacion save y nos vuelven a pedir una parte.
 		if (!isSave){
 		    sendData(
-	    		createHttpResponse(true, Integer.toString(parts)), socketChannel, "Se mandaran " + parts + " partes"  //$NON-NLS-1$//$NON-NLS-2$
+	    		createHttpResponse(true, Integer.toString(session.getParts())), socketChannel, "Se mandaran " + session.getParts() + " partes"  //$NON-NLS-1$//$NON-NLS-2$
     		);
 		}
 	}
 
 	/** Realiza las acciones pertinentes en caso de que la petici&oacute;n contenga una peticion <code>cmd=</code>.
 	 * @param cmd Valor del par&aacute;metro <code>cmd</code>.
+	 * @param session Sesi&oacute;n a la que pertenece la petici&oacute;n.
 	 * @param socketChannel <i>Socket</i> donde se recibe la petici&oacute;n.
 	 * @throws IOException Error en la lectura o en el env&iacute;o de datos. */
-	private static void doCmdPetition (final String cmd, final Socket socketChannel) throws IOException{
+	private static void doCmdPetition (final String cmd,
+			                           final ServiceSession session,
+			                           final Socket socketChannel) throws IOException{
 		final String cmdUri = new String(Base64.decode(cmd.trim(), true));
 		if (cmdUri.startsWith(AFIRMA) && !(cmdUri.startsWith(AFIRMA2) || cmdUri.startsWith(AFIRMA3))) {
-			// paramos el timer mientras la aplicacion realiza operaciones
-			timer.stop();
 			LOGGER.info("Comando URI recibido por HTTP: " + cmdUri); //$NON-NLS-1$
 			if (cmdUri.startsWith(SAVE) || cmdUri.startsWith(SAVE2)) {
 				final String operationResult = ProtocolInvocationLauncher.launch(cmdUri.toString(), true);
@@ -664,12 +758,12 @@ public final class ServiceInvocationManager {
 				}
 			}
 			else {
-				if (toSend.isEmpty()){
+				if (!session.hasResponse(cmdUri)){
 					// Usamos la url que acabamos de recibir sin fragmentar
 					final String operationResult = ProtocolInvocationLauncher.launch(cmdUri.toString(), true);
-					calculateNumberPartsResponse(operationResult);
+					session.setResponse(cmdUri, operationResult, getResponsePartSize());
 				}
-				sendData(createHttpResponse(true, Integer.toString(parts)), socketChannel, "Se mandaran " + parts + " partes"); //$NON-NLS-1$ //$NON-NLS-2$
+				sendData(createHttpResponse(true, Integer.toString(session.getParts())), socketChannel, "Se mandaran " + session.getParts() + " partes"); //$NON-NLS-1$ //$NON-NLS-2$
 			}
 		}
 		else{
@@ -680,46 +774,60 @@ public final class ServiceInvocationManager {
 	}
 
 	/** Realiza las acciones pertinentes en caso de que la petici&oacute;n contenta una petici&oacute;n fragment=.
-	 * @param fragment httpRequest Url de la que hay que substraer el commandUri.
+	 * Los datos del fragmento se descodifican directamente desde el b&uacute;fer de la petici&oacute;n
+	 * en el hilo que la lee, y solo su almacenamiento en la sesi&oacute;n queda pendiente.
+	 * @param httpRequest Petici&oacute;n recibida.
+	 * @param from Posici&oacute;n de la petici&oacute;n en la que empieza el fragmento
+	 *             (<code>@parte@total@datos</code>).
+	 * @param session Sesi&oacute;n a la que pertenece la petici&oacute;n.
 	 * @param socketChannel Socket donde se recibe la petici&oacute;n.
+	 * @return Operaci&oacute;n que guarda el fragmento en la sesi&oacute;n y responde a la petici&oacute;n.
 	 * @throws IOException Si hay error en el tratamiento de datos. */
 
-	private static void doFragmentPetition (final String fragment, final Socket socketChannel) throws IOException{
+	private static SessionOperation doFragmentPetition (final ServiceRequestDecoder httpRequest,
+			                                final int from,
+			                                final ServiceSession session,
+			                                final Socket socketChannel) throws IOException{
 
-		// paramos el timer mientras la aplicacion realiza operaciones
-		timer.stop();
-		LOGGER.info("Comando URI recibido por HTTP: " + fragment); //$NON-NLS-1$
-		final String[] petition = fragment.split(SEPARADOR);
-		final int part = Integer.parseInt(petition [1]);
-		final int partTotal = Integer.parseInt(petition [2]);
-		final String save = new String (Base64.decode(petition[3].trim(), true));
-
-		if (request.size() == part ){
-			LOGGER.info("sustituimos la parte " + part); //$NON-NLS-1$
-			request.set(part-1, save);
-		}
-		else {
-			LOGGER.info("insertamos la parte " + part); //$NON-NLS-1$
-			request.add(part-1, save);
-		}
-		if (part == partTotal){
-			sendData(createHttpResponse(true, OK), socketChannel, "Mandada la ultima parte " + part +"de " + partTotal); //$NON-NLS-1$ //$NON-NLS-2$
-		}
-		else{
-			sendData(createHttpResponse(true, MORE_DATA_NEED), socketChannel, "Mandar resto de datos de la firma, parte " + part +"de " + partTotal);  //$NON-NLS-1$//$NON-NLS-2$
-		}
+		final int partPos = httpRequest.indexOf(SEPARADOR_CHAR, from);
+		final int partTotalPos = partPos == -1 ? -1 : httpRequest.indexOf(SEPARADOR_CHAR, partPos + 1);
+		final int dataPos = partTotalPos == -1 ? -1 : httpRequest.indexOf(SEPARADOR_CHAR, partTotalPos + 1);
+		if (dataPos == -1) {
+			throw new IllegalArgumentException(
+				"El fragmento recibido no tiene el formato esperado: " + httpRequest //$NON-NLS-1$
+			);
+		}
+		// Solo registramos la cabecera, no los datos del fragmento
+		LOGGER.info("Comando URI recibido por HTTP: " + httpRequest.getText(from, dataPos)); //$NON-NLS-1$
+		final int part = Integer.parseInt(httpRequest.getText(partPos + 1, partTotalPos));
+		final int partTotal = Integer.parseInt(httpRequest.getText(partTotalPos + 1, dataPos));
+		final int dataEnd = httpRequest.indexOf(SEPARADOR_CHAR, dataPos + 1);
+		final String save = new String(
+			httpRequest.decodeBase64(dataPos + 1, dataEnd != -1 ? dataEnd : Integer.MAX_VALUE)
+		);
+
+		return () -> {
+			session.setRequestFragment(part, save);
+			if (part == partTotal){
+				sendData(createHttpResponse(true, OK), socketChannel, "Mandada la ultima parte " + part +"de " + partTotal); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			else{
+				sendData(createHttpResponse(true, MORE_DATA_NEED), socketChannel, "Mandar resto de datos de la firma, parte " + part +"de " + partTotal);  //$NON-NLS-1$//$NON-NLS-2$
+			}
+		};
 	}
 
 
 	/** Realiza el env&iacute;o de datos.
 	 * @param send Configuracion para el env&iacute;o de datos.
+	 * @param session Sesi&oacute;n a la que pertenece la petici&oacute;n.
 	 * @param socketChannel <i>Socket</i> donde se recibe la petici&oacute;n.
 	 * @throws IOException Si hay error en el tratamiento de datos.
 	 */
-	private static void doSendPetition (final String send, final Socket socketChannel) throws IOException {
+	private static void doSendPetition (final String send,
+			                            final ServiceSession session,
+			                            final Socket socketChannel) throws IOException {
 
-		// paramos el timer mientras la aplicacion realiza operaciones
-		timer.stop();
 		LOGGER.info("Comando URI recibido por HTTP: " + send); //$NON-NLS-1$
 		final String[] petition = send.split(SEPARADOR);
 		final int part = Integer.parseInt(petition [1]);
@@ -729,26 +837,10 @@ public final class ServiceInvocationManager {
 					"Se ha solicitado enviar un fragmento invalido: " + part + "de " + partTotal //$NON-NLS-1$ //$NON-NLS-2$
 					);
 		}
-		sendData(createHttpResponse(true, toSend.get(part-1)), socketChannel, "Mandada la parte " + part + " de " + partTotal); //$NON-NLS-1$ //$NON-NLS-2$
+		sendResponsePart(session, part, socketChannel, "Mandada la parte " + part + " de " + partTotal); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
 
-	/** Calcula en cuantas partes hay que realizar el env&iacute;o de la operaci&oacute;n y divice la respuesta en dichas partes.
-	 * @param operationResult La operaci&oacute;n resultante que hay que dividir. */
-	private static void calculateNumberPartsResponse(final String operationResult) {
-
-		parts = (int) Math.ceil((double)operationResult.length() / (double) RESPONSE_MAX_SIZE);
-		LOGGER.info("Se mandaran " + parts + "partes");  //$NON-NLS-1$//$NON-NLS-2$
-		LOGGER.info("tam total=" + operationResult.length()); //$NON-NLS-1$
-		// si recibimos la misma peticion otra vez ya tenemos los datos preparados, solo devolvemos las peticiones
-		int offset;
-		for (int i = 0; i < parts; i++){
-			offset = RESPONSE_MAX_SIZE * i;
-			toSend.add(operationResult.substring(offset, Math.min(offset + RESPONSE_MAX_SIZE, operationResult.length())));
-			LOGGER.info("Tam de la parte " + (i+1) + " =" + toSend.get(i).length()); //$NON-NLS-1$ //$NON-NLS-2$
-		}
-	}
-
 	/** Comprueba que un par&aacute;metro no sea nulo.
 	 * @param parameter Par&aacute;metro que se debe comprobar que no sea nulo.
 	 * @param excepcionText Texto que se debe lanzar con la excepci&oacute;n. */
@@ -758,14 +850,6 @@ public final class ServiceInvocationManager {
 		}
 	}
 
-	/** Reinicia las variables de control si se realiza una nueva llamada y hay que descartar
-	 * todas las las operaciones pendientes. */
-	private static void reset(){
-		request.clear();
-		toSend.clear();
-		parts = 0;
-	}
-
 	/**
 	 * Comprueba que el idSession de la petici&oacute;n recibida coincida con el idSession generado al abrir la aplicaci&oacute;n por socket.
 	 * @param requestSessionId Identificador de sesi&oacute;n enviado en la petici&oacute;n. */
@@ -778,24 +862,25 @@ public final class ServiceInvocationManager {
 
 	/** Comprueba si una versi&oacute;n de protocolo est&aacute; soportado por la implementaci&oacute;n actual.
 	 * @param protocolId Identificador de la versi&oacute;n del protocolo.
+	 * @return Versi&oacute;n del protocolo que se debe usar.
 	 * @throws UnsupportedProtocolException Cuando la versi&oacute;n de protocolo utilizada no se encuentra
 	 *                                      entre las soportadas. */
-	private static void checkSupportProtocol(final String protocolId) throws UnsupportedProtocolException {
-		int protocolVersion = 1;
+	private static int checkSupportProtocol(final String protocolId) throws UnsupportedProtocolException {
+		int version = 1;
 		if (protocolId != null) {
 			try {
-				protocolVersion = Integer.parseInt(protocolId);
+				version = Integer.parseInt(protocolId);
 			} catch (final Exception e) {
-				protocolVersion = -1;
+				version = -1;
 			}
 		}
 
-		for (final int version : SUPPORTED_PROTOCOL_VERSIONS) {
-			if (version == protocolVersion) {
-				return;
+		for (final int supportedVersion : SUPPORTED_PROTOCOL_VERSIONS) {
+			if (supportedVersion == version) {
+				return version;
 			}
 		}
 
-		throw new UnsupportedProtocolException(protocolVersion, protocolVersion > CURRENT_PROTOCOL_VERSION);
+		throw new UnsupportedProtocolException(version, version > CURRENT_PROTOCOL_VERSION);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,331 @@
+package es.gob.afirma.standalone.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+import es.gob.afirma.core.misc.Base64;
+
+/** Lector de las peticiones recibidas por el <i>socket</i> del servicio local.
+ * Acumula los bytes recibidos en un b&uacute;fer que crece seg&uacute;n se necesita, busca la
+ * etiqueta de fin de petici&oacute;n solo en los bytes nuevos de cada lectura y permite consultar
+ * y descodificar partes de la petici&oacute;n directamente desde el b&uacute;fer, sin convertir la
+ * petici&oacute;n completa en texto.
+ * <p>Cada instancia se reutiliza para leer sucesivas peticiones (pero no es segura para su uso
+ * concurrente), conservando su b&uacute;fer salvo que haya crecido demasiado.</p> */
+final class ServiceRequestDecoder {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private static final int READ_BUFFER_SIZE = 2048;
+
+	/** Tama&ntilde;o inicial del b&uacute;fer de la petici&oacute;n. */
+	private static final int INITIAL_CAPACITY = 16 * 1024;
+
+	/** Tama&ntilde;o m&aacute;ximo del b&uacute;fer que se conserva entre peticiones. */
+	private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+	/** N&uacute;mero de bytes previos a la etiqueta de fin en los que se busca el identificador
+	 * de sesi&oacute;n. */
+	private static final int IDSESSION_SEARCH_RANGE = 128;
+
+	/** L&iacute;mite de lecturas vac&iacute;as de una petici&oacute;n. */
+	private static final int MAX_EMPTY_READS = 10;
+
+	private static final BytePattern EOF = new BytePattern("@EOF"); //$NON-NLS-1$
+	private static final BytePattern IDSESSION = new BytePattern("idsession"); //$NON-NLS-1$
+
+	private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+	/** Fin de los datos de la petici&oacute;n (sin identificador de sesi&oacute;n ni etiqueta de fin). */
+	private int dataEnd = 0;
+
+	private String sessionId = null;
+
+	/** Lee una petici&oacute;n completa, hasta su etiqueta de fin.
+	 * Si el certificado no es correcto, al leer los datos del socket se reciben bloques en blanco,
+	 * que se descartan.
+	 * @param socketIs Flujo de entrada de datos del socket.
+	 * @return <code>true</code> si se ha le&iacute;do una petici&oacute;n completa, <code>false</code>
+	 *         si la petici&oacute;n est&aacute; vac&iacute;a o la conexi&oacute;n se cerr&oacute; antes
+	 *         de recibirla completa.
+	 * @throws IOException Si ocurren errores durante la lectura. */
+	boolean read(final InputStream socketIs) throws IOException {
+		reset();
+		int emptyReads = MAX_EMPTY_READS;
+		int eofPos = -1;
+		while (eofPos == -1) {
+			ensureCapacity(READ_BUFFER_SIZE);
+			final int start = this.buffer.position();
+			final int n = socketIs.read(this.buffer.array(), start, READ_BUFFER_SIZE);
+			if (n < 0) {
+				if (start > 0) {
+					LOGGER.warning("Se ha cerrado la conexion antes de recibir la peticion completa"); //$NON-NLS-1$
+				}
+				return false;
+			}
+			// Es posible que se lean caracteres en blanco si el certificado es erroneo y/o la
+			// conexion SSL no segura. Hay que asegurarse de no agregarlos al buffer.
+			if (isBlank(this.buffer.array(), start, start + n)) {
+				emptyReads--;
+				if (emptyReads < 0) {
+					return false;
+				}
+				continue;
+			}
+			this.buffer.position(start + n);
+			// La etiqueta de fin puede haber quedado dividida con la lectura anterior
+			eofPos = EOF.indexOf(
+				this.buffer.array(),
+				Math.max(0, start - EOF.length() + 1),
+				this.buffer.position()
+			);
+		}
+
+		final int idSessionPos = IDSESSION.lastIndexOf(
+			this.buffer.array(),
+			Math.max(0, eofPos - IDSESSION_SEARCH_RANGE),
+			eofPos
+		);
+		if (idSessionPos != -1) {
+			final int idStart = Math.min(idSessionPos + IDSESSION.length() + 1, eofPos);
+			this.sessionId = new String(this.buffer.array(), idStart, eofPos - idStart, StandardCharsets.UTF_8);
+			this.dataEnd = idSessionPos;
+		}
+		else {
+			this.dataEnd = eofPos;
+		}
+		return true;
+	}
+
+	/** Obtiene el identificador de sesi&oacute;n indicado en la petici&oacute;n.
+	 * @return Identificador de sesi&oacute;n o <code>null</code> si la petici&oacute;n no lo indica. */
+	String getSessionId() {
+		return this.sessionId;
+	}
+
+	/** Indica si la petici&oacute;n no contiene datos (o solo contiene espacios).
+	 * @return <code>true</code> si la petici&oacute;n est&aacute; vac&iacute;a. */
+	boolean isEmpty() {
+		return isBlank(this.buffer.array(), 0, this.dataEnd);
+	}
+
+	/** Busca un patr&oacute;n en los datos de la petici&oacute;n.
+	 * @param pattern Patr&oacute;n a buscar.
+	 * @param from Posici&oacute;n desde la que buscar.
+	 * @return Posici&oacute;n del patr&oacute;n o -1 si no se encuentra. */
+	int indexOf(final BytePattern pattern, final int from) {
+		return pattern.indexOf(this.buffer.array(), from, this.dataEnd);
+	}
+
+	/** Busca la primera aparici&oacute;n de cualquiera de los patrones en los datos de la
+	 * petici&oacute;n, recorri&eacute;ndolos una sola vez.
+	 * @param patterns Patrones a buscar.
+	 * @param from Posici&oacute;n desde la que buscar.
+	 * @return Posici&oacute;n del primer patr&oacute;n encontrado o -1 si no se encuentra ninguno. */
+	int indexOfAny(final BytePattern[] patterns, final int from) {
+		final byte[] data = this.buffer.array();
+		for (int i = from; i < this.dataEnd; i++) {
+			for (final BytePattern pattern : patterns) {
+				if (pattern.matches(data, i, this.dataEnd)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/** Indica si los datos de la petici&oacute;n contienen un patr&oacute;n en una posici&oacute;n.
+	 * @param pattern Patr&oacute;n.
+	 * @param pos Posici&oacute;n en la que debe estar el patr&oacute;n.
+	 * @return <code>true</code> si el patr&oacute;n est&aacute; en la posici&oacute;n indicada. */
+	boolean matches(final BytePattern pattern, final int pos) {
+		return pattern.matches(this.buffer.array(), pos, this.dataEnd);
+	}
+
+	/** Busca un car&aacute;cter ASCII en los datos de la petici&oacute;n.
+	 * @param c Car&aacute;cter a buscar.
+	 * @param from Posici&oacute;n desde la que buscar.
+	 * @return Posici&oacute;n del car&aacute;cter o -1 si no se encuentra. */
+	int indexOf(final char c, final int from) {
+		final byte[] data = this.buffer.array();
+		for (int i = from; i < this.dataEnd; i++) {
+			if (data[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** Obtiene como texto UTF-8 los datos de la petici&oacute;n a partir de una posici&oacute;n.
+	 * @param from Posici&oacute;n inicial.
+	 * @return Texto de la petici&oacute;n. */
+	String getText(final int from) {
+		return getText(from, this.dataEnd);
+	}
+
+	/** Obtiene como texto UTF-8 un rango de los datos de la petici&oacute;n.
+	 * @param from Posici&oacute;n inicial.
+	 * @param to Posici&oacute;n final (exclusive).
+	 * @return Texto de la petici&oacute;n. */
+	String getText(final int from, final int to) {
+		final int end = Math.min(to, this.dataEnd);
+		if (from >= end) {
+			return ""; //$NON-NLS-1$
+		}
+		return new String(this.buffer.array(), from, end - from, StandardCharsets.UTF_8);
+	}
+
+	/** Descodifica un rango de la petici&oacute;n codificado en Base64 (normal o URL-safe),
+	 * leyendo directamente del b&uacute;fer. Se usa el mismo descodificador tolerante que se ha
+	 * usado siempre con las peticiones, de forma que se siguen aceptando los datos con
+	 * espacios, saltos de l&iacute;nea o relleno incompleto que env&iacute;an algunos clientes.
+	 * <p>Para no copiar los datos, el rango se compacta sobre el propio b&uacute;fer (se quitan
+	 * los blancos y se pasa el alfabeto URL-safe al normal), por lo que su contenido queda
+	 * modificado y no debe volver a leerse.</p>
+	 * @param from Posici&oacute;n inicial.
+	 * @param to Posici&oacute;n final (exclusive).
+	 * @return Datos descodificados.
+	 * @throws IOException Si los datos no son Base64 v&aacute;lido. */
+	byte[] decodeBase64(final int from, final int to) throws IOException {
+		final int end = Math.min(to, this.dataEnd);
+		final byte[] data = this.buffer.array();
+		// Compactamos sobre el propio buffer quitando los blancos y pasando el alfabeto
+		// URL-safe al normal
+		int len = 0;
+		for (int i = from; i < end; i++) {
+			final byte b = data[i];
+			if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+				continue;
+			}
+			data[from + len++] = b == '-' ? (byte) '+' : b == '_' ? (byte) '/' : b;
+		}
+		try {
+			return Base64.decode(data, from, len, false);
+		}
+		catch (final RuntimeException e) {
+			throw new IOException("Los datos recibidos no son Base64 valido: " + e, e); //$NON-NLS-1$
+		}
+	}
+
+	/** Descarta la petici&oacute;n anterior, liberando el b&uacute;fer si creci&oacute; demasiado. */
+	private void reset() {
+		if (this.buffer.capacity() > MAX_RETAINED_CAPACITY) {
+			this.buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+		}
+		this.buffer.clear();
+		this.dataEnd = 0;
+		this.sessionId = null;
+	}
+
+	private void ensureCapacity(final int needed) {
+		if (this.buffer.remaining() < needed) {
+			int capacity = this.buffer.capacity();
+			while (capacity - this.buffer.position() < needed) {
+				capacity *= 2;
+			}
+			final ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
+			this.buffer.flip();
+			newBuffer.put(this.buffer);
+			this.buffer = newBuffer;
+		}
+	}
+
+	private static boolean isBlank(final byte[] data, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			if (data[i] > ' ' || data[i] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		// Solo el principio, para no volcar peticiones enormes en los mensajes de error
+		return getText(0, Math.min(this.dataEnd, 256));
+	}
+
+	/** Patr&oacute;n de bytes ASCII para su b&uacute;squeda mediante el algoritmo de
+	 * Knuth-Morris-Pratt, con la tabla de fallos precalculada. */
+	static final class BytePattern {
+
+		private final byte[] pattern;
+		private final int[] failure;
+
+		BytePattern(final String text) {
+			this.pattern = text.getBytes(StandardCharsets.US_ASCII);
+			this.failure = new int[this.pattern.length];
+			int j = 0;
+			for (int i = 1; i < this.pattern.length; i++) {
+				while (j > 0 && this.pattern[i] != this.pattern[j]) {
+					j = this.failure[j - 1];
+				}
+				if (this.pattern[i] == this.pattern[j]) {
+					j++;
+				}
+				this.failure[i] = j;
+			}
+		}
+
+		int length() {
+			return this.pattern.length;
+		}
+
+		/** Indica si el patr&oacute;n est&aacute; en una posici&oacute;n de los datos.
+		 * @param data Datos.
+		 * @param pos Posici&oacute;n en la que debe empezar el patr&oacute;n.
+		 * @param to Fin de los datos (exclusive).
+		 * @return <code>true</code> si los datos contienen el patr&oacute;n en la posici&oacute;n. */
+		boolean matches(final byte[] data, final int pos, final int to) {
+			if (pos + this.pattern.length > to) {
+				return false;
+			}
+			for (int i = 0; i < this.pattern.length; i++) {
+				if (data[pos + i] != this.pattern[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/** Busca la primera aparici&oacute;n del patr&oacute;n.
+		 * @param data Datos en los que buscar.
+		 * @param from Posici&oacute;n inicial de la b&uacute;squeda.
+		 * @param to Posici&oacute;n final de la b&uacute;squeda (exclusive).
+		 * @return Posici&oacute;n del patr&oacute;n o -1 si no se encuentra. */
+		int indexOf(final byte[] data, final int from, final int to) {
+			int j = 0;
+			for (int i = from; i < to; i++) {
+				while (j > 0 && data[i] != this.pattern[j]) {
+					j = this.failure[j - 1];
+				}
+				if (data[i] == this.pattern[j]) {
+					j++;
+				}
+				if (j == this.pattern.length) {
+					return i - this.pattern.length + 1;
+				}
+			}
+			return -1;
+		}
+
+		/** Busca la &uacute;ltima aparici&oacute;n del patr&oacute;n.
+		 * @param data Datos en los que buscar.
+		 * @param from Posici&oacute;n inicial de la b&uacute;squeda.
+		 * @param to Posici&oacute;n final de la b&uacute;squeda (exclusive).
+		 * @return Posici&oacute;n del patr&oacute;n o -1 si no se encuentra. */
+		int lastIndexOf(final byte[] data, final int from, final int to) {
+			int last = -1;
+			int pos = indexOf(data, from, to);
+			while (pos != -1) {
+				last = pos;
+				pos = indexOf(data, pos + 1, to);
+			}
+			return last;
+		}
+	}
+
+}
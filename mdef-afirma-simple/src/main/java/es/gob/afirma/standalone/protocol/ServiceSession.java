@@ -0,0 +1,157 @@
+package es.gob.afirma.standalone.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/** Estado de una sesi&oacute;n del servicio local de firma: fragmentos recibidos de la
+ * petici&oacute;n y partes de la respuesta pendientes de env&iacute;o.
+ * El servicio solo admite peticiones con el <code>idsession</code> de la URL de invocaci&oacute;n,
+ * por lo que hay una &uacute;nica sesi&oacute;n. Las peticiones que usan su estado se atienden de
+ * una en una sincronizando sobre el propio objeto de sesi&oacute;n, por lo que sus m&eacute;todos
+ * no est&aacute;n sincronizados.
+ * <p>La respuesta de una operaci&oacute;n se conserva despu&eacute;s de enviar su &uacute;ltima parte,
+ * para poder atender los reintentos de las peticiones <code>send</code>, <code>firm</code> y
+ * <code>cmd</code> sin repetir la operaci&oacute;n. Se libera, junto con su fichero temporal, al
+ * reiniciar la sesi&oacute;n, al guardar la respuesta de otra operaci&oacute;n o cuando pasan
+ * {@link #RESPONSE_IDLE_TIMEOUT} milisegundos sin que se pida ninguna de sus partes.</p> */
+final class ServiceSession {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	/** Tiempo en milisegundos que se conserva la respuesta sin que se pida ninguna de sus partes. */
+	static final long RESPONSE_IDLE_TIMEOUT = 30000;
+
+	/** Hilo que libera las respuestas que dejan de pedirse. */
+	private static final ScheduledExecutorService EXPIRER = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread t = new Thread(r, "afirma-service-session"); //$NON-NLS-1$
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final List<String> request = new ArrayList<>();
+	private ResponseSpool response = null;
+	/** Operaci&oacute;n de la que es resultado la respuesta pendiente. */
+	private String operation = null;
+	/** Momento (<code>System.nanoTime()</code>) del &uacute;ltimo uso de la respuesta. */
+	private long lastResponseAccess = 0;
+	private ScheduledFuture<?> expiry = null;
+
+	/** Guarda un fragmento de la petici&oacute;n. Si el fragmento ya se hab&iacute;a recibido
+	 * se sustituye.
+	 * @param part N&uacute;mero de fragmento (empezando en 1).
+	 * @param data Contenido del fragmento. */
+	void setRequestFragment(final int part, final String data) {
+		if (this.request.size() == part) {
+			LOGGER.info("sustituimos la parte " + part); //$NON-NLS-1$
+			this.request.set(part - 1, data);
+		}
+		else {
+			LOGGER.info("insertamos la parte " + part); //$NON-NLS-1$
+			this.request.add(part - 1, data);
+		}
+	}
+
+	/** Obtiene la petici&oacute;n completa uniendo todos los fragmentos recibidos.
+	 * @return Petici&oacute;n completa. */
+	String getRequest() {
+		final StringBuilder totalhttpRequest = new StringBuilder();
+		for (final String object : this.request) {
+			totalhttpRequest.append(object);
+		}
+		return totalhttpRequest.toString();
+	}
+
+	/** Indica si ya se ha calculado la respuesta de una operaci&oacute;n, es decir, si la
+	 * petici&oacute;n es un reintento de la operaci&oacute;n cuya respuesta est&aacute; pendiente.
+	 * @param op Operaci&oacute;n solicitada.
+	 * @return <code>true</code> si hay una respuesta pendiente de env&iacute;o para esa operaci&oacute;n. */
+	boolean hasResponse(final String op) {
+		return this.response != null && this.response.getParts() > 0 && op.equals(this.operation);
+	}
+
+	/** Guarda la respuesta de la operaci&oacute;n para enviarla en partes. Si hab&iacute;a una
+	 * respuesta de otra operaci&oacute;n, se libera.
+	 * @param op Operaci&oacute;n de la que es resultado la respuesta.
+	 * @param operationResult La operaci&oacute;n resultante que hay que enviar.
+	 * @param partSize N&uacute;mero m&aacute;ximo de bytes de la respuesta que se env&iacute;an en cada parte.
+	 * @throws IOException Si no se puede guardar la respuesta. */
+	void setResponse(final String op, final String operationResult, final int partSize) throws IOException {
+		releaseResponse();
+		this.response = ResponseSpool.create(operationResult.getBytes(), partSize);
+		this.operation = op;
+		scheduleExpiry();
+		LOGGER.info("Se mandaran " + this.response.getParts() + " partes");  //$NON-NLS-1$//$NON-NLS-2$
+		LOGGER.info("tam total=" + this.response.getLength()); //$NON-NLS-1$
+	}
+
+	/** Obtiene el n&uacute;mero de partes en las que se env&iacute;a la respuesta.
+	 * @return N&uacute;mero de partes de la respuesta. */
+	int getParts() {
+		return this.response != null ? this.response.getParts() : 0;
+	}
+
+	/** Escribe una parte de la respuesta codificada en Base64. La respuesta se conserva tras
+	 * escribir la &uacute;ltima parte por si se vuelve a pedir.
+	 * @param part N&uacute;mero de parte (empezando en 1).
+	 * @param os Flujo en el que escribir la parte.
+	 * @param chunked Si se debe usar la codificaci&oacute;n de transferencia <code>chunked</code>.
+	 * @throws IOException Si hay errores en la lectura o escritura de la parte. */
+	void writeResponsePart(final int part, final OutputStream os, final boolean chunked) throws IOException {
+		if (this.response == null) {
+			throw new IllegalStateException("No hay respuesta pendiente de envio"); //$NON-NLS-1$
+		}
+		this.response.writePart(part, os, chunked);
+		scheduleExpiry();
+	}
+
+	/** Descarta los fragmentos recibidos y la respuesta pendiente. */
+	void reset() {
+		this.request.clear();
+		releaseResponse();
+	}
+
+	/** Libera la respuesta pendiente, incluido su fichero temporal si lo tiene. */
+	private void releaseResponse() {
+		if (this.expiry != null) {
+			this.expiry.cancel(false);
+			this.expiry = null;
+		}
+		if (this.response != null) {
+			this.response.close();
+			this.response = null;
+		}
+		this.operation = null;
+	}
+
+	/** Registra un uso de la respuesta y programa su liberaci&oacute;n si deja de pedirse. */
+	private void scheduleExpiry() {
+		this.lastResponseAccess = System.nanoTime();
+		if (this.expiry != null) {
+			this.expiry.cancel(false);
+		}
+		final ResponseSpool spool = this.response;
+		this.expiry = EXPIRER.schedule(() -> expire(spool), RESPONSE_IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	/** Libera la respuesta si sigue siendo la misma y no se ha usado en el tiempo m&aacute;ximo
+	 * de inactividad. Se sincroniza sobre la sesi&oacute;n como el resto de peticiones.
+	 * @param spool Respuesta para la que se program&oacute; la liberaci&oacute;n. */
+	private void expire(final ResponseSpool spool) {
+		synchronized (this) {
+			if (this.response == spool && spool != null
+					&& System.nanoTime() - this.lastResponseAccess >= TimeUnit.MILLISECONDS.toNanos(RESPONSE_IDLE_TIMEOUT)) {
+				LOGGER.info("Se libera la respuesta pendiente por inactividad"); //$NON-NLS-1$
+				this.expiry = null;
+				releaseResponse();
+			}
+		}
+	}
+
+}
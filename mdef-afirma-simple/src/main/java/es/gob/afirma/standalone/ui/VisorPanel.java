@@ -31,6 +31,7 @@ import es.gob.afirma.cert.certvalidation.CertificateVerifierFactory;
 import es.gob.afirma.cert.certvalidation.ValidationResult;
 import es.gob.afirma.cert.signvalidation.SignValider;
 import es.gob.afirma.cert.signvalidation.SignValiderFactory;
+import es.gob.afirma.cert.signvalidation.ValidatePdfSignature;
 import es.gob.afirma.cert.signvalidation.SignValidity;
 import es.gob.afirma.cert.signvalidation.SignValidity.SIGN_DETAIL_TYPE;
 import es.gob.afirma.cert.signvalidation.SignValidity.VALIDITY_ERROR;
@@ -111,10 +112,28 @@ public final class VisorPanel extends JPanel implements KeyListener {
             }
         }
 
+        final X509Certificate cert = getCertificate(sign);
+
+        //Tambien se valida el certificado
+        CertificateVerificable cfv = null;
+        try {
+        	cfv = CertificateVerifierFactory.getCertificateVerifier(cert);
+        }
+        catch(final Exception e) {
+        	LOGGER.warning("No se ha podido cargar el verificador de certificados: " + e); //$NON-NLS-1$
+        }
+
+        // En los PDF los certificados de todas las firmas se validan a la vez durante la
+        // validacion de la firma, sin volver a analizar el documento
+        final boolean pdfWithCertValidation = sign != null && cfv != null &&
+    		SignValiderFactory.getSignValider(sign) instanceof ValidatePdfSignature;
+
         SignValidity validity = new SignValidity(SIGN_DETAIL_TYPE.UNKNOWN, null);
         if (sign != null) {
             try {
-                validity = validateSign(sign);
+                validity = pdfWithCertValidation ?
+            		new ValidatePdfSignature(cfv).validate(sign) :
+        				validateSign(sign);
             }
             catch (final Exception e) {
             	Logger.getLogger("es.gob.afirma").warning( //$NON-NLS-1$
@@ -124,23 +143,12 @@ public final class VisorPanel extends JPanel implements KeyListener {
             }
         }
 
-        final X509Certificate cert = getCertificate(sign);
-
-        //Tambien se valida el certificado
-        CertificateVerificable cfv = null;
-        try {
-        	cfv = CertificateVerifierFactory.getCertificateVerifier(cert);
-        }
-        catch(final Exception e) {
-        	LOGGER.warning("No se ha podido cargar el verificador de certificados: " + e); //$NON-NLS-1$
-        }
-
         //Si la firma es valida comprobamos la validez del certificado
         if(SIGN_DETAIL_TYPE.OK == validity.getValidity()) {
         	if (cfv == null) {
         		validity = new SignValidity(SIGN_DETAIL_TYPE.KO, VALIDITY_ERROR.UNKOWN_ERROR);
         	}
-        	else {
+        	else if (!pdfWithCertValidation) {
 		        final ValidationResult vr = cfv.validateCertificate(cert);
 
 				switch(vr) {
@@ -8,26 +8,23 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Logger;
-import java.util.stream.Stream;
 
 import javax.swing.JButton;
 import javax.swing.JDialog;
@@ -36,30 +33,11 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.SwingWorker;
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
-
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLStreamException;
+
 import org.xml.sax.SAXException;
 
 import es.gob.afirma.core.AOCancelledOperationException;
-import es.gob.afirma.core.misc.Base64;
 import es.gob.afirma.core.misc.Platform;
 import es.gob.afirma.core.ui.AOUIFactory;
 import es.gob.afirma.standalone.AutoFirmaUtil;
@@ -72,6 +50,7 @@ import es.gob.afirma.standalone.ui.CommonWaitDialog;
 public final class CheckHashFiles extends JDialog {
 
 	private static final long serialVersionUID = 5969239673119761747L;
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
 	private final JTextField xml = new JTextField();
 	private final JTextField directory = new JTextField();
 	private static Map<String, List<String>> reportXML;
@@ -80,20 +59,6 @@ public final class CheckHashFiles extends JDialog {
 	private static final int SIZE_WAIT = 50000000; //Tamano en bytes
 
 
-	/** Fichero a evitar. */
-	private final static Set<String> FILES_TO_AVOID	= new HashSet<>(
-		Arrays.asList(
-			".fseventsd",		//$NON-NLS-1$
-			".Spotlight-V100",	//$NON-NLS-1$
-			".Trashes",			//$NON-NLS-1$
-			"._.Trashes",		//$NON-NLS-1$
-			".DS_Store",		//$NON-NLS-1$
-			".desktop",			//$NON-NLS-1$
-			"thumbs.db",		//$NON-NLS-1$
-			"$Recycle.Bin"		//$NON-NLS-1$
-		)
-	);
-
 	/** Inicia el proceso de comprobaci&oacute;n de huella digital de
 	 * directorios.
 	 * @param parent Componente padre para la modalidad. */
@@ -403,181 +368,156 @@ public final class CheckHashFiles extends JDialog {
 	}
 
 	/** Comprueba las huellas digitales de los ficheros de un directorio.
+	 * Las huellas de los ficheros que aparecen en el XML se calculan en paralelo y los ficheros
+	 * comprobados se eliminan del mapa de huellas, de forma que al terminar solo quedan en
+	 * &eacute;l los ficheros que ya no est&aacute;n en el directorio.
+	 * Si el XML contiene huellas de varios algoritmos, todas se calculan leyendo cada fichero
+	 * una &uacute;nica vez y el fichero solo coincide si coinciden todas ellas.
 	 * @param dir Directorio a comparar con el XML.
 	 * @param isRec <code>true</code> si se recorri&oacute; el directorio de forma recursiva,
 	 *              <code>false</code> en caso contrario.
-	 * @param directoryHash Mapa con los nombres de fichero analizados y sus huellas digitales.
-	 * @param alg Algoritmo con el que fue generada la huella digital.
-	 * @throws NoSuchAlgorithmException Si no se soporta el algoritmo de huella.
+	 * @param directoryHash Mapa con los nombres de fichero analizados y sus huellas digitales,
+	 *                      en el orden de los algoritmos.
+	 * @param algs Algoritmos con los que fueron generadas las huellas digitales.
+	 * @param xmlPath Ruta del XML, junto al que se guarda el &iacute;ndice de la comprobaci&oacute;n
+	 *                incremental si est&aacute; activada (ver {@link HashIndex}). En ese caso no se
+	 *                vuelven a leer los ficheros cuyos metadatos no han cambiado desde la
+	 *                comprobaci&oacute;n anterior.
+	 * @throws NoSuchAlgorithmException Si no se soporta alguno de los algoritmos de huella.
 	 * @throws IOException Error en el tratamiento de los ficheros. */
 	private static void checkDirectoryHash(final Path dir,
 			                               final boolean isRec,
-			                               final Map<String, byte[]> directoryHash,
-			                               final String alg) throws IOException,
-			                                                        NoSuchAlgorithmException {
-		if (Files.exists(dir)) {
-			if (isRec) {
-				checkDirectoryRecursively(null, dir, directoryHash, alg);
+			                               final Map<String, byte[][]> directoryHash,
+			                               final String[] algs,
+			                               final String xmlPath) throws IOException,
+			                                                            NoSuchAlgorithmException {
+		final boolean incremental = HashIndex.isIncrementalEnabled();
+		final File indexFile = HashIndex.getIndexFile(xmlPath);
+		final String dirId = dir.toAbsolutePath().normalize().toString();
+		final HashIndex index = incremental ? HashIndex.load(indexFile, dirId, algs) : null;
+		final HashIndex newIndex = incremental ?
+			HashIndex.create(dirId, algs, index != null ? index.getLastFullCheck() : System.currentTimeMillis()) :
+				null;
+
+		// Ficheros con huella en el XML, en el orden en el que se encuentran en el directorio
+		final List<String> filesToCheck = new ArrayList<>();
+		// Huellas tomadas del indice y atributos de los ficheros cuya huella se calcula
+		final Map<String, byte[][]> indexedHashes = new HashMap<>();
+		final Map<String, BasicFileAttributes> hashedAttrs = new HashMap<>();
+		final Map<String, byte[][]> newHashes = DirectoryHasher.hashDirectory(
+			dir,
+			isRec,
+			algs,
+			(name, attrs) -> {
+				if (!directoryHash.containsKey(name)) {
+					addToReport("CheckHashFiles.10", name); //$NON-NLS-1$
+					return false;
+				}
+				filesToCheck.add(name);
+				if (newIndex == null) {
+					return true;
+				}
+				final byte[][] indexed = index != null ? index.get(name, attrs) : null;
+				if (indexed != null) {
+					indexedHashes.put(name, indexed);
+					newIndex.put(name, attrs, indexed);
+					return false;
+				}
+				hashedAttrs.put(name, attrs);
+				return true;
 			}
-			else {
-				checkDirectoryNonRecursively(dir, directoryHash, alg);
+		);
+
+		if (newIndex != null) {
+			for (final Map.Entry<String, BasicFileAttributes> e : hashedAttrs.entrySet()) {
+				final byte[][] hashes = newHashes.get(e.getKey());
+				if (hashes != null) {
+					newIndex.put(e.getKey(), e.getValue(), hashes);
+				}
+			}
+			newHashes.putAll(indexedHashes);
+			LOGGER.info(
+				"Se han reutilizado las huellas del indice de " + indexedHashes.size() + " de " + filesToCheck.size() + " ficheros" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			);
+			try {
+				newIndex.save(indexFile);
+			}
+			catch (final IOException e) {
+				// Sin indice, la siguiente comprobacion sera completa
+				LOGGER.warning("No se ha podido guardar el indice de huellas: " + e); //$NON-NLS-1$
 			}
 		}
-	}
-
-	private static void checkDirectoryNonRecursively(final Path dir,
-                                                     final Map<String, byte[]> directoryHash,
-                                                     final String alg) throws IOException, NoSuchAlgorithmException {
-		String messageCode = null;
-		final String auxMessageCode = "CheckHashDialog.3"; //$NON-NLS-1$
-		try (Stream<Path> paths = Files.list(dir)) {
-			final Iterator<Path> it = paths.iterator();
-			while (it.hasNext()) {
-				final Path path = it.next();
-				if (!Files.isDirectory(path)) {
-					if (!FILES_TO_AVOID.contains(path.getFileName().toString()) && !path.getFileName().toString().contains("~$")) { //$NON-NLS-1$
-
-						if (directoryHash.containsKey(path.getFileName().toString())) {
-							if (!checkFileHash(path, directoryHash.get(path.getFileName().toString()), alg)) {
-								messageCode = "CheckHashDialog.5"; //$NON-NLS-1$
-								List<String> filenameList = getReportXML().get(messageCode);
-								if (filenameList == null) {
-									filenameList = new ArrayList<>();
-									getReportXML().put(messageCode, filenameList);
-								}
-								getReportXML().get(messageCode).add(path.getFileName().toString());
-							}
-							else {
-								List<String> filenameList = getReportXML().get(auxMessageCode);
-								if (filenameList == null) {
-									filenameList = new ArrayList<>();
-									getReportXML().put(auxMessageCode, filenameList);
-								}
-								getReportXML().get(auxMessageCode).add(path.getFileName().toString());
-							}
-							directoryHash.remove(path.getFileName().toString());
-						}
-						else {
-							messageCode = "CheckHashFiles.10"; //$NON-NLS-1$
-							List<String> filenameList = getReportXML().get(messageCode);
-							if (filenameList == null) {
-								filenameList = new ArrayList<>();
-								getReportXML().put(messageCode, filenameList);
-							}
-							getReportXML().get(messageCode).add(path.getFileName().toString());
-						}
-					}
 
-				} // if (!Files.isDirectory(path))
-			} // while
+		for (final String name : filesToCheck) {
+			if (hashesMatch(newHashes.get(name), directoryHash.get(name))) {
+				addToReport("CheckHashDialog.3", name); //$NON-NLS-1$
+			}
+			else {
+				addToReport("CheckHashDialog.5", name); //$NON-NLS-1$
+			}
+			directoryHash.remove(name);
 		}
 	}
 
-	private static void checkDirectoryRecursively(final String relativePath,
-			                                      final Path dir,
-			                                      final Map<String, byte[]> directoryHash,
-			                                      final String alg) throws IOException, NoSuchAlgorithmException {
-
-		final String auxMessageCode = "CheckHashDialog.3"; //$NON-NLS-1$
-		String messageCode = null;
-		if (Files.exists(dir)) {
-			if (Files.isDirectory(dir)) {
-				try (Stream<Path> paths = Files.list(dir)) {
-					final Iterator<Path> it = paths.iterator();
-					while (it.hasNext()) {
-						final Path path = it.next();
-						if (relativePath != null) {
-							checkDirectoryRecursively(
-								relativePath + File.separator + path.getFileName().toString(),
-								path,
-								directoryHash,
-								alg
-							);
-						}
-						else {
-							checkDirectoryRecursively(path.getFileName().toString(), path, directoryHash, alg);
-						}
-					}
-				} // No es un directorio
+	/** Comprueba que las huellas calculadas de un fichero coincidan con las esperadas.
+	 * Si para un fichero se indicaron menos huellas que algoritmos, solo se comparan esas.
+	 * @param newHashes Huellas calculadas.
+	 * @param expectedHashes Huellas esperadas.
+	 * @return <code>true</code> si coinciden todas las huellas esperadas. */
+	private static boolean hashesMatch(final byte[][] newHashes, final byte[][] expectedHashes) {
+		if (newHashes == null || expectedHashes.length > newHashes.length) {
+			return false;
+		}
+		for (int i = 0; i < expectedHashes.length; i++) {
+			if (!Arrays.equals(newHashes[i], expectedHashes[i])) {
+				return false;
 			}
-			else {
+		}
+		return true;
+	}
 
-				if (!FILES_TO_AVOID.contains(dir.getFileName().toString()) && !relativePath.contains("~$")) { //$NON-NLS-1$
-					if (directoryHash.containsKey(relativePath)) {
-						if (!checkFileHash(dir, directoryHash.get(relativePath), getAlgorithm())) {
-							messageCode = "CheckHashDialog.5"; //$NON-NLS-1$
-							List<String> filenameList = getReportXML().get(messageCode);
-							if (filenameList == null) {
-								filenameList = new ArrayList<>();
-								getReportXML().put(messageCode, filenameList);
-							}
-							getReportXML().get(messageCode).add(relativePath);
-						}
-						else {
-							List<String> filenameList = getReportXML().get(auxMessageCode);
-							if (filenameList == null) {
-								filenameList = new ArrayList<>();
-								getReportXML().put(auxMessageCode, filenameList);
-							}
-							getReportXML().get(auxMessageCode).add(relativePath);
-						}
-						directoryHash.remove(relativePath);
-					}
-					else {
-						messageCode = "CheckHashFiles.10"; //$NON-NLS-1$
-						List<String> filenameList = getReportXML().get(messageCode);
-						if (filenameList == null) {
-							filenameList = new ArrayList<>();
-							getReportXML().put(messageCode, filenameList);
-						}
-						getReportXML().get(messageCode).add(relativePath);
-					}
-				}
-			}
+	private static void addToReport(final String messageCode, final String fileName) {
+		List<String> filenameList = getReportXML().get(messageCode);
+		if (filenameList == null) {
+			filenameList = new ArrayList<>();
+			getReportXML().put(messageCode, filenameList);
 		}
+		filenameList.add(fileName);
 	}
 
 	/** Recorre el fichero XML seleccionado por el usuario.
+	 * El XML se valida contra su esquema y se lee en flujo en una &uacute;nica pasada, guardando
+	 * solo el nombre y las huellas de cada entrada.
 	 * @param dir Directorio seleccionado.
 	 * @param xmlPath Fichero que cotiene el XML.
 	 * @throws IOException Error al abrir o cerrar el fichero seleccionado.
 	 * @throws SAXException Error al analizar el XML.
-	 * @throws ParserConfigurationException Error al procesar un documento de tipo XML.
 	 * @throws NoSuchAlgorithmException Error al construir la implementacion de un algoritmo. */
 	static void checkHashXML(final Path dir, final String xmlPath) throws SAXException,
 	                                                               IOException,
-	                                                               ParserConfigurationException,
 	                                                               NoSuchAlgorithmException {
 
-		final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		final DocumentBuilder builder = factory.newDocumentBuilder();
-
-		try (InputStream is = new FileInputStream(xmlPath)) {
-			validateAgainstXSD(is, CheckHashFiles.class.getResourceAsStream("/schemas/folderhashes.xsd")); //$NON-NLS-1$
-		}
-		final Document doc = builder.parse(xmlPath);
-		doc.getDocumentElement().normalize();
-
-		final Map<String, byte[]> dirEntries = new HashMap<>();
-
-		final NodeList nodeListEntries = doc.getElementsByTagName("entries"); //$NON-NLS-1$
-		final Node nodeEntries = nodeListEntries.item(0);
-		setAlgorithm(nodeEntries.getAttributes().getNamedItem("hashAlgorithm").getNodeValue()); //$NON-NLS-1$
-		setIsRecursive(
-			Boolean.valueOf(nodeEntries.getAttributes().getNamedItem("recursive").getNodeValue()) //$NON-NLS-1$
-		);
-
-		final NodeList nodeList = doc.getElementsByTagName("entry"); //$NON-NLS-1$
-		for (int i = 0; i < nodeList.getLength(); i++) {
-			final Node node = nodeList.item(i);
-
-			final byte[] hash = Base64.decode(
-				node.getAttributes().getNamedItem("hash").getNodeValue(), true //$NON-NLS-1$
+		final Map<String, byte[][]> dirEntries = new HashMap<>();
+		final String[][] algorithms = new String[1][];
+
+		try (final InputStream is = new BufferedInputStream(new FileInputStream(xmlPath))) {
+			HashReportXml.readManifest(
+				is,
+				new HashReportXml.ManifestHandler() {
+					@Override
+					public void header(final String[] algs, final boolean recursive) {
+						algorithms[0] = algs;
+						setAlgorithm(algs[0]);
+						setIsRecursive(Boolean.valueOf(recursive));
+					}
+					@Override
+					public void entry(final String name, final byte[][] hashes) {
+						dirEntries.put(name, hashes);
+					}
+				}
 			);
-			final String name = node.getAttributes().getNamedItem("name").getNodeValue(); //$NON-NLS-1$
-			dirEntries.put(name, hash);
 		}
-		checkDirectoryHash(dir, getIsRecursive(), dirEntries, getAlgorithm());
+		checkDirectoryHash(dir, getIsRecursive(), dirEntries, algorithms[0], xmlPath);
 
 		if (dirEntries.keySet().size() > 0) {
 			final String messageCode = "CheckHashFiles.1"; //$NON-NLS-1$
@@ -593,15 +533,6 @@ public final class CheckHashFiles extends JDialog {
 		}
 	}
 
-	private static void validateAgainstXSD(final InputStream isxml,
-			                               final InputStream xsd) throws SAXException, IOException {
-
-		final SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-		final Schema schema = factory.newSchema(new StreamSource(xsd));
-		final Validator validator = schema.newValidator();
-		validator.validate(new StreamSource(isxml));
-	}
-
 	/** Genera el XML donde est&aacute;n almacenadas las comparaciones de las
 	 * huellas digitales de los ficheros elegidos.
 	 * El XML tendr&aacute; el siguiente esquema:
@@ -682,64 +613,11 @@ public final class CheckHashFiles extends JDialog {
 	 * @param isRec Si se ha elegido que el recorrido por el directorio sea
 	 *        recursivo o no.
 	 * @return Informe de coincidencias de huellas en XML.
-	 * @throws ParserConfigurationException Si no se puede obtener en analizador XML.
-	 * @throws TransformerException Si hay errores escribiendo el XML. */
-	static String generateXMLReport(final Map<String, List<String>> mapReport, final String alg, final boolean isRec) throws ParserConfigurationException,
-	                                                                                                                         TransformerException {
-
-		final DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-		final DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-
-		// Elemento raiz
-		final Document doc = docBuilder.newDocument();
-		final Element rootElement = doc.createElement("entries"); //$NON-NLS-1$
-		final Attr hashAlg = doc.createAttribute("hashAlgorithm"); //$NON-NLS-1$
-		hashAlg.setValue(alg);
-		rootElement.setAttributeNode(hashAlg);
-		final Attr recursive = doc.createAttribute("recursive"); //$NON-NLS-1$
-		recursive.setValue(String.valueOf(isRec));
-		rootElement.setAttributeNode(recursive);
-		doc.appendChild(rootElement);
-
-		for (final String code : mapReport.keySet()) {
-			Element entriesHeader = doc.createElement("matching_hash"); //$NON-NLS-1$
-			// Elemento header
-			if (code.equals("CheckHashDialog.5")) {//$NON-NLS-1$
-				entriesHeader = doc.createElement("not_matching_hash"); //$NON-NLS-1$
-			}
-			else if (code.equals("CheckHashFiles.1")) {//$NON-NLS-1$
-				entriesHeader = doc.createElement("hash_without_file"); //$NON-NLS-1$
-			}
-			else if (code.equals("CheckHashFiles.10")) {//$NON-NLS-1$
-				entriesHeader = doc.createElement("file_without_hash"); //$NON-NLS-1$
-			}
-			rootElement.appendChild(entriesHeader);
-			for (final String path : mapReport.get(code)) {
-				// Elemento entry
-				final Element entry = doc.createElement("entry"); //$NON-NLS-1$
-				entriesHeader.appendChild(entry);
-				// Se inicializa el atributo name
-				final Attr name = doc.createAttribute("name"); //$NON-NLS-1$
-				name.setValue(path);
-				entry.setAttributeNode(name);
-			}
-		}
+	 * @throws XMLStreamException Si hay errores escribiendo el XML. */
+	static String generateXMLReport(final Map<String, List<String>> mapReport, final String alg, final boolean isRec) throws XMLStreamException {
 		final StringWriter sw = new StringWriter();
-		final TransformerFactory tf = TransformerFactory.newInstance();
-		final Transformer transformer = tf.newTransformer();
-		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no"); //$NON-NLS-1$
-		transformer.setOutputProperty(OutputKeys.METHOD, "xml"); //$NON-NLS-1$
-		transformer.setOutputProperty(OutputKeys.INDENT, "yes"); //$NON-NLS-1$
-		if (Platform.OS.WINDOWS.equals(Platform.getOS())) {
-			transformer.setOutputProperty(OutputKeys.ENCODING, "ISO-8859-1"); //$NON-NLS-1$
-		}
-		else {
-			transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); //$NON-NLS-1$
-		}
-
-		transformer.transform(new DOMSource(doc), new StreamResult(sw));
+		HashReportXml.writeCheckReport(mapReport, alg, isRec, sw);
 		return sw.toString();
-
 	}
 
 	/** Obtiene el nombre del fichero seleccionado por el usuario.
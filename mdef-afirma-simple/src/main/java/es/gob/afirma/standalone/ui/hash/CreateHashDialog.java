@@ -312,6 +312,24 @@ public final class CreateHashDialog extends JDialog implements KeyListener{
                               final boolean base64,
                               final boolean copyToClipboard,
                               final Window currentFrame) {
+		doHashProcess(parent, file, new String[] { hashAlgorithm }, base64, copyToClipboard, currentFrame);
+	}
+
+	/** Calcula y guarda las huellas de un fichero con varios algoritmos, leyendo el fichero una
+	 * &uacute;nica vez. Cada huella se guarda en su propio fichero y, si se indica, se copia al
+	 * portapapeles la del primer algoritmo.
+	 * @param parent Componente padre para la modalidad.
+	 * @param file Fichero.
+	 * @param hashAlgorithms Algoritmos de huella.
+	 * @param base64 Si las huellas se deben guardar codificadas en Base64.
+	 * @param copyToClipboard Si se debe copiar la huella al portapapeles.
+	 * @param currentFrame Ventana en la que mostrar el cursor de espera o <code>null</code>. */
+	static void doHashProcess(final Frame parent,
+                              final String file,
+                              final String[] hashAlgorithms,
+                              final boolean base64,
+                              final boolean copyToClipboard,
+                              final Window currentFrame) {
 
 		final CommonWaitDialog dialog = new CommonWaitDialog(
 			null,
@@ -329,23 +347,30 @@ public final class CreateHashDialog extends JDialog implements KeyListener{
 						currentFrame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 					}
 
-					final byte[] hash = HashUtil.getFileHash(hashAlgorithm, file);
+					final byte[][] hashes = HashUtil.getFileHashes(hashAlgorithms, new File(file));
 
 					final String ext = base64 ? ".hashb64" : ".hash"; //$NON-NLS-1$ //$NON-NLS-2$
 
 					dialog.dispose();
-					AOUIFactory.getSaveDataToFile(
-							base64 ? Base64.encode(hash).getBytes() :
-								hash,
-						SimpleAfirmaMessages.getString("CreateHashDialog.8"), //$NON-NLS-1$,,,
-						null,
-						AutoFirmaUtil.getCanonicalFile(new File(file)).getName() + ext,
-						new String[] { ext },
-						SimpleAfirmaMessages.getString("CreateHashDialog.9") + " (*" + ext + ")",  //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$
-						parent
-					);
+					for (int i = 0; i < hashes.length; i++) {
+						final byte[] hash = hashes[i];
+						// Con varios algoritmos se distingue cada fichero por el suyo
+						final String algorithmSuffix = hashes.length > 1 ?
+							"." + hashAlgorithms[i].replace("-", "").toLowerCase() : //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+								""; //$NON-NLS-1$
+						AOUIFactory.getSaveDataToFile(
+								base64 ? Base64.encode(hash).getBytes() :
+									hash,
+							SimpleAfirmaMessages.getString("CreateHashDialog.8"), //$NON-NLS-1$,,,
+							null,
+							AutoFirmaUtil.getCanonicalFile(new File(file)).getName() + algorithmSuffix + ext,
+							new String[] { ext },
+							SimpleAfirmaMessages.getString("CreateHashDialog.9") + " (*" + ext + ")",  //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$
+							parent
+						);
+					}
 					if (copyToClipboard) {
-						copyToClipBoard(Base64.encode(hash));
+						copyToClipBoard(Base64.encode(hashes[0]));
 					}
 				}
 				catch(final OutOfMemoryError ooe) {
@@ -8,22 +8,16 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.StringWriter;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.OutputStream;
 import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Stream;
 
 import javax.swing.AbstractButton;
 import javax.swing.JButton;
@@ -35,22 +29,8 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.SwingWorker;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 import es.gob.afirma.core.AOCancelledOperationException;
-import es.gob.afirma.core.misc.Base64;
 import es.gob.afirma.core.misc.Platform;
 import es.gob.afirma.core.ui.AOUIFactory;
 import es.gob.afirma.standalone.AutoFirmaUtil;
@@ -79,20 +59,6 @@ public final class CreateHashFiles extends JDialog {
 		SimpleAfirmaMessages.getString("CreateHashFiles.16") //$NON-NLS-1$
 	);
 
-	/** Fichero a evitar. */
-	private final static Set<String> FILES_TO_AVOID = new HashSet<>(
-		Arrays.asList(
-			".fseventsd", //$NON-NLS-1$
-			".Spotlight-V100", //$NON-NLS-1$
-			".Trashes", //$NON-NLS-1$
-			"._.Trashes", //$NON-NLS-1$
-			".DS_Store", //$NON-NLS-1$
-			".desktop", //$NON-NLS-1$
-			"thumbs.db", //$NON-NLS-1$
-			"$Recycle.Bin" //$NON-NLS-1$
-		)
-	);
-
 	boolean isRecursiveSelected = false;
 
 	/** Inicia el proceso de creaci&oacute;n de huella digital de directorios.
@@ -268,6 +234,40 @@ public final class CreateHashFiles extends JDialog {
 			                  final String dir,
 			                  final String hashAlgorithm,
 			                  final boolean recursive) {
+		doHashProcess(parent, dir, new String[] { hashAlgorithm }, recursive);
+	}
+
+	/** Genera y guarda el informe de huellas de un directorio calculando las huellas con
+	 * varios algoritmos, leyendo cada fichero una &uacute;nica vez. Se pide primero el fichero
+	 * de destino y el informe se escribe en &eacute;l seg&uacute;n se calculan las huellas.
+	 * @param parent Componente padre para la modalidad.
+	 * @param dir Directorio.
+	 * @param hashAlgorithms Algoritmos de huella. El primero es el algoritmo principal del informe.
+	 * @param recursive Si se deben incluir los ficheros de los subdirectorios. */
+	static void doHashProcess(final Frame parent,
+			                  final String dir,
+			                  final String[] hashAlgorithms,
+			                  final boolean recursive) {
+
+		final File outFile;
+		try {
+			outFile = selectOutputFile(parent, dir);
+		}
+		catch (final AOCancelledOperationException e) {
+			return;
+		}
+		catch (final IOException e) {
+			AOUIFactory.showErrorMessage(
+				parent,
+				SimpleAfirmaMessages.getString("CreateHashDialog.13"), //$NON-NLS-1$
+				SimpleAfirmaMessages.getString("CreateHashDialog.14"), //$NON-NLS-1$
+				JOptionPane.ERROR_MESSAGE
+			);
+			Logger.getLogger("es.gob.afirma").log( //$NON-NLS-1$
+				Level.SEVERE, "No se ha podido crear el fichero del informe de huellas", e //$NON-NLS-1$
+			);
+			return;
+		}
 
 		// Se crea la ventana de espera.
 		final CommonWaitDialog dialog = new CommonWaitDialog(
@@ -277,16 +277,24 @@ public final class CreateHashFiles extends JDialog {
 		);
 
 		// Arrancamos el proceso en un hilo aparte
-		final SwingWorker<Map<String, byte[]>, Void> worker = new SwingWorker<Map<String, byte[]>, Void>() {
+		final SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
 
 			@Override
-			protected java.util.Map<String, byte[]> doInBackground() throws Exception {
-				final Map<String, byte[]> hashs = generateDirectoryHash(
-					Paths.get(dir),
-					recursive,
-					hashAlgorithm
-				);
-				return hashs;
+			protected Void doInBackground() throws Exception {
+				// Las huellas se escriben en el fichero segun se calculan
+				try (final OutputStream os = new BufferedOutputStream(new FileOutputStream(outFile))) {
+					writeHashReport(dir, recursive, os, hashAlgorithms);
+				}
+				catch (final Exception | OutOfMemoryError e) {
+					// No dejamos un informe incompleto
+					if (!outFile.delete()) {
+						Logger.getLogger("es.gob.afirma").warning( //$NON-NLS-1$
+							"No se ha podido borrar el informe de huellas incompleto: " + outFile //$NON-NLS-1$
+						);
+					}
+					throw e;
+				}
+				return null;
 			}
 
 			@Override
@@ -303,28 +311,7 @@ public final class CreateHashFiles extends JDialog {
 		}
 
 		try {
-
-			final Map<String, byte[]> hashs = worker.get();
-			final String xml = generateHashXML(
-				hashs,
-				hashAlgorithm,
-				recursive
-			);
-
-			// El XML se almacenaria en la carpeta que eligiese el usuario.
-			final String ext = SimpleAfirmaMessages.getString("CreateHashFiles.17"); //$NON-NLS-1$
-			AOUIFactory.getSaveDataToFile(
-				xml.getBytes(),
-				SimpleAfirmaMessages.getString("CreateHashFiles.19"), //$NON-NLS-1$ ,,,
-				null,
-				AutoFirmaUtil.getCanonicalFile(new File(dir)).getName() + ext,
-				new String[] { ext },
-				SimpleAfirmaMessages.getString("CreateHashDialog.9") + " (*" + ext + ")", //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$
-				parent
-			);
-		}
-		catch (final AOCancelledOperationException e) {
-			// Operacion cancelada
+			worker.get();
 		}
 		catch (final Exception e) {
 			if (e.getCause() instanceof java.lang.OutOfMemoryError) {
@@ -353,6 +340,31 @@ public final class CreateHashFiles extends JDialog {
 
 	}
 
+	/** Pide al usuario el fichero en el que guardar el informe de huellas. Se usa el di&aacute;logo
+	 * de guardado de la aplicaci&oacute;n, que crea el fichero vac&iacute;o, para despu&eacute;s
+	 * escribir en &eacute;l las huellas seg&uacute;n se calculan.
+	 * @param parent Componente padre para la modalidad.
+	 * @param dir Directorio del que se genera el informe.
+	 * @return Fichero de destino.
+	 * @throws IOException Si no se puede crear el fichero de destino.
+	 * @throws AOCancelledOperationException Si el usuario cancela la selecci&oacute;n. */
+	private static File selectOutputFile(final Frame parent, final String dir) throws IOException {
+		final String ext = SimpleAfirmaMessages.getString("CreateHashFiles.17"); //$NON-NLS-1$
+		final File file = AOUIFactory.getSaveDataToFile(
+			new byte[0],
+			SimpleAfirmaMessages.getString("CreateHashFiles.19"), //$NON-NLS-1$
+			null,
+			AutoFirmaUtil.getCanonicalFile(new File(dir)).getName() + ext,
+			new String[] { ext },
+			SimpleAfirmaMessages.getString("CreateHashDialog.9") + " (*" + ext + ")", //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$
+			parent
+		);
+		if (file == null) {
+			throw new AOCancelledOperationException();
+		}
+		return file;
+	}
+
 	// ------------ Metodos listeners.
 	/** Pide al usuario que seleccione un fichero. */
 	void openSelectedFile() {
@@ -384,212 +396,45 @@ public final class CreateHashFiles extends JDialog {
 		this.generateButton.setEnabled(true);
 	}
 
-	/** Genera el XML con las huellas digitales. El
-	 * XML tendr&aacute; el siguiente esquema:
-	 * <pre>
-	 * &lt;xs:schema attributeFormDefault="unqualified" elementFormDefault="qualified" xmlns:xs="http://www.w3.org/2001/XMLSchema"&gt;
-	 *	&lt;xs:element name="entries"&gt;
-	 *		&lt;xs:complexType&gt;
-	 * 			&lt;xs:sequence&gt;
-	 *   			&lt;xs:element name="entry" maxOccurs="unbounded" minOccurs="0"&gt;
-	 *     				&lt;xs:complexType&gt;
-	 *       				&lt;xs:simpleContent&gt;
-	 *         					&lt;xs:extension base="xs:string"&gt;
-	 *           					&lt;xs:attribute type="xs:string" name="hash" use="required"/&gt;
-	 *           					&lt;xs:attribute type="xs:string" name="name" use="required"/&gt;
-	 *         					&lt;\xs:extension&gt;
-	 *       				&lt;\xs:simpleContent&gt;
-	 *				     &lt;\xs:complexType&gt;
-	 *   			&lt;\xs:element&gt;
-	 *		 	&lt;\xs:sequence&gt;
-	 *		 &lt;xs:attribute name="hashAlgorithm"&gt;
-	 * 			&lt;xs:simpleType&gt;
-	 *				&lt;xs:restriction base="xs:string"&gt;
-	 * 					&lt;xs:enumeration value="SHA-1"/&gt;
-	 *					&lt;xs:enumeration value="SHA-256"/&gt;
-	 *					&lt;xs:enumeration value="SHA-384"/&gt;
-	 *					&lt;xs:enumeration value="SHA-512"/&gt;
-	 *				&lt;\xs:restriction&gt;
-	 *			&lt;\xs:simpleType&gt;
-	 * 		  &lt;\xs:attribute&gt;
-	 * 	     &lt;xs:attribute type="xs:boolean" name="recursive" use="required"/&gt;
-	 * 	   &lt;\xs:complexType&gt;
-	 *	 &lt;\xs:element&gt;
-	 * &lt;\xs:schema&gt;
-	 * </pre>
-	 * @param hashs Mapa con los nombres de fichero y sus huellas.
-	 * @param algorithm Algoritmo con el que fueron generadas las huellas digitales.
-	 * @param isRecursive Si se ha elegido que el recorrido por el directorio sea
-	 *                    recursivo o no.
-	 * @return String que contiene el XML.
-	 * @throws ParserConfigurationException Si hay error en el analizador XML.
-	 * @throws TransformerException Si hay error en la escritura del XML. */
-	static String generateHashXML(final Map<String, byte[]> hashs,
-			                      final String algorithm,
-			                      final boolean isRecursive) throws ParserConfigurationException, TransformerException {
-
-		final DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-		final DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-
-		// Elemento raiz
-		final Document doc = docBuilder.newDocument();
-		final Element rootElement = doc.createElement("entries"); //$NON-NLS-1$
-		doc.appendChild(rootElement);
-		final Attr hashAlg = doc.createAttribute("hashAlgorithm"); //$NON-NLS-1$
-		hashAlg.setValue(algorithm);
-		rootElement.setAttributeNode(hashAlg);
-		final Attr recursive = doc.createAttribute("recursive"); //$NON-NLS-1$
-		recursive.setValue(String.valueOf(isRecursive));
-		rootElement.setAttributeNode(recursive);
-
-		final Set<String> paths = hashs.keySet();
-		for (final String path : paths) {
-			final byte[] hash = hashs.get(path);
-
-			// Elemento entry
-			final Element entry = doc.createElement("entry"); //$NON-NLS-1$
-			rootElement.appendChild(entry);
-
-			// Se inicializa el atributo name
-			final Attr name = doc.createAttribute("name"); //$NON-NLS-1$
-			name.setValue(path);
-			entry.setAttributeNode(name);
-
-			// Se inicializa el atributo hash
-			final Attr hashAttribute = doc.createAttribute("hash"); //$NON-NLS-1$
-			hashAttribute.setValue(Base64.encode(hash, true));
-			entry.setAttributeNode(hashAttribute);
-		}
-		final StringWriter sw = new StringWriter();
-		final TransformerFactory tf = TransformerFactory.newInstance();
-		final Transformer transformer = tf.newTransformer();
-		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no"); //$NON-NLS-1$
-		transformer.setOutputProperty(OutputKeys.METHOD, "xml"); //$NON-NLS-1$
-		transformer.setOutputProperty(OutputKeys.INDENT, "yes"); //$NON-NLS-1$
-		if (Platform.OS.WINDOWS.equals(Platform.getOS())) {
-			transformer.setOutputProperty(OutputKeys.ENCODING, "ISO-8859-1"); //$NON-NLS-1$
-		}
-		else {
-			transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); //$NON-NLS-1$
-		}
-
-		transformer.transform(
-			new DOMSource(doc), new StreamResult(sw)
-		);
-
-		return sw.toString();
-
-	}
-
 	/** Obtiene un informe de huellas en XML del directorio indicado.
 	 * @param dir Directorio sobre cuyos ficheros se desea calcular las huellas.
 	 * @param isRecursive Si se desea se recorra el directorio recursivamente.
-	 * @param algorithm Algoritmo para las huellas digitales.
+	 * @param algorithms Algoritmos para las huellas digitales. Cada fichero se lee una &uacute;nica
+	 *                   vez sea cual sea el n&uacute;mero de algoritmos.
 	 * @return Informe XML de huellas.
 	 * @throws NoSuchAlgorithmException Si no se soporta el algoritmo de huellas.
-	 * @throws IOException Si hay problemas en el tratamiento de los ficheros.
-	 * @throws ParserConfigurationException Si hay problemas con el analizador XML.
-	 * @throws TransformerException Si hay problemas escribiendo el XML. */
-	public static String getHashReport(final String dir, final boolean isRecursive, final String algorithm) throws NoSuchAlgorithmException,
-	                                                                                                      IOException,
-	                                                                                                      ParserConfigurationException,
-	                                                                                                      TransformerException {
-		final Map<String, byte[]> retMap = generateDirectoryHash(
-			Paths.get(new File(dir).toURI()),
-			isRecursive,
-			algorithm
-		);
-		return generateHashXML(retMap, algorithm, isRecursive);
+	 * @throws IOException Si hay problemas en el tratamiento de los ficheros o escribiendo el XML. */
+	public static String getHashReport(final String dir, final boolean isRecursive, final String... algorithms) throws NoSuchAlgorithmException,
+	                                                                                                      IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		writeHashReport(dir, isRecursive, baos, algorithms);
+		return new String(baos.toByteArray(), HashReportXml.getEncoding());
 	}
 
-	/** Genera la huella digital de los ficheros de un directorio.
-	 * @param dir Directorio que ha elegido el usuario para generar la firma
-	 *            digital.
-	 * @param isRecursive Si se ha elegido que el recorrido por el directorio sea
-	 *                    recursivo o no.
-	 * @param algorithm Algoritmo con el que fue generada la huella digital.
-	 * @return Valores hash para cada elemento del directorio.
-	 * @throws IOException Error al abrir o cerrar el fichero seleccionado.
-	 * @throws NoSuchAlgorithmException Si no se soporta el algoritmo de huella. */
-	static Map<String, byte[]> generateDirectoryHash(final Path dir,
-			                                         final boolean isRecursive,
-			                                         final String algorithm) throws IOException,
-			                                                                        NoSuchAlgorithmException {
-		final Map<String, byte[]> directoryHash = new HashMap<>();
-		if (Files.exists(dir)) {
-			if (isRecursive) {
-				directoryHash.putAll(
-					recursiveDirectoryHash(null, dir, directoryHash, algorithm)
-				);
-			}
-			else {
-				try (Stream<Path> paths = Files.list(dir)) {
-					final Iterator<Path> it = paths.iterator();
-					while (it.hasNext()) {
-						final Path path = it.next();
-						if (!Files.isDirectory(path) &&
-							!path.getFileName().toString().contains("~$") && //$NON-NLS-1$
-							!FILES_TO_AVOID.contains(path.getFileName().toString())) {
-								directoryHash.put(
-									path.getFileName().toString(),
-									HashUtil.getFileHash(algorithm, path)
-								);
-						}
-					}
-				}
-			}
-		}
-		return directoryHash;
-	}
-
-	/** Recorre el directorio recursivamente.
-	 * @param relativePath Nombre relativo del directorio.
-	 * @param path Directorio a recorrer recursivamente.
-	 * @param directoryHash Contiene el nombre del fichero y su respecitiva firma digital.
-	 * @param algorithm Algoritmo para las huellas digitales.
-	 * @return Mapa con los valores de huella para cada elemento del directorio.
-	 * @throws IOException Indica si ha habido un error al abrir o cerrar un fichero.
-	 * @throws NoSuchAlgorithmException Si no se soporta el algoritmo de huella. */
-	private static Map<String, byte[]> recursiveDirectoryHash(final String relativePath,
-			                                                  final Path path,
-			                                                  final Map<String, byte[]> directoryHash,
-			                                                  final String algorithm) throws IOException, NoSuchAlgorithmException {
-		if (Files.exists(path)) {
-			if (Files.isDirectory(path)) {
-				try (Stream<Path> paths = Files.list(path)) {
-					final Iterator<Path> it = paths.iterator();
-					while (it.hasNext()) {
-						final Path subPath = it.next();
-						if (relativePath != null) {
-							directoryHash.putAll(
-								recursiveDirectoryHash(
-									relativePath + File.separator + subPath.getFileName().toString(),
-									subPath,
-									directoryHash,
-									algorithm
-								)
-							);
-						}
-						else {
-							directoryHash.putAll(
-								recursiveDirectoryHash(
-									subPath.getFileName().toString(), subPath, directoryHash, algorithm
-								)
-							);
-						}
-					}
-				} // Si no es un directorio
-			}
-			else {
-				if (!relativePath.contains("~$") && !FILES_TO_AVOID.contains(path.getFileName().toString())) { //$NON-NLS-1$
-					directoryHash.put(
-						relativePath,
-						HashUtil.getFileHash(algorithm, path)
-					);
-				}
-			}
+	/** Escribe el informe de huellas en XML del directorio indicado seg&uacute;n se calculan las
+	 * huellas de sus ficheros, sin acumularlas en memoria. Las entradas se escriben en el orden en
+	 * el que terminan sus c&aacute;lculos.
+	 * @param dir Directorio sobre cuyos ficheros se desea calcular las huellas.
+	 * @param isRecursive Si se desea se recorra el directorio recursivamente.
+	 * @param os Flujo en el que escribir el informe. No se cierra al terminar.
+	 * @param algorithms Algoritmos para las huellas digitales. Cada fichero se lee una &uacute;nica
+	 *                   vez sea cual sea el n&uacute;mero de algoritmos.
+	 * @throws NoSuchAlgorithmException Si no se soporta el algoritmo de huellas.
+	 * @throws IOException Si hay problemas en el tratamiento de los ficheros o escribiendo el XML. */
+	public static void writeHashReport(final String dir,
+			                           final boolean isRecursive,
+			                           final OutputStream os,
+			                           final String... algorithms) throws NoSuchAlgorithmException,
+	                                                                      IOException {
+		try (final HashReportXml.ManifestWriter writer = new HashReportXml.ManifestWriter(os, algorithms, isRecursive)) {
+			DirectoryHasher.hashDirectory(
+				Paths.get(new File(dir).toURI()),
+				isRecursive,
+				algorithms,
+				(name, attrs) -> true,
+				writer::writeEntry
+			);
 		}
-		return directoryHash;
 	}
 
 	static long getSize(final File file) {
@@ -0,0 +1,202 @@
+package es.gob.afirma.standalone.ui.hash;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiPredicate;
+import java.util.logging.Logger;
+
+/** C&aacute;lculo en paralelo de las huellas digitales de los ficheros de un directorio.
+ * El directorio se recorre en el hilo que solicita las huellas y cada fichero se env&iacute;a a un
+ * conjunto de hilos que calcula su huella, limitando el n&uacute;mero de ficheros pendientes para
+ * no acumular tareas si el recorrido es m&aacute;s r&aacute;pido que el c&aacute;lculo. El
+ * n&uacute;mero de hilos se configura con la propiedad del sistema
+ * <code>es.gob.afirma.hash.parallelism</code> (por defecto, el n&uacute;mero de procesadores). */
+final class DirectoryHasher {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	private static final int PARALLELISM = getParallelism();
+
+	/** N&uacute;mero m&aacute;ximo de ficheros pendientes de c&aacute;lculo por cada hilo. */
+	private static final int PENDING_FILES_PER_THREAD = 4;
+
+	private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+
+	/** Ficheros que nunca se incluyen en las huellas del directorio. */
+	private static final Set<String> FILES_TO_AVOID = new HashSet<>(
+		Arrays.asList(
+			".fseventsd", //$NON-NLS-1$
+			".Spotlight-V100", //$NON-NLS-1$
+			".Trashes", //$NON-NLS-1$
+			"._.Trashes", //$NON-NLS-1$
+			".DS_Store", //$NON-NLS-1$
+			".desktop", //$NON-NLS-1$
+			"thumbs.db", //$NON-NLS-1$
+			"$Recycle.Bin" //$NON-NLS-1$
+		)
+	);
+
+	private DirectoryHasher() {
+		// No instanciable
+	}
+
+	/** Calcula las huellas digitales de los ficheros de un directorio que se indiquen. Cada
+	 * fichero se lee una &uacute;nica vez aunque se calculen sus huellas con varios algoritmos.
+	 * @param dir Directorio.
+	 * @param isRecursive Si se deben incluir los ficheros de los subdirectorios.
+	 * @param algorithms Algoritmos de huella.
+	 * @param filter Indica, a partir de la ruta relativa y los atributos de cada fichero
+	 *               encontrado, si se debe calcular su huella. Se eval&uacute;a en el hilo que llama a este m&eacute;todo
+	 *               y en el orden en el que se recorre el directorio.
+	 * @return Huellas de cada fichero aceptado por el filtro (en el orden de los algoritmos), por
+	 *         su ruta relativa al directorio (o su nombre si el recorrido no es recursivo).
+	 * @throws IOException Si hay errores en el recorrido del directorio o en la lectura de los ficheros.
+	 * @throws NoSuchAlgorithmException Si no se soporta alguno de los algoritmos de huella. */
+	static Map<String, byte[][]> hashDirectory(final Path dir,
+			                                   final boolean isRecursive,
+			                                   final String[] algorithms,
+			                                   final BiPredicate<String, BasicFileAttributes> filter) throws IOException, NoSuchAlgorithmException {
+		final Map<String, byte[][]> hashes = new ConcurrentHashMap<>();
+		hashDirectory(dir, isRecursive, algorithms, filter, hashes::put);
+		return hashes;
+	}
+
+	/** Calcula las huellas digitales de los ficheros de un directorio que se indiquen y las
+	 * entrega seg&uacute;n se calculan, sin acumularlas.
+	 * @param dir Directorio.
+	 * @param isRecursive Si se deben incluir los ficheros de los subdirectorios.
+	 * @param algorithms Algoritmos de huella.
+	 * @param filter Indica, a partir de la ruta relativa y los atributos de cada fichero
+	 *               encontrado, si se debe calcular su huella. Se eval&uacute;a en el hilo que
+	 *               llama a este m&eacute;todo y en el orden en el que se recorre el directorio.
+	 * @param consumer Receptor de las huellas de cada fichero (en el orden de los algoritmos) junto
+	 *                 a su ruta relativa al directorio (o su nombre si el recorrido no es
+	 *                 recursivo). Se llama desde los hilos de c&aacute;lculo, por lo que debe
+	 *                 admitir llamadas concurrentes.
+	 * @throws IOException Si hay errores en el recorrido del directorio, en la lectura de los
+	 *                     ficheros o en el receptor de las huellas.
+	 * @throws NoSuchAlgorithmException Si no se soporta alguno de los algoritmos de huella. */
+	static void hashDirectory(final Path dir,
+			                  final boolean isRecursive,
+			                  final String[] algorithms,
+			                  final BiPredicate<String, BasicFileAttributes> filter,
+			                  final HashConsumer consumer) throws IOException, NoSuchAlgorithmException {
+
+		// Comprobamos los algoritmos antes de empezar para no fallar en cada fichero
+		for (final String algorithm : algorithms) {
+			MessageDigest.getInstance(algorithm);
+		}
+
+		if (!Files.isDirectory(dir)) {
+			return;
+		}
+
+		final int maxPending = PARALLELISM * PENDING_FILES_PER_THREAD;
+		final Semaphore pending = new Semaphore(maxPending);
+		final AtomicReference<Exception> error = new AtomicReference<>();
+
+		try {
+			Files.walkFileTree(
+				dir,
+				EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+				isRecursive ? Integer.MAX_VALUE : 1,
+				new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+						if (error.get() != null) {
+							return FileVisitResult.TERMINATE;
+						}
+						if (attrs.isDirectory()) {
+							// Subdirectorios en el recorrido no recursivo
+							return FileVisitResult.CONTINUE;
+						}
+						final String name = isRecursive ?
+							dir.relativize(file).toString() :
+								file.getFileName().toString();
+						if (name.contains("~$") || FILES_TO_AVOID.contains(file.getFileName().toString()) || !filter.test(name, attrs)) { //$NON-NLS-1$
+							return FileVisitResult.CONTINUE;
+						}
+						pending.acquireUninterruptibly();
+						POOL.execute(() -> {
+							try {
+								if (error.get() == null) {
+									consumer.accept(name, HashUtil.getFileHashes(algorithms, file));
+								}
+							}
+							catch (final Exception e) {
+								error.compareAndSet(null, e);
+							}
+							finally {
+								pending.release();
+							}
+						});
+						return FileVisitResult.CONTINUE;
+					}
+				}
+			);
+		}
+		finally {
+			// Esperamos a que terminen todos los calculos pendientes
+			pending.acquireUninterruptibly(maxPending);
+			pending.release(maxPending);
+		}
+
+		final Exception e = error.get();
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		}
+		if (e instanceof NoSuchAlgorithmException) {
+			throw (NoSuchAlgorithmException) e;
+		}
+		if (e != null) {
+			throw new IOException("Error calculando la huella de los ficheros del directorio: " + e, e); //$NON-NLS-1$
+		}
+	}
+
+	private static int getParallelism() {
+		final int defaultValue = Runtime.getRuntime().availableProcessors();
+		final String value = System.getProperty("es.gob.afirma.hash.parallelism"); //$NON-NLS-1$
+		if (value != null) {
+			try {
+				final int ret = Integer.parseInt(value.trim());
+				if (ret > 0) {
+					return ret;
+				}
+			}
+			catch (final Exception e) {
+				// Se usa el valor por defecto
+			}
+			LOGGER.warning(
+				"Valor invalido para el numero de hilos de calculo de huellas (" + value + "), se usara " + defaultValue //$NON-NLS-1$ //$NON-NLS-2$
+			);
+		}
+		return defaultValue;
+	}
+
+	/** Receptor de las huellas de los ficheros seg&uacute;n se calculan. */
+	interface HashConsumer {
+
+		/** Recibe las huellas de un fichero.
+		 * @param name Ruta relativa del fichero.
+		 * @param hashes Huellas del fichero, en el orden de los algoritmos.
+		 * @throws IOException Si no se pueden tratar las huellas. */
+		void accept(String name, byte[][] hashes) throws IOException;
+	}
+
+}
@@ -267,6 +267,18 @@ public final class HashHelper {
 	 * interfaz gr&aacute;fico.
 	 * @param fileName Nombre del fichero o del directorio. */
 	public static void createHashUI(final String fileName) {
+		createHashUI(fileName, null);
+	}
+
+	/** Crea las huellas digitales del fichero o directorio proporcionados mediante un
+	 * interfaz gr&aacute;fico, calculando las huellas de cada fichero con todos los algoritmos
+	 * indicados en una &uacute;nica lectura.
+	 * @param fileName Nombre del fichero o del directorio.
+	 * @param hashAlgorithms Algoritmos de huella o <code>null</code> para usar el algoritmo por defecto. */
+	public static void createHashUI(final String fileName, final String[] hashAlgorithms) {
+		final String[] algorithms = hashAlgorithms != null && hashAlgorithms.length > 0 ?
+			hashAlgorithms :
+				new String[] { DEFAULT_HASH_ALGORITHM };
 		if (fileName == null) {
 			AOUIFactory.showErrorMessage(
 				null,
@@ -299,7 +311,7 @@ public final class HashHelper {
 			CreateHashFiles.doHashProcess(
 				null,
 				file.getAbsolutePath(),
-				DEFAULT_HASH_ALGORITHM,
+				algorithms,
 				DEFAULT_RECURSIVE
 			);
 		}
@@ -308,7 +320,7 @@ public final class HashHelper {
 			CreateHashDialog.doHashProcess(
 				null,
 				file.getAbsolutePath(),
-				DEFAULT_HASH_ALGORITHM,
+				algorithms,
 				DEFAULT_USE_BASE64,
 				DEFAULT_COPY_TO_CLIPBOARD,
 				null
@@ -0,0 +1,248 @@
+package es.gob.afirma.standalone.ui.hash;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/** &Iacute;ndice de las huellas calculadas en la &uacute;ltima comprobaci&oacute;n de un
+ * directorio, para la comprobaci&oacute;n incremental de informes de huellas.
+ * Para cada fichero guarda su tama&ntilde;o, su fecha de modificaci&oacute;n, su identificador en
+ * el sistema de ficheros (el <i>inodo</i>, si el sistema lo proporciona) y sus huellas, de forma que
+ * no es necesario volver a leer los ficheros cuyos metadatos no han cambiado.
+ * <p>El &iacute;ndice se guarda en formato binario junto al informe de huellas, con su mismo nombre
+ * y la extensi&oacute;n <code>.idx</code>. La comprobaci&oacute;n incremental se activa con la
+ * propiedad del sistema <code>es.gob.afirma.hash.incremental</code> y, para detectar cambios que
+ * no alteren los metadatos, se fuerza una comprobaci&oacute;n completa cuando han pasado los
+ * d&iacute;as indicados en <code>es.gob.afirma.hash.incremental.fullcheckdays</code> (7 por
+ * defecto) desde la &uacute;ltima.</p> */
+final class HashIndex {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	/** Extensi&oacute;n del fichero de &iacute;ndice. */
+	private static final String INDEX_EXTENSION = ".idx"; //$NON-NLS-1$
+
+	/** Identificador del formato del fichero de &iacute;ndice ("AFHI"). */
+	private static final int MAGIC = 0x41464849;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final boolean INCREMENTAL = Boolean.getBoolean("es.gob.afirma.hash.incremental"); //$NON-NLS-1$
+
+	private static final long FULL_CHECK_INTERVAL = TimeUnit.DAYS.toMillis(getFullCheckDays());
+
+	private final String directory;
+	private final String[] algorithms;
+	private final long lastFullCheck;
+	private final Map<String, Entry> entries;
+
+	private HashIndex(final String directory,
+			          final String[] algorithms,
+			          final long lastFullCheck,
+			          final Map<String, Entry> entries) {
+		this.directory = directory;
+		this.algorithms = algorithms;
+		this.lastFullCheck = lastFullCheck;
+		this.entries = entries;
+	}
+
+	/** Indica si est&aacute; activada la comprobaci&oacute;n incremental.
+	 * @return <code>true</code> si se deben usar los &iacute;ndices de huellas. */
+	static boolean isIncrementalEnabled() {
+		return INCREMENTAL;
+	}
+
+	/** Obtiene el fichero de &iacute;ndice asociado a un informe de huellas.
+	 * @param manifest Ruta del informe de huellas.
+	 * @return Fichero de &iacute;ndice. */
+	static File getIndexFile(final String manifest) {
+		return new File(manifest + INDEX_EXTENSION);
+	}
+
+	/** Crea un &iacute;ndice vac&iacute;o para la comprobaci&oacute;n de un directorio.
+	 * @param directory Directorio comprobado.
+	 * @param algorithms Algoritmos de las huellas.
+	 * @param lastFullCheck Momento de la &uacute;ltima comprobaci&oacute;n completa.
+	 * @return &Iacute;ndice vac&iacute;o. */
+	static HashIndex create(final String directory, final String[] algorithms, final long lastFullCheck) {
+		return new HashIndex(directory, algorithms.clone(), lastFullCheck, new HashMap<String, Entry>());
+	}
+
+	/** Carga el &iacute;ndice de un informe de huellas si se puede usar para comprobar el
+	 * directorio indicado con los algoritmos indicados.
+	 * @param indexFile Fichero de &iacute;ndice.
+	 * @param directory Directorio que se va a comprobar.
+	 * @param algorithms Algoritmos de las huellas del informe.
+	 * @return &Iacute;ndice o <code>null</code> si no existe, no corresponde al directorio o a los
+	 *         algoritmos, no se puede leer o se debe hacer una comprobaci&oacute;n completa. */
+	static HashIndex load(final File indexFile, final String directory, final String[] algorithms) {
+		if (!indexFile.isFile()) {
+			return null;
+		}
+		try (
+			final DataInputStream dis = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(indexFile))
+			)
+		) {
+			if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION) {
+				LOGGER.warning("El indice de huellas no tiene un formato reconocido, se ignorara"); //$NON-NLS-1$
+				return null;
+			}
+			final String dir = dis.readUTF();
+			final String[] algs = new String[dis.readInt()];
+			for (int i = 0; i < algs.length; i++) {
+				algs[i] = dis.readUTF();
+			}
+			final long lastFull = dis.readLong();
+			if (!dir.equals(directory) || !Arrays.equals(algs, algorithms)) {
+				LOGGER.info("El indice de huellas corresponde a otro directorio o a otros algoritmos, se ignorara"); //$NON-NLS-1$
+				return null;
+			}
+			final long age = System.currentTimeMillis() - lastFull;
+			if (age < 0 || age > FULL_CHECK_INTERVAL) {
+				LOGGER.info("Se realizara una comprobacion completa de las huellas"); //$NON-NLS-1$
+				return null;
+			}
+			final int count = dis.readInt();
+			final Map<String, Entry> entries = new HashMap<>(count * 4 / 3 + 1);
+			for (int i = 0; i < count; i++) {
+				final String name = dis.readUTF();
+				final long size = dis.readLong();
+				final long modified = dis.readLong();
+				final String fileKey = dis.readUTF();
+				final byte[][] hashes = new byte[algs.length][];
+				for (int j = 0; j < hashes.length; j++) {
+					hashes[j] = new byte[dis.readUnsignedByte()];
+					dis.readFully(hashes[j]);
+				}
+				entries.put(name, new Entry(size, modified, fileKey, hashes));
+			}
+			return new HashIndex(dir, algs, lastFull, entries);
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No se ha podido leer el indice de huellas, se ignorara: " + e); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	/** Obtiene el momento de la &uacute;ltima comprobaci&oacute;n completa.
+	 * @return Milisegundos desde la fecha de referencia del sistema. */
+	long getLastFullCheck() {
+		return this.lastFullCheck;
+	}
+
+	/** Obtiene las huellas de un fichero si sus metadatos no han cambiado.
+	 * @param name Ruta relativa del fichero.
+	 * @param attrs Atributos actuales del fichero.
+	 * @return Huellas del fichero o <code>null</code> si no est&aacute; en el &iacute;ndice o ha cambiado. */
+	byte[][] get(final String name, final BasicFileAttributes attrs) {
+		final Entry entry = this.entries.get(name);
+		if (entry == null ||
+			entry.size != attrs.size() ||
+			entry.modified != attrs.lastModifiedTime().toMillis() ||
+			!entry.fileKey.equals(getFileKey(attrs))) {
+				return null;
+		}
+		return entry.hashes;
+	}
+
+	/** A&ntilde;ade o sustituye las huellas de un fichero.
+	 * @param name Ruta relativa del fichero.
+	 * @param attrs Atributos del fichero en el momento de calcular sus huellas.
+	 * @param hashes Huellas del fichero, en el orden de los algoritmos del &iacute;ndice. */
+	void put(final String name, final BasicFileAttributes attrs, final byte[][] hashes) {
+		this.entries.put(
+			name,
+			new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), getFileKey(attrs), hashes)
+		);
+	}
+
+	/** Guarda el &iacute;ndice. Se escribe primero en un fichero temporal que despu&eacute;s
+	 * sustituye al anterior, para no dejar nunca un &iacute;ndice a medio escribir.
+	 * @param indexFile Fichero de &iacute;ndice.
+	 * @throws IOException Si no se puede escribir el &iacute;ndice. */
+	void save(final File indexFile) throws IOException {
+		final File tmp = new File(indexFile.getPath() + ".tmp"); //$NON-NLS-1$
+		try (
+			final DataOutputStream dos = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp))
+			)
+		) {
+			dos.writeInt(MAGIC);
+			dos.writeInt(FORMAT_VERSION);
+			dos.writeUTF(this.directory);
+			dos.writeInt(this.algorithms.length);
+			for (final String alg : this.algorithms) {
+				dos.writeUTF(alg);
+			}
+			dos.writeLong(this.lastFullCheck);
+			dos.writeInt(this.entries.size());
+			for (final Map.Entry<String, Entry> e : this.entries.entrySet()) {
+				final Entry entry = e.getValue();
+				dos.writeUTF(e.getKey());
+				dos.writeLong(entry.size);
+				dos.writeLong(entry.modified);
+				dos.writeUTF(entry.fileKey);
+				for (final byte[] hash : entry.hashes) {
+					dos.writeByte(hash.length);
+					dos.write(hash);
+				}
+			}
+		}
+		Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static String getFileKey(final BasicFileAttributes attrs) {
+		final Object key = attrs.fileKey();
+		return key != null ? key.toString() : ""; //$NON-NLS-1$
+	}
+
+	private static long getFullCheckDays() {
+		final String value = System.getProperty("es.gob.afirma.hash.incremental.fullcheckdays"); //$NON-NLS-1$
+		if (value != null) {
+			try {
+				final long ret = Long.parseLong(value.trim());
+				if (ret >= 0) {
+					return ret;
+				}
+			}
+			catch (final Exception e) {
+				// Se usa el valor por defecto
+			}
+			LOGGER.warning(
+				"Valor invalido para los dias entre comprobaciones completas de huellas (" + value + "), se usara 7" //$NON-NLS-1$ //$NON-NLS-2$
+			);
+		}
+		return 7;
+	}
+
+	/** Metadatos y huellas de un fichero. */
+	private static final class Entry {
+
+		final long size;
+		final long modified;
+		final String fileKey;
+		final byte[][] hashes;
+
+		Entry(final long size, final long modified, final String fileKey, final byte[][] hashes) {
+			this.size = size;
+			this.modified = modified;
+			this.fileKey = fileKey;
+			this.hashes = hashes;
+		}
+	}
+
+}
@@ -0,0 +1,310 @@
+package es.gob.afirma.standalone.ui.hash;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.xml.sax.SAXException;
+
+import es.gob.afirma.core.misc.Base64;
+import es.gob.afirma.core.misc.Platform;
+
+/** Escritura y lectura en flujo (StAX) de los informes XML de huellas digitales de directorios.
+ * Las entradas se escriben seg&uacute;n se calculan y se procesan seg&uacute;n se leen, sin
+ * construir nunca el documento completo en memoria, de forma que la memoria necesaria no depende
+ * del n&uacute;mero de entradas del informe. */
+final class HashReportXml {
+
+	private static final String XSD_PATH = "/schemas/folderhashes.xsd"; //$NON-NLS-1$
+
+	private static final String ELEMENT_ENTRIES = "entries"; //$NON-NLS-1$
+	private static final String ELEMENT_ENTRY = "entry"; //$NON-NLS-1$
+	private static final String ATTR_HASH_ALGORITHM = "hashAlgorithm"; //$NON-NLS-1$
+	private static final String ATTR_ADDITIONAL_HASH_ALGORITHMS = "additionalHashAlgorithms"; //$NON-NLS-1$
+	private static final String ATTR_RECURSIVE = "recursive"; //$NON-NLS-1$
+	private static final String ATTR_NAME = "name"; //$NON-NLS-1$
+	private static final String ATTR_HASH = "hash"; //$NON-NLS-1$
+	private static final String ATTR_ADDITIONAL_HASHES = "additionalHashes"; //$NON-NLS-1$
+
+	private static final String NEW_LINE = "\n"; //$NON-NLS-1$
+
+	private static Schema manifestSchema = null;
+
+	private HashReportXml() {
+		// No instanciable
+	}
+
+	/** Obtiene la codificaci&oacute;n con la que se escriben los informes.
+	 * @return ISO-8859-1 en Windows y UTF-8 en el resto de sistemas. */
+	static String getEncoding() {
+		return Platform.OS.WINDOWS.equals(Platform.getOS()) ? "ISO-8859-1" : "UTF-8"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/** Receptor de los datos de un informe de huellas seg&uacute;n se leen. */
+	interface ManifestHandler {
+
+		/** Recibe la configuraci&oacute;n del informe, antes que ninguna de sus entradas.
+		 * @param algorithms Algoritmos de las huellas. El primero es el algoritmo principal.
+		 * @param recursive Si el informe se gener&oacute; recorriendo el directorio de forma recursiva. */
+		void header(String[] algorithms, boolean recursive);
+
+		/** Recibe una entrada del informe.
+		 * @param name Ruta relativa del fichero.
+		 * @param hashes Huellas del fichero en el orden de los algoritmos (puede haber menos
+		 *               huellas que algoritmos). */
+		void entry(String name, byte[][] hashes);
+	}
+
+	/** Escritor en flujo de un informe de huellas. Sus entradas se pueden escribir desde varios
+	 * hilos. */
+	static final class ManifestWriter implements Closeable {
+
+		private final XMLStreamWriter writer;
+
+		/** Comienza la escritura de un informe de huellas.
+		 * @param os Flujo en el que escribir el informe. No se cierra al terminar.
+		 * @param algorithms Algoritmos de las huellas. El primero es el algoritmo principal.
+		 * @param recursive Si se ha recorrido el directorio de forma recursiva.
+		 * @throws IOException Si no se puede escribir el comienzo del informe. */
+		ManifestWriter(final OutputStream os, final String[] algorithms, final boolean recursive) throws IOException {
+			try {
+				this.writer = XMLOutputFactory.newInstance().createXMLStreamWriter(os, getEncoding());
+				this.writer.writeStartDocument(getEncoding(), "1.0"); //$NON-NLS-1$
+				this.writer.writeCharacters(NEW_LINE);
+				this.writer.writeStartElement(ELEMENT_ENTRIES);
+				this.writer.writeAttribute(ATTR_HASH_ALGORITHM, algorithms[0]);
+				if (algorithms.length > 1) {
+					this.writer.writeAttribute(ATTR_ADDITIONAL_HASH_ALGORITHMS, joinAdditional(algorithms));
+				}
+				this.writer.writeAttribute(ATTR_RECURSIVE, String.valueOf(recursive));
+			}
+			catch (final XMLStreamException e) {
+				throw new IOException("No se ha podido escribir el informe de huellas: " + e, e); //$NON-NLS-1$
+			}
+		}
+
+		/** Escribe una entrada del informe.
+		 * @param name Ruta relativa del fichero.
+		 * @param hashes Huellas del fichero, en el orden de los algoritmos.
+		 * @throws IOException Si no se puede escribir la entrada. */
+		synchronized void writeEntry(final String name, final byte[][] hashes) throws IOException {
+			try {
+				this.writer.writeCharacters(NEW_LINE);
+				this.writer.writeEmptyElement(ELEMENT_ENTRY);
+				this.writer.writeAttribute(ATTR_NAME, name);
+				this.writer.writeAttribute(ATTR_HASH, Base64.encode(hashes[0], true));
+				if (hashes.length > 1) {
+					final String[] additionalHashes = new String[hashes.length];
+					for (int i = 1; i < hashes.length; i++) {
+						additionalHashes[i] = Base64.encode(hashes[i], true);
+					}
+					this.writer.writeAttribute(ATTR_ADDITIONAL_HASHES, joinAdditional(additionalHashes));
+				}
+			}
+			catch (final XMLStreamException e) {
+				throw new IOException("No se ha podido escribir la entrada '" + name + "' del informe de huellas: " + e, e); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+
+		/** Termina el informe y vuelca lo pendiente al flujo de salida. */
+		@Override
+		public synchronized void close() throws IOException {
+			try {
+				this.writer.writeCharacters(NEW_LINE);
+				this.writer.writeEndElement();
+				this.writer.writeEndDocument();
+				this.writer.flush();
+				this.writer.close();
+			}
+			catch (final XMLStreamException e) {
+				throw new IOException("No se ha podido terminar el informe de huellas: " + e, e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/** Lee un informe de huellas valid&aacute;ndolo contra su esquema XSD en la misma lectura.
+	 * Cada entrada se entrega al receptor seg&uacute;n se lee, por lo que si el informe no es
+	 * v&aacute;lido es posible que el receptor haya recibido ya parte de sus entradas antes de que
+	 * se lance la excepci&oacute;n.
+	 * @param is Flujo con el informe.
+	 * @param handler Receptor de los datos del informe.
+	 * @throws SAXException Si el informe no es v&aacute;lido.
+	 * @throws IOException Si hay errores en la lectura. */
+	static void readManifest(final InputStream is, final ManifestHandler handler) throws SAXException, IOException {
+
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+
+		final XMLStreamReader reader;
+		try {
+			reader = factory.createXMLStreamReader(is);
+		}
+		catch (final XMLStreamException e) {
+			throw new IOException("No se ha podido leer el informe de huellas: " + e, e); //$NON-NLS-1$
+		}
+
+		// El validador recorre el informe y, segun avanza, se extraen los datos de cada elemento
+		final XMLStreamReader dataReader = new StreamReaderDelegate(reader) {
+
+			private String[] algorithms = null;
+
+			@Override
+			public int next() throws XMLStreamException {
+				final int event = super.next();
+				if (event == START_ELEMENT) {
+					if (ELEMENT_ENTRIES.equals(getLocalName())) {
+						this.algorithms = concat(
+							getAttributeValue(null, ATTR_HASH_ALGORITHM),
+							getAttributeValue(null, ATTR_ADDITIONAL_HASH_ALGORITHMS)
+						);
+						handler.header(this.algorithms, Boolean.parseBoolean(getAttributeValue(null, ATTR_RECURSIVE)));
+					}
+					else if (ELEMENT_ENTRY.equals(getLocalName()) && this.algorithms != null) {
+						final String name = getAttributeValue(null, ATTR_NAME);
+						final String hash = getAttributeValue(null, ATTR_HASH);
+						if (name == null || hash == null) {
+							// El validador rechazara la entrada
+							return event;
+						}
+						final String[] encodedHashes = concat(hash, getAttributeValue(null, ATTR_ADDITIONAL_HASHES));
+						final byte[][] hashes = new byte[Math.min(encodedHashes.length, this.algorithms.length)][];
+						try {
+							for (int i = 0; i < hashes.length; i++) {
+								hashes[i] = Base64.decode(encodedHashes[i], true);
+							}
+						}
+						catch (final IOException e) {
+							throw new XMLStreamException(
+								"La huella del fichero '" + name + "' no es Base64 valido: " + e, getLocation(), e //$NON-NLS-1$ //$NON-NLS-2$
+							);
+						}
+						handler.entry(name, hashes);
+					}
+				}
+				return event;
+			}
+		};
+
+		try {
+			getManifestSchema().newValidator().validate(new StAXSource(dataReader));
+		}
+		finally {
+			try {
+				reader.close();
+			}
+			catch (final XMLStreamException e) {
+				// Ignoramos errores en el cierre
+			}
+		}
+	}
+
+	/** Escribe el informe de la comprobaci&oacute;n de las huellas de un directorio.
+	 * @param mapReport Ficheros de cada resultado de la comprobaci&oacute;n, por el c&oacute;digo
+	 *                  de mensaje del resultado.
+	 * @param alg Algoritmo de las huellas comprobadas.
+	 * @param isRec Si se ha recorrido el directorio de forma recursiva.
+	 * @param w Destino del informe. No se cierra al terminar.
+	 * @throws XMLStreamException Si no se puede escribir el informe. */
+	static void writeCheckReport(final Map<String, List<String>> mapReport,
+			                     final String alg,
+			                     final boolean isRec,
+			                     final Writer w) throws XMLStreamException {
+
+		final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(w);
+		writer.writeStartDocument(getEncoding(), "1.0"); //$NON-NLS-1$
+		writer.writeCharacters(NEW_LINE);
+		writer.writeStartElement(ELEMENT_ENTRIES);
+		writer.writeAttribute(ATTR_HASH_ALGORITHM, alg);
+		writer.writeAttribute(ATTR_RECURSIVE, String.valueOf(isRec));
+		for (final Map.Entry<String, List<String>> result : mapReport.entrySet()) {
+			final String code = result.getKey();
+			final String header;
+			if (code.equals("CheckHashDialog.5")) {//$NON-NLS-1$
+				header = "not_matching_hash"; //$NON-NLS-1$
+			}
+			else if (code.equals("CheckHashFiles.1")) {//$NON-NLS-1$
+				header = "hash_without_file"; //$NON-NLS-1$
+			}
+			else if (code.equals("CheckHashFiles.10")) {//$NON-NLS-1$
+				header = "file_without_hash"; //$NON-NLS-1$
+			}
+			else {
+				header = "matching_hash"; //$NON-NLS-1$
+			}
+			writer.writeCharacters(NEW_LINE);
+			writer.writeStartElement(header);
+			for (final String path : result.getValue()) {
+				writer.writeCharacters(NEW_LINE);
+				writer.writeEmptyElement(ELEMENT_ENTRY);
+				writer.writeAttribute(ATTR_NAME, path);
+			}
+			writer.writeCharacters(NEW_LINE);
+			writer.writeEndElement();
+		}
+		writer.writeCharacters(NEW_LINE);
+		writer.writeEndElement();
+		writer.writeEndDocument();
+		writer.flush();
+		writer.close();
+	}
+
+	private static synchronized Schema getManifestSchema() throws SAXException, IOException {
+		if (manifestSchema == null) {
+			try (final InputStream xsd = HashReportXml.class.getResourceAsStream(XSD_PATH)) {
+				manifestSchema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(
+					new StreamSource(xsd)
+				);
+			}
+		}
+		return manifestSchema;
+	}
+
+	/** Une con espacios todos los valores de un listado salvo el primero.
+	 * @param values Valores.
+	 * @return Valores a partir del segundo separados por espacios. */
+	private static String joinAdditional(final String[] values) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 1; i < values.length; i++) {
+			if (i > 1) {
+				sb.append(' ');
+			}
+			sb.append(values[i]);
+		}
+		return sb.toString();
+	}
+
+	/** Construye un listado con un valor inicial y los valores separados por espacios de un
+	 * atributo opcional.
+	 * @param first Valor inicial.
+	 * @param additional Valor del atributo con los valores adicionales o <code>null</code> si no existe.
+	 * @return Listado de valores. */
+	private static String[] concat(final String first, final String additional) {
+		final String additionalValue = additional != null ? additional.trim() : ""; //$NON-NLS-1$
+		if (additionalValue.isEmpty()) {
+			return new String[] { first };
+		}
+		final String[] others = additionalValue.split("\\s+"); //$NON-NLS-1$
+		final String[] ret = new String[others.length + 1];
+		ret[0] = first;
+		System.arraycopy(others, 0, ret, 1, others.length);
+		return ret;
+	}
+
+}
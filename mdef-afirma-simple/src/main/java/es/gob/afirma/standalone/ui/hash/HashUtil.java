@@ -5,12 +5,14 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.logging.Logger;
 
 /** Utilidades para el c&aacute;culo y comprobaci&oacute;n de huellas digitales.
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s. */
@@ -18,6 +20,19 @@ final class HashUtil {
 
 	private static final int BUFFER_SIZE = 4096;
 
+	/** Tama&ntilde;o del b&uacute;fer directo con el que se leen los ficheros peque&ntilde;os. */
+	private static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+
+	/** Tama&ntilde;o a partir del cual los ficheros se leen proyect&aacute;ndolos en memoria. */
+	private static final long MAPPED_FILE_THRESHOLD = 16L * 1024 * 1024;
+
+	/** Tama&ntilde;o de cada ventana de fichero proyectada en memoria. */
+	private static final int MAPPED_WINDOW_SIZE = 8 * 1024 * 1024;
+
+	/** B&uacute;fer directo de cada hilo, para no reservarlo en cada fichero. */
+	private static final ThreadLocal<ByteBuffer> DIRECT_BUFFERS =
+		ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE));
+
 	private HashUtil() {
 		// No instanciable
 	}
@@ -52,17 +67,125 @@ final class HashUtil {
 	 * @throws FileNotFoundException Si el fichero indicado no existe.
 	 * @throws NoSuchAlgorithmException Si no se encuentra el algoritmo de huella. */
 	static byte[] getFileHash(final String algorithm, final File file) throws NoSuchAlgorithmException, IOException {
-		final MessageDigest md = MessageDigest.getInstance(algorithm);
-		final byte[] buffer = new byte[BUFFER_SIZE];
+		return getFileHashes(new String[] { algorithm }, file)[0];
+	}
+
+	/** Genera las huellas digitales de un fichero con varios algoritmos, leyendo el fichero una
+	 * &uacute;nica vez.
+	 * @param algorithms Algoritmos de huella.
+	 * @param filePath Ruta completa del fichero.
+	 * @return Valor de las huellas, en el mismo orden que los algoritmos.
+	 * @throws IOException Si hay errores en el tratamiento del fichero.
+	 * @throws FileNotFoundException Si el fichero indicado no existe.
+	 * @throws NoSuchAlgorithmException Si no se encuentra alguno de los algoritmos de huella. */
+	static byte[][] getFileHashes(final String[] algorithms, final Path filePath) throws NoSuchAlgorithmException, IOException {
+		return getFileHashes(algorithms, filePath.toFile());
+	}
+
+	/** Genera las huellas digitales de un fichero con varios algoritmos, leyendo el fichero una
+	 * &uacute;nica vez.
+	 * @param algorithms Algoritmos de huella.
+	 * @param file Fichero del cual queremos calcular las huellas.
+	 * @return Valor de las huellas, en el mismo orden que los algoritmos.
+	 * @throws IOException Si hay errores en el tratamiento del fichero.
+	 * @throws FileNotFoundException Si el fichero indicado no existe.
+	 * @throws NoSuchAlgorithmException Si no se encuentra alguno de los algoritmos de huella. */
+	static byte[][] getFileHashes(final String[] algorithms, final File file) throws NoSuchAlgorithmException, IOException {
+		if (algorithms == null || algorithms.length == 0) {
+			throw new IllegalArgumentException("Debe indicarse al menos un algoritmo de huella"); //$NON-NLS-1$
+		}
+		final MessageDigest[] mds = new MessageDigest[algorithms.length];
+		for (int i = 0; i < algorithms.length; i++) {
+			mds[i] = MessageDigest.getInstance(algorithms[i]);
+		}
 		try (
 			final RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
 			final FileChannel channel = raf.getChannel();
-			final InputStream fis = Channels.newInputStream(channel);
-			final InputStream dis = new DigestInputStream(fis, md);
 		) {
-			while (dis.read(buffer) != -1) { /* Vacio */ }
+			final long size = channel.size();
+			if (size >= MAPPED_FILE_THRESHOLD) {
+				try {
+					digestMapped(mds, channel, size);
+				}
+				catch (final IOException | OutOfMemoryError e) {
+					// Si no se puede proyectar el fichero (por falta de espacio de direcciones o
+					// porque el sistema de ficheros no lo permite), se lee de la forma tradicional
+					Logger.getLogger("es.gob.afirma").warning( //$NON-NLS-1$
+						"No se ha podido proyectar en memoria el fichero, se leera por bloques: " + e //$NON-NLS-1$
+					);
+					for (final MessageDigest md : mds) {
+						md.reset();
+					}
+					channel.position(0);
+					digestStream(mds, channel);
+				}
+			}
+			else {
+				digestBuffered(mds, channel);
+			}
+		}
+		final byte[][] hashes = new byte[mds.length][];
+		for (int i = 0; i < mds.length; i++) {
+			hashes[i] = mds[i].digest();
+		}
+		return hashes;
+	}
+
+	/** Calcula las huellas de un fichero proyectando en memoria sucesivas ventanas del mismo.
+	 * @param mds Objetos de c&aacute;lculo de las huellas.
+	 * @param channel Canal del fichero.
+	 * @param size Tama&ntilde;o del fichero.
+	 * @throws IOException Si no se puede proyectar alguna ventana del fichero. */
+	private static void digestMapped(final MessageDigest[] mds, final FileChannel channel, final long size) throws IOException {
+		for (long pos = 0; pos < size; pos += MAPPED_WINDOW_SIZE) {
+			final MappedByteBuffer window = channel.map(
+				FileChannel.MapMode.READ_ONLY,
+				pos,
+				Math.min(MAPPED_WINDOW_SIZE, size - pos)
+			);
+			update(mds, window);
+		}
+	}
+
+	/** Calcula las huellas de un fichero ley&eacute;ndolo con el b&uacute;fer directo del hilo.
+	 * @param mds Objetos de c&aacute;lculo de las huellas.
+	 * @param channel Canal del fichero.
+	 * @throws IOException Si hay errores en la lectura. */
+	private static void digestBuffered(final MessageDigest[] mds, final FileChannel channel) throws IOException {
+		final ByteBuffer buffer = DIRECT_BUFFERS.get();
+		buffer.clear();
+		while (channel.read(buffer) != -1) {
+			buffer.flip();
+			update(mds, buffer);
+			buffer.clear();
+		}
+	}
+
+	/** Calcula las huellas de un fichero ley&eacute;ndolo como flujo de datos.
+	 * @param mds Objetos de c&aacute;lculo de las huellas.
+	 * @param channel Canal del fichero.
+	 * @throws IOException Si hay errores en la lectura. */
+	private static void digestStream(final MessageDigest[] mds, final FileChannel channel) throws IOException {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		// No cerramos el flujo para no cerrar el canal, que se cierra fuera
+		final InputStream is = Channels.newInputStream(channel);
+		int n;
+		while ((n = is.read(buffer)) != -1) {
+			for (final MessageDigest md : mds) {
+				md.update(buffer, 0, n);
+			}
+		}
+	}
+
+	/** Actualiza todas las huellas con el contenido restante de un b&uacute;fer, que queda consumido.
+	 * @param mds Objetos de c&aacute;lculo de las huellas.
+	 * @param buffer B&uacute;fer con los datos. */
+	private static void update(final MessageDigest[] mds, final ByteBuffer buffer) {
+		final int start = buffer.position();
+		for (final MessageDigest md : mds) {
+			buffer.position(start);
+			md.update(buffer);
 		}
-		return md.digest();
 	}
 
 }
@@ -14,16 +14,30 @@ import org.apache.pdfbox.rendering.PDFRenderer;
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s. */
 final class Pdf2ImagesConverter {
 
+	/** Resoluci&oacute;n con la que se renderizan las p&aacute;ginas. */
+	static final int RENDER_DPI = 150;
+
 	static List<BufferedImage> pdf2Images(final byte[] inPdf) throws IOException {
 		List<BufferedImage> pagesAsImages;
 		try (final PDDocument document = PDDocument.load(new ByteArrayInputStream(inPdf))) {
 			final PDFRenderer pdfRenderer = new PDFRenderer(document);
 			pagesAsImages = new ArrayList<>(document.getNumberOfPages());
 			for (int i = 0; i < document.getNumberOfPages(); i++) {
-				pagesAsImages.add(pdfRenderer.renderImageWithDPI(i, 150, ImageType.RGB));
+				pagesAsImages.add(pdfRenderer.renderImageWithDPI(i, RENDER_DPI, ImageType.RGB));
 			}
         }
         return pagesAsImages;
 	}
 
+	/** Renderiza una &uacute;nica p&aacute;gina de un PDF.
+	 * @param inPdf PDF.
+	 * @param pageIndex &Iacute;ndice de la p&aacute;gina (empezando en 0).
+	 * @return Imagen de la p&aacute;gina.
+	 * @throws IOException Si no se puede abrir el PDF o renderizar la p&aacute;gina. */
+	static BufferedImage pdf2Image(final byte[] inPdf, final int pageIndex) throws IOException {
+		try (final PDDocument document = PDDocument.load(new ByteArrayInputStream(inPdf))) {
+			return new PDFRenderer(document).renderImageWithDPI(pageIndex, RENDER_DPI, ImageType.RGB);
+		}
+	}
+
 }
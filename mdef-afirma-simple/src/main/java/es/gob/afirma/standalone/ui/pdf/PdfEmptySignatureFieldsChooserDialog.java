@@ -135,8 +135,7 @@ public final class PdfEmptySignatureFieldsChooserDialog extends JDialog implemen
 
 	BufferedImage getFragmentImage(final SignatureField sf) throws IOException {
 
-		final List<BufferedImage> pages = Pdf2ImagesConverter.pdf2Images(this.pdf);
-		final BufferedImage page = pages.get(sf.getPage() - 1);
+		final BufferedImage page = Pdf2ImagesConverter.pdf2Image(this.pdf, sf.getPage() - 1);
 
 		final int uxr = sf.getSignaturePositionOnPageUpperRightX();
 		final int uyr = sf.getSignaturePositionOnPageUpperRightY();
@@ -5,7 +5,6 @@ import java.awt.Frame;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.EventListener;
 import java.util.List;
 import java.util.logging.Logger;
@@ -15,14 +14,14 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 
-import com.aowagie.text.pdf.PdfReader;
-
 import es.gob.afirma.core.misc.Platform;
 import es.gob.afirma.standalone.ui.CommonWaitDialog;
 
+/** Carga de un PDF para la previsualizaci&oacute;n de sus p&aacute;ginas. Las p&aacute;ginas
+ * se proporcionan como un listado que las renderiza seg&uacute;n se solicitan (ver
+ * {@link PdfPageRenderer}), por lo que solo se espera a la primera de ellas. */
 final class PdfLoader {
 
-
 	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
 
 	private PdfLoader() {
@@ -37,11 +36,8 @@ final class PdfLoader {
 	static void loadPdf(final boolean isSign, final byte[] inPdf, final PdfLoaderListener pll) {
 		new Thread(() ->  {
 				try {
-					pll.pdfLoaded(
-						isSign,
-						Pdf2ImagesConverter.pdf2Images(inPdf),
-						getPageSizes(inPdf)
-					);
+					final PdfPageRenderer pages = openPdf(inPdf);
+					pll.pdfLoaded(isSign, pages, pages.getPageSizes());
 				}
 				catch(final OutOfMemoryError e) {
 					pll.pdfLoadedFailed(e);
@@ -89,9 +85,9 @@ final class PdfLoader {
 
 		new Thread(() -> {
 				try {
-					final List<BufferedImage> pages = Pdf2ImagesConverter.pdf2Images(inPdf);
+					final PdfPageRenderer pages = openPdf(inPdf);
 					dialog.setVisible(false);
-					pll.pdfLoaded(isSign, pages, getPageSizes(inPdf));
+					pll.pdfLoaded(isSign, pages, pages.getPageSizes());
 				}
 				catch (final IOException e) {
 					dialog.setVisible(false);
@@ -107,20 +103,23 @@ final class PdfLoader {
 		dialog.setVisible(true);
 	}
 
-	static List<Dimension> getPageSizes(final byte[] inPdf) throws IOException {
-		final PdfReader reader = new PdfReader(inPdf);
-		final int numberOfPages = reader.getNumberOfPages();
-		final List<Dimension> pageSizes = new ArrayList<>(numberOfPages);
-		for(int i=1;i<=numberOfPages;i++) {
-			final com.aowagie.text.Rectangle rect = reader.getPageSize(i);
-			pageSizes.add(
-				new Dimension(
-					Math.round(rect.getWidth()),
-					Math.round(rect.getHeight())
-				)
-			);
+	/** Abre el PDF y renderiza su primera p&aacute;gina, que es la que se muestra inicialmente.
+	 * @param inPdf PDF.
+	 * @return P&aacute;ginas del PDF.
+	 * @throws IOException Si no se puede abrir el PDF o renderizar su primera p&aacute;gina. */
+	private static PdfPageRenderer openPdf(final byte[] inPdf) throws IOException {
+		final PdfPageRenderer pages = PdfPageRenderer.open(inPdf);
+		try {
+			pages.get(0);
+		}
+		catch (final IllegalStateException e) {
+			pages.close();
+			if (e.getCause() instanceof OutOfMemoryError) {
+				throw (OutOfMemoryError) e.getCause();
+			}
+			throw new IOException("No se ha podido renderizar la primera pagina del PDF: " + e, e); //$NON-NLS-1$
 		}
-		return pageSizes;
+		return pages;
 	}
 
 }
@@ -0,0 +1,226 @@
+package es.gob.afirma.standalone.ui.pdf;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+/** Listado de las p&aacute;ginas de un PDF como im&aacute;genes que se generan seg&uacute;n se
+ * solicitan.
+ * El PDF se abre una &uacute;nica vez y cada p&aacute;gina se renderiza solo cuando se pide, en un
+ * hilo de fondo propio (el documento no admite accesos concurrentes), aprovechando para preparar
+ * tambi&eacute;n las p&aacute;ginas contiguas. Las p&aacute;ginas renderizadas se guardan en una
+ * cach&eacute; LRU de tama&ntilde;o limitado, por lo que la memoria necesaria no depende del
+ * n&uacute;mero de p&aacute;ginas del documento. */
+final class PdfPageRenderer extends AbstractList<BufferedImage> implements Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
+	/** Tama&ntilde;o m&aacute;ximo aproximado de las p&aacute;ginas guardadas en cach&eacute;. */
+	private static final long MAX_CACHE_BYTES = 64L * 1024 * 1024;
+
+	/** Segundos tras los que se libera el hilo de renderizado si no se usa. */
+	private static final int THREAD_KEEP_ALIVE = 30;
+
+	private final PDDocument document;
+	private final PDFRenderer renderer;
+	private final List<Dimension> pageSizes;
+
+	private final ThreadPoolExecutor executor;
+	private final Map<Integer, Future<BufferedImage>> pending = new ConcurrentHashMap<>();
+
+	/** P&aacute;ginas renderizadas en orden de uso, de la menos a la m&aacute;s reciente. */
+	private final LinkedHashMap<Integer, BufferedImage> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private long cacheBytes = 0;
+
+	private PdfPageRenderer(final PDDocument document) {
+		this.document = document;
+		this.renderer = new PDFRenderer(document);
+		final List<Dimension> sizes = new ArrayList<>(document.getNumberOfPages());
+		for (int i = 0; i < document.getNumberOfPages(); i++) {
+			final PDRectangle rect = document.getPage(i).getMediaBox();
+			sizes.add(
+				new Dimension(
+					Math.round(rect.getWidth()),
+					Math.round(rect.getHeight())
+				)
+			);
+		}
+		this.pageSizes = Collections.unmodifiableList(sizes);
+		this.executor = new ThreadPoolExecutor(
+			1,
+			1,
+			THREAD_KEEP_ALIVE,
+			TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			r -> {
+				final Thread t = new Thread(r, "PdfPageRenderer"); //$NON-NLS-1$
+				t.setDaemon(true);
+				return t;
+			}
+		);
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/** Abre un PDF para renderizar sus p&aacute;ginas.
+	 * @param pdf PDF.
+	 * @return Listado de p&aacute;ginas del PDF.
+	 * @throws IOException Si el PDF no se puede abrir o no tiene p&aacute;ginas. */
+	static PdfPageRenderer open(final byte[] pdf) throws IOException {
+		final PDDocument document = PDDocument.load(new ByteArrayInputStream(pdf));
+		if (document.getNumberOfPages() < 1) {
+			document.close();
+			throw new IOException("El PDF no tiene paginas"); //$NON-NLS-1$
+		}
+		return new PdfPageRenderer(document);
+	}
+
+	/** Obtiene las dimensiones de las p&aacute;ginas del PDF, sin renderizarlas.
+	 * @return Dimensiones de cada p&aacute;gina en puntos. */
+	List<Dimension> getPageSizes() {
+		return this.pageSizes;
+	}
+
+	@Override
+	public int size() {
+		return this.pageSizes.size();
+	}
+
+	/** Obtiene la imagen de una p&aacute;gina, renderiz&aacute;ndola si no est&aacute; en
+	 * cach&eacute;, y solicita en segundo plano las p&aacute;ginas contiguas.
+	 * @param index &Iacute;ndice de la p&aacute;gina (empezando en 0).
+	 * @return Imagen de la p&aacute;gina.
+	 * @throws IllegalStateException Si no se puede renderizar la p&aacute;gina. */
+	@Override
+	public BufferedImage get(final int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Pagina inexistente: " + index); //$NON-NLS-1$
+		}
+		BufferedImage page = getCached(index);
+		if (page == null) {
+			try {
+				page = request(index).get();
+			}
+			catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Se interrumpio el renderizado de la pagina " + (index + 1), e); //$NON-NLS-1$
+			}
+			catch (final ExecutionException e) {
+				throw new IllegalStateException(
+					"No se ha podido renderizar la pagina " + (index + 1) + ": " + e.getCause(), e.getCause() //$NON-NLS-1$ //$NON-NLS-2$
+				);
+			}
+		}
+		prefetch(index + 1);
+		prefetch(index - 1);
+		return page;
+	}
+
+	/** Solicita en segundo plano el renderizado de una p&aacute;gina si no est&aacute; ya en
+	 * cach&eacute;.
+	 * @param index &Iacute;ndice de la p&aacute;gina (empezando en 0). Si no existe la p&aacute;gina
+	 *              no se hace nada. */
+	void prefetch(final int index) {
+		if (index >= 0 && index < size() && getCached(index) == null && !this.executor.isShutdown()) {
+			request(index);
+		}
+	}
+
+	private Future<BufferedImage> request(final int index) {
+		return this.pending.computeIfAbsent(
+			Integer.valueOf(index),
+			key -> this.executor.submit(() -> {
+				try {
+					// Puede haberse renderizado mientras esperaba en la cola
+					BufferedImage page = getCached(index);
+					if (page == null) {
+						page = this.renderer.renderImageWithDPI(index, Pdf2ImagesConverter.RENDER_DPI, ImageType.RGB);
+						putCached(index, page);
+					}
+					return page;
+				}
+				finally {
+					this.pending.remove(key);
+				}
+			})
+		);
+	}
+
+	private synchronized BufferedImage getCached(final int index) {
+		return this.cache.get(Integer.valueOf(index));
+	}
+
+	private synchronized void putCached(final int index, final BufferedImage page) {
+		final BufferedImage old = this.cache.put(Integer.valueOf(index), page);
+		if (old != null) {
+			this.cacheBytes -= getBytes(old);
+		}
+		this.cacheBytes += getBytes(page);
+		// Descartamos las paginas menos usadas, conservando siempre la recien renderizada
+		final Iterator<BufferedImage> it = this.cache.values().iterator();
+		while (this.cacheBytes > MAX_CACHE_BYTES && this.cache.size() > 1) {
+			this.cacheBytes -= getBytes(it.next());
+			it.remove();
+		}
+	}
+
+	// El listado se compara por identidad para no renderizar todas sus paginas
+
+	@Override
+	public boolean equals(final Object o) {
+		return this == o;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
+	@Override
+	public String toString() {
+		return "PdfPageRenderer [" + size() + " paginas]"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static long getBytes(final BufferedImage image) {
+		// Las imagenes RGB usan un entero por pixel
+		return 4L * image.getWidth() * image.getHeight();
+	}
+
+	/** Detiene el renderizado en segundo plano y cierra el PDF. */
+	@Override
+	public void close() {
+		this.executor.shutdownNow();
+		synchronized (this) {
+			this.cache.clear();
+			this.cacheBytes = 0;
+		}
+		try {
+			this.executor.awaitTermination(THREAD_KEEP_ALIVE, TimeUnit.SECONDS);
+			this.document.close();
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No se ha podido cerrar el PDF de la previsualizacion: " + e); //$NON-NLS-1$
+		}
+	}
+
+}
@@ -5,6 +5,8 @@ import java.awt.Frame;
 import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.List;
 import java.util.Properties;
 import java.util.logging.Logger;
@@ -35,6 +37,7 @@ public final class SignPdfDialog extends JDialog implements PdfLoaderListener, S
 	private final SignPdfDialogListener listener;
 
 	private SignPdfUiPanel areaPanel;
+	private List<BufferedImage> pdfPages = null;
 	SignPdfDialogListener getListener() {
 		return this.listener;
 	}
@@ -105,6 +108,7 @@ public final class SignPdfDialog extends JDialog implements PdfLoaderListener, S
 
 	@Override
 	public void pdfLoaded(final boolean isSign, final List<BufferedImage> pages, final List<Dimension> pageSizes) {
+		this.pdfPages = pages;
 		this.areaPanel = new SignPdfUiPanel(
 				isSign,
 				pages,
@@ -162,6 +166,21 @@ public final class SignPdfDialog extends JDialog implements PdfLoaderListener, S
 		dispose();
 	}
 
+	@Override
+	public void dispose() {
+		// Las paginas renderizadas bajo demanda mantienen abierto el PDF
+		if (this.pdfPages instanceof Closeable) {
+			try {
+				((Closeable) this.pdfPages).close();
+			}
+			catch (final IOException e) {
+				LOGGER.warning("No se ha podido liberar la previsualizacion del PDF: " + e); //$NON-NLS-1$
+			}
+		}
+		this.pdfPages = null;
+		super.dispose();
+	}
+
 	/** Define los requerimientos de las clases a las que se informa de que ya se cuenta
 	 * con las propiedades de la firma visible PDF. */
 	public static interface SignPdfDialogListener {
@@ -18,6 +18,7 @@ import java.awt.event.KeyListener;
 import java.awt.image.BufferedImage;
 import java.util.List;
 import java.util.Properties;
+import java.util.logging.Logger;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -26,6 +27,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
+import javax.swing.SwingWorker;
 import javax.swing.border.TitledBorder;
 
 import es.gob.afirma.core.misc.Platform;
@@ -36,6 +38,8 @@ final class SignPdfUiPanel extends JPanel implements PageLabel.PageLabelListener
 
 	private static final long serialVersionUID = 8109653789776305491L;
 
+	private static final Logger LOGGER = Logger.getLogger("es.gob.afirma"); //$NON-NLS-1$
+
 	private static final int PREFERRED_WIDTH = 466;
 	private static final int PREFERRED_HEIGHT = 410;
 
@@ -336,7 +340,7 @@ final class SignPdfUiPanel extends JPanel implements PageLabel.PageLabelListener
 						p.put("signaturePage", Integer.toString(getCurrentPage())); //$NON-NLS-1$
 					}
 					p.putAll(getExtraParamsForLocation());
-					getParentDialog().nextPanel(p, getFragmentImage(p));
+					acceptPosition(p);
 				}
 			}
 		);
@@ -371,17 +375,42 @@ final class SignPdfUiPanel extends JPanel implements PageLabel.PageLabelListener
 		return panel;
 	}
 
-	BufferedImage getFragmentImage(final Properties p) {
-		final int pageNumber;
-		final BufferedImage page;
-		if (p.getProperty("signaturePage").equals("append")) { //$NON-NLS-1$ //$NON-NLS-2$
-			pageNumber = 0;
-			page = this.appendPage;
-		}
-		else {
-			pageNumber = Integer.parseInt(p.getProperty("signaturePage")) - 1; //$NON-NLS-1$
-			page = this.pdfPages.get(Integer.parseInt(p.getProperty("signaturePage")) - 1); //$NON-NLS-1$
-		}
+	/** Pasa al siguiente panel con la posici&oacute;n de firma seleccionada. Como las p&aacute;ginas
+	 * pueden renderizarse bajo demanda, la imagen de la p&aacute;gina se obtiene fuera del hilo de
+	 * eventos.
+	 * @param p Propiedades de la posici&oacute;n de firma. */
+	void acceptPosition(final Properties p) {
+		this.okButton.setEnabled(false);
+		final boolean append = "append".equals(p.getProperty("signaturePage")); //$NON-NLS-1$ //$NON-NLS-2$
+		final int pageNumber = append ? 0 : Integer.parseInt(p.getProperty("signaturePage")) - 1; //$NON-NLS-1$
+		new SwingWorker<BufferedImage, Void>() {
+			@Override
+			protected BufferedImage doInBackground() {
+				return append ? getAppendPage() : getPdfPages().get(pageNumber);
+			}
+			@Override
+			protected void done() {
+				try {
+					getParentDialog().nextPanel(p, getFragmentImage(p, pageNumber, get()));
+				}
+				catch (final Exception e) {
+					LOGGER.severe("No se ha podido obtener la pagina " + (pageNumber + 1) + " del PDF: " + e); //$NON-NLS-1$ //$NON-NLS-2$
+					selectionAvailable(p);
+				}
+			}
+		}.execute();
+	}
+
+	BufferedImage getAppendPage() {
+		return this.appendPage;
+	}
+
+	/** Obtiene el fragmento de la p&aacute;gina sobre el que se situar&aacute; la firma.
+	 * @param p Propiedades de la posici&oacute;n de firma.
+	 * @param pageNumber &Iacute;ndice de la p&aacute;gina (empezando en 0).
+	 * @param page Imagen de la p&aacute;gina.
+	 * @return Fragmento de la p&aacute;gina. */
+	BufferedImage getFragmentImage(final Properties p, final int pageNumber, final BufferedImage page) {
 
 		final int newWidth = (int) this.pdfPageSizes.get(pageNumber).getWidth();
 		final int newHeight = (int) this.pdfPageSizes.get(pageNumber).getHeight();
@@ -389,7 +418,7 @@ final class SignPdfUiPanel extends JPanel implements PageLabel.PageLabelListener
 		final BufferedImage im = new BufferedImage (
 			newWidth,
 			newHeight,
-			this.pdfPages.get(pageNumber).getType()
+			page.getType()
 		);
 
 		final Graphics2D graphics2D = im.createGraphics();
@@ -549,25 +578,53 @@ final class SignPdfUiPanel extends JPanel implements PageLabel.PageLabelListener
 
 		enableButtons();
 		this.pagePanel.remove(this.pageLabel);
+		this.pagePanel.repaint();
 		this.posX.setText(""); //$NON-NLS-1$
 		this.posY.setText(""); //$NON-NLS-1$
+
+		// Las paginas pueden renderizarse bajo demanda, asi que se obtienen fuera del hilo de
+		// eventos y se muestran cuando estan listas si sigue siendo la pagina actual
+		final int page = getCurrentPage();
+		new SwingWorker<BufferedImage, Void>() {
+			@Override
+			protected BufferedImage doInBackground() {
+				return getPdfPages().get(page - 1);
+			}
+			@Override
+			protected void done() {
+				if (page != getCurrentPage()) {
+					return;
+				}
+				try {
+					showPage(get(), page);
+				}
+				catch (final Exception e) {
+					LOGGER.severe("No se ha podido mostrar la pagina " + page + " del PDF: " + e); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		}.execute();
+	}
+
+	void showPage(final BufferedImage image, final int page) {
+		this.pagePanel.remove(this.pageLabel);
 		this.pageLabel = createPageLabel(
-			this.pdfPages.get(getCurrentPage() - 1),
+			image,
 			this,
 			this,
 			this.pagePanel,
-			this.pdfPageSizes.get(getCurrentPage() - 1)
+			this.pdfPageSizes.get(page - 1)
 		);
 
 		this.indexLabel.setText(
 			SignPdfUiMessages.getString(
 				"SignPdfUiPanel.5", //$NON-NLS-1$
-				Integer.toString(getCurrentPage()),
+				Integer.toString(page),
 				Integer.toString(this.pdfPages.size()),
 				Integer.toString(this.currentScale)
 			)
 		);
 		this.pagePanel.add(this.pageLabel);
+		this.pagePanel.revalidate();
 		this.pagePanel.repaint();
 	}
 
@@ -12,6 +12,7 @@ import java.util.List;
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import com.aowagie.text.pdf.PdfReader;
@@ -43,6 +44,23 @@ public final class Pdf2ImagesConverterTests {
 		}
 	}
 
+	/** Prueba del renderizado bajo demanda de las p&aacute;ginas de un PDF.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testPdfPageRenderer() throws Exception {
+		final byte[] testPdf = AOUtil.getDataFromInputStream(ClassLoader.getSystemResourceAsStream(TEST_FILE));
+		try (final PdfPageRenderer pages = PdfPageRenderer.open(testPdf)) {
+			final List<Dimension> sizes = getPageSizes(testPdf);
+			Assert.assertEquals(sizes, pages.getPageSizes());
+			final BufferedImage last = pages.get(pages.size() - 1);
+			final BufferedImage expected = Pdf2ImagesConverter.pdf2Image(testPdf, pages.size() - 1);
+			Assert.assertEquals(expected.getWidth(), last.getWidth());
+			Assert.assertEquals(expected.getHeight(), last.getHeight());
+			Assert.assertSame(last, pages.get(pages.size() - 1));
+		}
+	}
+
 	/** Prueba de la conversi&oacute; en segundo plano de PDF a im&aacute;genes.
 	 * @throws Exception En cualquier error. */
 	@SuppressWarnings("static-method")